@@ -22,6 +22,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 /**
  * Binary Decision Diagrams (BDDs) are used for efficient computation of many common problems. This is done by giving a
@@ -180,6 +182,19 @@ public abstract class BDD {
         return this.applyWith(that, BDDFactory.and);
     }
 
+    /**
+     * Returns the logical 'and' of two BDDs, giving up if computing it requires more than {@code maxNewNodes} new BDD
+     * nodes. This is a shortcut for calling "apply" with the "and" operator and a node budget.
+     *
+     * @param that BDD to 'and' with
+     * @param maxNewNodes the maximum number of new BDD nodes that may be created to compute the result
+     * @return the logical 'and' of two BDDs, or {@code null} if the node budget was exceeded
+     * @see #apply(BDD, BDDFactory.BDDOp, int)
+     */
+    public BDD and(BDD that, int maxNewNodes) {
+        return this.apply(that, BDDFactory.and, maxNewNodes);
+    }
+
     /**
      * Returns the logical 'or' of two BDDs. This is a shortcut for calling "apply" with the "or" operator.
      *
@@ -310,6 +325,19 @@ public abstract class BDD {
      */
     public abstract BDD ite(BDD thenBDD, BDD elseBDD);
 
+    /**
+     * Combined if-then-else and existential quantification. Computes {@code ite(thenBDD, elseBDD).exist(var)} as a
+     * single BDD operation, without building the full if-then-else result first.
+     *
+     * @param thenBDD the 'then' BDD
+     * @param elseBDD the 'else' BDD
+     * @param var BDDVarSet containing the variables to be existentially quantified
+     * @return the result of the if-then-else operator on the three BDDs, with the variables existentially quantified
+     * @see #ite(BDD, BDD)
+     * @see #exist(BDDVarSet)
+     */
+    public abstract BDD iteExist(BDD thenBDD, BDD elseBDD, BDDVarSet var);
+
     /**
      * Relational product. Calculates the relational product of the two BDDs as this AND that with the variables in var
      * quantified out afterwards. Identical to applyEx(that, and, var).
@@ -327,6 +355,20 @@ public abstract class BDD {
         return applyEx(that, BDDFactory.and, var);
     }
 
+    /**
+     * Relational product with a node budget. Like {@link #relprod(BDD, BDDVarSet)}, but gives up if computing the
+     * result requires more than {@code maxNewNodes} new BDD nodes. Identical to applyEx(that, and, var, maxNewNodes).
+     *
+     * @param that the BDD to 'and' with
+     * @param var the BDDVarSet to existentially quantify with
+     * @param maxNewNodes the maximum number of new BDD nodes that may be created to compute the result
+     * @return the result of the relational product, or {@code null} if the node budget was exceeded
+     * @see #apply(BDD, BDDFactory.BDDOp, int)
+     */
+    public BDD relprod(BDD that, BDDVarSet var, int maxNewNodes) {
+        return applyEx(that, BDDFactory.and, var, maxNewNodes);
+    }
+
     /**
      * Functional composition. Substitutes the variable var with the BDD that in this BDD: result = f[g/var].
      *
@@ -382,6 +424,17 @@ public abstract class BDD {
      */
     public abstract BDD exist(BDDVarSet var);
 
+    /**
+     * Existential quantification of variables with a node budget. Like {@link #exist(BDDVarSet)}, but gives up if
+     * computing the result requires more than {@code maxNewNodes} new BDD nodes.
+     *
+     * @param var BDDVarSet containing the variables to be existentially quantified
+     * @param maxNewNodes the maximum number of new BDD nodes that may be created to compute the result
+     * @return the result of the existential quantification, or {@code null} if the node budget was exceeded
+     * @see #apply(BDD, BDDFactory.BDDOp, int)
+     */
+    public abstract BDD exist(BDDVarSet var, int maxNewNodes);
+
     /**
      * Universal quantification of variables. Removes all occurrences of this BDD in variables in the set var by
      * universal quantification.
@@ -461,6 +514,69 @@ public abstract class BDD {
      */
     public abstract BDD simplify(BDD d);
 
+    /**
+     * Heavy branch subsetting. Computes an under-approximation of this BDD with at most {@code threshold} nodes, by
+     * following the branch with the most satisfying assignments from the root, and cutting off lighter branches that
+     * do not fit. The result implies this BDD. If this BDD already has at most {@code threshold} nodes, it is returned
+     * unchanged.
+     *
+     * <p>
+     * The node count of the result is estimated conservatively, as sharing between the retained branches is not taken
+     * into account. The result may therefore be smaller than necessary, but it never exceeds the threshold.
+     * </p>
+     *
+     * <p>
+     * Compare to Cudd_SubsetHeavyBranch.
+     * </p>
+     *
+     * @param threshold the maximum number of nodes of the result
+     * @return the under-approximation
+     * @see #supersetHeavyBranch(int)
+     */
+    public abstract BDD subsetHeavyBranch(int threshold);
+
+    /**
+     * Heavy branch supersetting. Computes an over-approximation of this BDD with at most {@code threshold} nodes. This
+     * BDD implies the result. This is the dual of {@link #subsetHeavyBranch(int)}, applied to the negation of this BDD.
+     *
+     * <p>
+     * Compare to Cudd_SupersetHeavyBranch.
+     * </p>
+     *
+     * @param threshold the maximum number of nodes of the result
+     * @return the over-approximation
+     */
+    public abstract BDD supersetHeavyBranch(int threshold);
+
+    /**
+     * Short path subsetting. Computes an under-approximation of this BDD with at most {@code threshold} nodes, by
+     * keeping only the paths to the one-terminal that are shorter than some bound. The largest bound for which the
+     * result fits is used. The result implies this BDD. If this BDD already has at most {@code threshold} nodes, it is
+     * returned unchanged.
+     *
+     * <p>
+     * Compare to Cudd_SubsetShortPaths.
+     * </p>
+     *
+     * @param threshold the maximum number of nodes of the result
+     * @return the under-approximation
+     * @see #supersetShortPaths(int)
+     */
+    public abstract BDD subsetShortPaths(int threshold);
+
+    /**
+     * Short path supersetting. Computes an over-approximation of this BDD with at most {@code threshold} nodes. This
+     * BDD implies the result. This is the dual of {@link #subsetShortPaths(int)}, applied to the negation of this BDD.
+     *
+     * <p>
+     * Compare to Cudd_SupersetShortPaths.
+     * </p>
+     *
+     * @param threshold the maximum number of nodes of the result
+     * @return the over-approximation
+     */
+    public abstract BDD supersetShortPaths(int threshold);
+
     /**
      * Returns the variable support of this BDD. The support is all the variables that this BDD depends on.
      *
@@ -485,6 +601,24 @@ public abstract class BDD {
      */
     public abstract BDD apply(BDD that, BDDFactory.BDDOp opr);
 
+    /**
+     * Returns the result of applying the binary operator {@code opr} to the two BDDs, giving up if computing it
+     * requires more than {@code maxNewNodes} new BDD nodes.
+     *
+     * <p>
+     * Unlike {@link BDDFactory#setMaxNodeNum(int)}, which limits the size of the whole node table and raises an
+     * exception when the limit is reached, the node budget applies to this single operation only, and exceeding it
+     * leaves the factory in a consistent state. Nodes that are shared with existing BDDs or that are found in the node
+     * table do not count towards the budget. Automatic variable reordering is disabled during the operation.
+     * </p>
+     *
+     * @param that the BDD to apply the operator on
+     * @param opr the operator to apply
+     * @param maxNewNodes the maximum number of new BDD nodes that may be created to compute the result
+     * @return the result of applying the operator, or {@code null} if the node budget was exceeded
+     */
+    public abstract BDD apply(BDD that, BDDFactory.BDDOp opr, int maxNewNodes);
+
     /**
      * Makes this BDD be the result of the binary operator {@code opr} of two BDDs. The "that" BDD is consumed, and can
      * no longer be used. Attempting to use the passed in BDD again will result in an exception being thrown.
@@ -531,6 +665,20 @@ public abstract class BDD {
      */
     public abstract BDD applyEx(BDD that, BDDFactory.BDDOp opr, BDDVarSet var);
 
+    /**
+     * Applies the binary operator {@code opr} to two BDDs and then performs an existential quantification of the
+     * variables from the variable set {@code var}, giving up if computing the result requires more than
+     * {@code maxNewNodes} new BDD nodes.
+     *
+     * @param that the BDD to apply the operator on
+     * @param opr the operator to apply
+     * @param var BDDVarSet containing the variables to quantify
+     * @param maxNewNodes the maximum number of new BDD nodes that may be created to compute the result
+     * @return the result, or {@code null} if the node budget was exceeded
+     * @see #apply(BDD, BDDFactory.BDDOp, int)
+     */
+    public abstract BDD applyEx(BDD that, BDDFactory.BDDOp opr, BDDVarSet var, int maxNewNodes);
+
     /**
      * Applies the binary operator {@code opr} to two BDDs and then performs a unique quantification of the variables
      * from the variable set {@code var}.
@@ -604,6 +752,20 @@ public abstract class BDD {
      */
     public abstract BDD relnext(BDD states, BDDVarSet vars);
 
+    /**
+     * Computes {@link #relnext(BDD, BDDVarSet) relnext(states, vars)}, giving up if computing the result requires more
+     * than {@code maxNewNodes} new BDD nodes.
+     *
+     * @param states The BDD representing the set of states.
+     * @param vars The BDD representing the set of relevant variables to consider. See {@link #relnext(BDD, BDDVarSet)
+     *     relnext} for further details.
+     * @param maxNewNodes The maximum number of new BDD nodes that may be created to compute the result.
+     * @return The BDD representing the set of successor states from {@code states}, or {@code null} if the node budget
+     *     was exceeded.
+     * @see #apply(BDD, BDDFactory.BDDOp, int)
+     */
+    public abstract BDD relnext(BDD states, BDDVarSet vars, int maxNewNodes);
+
     /**
      * Computes {@code or(relnext(states, vars), union)} as a single BDD operation.
      *
@@ -688,6 +850,25 @@ public abstract class BDD {
      */
     public abstract BDD relprevIntersection(BDD states, BDD restriction, BDDVarSet vars);
 
+    /**
+     * Computes {@code ite(thenBDD, elseBDD).relprev(states, vars)} as a single BDD operation, where this BDD is the
+     * guard of the (partial) transition relation. This avoids building the full transition relation, which may be much
+     * larger than the guard and the 'then' and 'else' relations, as for instance for guarded updates.
+     *
+     * <p>
+     * Repeated calls with the same {@code vars} share cached results. Calling this method with a different variable
+     * set invalidates the cached results of earlier calls.
+     * </p>
+     *
+     * @param thenBDD The BDD representing the transition relation to use where the guard holds.
+     * @param elseBDD The BDD representing the transition relation to use where the guard does not hold.
+     * @param states The BDD representing the set of states.
+     * @param vars The BDD representing the set of relevant variables to consider. See {@link #relprev(BDD, BDDVarSet)
+     *     relprev} for further details.
+     * @return The BDD representing the set of predecessor states from {@code states}.
+     */
+    public abstract BDD iteRelprev(BDD thenBDD, BDD elseBDD, BDD states, BDDVarSet vars);
+
     /**
      * Computes the set of all states that are forward reachable with respect to the given list of transition relations,
      * starting from the set of states represented by this BDD, by using the saturation strategy.
@@ -763,6 +944,51 @@ public abstract class BDD {
         return new AllSatIterator(this);
     }
 
+    /**
+     * Visits all satisfying assignments, like {@link #allsat()}, but without allocating a new byte array per
+     * assignment. Each assignment is written to the given buffer, indexed by BDD variable number, where -1 means
+     * dont-care, 0 means 0, and 1 means 1. The visitor is called with this same buffer for every assignment, and should
+     * therefore copy it if it wants to retain it.
+     *
+     * <p>
+     * The visitor may perform other BDD operations, but variable reordering is disabled until all assignments have
+     * been visited.
+     * </p>
+     *
+     * @param buffer the buffer to write the assignments to, which must have at least {@link BDDFactory#varNum()}
+     *     elements
+     * @param visitor the visitor to call for each assignment
+     * @return {@code true} if all assignments have been visited, {@code false} if the visitor stopped the enumeration
+     */
+    public boolean forEachCube(byte[] buffer, CubeVisitor visitor) {
+        AllSatIterator i = allsat();
+        while (i.hasNext()) {
+            byte[] b = i.nextSat();
+            System.arraycopy(b, 0, buffer, 0, b.length);
+            if (!visitor.visit(buffer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visitor for satisfying assignments.
+     *
+     * @see BDD#forEachCube(byte[], CubeVisitor)
+     */
+    @FunctionalInterface
+    public static interface CubeVisitor {
+        /**
+         * Visits a satisfying assignment.
+         *
+         * @param cube the assignment, indexed by BDD variable number, where -1 means dont-care, 0 means 0, and 1
+         *     means 1. The array is reused for the next assignment.
+         * @return {@code true} to continue with the next assignment, {@code false} to stop
+         */
+        public boolean visit(byte[] cube);
+    }
+
     /**
      * Iterator that returns all satisfying assignments as byte arrays. In the byte arrays, -1 means dont-care, 0 means
      * 0, and 1 means 1.
@@ -1309,6 +1535,164 @@ public abstract class BDD {
         }
     }
 
+    /**
+     * Returns an iteration of the satisfying assignments of this BDD, as tuples of domain values. Each tuple has one
+     * value per given domain, in the same order. Dont-care bits are expanded, so every combination of domain values
+     * that satisfies this BDD is returned exactly once.
+     *
+     * <p>
+     * Unlike {@link #iterator(BDDVarSet)}, the tuples are decoded directly from the satisfying assignments found by
+     * {@link #allsat()}, without constructing a BDD per tuple. This BDD should not depend on variables outside the
+     * given domains, as otherwise the same tuple may be returned more than once. Expanded dont-care bits may result in
+     * values that are larger than or equal to the {@link BDDDomain#size() size} of their domain, if this BDD allows
+     * such values.
+     * </p>
+     *
+     * @param domains the domains, each of which may have at most 63 variables
+     * @return an iteration of domain value tuples
+     */
+    public TupleIterator tupleIterator(BDDDomain... domains) {
+        return new TupleIterator(this, domains);
+    }
+
+    /**
+     * Returns a spliterator over the satisfying assignments of this BDD, as tuples of domain values. See
+     * {@link #tupleIterator(BDDDomain...)} for details on the tuples.
+     *
+     * <p>
+     * The satisfying assignments are found sequentially, but they may be processed in parallel, for instance using
+     * {@code StreamSupport.stream(bdd.tupleSpliterator(domains), true)}. The BDD factory is only accessed by the thread
+     * that advances or splits the spliterator, but it must not be used concurrently by other threads.
+     * </p>
+     *
+     * @param domains the domains, each of which may have at most 63 variables
+     * @return a spliterator over domain value tuples
+     */
+    public Spliterator<long[]> tupleSpliterator(BDDDomain... domains) {
+        return Spliterators.spliteratorUnknownSize(tupleIterator(domains), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * TupleIterator is used to iterate through the satisfying assignments of a BDD, as tuples of domain values.
+     *
+     * @see BDD#tupleIterator(BDDDomain...)
+     */
+    public static class TupleIterator implements Iterator<long[]> {
+        // Iterator over the satisfying assignments, with dont-cares.
+        final AllSatIterator i;
+
+        // Per domain, its variables, from least to most significant bit.
+        final int[][] vars;
+
+        // Per domain, the bits that are fixed to one in the current assignment.
+        final long[] fixed;
+
+        // Per domain, the bits that are dont-cares in the current assignment.
+        final long[] dontCare;
+
+        // Per domain, the current assignment of the dont-care bits.
+        final long[] current;
+
+        // Whether there is a current assignment.
+        boolean hasCurrent;
+
+        /**
+         * Construct a new TupleIterator on the given BDD.
+         *
+         * @param bdd BDD to iterate over
+         * @param domains the domains, each of which may have at most 63 variables
+         * @throws BDDException if a domain has more than 63 variables
+         */
+        public TupleIterator(BDD bdd, BDDDomain[] domains) {
+            vars = new int[domains.length][];
+            for (int d = 0; d < domains.length; d++) {
+                if (domains[d].varNum() > 63) {
+                    throw new BDDException("Domain " + domains[d] + " has more than 63 variables.");
+                }
+                vars[d] = domains[d].vars();
+            }
+            fixed = new long[domains.length];
+            dontCare = new long[domains.length];
+            current = new long[domains.length];
+            i = bdd.allsat();
+            gotoNext();
+        }
+
+        protected void gotoNext() {
+            hasCurrent = i.hasNext();
+            if (!hasCurrent) {
+                return;
+            }
+            byte[] a = i.nextSat();
+            for (int d = 0; d < vars.length; d++) {
+                int[] ivar = vars[d];
+                long one = 0;
+                long dc = 0;
+                for (int m = 0; m < ivar.length; m++) {
+                    byte x = a[ivar[m]];
+                    if (x == 1) {
+                        one |= 1L << m;
+                    } else if (x == -1) {
+                        dc |= 1L << m;
+                    }
+                }
+                fixed[d] = one;
+                dontCare[d] = dc;
+                current[d] = 0;
+            }
+        }
+
+        protected boolean gotoNextDontCare() {
+            // Enumerate the subsets of the dont-care bits, like an odometer with the last domain as least significant.
+            for (int d = vars.length - 1; d >= 0; d--) {
+                long dc = dontCare[d];
+                if (dc == 0) {
+                    continue;
+                }
+                long next = ((current[d] | ~dc) + 1) & dc;
+                current[d] = next;
+                if (next != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasCurrent;
+        }
+
+        @Override
+        public long[] next() {
+            return nextTuple();
+        }
+
+        /**
+         * Return the next tuple of domain values in the iteration.
+         *
+         * @return the next tuple of domain values in the iteration.
+         */
+        public long[] nextTuple() {
+            if (!hasCurrent) {
+                throw new NoSuchElementException();
+            }
+            long[] result = new long[vars.length];
+            for (int d = 0; d < result.length; d++) {
+                result[d] = fixed[d] | current[d];
+            }
+            if (!gotoNextDontCare()) {
+                gotoNext();
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     /**
      * Returns a BDD where all variables are replaced with the variables defined by pair. Each entry in pair consists of
      * a old and a new variable. Whenever the old variable is found in this BDD then a new node with the new variable is
@@ -1478,12 +1862,234 @@ public abstract class BDD {
 
         int unused = factory.varNum();
         unused -= varset.size();
-        BigDecimal unused2 = new BigDecimal(satCount()).divide(new BigDecimal(BigInteger.TWO.pow(unused)));
+        BigInteger count = satCount();
+        if (count.getLowestSetBit() >= unused) {
+            /* The count is a multiple of 2^unused, as it should be, so just shift. */
+            return count.shiftRight(unused);
+        }
+        BigDecimal unused2 = new BigDecimal(count).divide(new BigDecimal(BigInteger.TWO.pow(unused)));
 
         BigDecimal rslt = unused2.compareTo(BigDecimal.ONE) >= 0 ? unused2 : BigDecimal.ONE;
         return rslt.toBigIntegerExact();
     }
 
+    /**
+     * Calculates the probability that this BDD is satisfied, if each variable is independently assigned to one with
+     * the given probability.
+     *
+     * <p>
+     * This is a single pass over the nodes of this BDD, see {@link #evaluate(DoubleSemiring, double[], double[])}.
+     * </p>
+     *
+     * @param varProbabilities per BDD variable number, the probability that the variable is one
+     * @return the probability that this BDD is satisfied
+     */
+    public double probability(double[] varProbabilities) {
+        double[] lowWeights = new double[varProbabilities.length];
+        for (int i = 0; i < varProbabilities.length; i++) {
+            lowWeights[i] = 1 - varProbabilities[i];
+        }
+        return evaluate(DoubleSemiring.SUM_PRODUCT, lowWeights, varProbabilities);
+    }
+
+    /**
+     * Evaluates this BDD in the given semiring, with the given weights per variable. Each satisfying assignment has as
+     * value the product ({@link DoubleSemiring#times}) of the weights of the values of all variables. The result is
+     * the sum ({@link DoubleSemiring#plus}) of the values of all satisfying assignments.
+     *
+     * <p>
+     * For instance, in the {@link DoubleSemiring#SUM_PRODUCT sum-product} semiring with all weights one, this counts
+     * the satisfying assignments, and with probabilities as weights it computes the probability of this BDD. In the
+     * {@link DoubleSemiring#MIN_SUM min-sum} semiring with costs as weights, it computes the minimal cost of a
+     * satisfying assignment.
+     * </p>
+     *
+     * <p>
+     * The value of each node is computed only once. If, for some variable, the sum of its weights is not the unit of
+     * the semiring, variables that do not occur on a path cost an extra multiplication each.
+     * </p>
+     *
+     * <p>
+     * Only {@link JFactory} evaluates in a linear pass over its node table that doesn't allocate per node. This default
+     * implementation, for other factories, memoizes the value of each node in a hash map keyed by {@link BDD} objects,
+     * which allocates a {@link BDD} and a boxed value per node.
+     * </p>
+     *
+     * @param semiring the semiring, whose operations should not use the factory of this BDD
+     * @param lowWeights per BDD variable number, the weight of assigning zero to it
+     * @param highWeights per BDD variable number, the weight of assigning one to it
+     * @return the value of this BDD
+     */
+    public double evaluate(DoubleSemiring semiring, double[] lowWeights, double[] highWeights) {
+        BDDFactory factory = getFactory();
+        int varnum = factory.varNum();
+        if (lowWeights.length < varnum || highWeights.length < varnum) {
+            throw new BDDException("Need a weight for each of the " + varnum + " variables");
+        }
+        int level = isZero() || isOne() ? varnum : factory.var2Level(var());
+        // There is no factory-independent node number to index a primitive table with, so key on the BDD objects.
+        HashMap<BDD, Double> cache = new HashMap<>();
+        double value = evaluate(semiring, lowWeights, highWeights, cache);
+        for (BDD b: cache.keySet()) {
+            b.free();
+        }
+        return evaluateSkip(semiring, lowWeights, highWeights, value, 0, level);
+    }
+
+    private double evaluate(DoubleSemiring semiring, double[] lowWeights, double[] highWeights,
+            HashMap<BDD, Double> cache)
+    {
+        if (isZero()) {
+            return semiring.zero();
+        }
+        if (isOne()) {
+            return semiring.one();
+        }
+
+        Double cached = cache.get(this);
+        if (cached != null) {
+            return cached;
+        }
+
+        BDDFactory factory = getFactory();
+        int varnum = factory.varNum();
+        int v = var();
+        int level = factory.var2Level(v);
+        BDD low = low();
+        BDD high = high();
+        int lowLevel = low.isZero() || low.isOne() ? varnum : factory.var2Level(low.var());
+        int highLevel = high.isZero() || high.isOne() ? varnum : factory.var2Level(high.var());
+        double lowValue = evaluateSkip(semiring, lowWeights, highWeights,
+                low.evaluate(semiring, lowWeights, highWeights, cache), level + 1, lowLevel);
+        double highValue = evaluateSkip(semiring, lowWeights, highWeights,
+                high.evaluate(semiring, lowWeights, highWeights, cache), level + 1, highLevel);
+        low.free();
+        high.free();
+
+        double value = semiring.plus(semiring.times(lowWeights[v], lowValue),
+                semiring.times(highWeights[v], highValue));
+        cache.put(id(), value);
+        return value;
+    }
+
+    private double evaluateSkip(DoubleSemiring semiring, double[] lowWeights, double[] highWeights, double value,
+            int from, int to)
+    {
+        BDDFactory factory = getFactory();
+        for (int level = from; level < to; level++) {
+            int v = factory.level2Var(level);
+            double skip = factory.isZDD() ? lowWeights[v] : semiring.plus(lowWeights[v], highWeights[v]);
+            value = semiring.times(skip, value);
+        }
+        return value;
+    }
+
+    /**
+     * A commutative semiring over doubles, in which BDDs can be {@link BDD#evaluate evaluated}.
+     */
+    public static interface DoubleSemiring {
+        /** The semiring of the reals with addition and multiplication, for (weighted) counting and probabilities. */
+        public static final DoubleSemiring SUM_PRODUCT = new DoubleSemiring() {
+            @Override
+            public double zero() {
+                return 0;
+            }
+
+            @Override
+            public double one() {
+                return 1;
+            }
+
+            @Override
+            public double plus(double a, double b) {
+                return a + b;
+            }
+
+            @Override
+            public double times(double a, double b) {
+                return a * b;
+            }
+        };
+
+        /** The semiring of the reals with maximum and multiplication, for the most probable assignment. */
+        public static final DoubleSemiring MAX_PRODUCT = new DoubleSemiring() {
+            @Override
+            public double zero() {
+                return 0;
+            }
+
+            @Override
+            public double one() {
+                return 1;
+            }
+
+            @Override
+            public double plus(double a, double b) {
+                return Math.max(a, b);
+            }
+
+            @Override
+            public double times(double a, double b) {
+                return a * b;
+            }
+        };
+
+        /** The tropical semiring of the reals with minimum and addition, for the cheapest assignment. */
+        public static final DoubleSemiring MIN_SUM = new DoubleSemiring() {
+            @Override
+            public double zero() {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            @Override
+            public double one() {
+                return 0;
+            }
+
+            @Override
+            public double plus(double a, double b) {
+                return Math.min(a, b);
+            }
+
+            @Override
+            public double times(double a, double b) {
+                return a + b;
+            }
+        };
+
+        /**
+         * Returns the neutral element of {@link #plus}, which is the value of the false BDD.
+         *
+         * @return the zero
+         */
+        public double zero();
+
+        /**
+         * Returns the neutral element of {@link #times}, which is the value of the true BDD.
+         *
+         * @return the one
+         */
+        public double one();
+
+        /**
+         * Returns the sum of two values, for alternative assignments.
+         *
+         * @param a the first value
+         * @param b the second value
+         * @return the sum
+         */
+        public double plus(double a, double b);
+
+        /**
+         * Returns the product of two values, for the combined assignment of different variables.
+         *
+         * @param a the first value
+         * @param b the second value
+         * @return the product
+         */
+        public double times(double a, double b);
+    }
+
     /**
      * Calculates the logarithm of the number of satisfying variable assignments.
      *
@@ -1516,7 +2122,12 @@ public abstract class BDD {
      * @return the logarithm of the number of satisfying variable assignments
      */
     public double logSatCount(BDDVarSet varset) {
-        return Math.log(satCount(varset).doubleValue());
+        if (varset.isEmpty() || isZero()) { /* empty set */
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        int unused = getFactory().varNum() - varset.size();
+        return Math.max(logSatCount() - unused * Math.log(2), 0.0);
     }
 
     /**
@@ -0,0 +1,190 @@
+//////////////////////////////////////////////////////////////////////////////
+// Copyright (c) 2003-2026 John Whaley and com.github.javabdd contributors
+//
+// See the CONTRIBUTORS file(s) distributed with this work for additional
+// information regarding copyright ownership.
+//
+// This program and the accompanying materials are made available under the
+// terms of the GNU Library General Public License v2 or later, which is
+// available at https://spdx.org/licenses/LGPL-2.0-or-later.html
+//
+// SPDX-License-Identifier: LGPL-2.0-or-later
+//////////////////////////////////////////////////////////////////////////////
+
+package com.github.javabdd;
+
+/**
+ * A batch of BDD operations. Operations are added to the batch, referring to their operands by handles, and are
+ * performed together by {@link #execute()}. The intermediate results are kept inside the batch, rather than being
+ * wrapped in {@link BDD} objects, and the factory prepares, checks for reordering and resizes its caches once per
+ * execution rather than once per operation. This avoids most of the per-operation overhead when performing many small
+ * operations.
+ *
+ * <p>
+ * Handles are consecutive integers, starting at zero, in the order in which inputs and operations are added to the
+ * batch. A batch keeps its inputs and results alive until it is {@link #free() freed}.
+ * </p>
+ *
+ * @see BDDFactory#batch()
+ */
+public abstract class BDDBatch {
+    /**
+     * Returns the factory that created this batch.
+     *
+     * @return the factory
+     */
+    public abstract BDDFactory getFactory();
+
+    /**
+     * Adds a BDD as input to this batch. The given BDD is not modified or freed.
+     *
+     * @param b the BDD
+     * @return the handle of the input
+     */
+    public abstract int input(BDD b);
+
+    /**
+     * Adds an operation that applies a binary operator to two operands.
+     *
+     * @param a the handle of the left operand
+     * @param b the handle of the right operand
+     * @param opr the operator
+     * @return the handle of the result
+     * @see BDD#apply(BDD, BDDFactory.BDDOp)
+     */
+    public abstract int apply(int a, int b, BDDFactory.BDDOp opr);
+
+    /**
+     * Adds an operation that computes the conjunction of two operands.
+     *
+     * @param a the handle of the left operand
+     * @param b the handle of the right operand
+     * @return the handle of the result
+     * @see BDD#and(BDD)
+     */
+    public int and(int a, int b) {
+        return apply(a, b, BDDFactory.and);
+    }
+
+    /**
+     * Adds an operation that computes the disjunction of two operands.
+     *
+     * @param a the handle of the left operand
+     * @param b the handle of the right operand
+     * @return the handle of the result
+     * @see BDD#or(BDD)
+     */
+    public int or(int a, int b) {
+        return apply(a, b, BDDFactory.or);
+    }
+
+    /**
+     * Adds an operation that negates an operand.
+     *
+     * @param a the handle of the operand
+     * @return the handle of the result
+     * @see BDD#not()
+     */
+    public abstract int not(int a);
+
+    /**
+     * Adds an if-then-else operation.
+     *
+     * @param f the handle of the condition
+     * @param g the handle of the 'then' operand
+     * @param h the handle of the 'else' operand
+     * @return the handle of the result
+     * @see BDD#ite(BDD, BDD)
+     */
+    public abstract int ite(int f, int g, int h);
+
+    /**
+     * Adds an existential quantification operation.
+     *
+     * @param a the handle of the operand
+     * @param var the variables to existentially quantify
+     * @return the handle of the result
+     * @see BDD#exist(BDDVarSet)
+     */
+    public abstract int exist(int a, BDDVarSet var);
+
+    /**
+     * Adds a universal quantification operation.
+     *
+     * @param a the handle of the operand
+     * @param var the variables to universally quantify
+     * @return the handle of the result
+     * @see BDD#forAll(BDDVarSet)
+     */
+    public abstract int forAll(int a, BDDVarSet var);
+
+    /**
+     * Adds an operation that applies a binary operator to two operands, and existentially quantifies variables from
+     * the result.
+     *
+     * @param a the handle of the left operand
+     * @param b the handle of the right operand
+     * @param opr the operator
+     * @param var the variables to existentially quantify
+     * @return the handle of the result
+     * @see BDD#applyEx(BDD, BDDFactory.BDDOp, BDDVarSet)
+     */
+    public abstract int applyEx(int a, int b, BDDFactory.BDDOp opr, BDDVarSet var);
+
+    /**
+     * Adds a relational product operation.
+     *
+     * @param a the handle of the left operand
+     * @param b the handle of the right operand
+     * @param var the variables to existentially quantify
+     * @return the handle of the result
+     * @see BDD#relprod(BDD, BDDVarSet)
+     */
+    public int relprod(int a, int b, BDDVarSet var) {
+        return applyEx(a, b, BDDFactory.and, var);
+    }
+
+    /**
+     * Adds a variable replacement operation.
+     *
+     * @param a the handle of the operand
+     * @param pair the variable pairs to replace
+     * @return the handle of the result
+     * @see BDD#replace(BDDPairing)
+     */
+    public abstract int replace(int a, BDDPairing pair);
+
+    /**
+     * Returns the number of handles in this batch, i.e. the number of inputs and operations added to it.
+     *
+     * @return the number of handles
+     */
+    public abstract int size();
+
+    /**
+     * Performs all operations that were added to this batch since the last time it was executed. The operations are
+     * performed one after the other, in the order in which they were added. At most one automatic reordering takes
+     * place during an execution.
+     *
+     * <p>
+     * The result is indexed by handle. For an int-based factory, its elements are the internal node numbers of the
+     * results. These remain valid until this batch is freed.
+     * </p>
+     *
+     * @return the results of all inputs and operations of this batch
+     */
+    public abstract int[] execute();
+
+    /**
+     * Returns the result for a handle, as a new BDD. This first executes any pending operations.
+     *
+     * @param handle the handle
+     * @return the result
+     */
+    public abstract BDD get(int handle);
+
+    /**
+     * Frees this batch, releasing its inputs and results. The batch should not be used after this.
+     */
+    public abstract void free();
+}
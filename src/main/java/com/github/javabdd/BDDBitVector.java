@@ -111,7 +111,7 @@ public abstract class BDDBitVector {
         for (n = 0; n < minnum; n++) {
             dst.bitvec[n] = bitvec[n].id();
         }
-        for (; n < minnum; n++) {
+        for (; n < bitnum; n++) {
             dst.bitvec[n] = bdd.zero();
         }
         return dst;
@@ -174,16 +174,15 @@ public abstract class BDDBitVector {
         BDDBitVector res = bdd.createBitVector(bitvec.length);
 
         for (int n = 0; n < res.bitvec.length; n++) {
-            /* bitvec[n] = l[n] ^ r[n] ^ c; */
-            res.bitvec[n] = bitvec[n].xor(that.bitvec[n]);
-            res.bitvec[n].xorWith(c.id());
-
-            /* c = (l[n] & r[n]) | (c & (l[n] | r[n])); */
-            BDD tmp1 = bitvec[n].or(that.bitvec[n]);
-            tmp1.andWith(c);
-            BDD tmp2 = bitvec[n].and(that.bitvec[n]);
-            tmp2.orWith(tmp1);
-            c = tmp2;
+            /* x = l[n] ^ r[n]; bitvec[n] = x ^ c; */
+            BDD x = bitvec[n].xor(that.bitvec[n]);
+            res.bitvec[n] = x.xor(c);
+
+            /* c = x ? c : l[n]; */
+            BDD tmp = x.ite(c, bitvec[n]);
+            x.free();
+            c.free();
+            c = tmp;
         }
         c.free();
 
@@ -201,46 +200,309 @@ public abstract class BDDBitVector {
         BDDBitVector res = bdd.createBitVector(bitvec.length);
 
         for (int n = 0; n < res.bitvec.length; n++) {
-            /* bitvec[n] = l[n] ^ r[n] ^ c; */
-            res.bitvec[n] = bitvec[n].xor(that.bitvec[n]);
-            res.bitvec[n].xorWith(c.id());
+            /* x = l[n] ^ r[n]; bitvec[n] = x ^ c; */
+            BDD x = bitvec[n].xor(that.bitvec[n]);
+            res.bitvec[n] = x.xor(c);
+
+            /* c = x ? r[n] : c; */
+            BDD tmp = x.ite(that.bitvec[n], c);
+            x.free();
+            c.free();
+            c = tmp;
+        }
+        c.free();
 
-            /* c = (l[n] & r[n] & c) | (!l[n] & (r[n] | c)); */
-            BDD tmp1 = that.bitvec[n].or(c);
-            BDD tmp2 = this.bitvec[n].apply(tmp1, BDDFactory.less);
-            tmp1.free();
-            tmp1 = this.bitvec[n].and(that.bitvec[n]);
-            tmp1.andWith(c);
-            tmp1.orWith(tmp2);
+        return res;
+    }
 
-            c = tmp1;
+    /**
+     * Multiplies this vector with the given vector, modulo 2 to the power of the size of the vectors. Use
+     * {@link #coerce(int)} first to obtain the full product.
+     *
+     * <p>
+     * Compare to bvec_mul.
+     * </p>
+     *
+     * @param that the vector to multiply with, of the same size as this vector
+     * @return the product
+     */
+    public BDDBitVector mul(BDDBitVector that) {
+        if (bitvec.length != that.bitvec.length) {
+            throw new BDDException();
+        }
+
+        BDDFactory bdd = getFactory();
+        BDDBitVector res = bdd.buildVector(bitvec.length, false);
+
+        for (int i = 0; i < bitvec.length; i++) {
+            if (bitvec[i].isZero()) {
+                continue;
+            }
+
+            /* Add (r << i) & l[i] to the result, in place, for the bits that it affects. */
+            BDD c = bdd.zero();
+            for (int n = i; n < bitvec.length; n++) {
+                BDD b = bitvec[i].and(that.bitvec[n - i]);
+                BDD x = res.bitvec[n].xor(b);
+                b.free();
+                BDD sum = x.xor(c);
+                BDD tmp = x.ite(c, res.bitvec[n]);
+                x.free();
+                c.free();
+                c = tmp;
+                res.bitvec[n].free();
+                res.bitvec[n] = sum;
+            }
+            c.free();
         }
-        c.free();
 
         return res;
     }
 
-    BDD lte(BDDBitVector r) {
+    /**
+     * Compares this vector to the given vector, from the least to the most significant bit. For each bit, the result so
+     * far is kept if the bits are equal, and otherwise the bit of the more significant of the two decides.
+     *
+     * @param r the vector to compare to
+     * @param strict whether to compare for strictly less than ({@code true}) or less than or equal ({@code false})
+     * @param signed whether to compare as two's complement numbers ({@code true}) or as unsigned numbers
+     *     ({@code false})
+     * @return the comparison
+     */
+    protected BDD compare(BDDBitVector r, boolean strict, boolean signed) {
         if (this.bitvec.length != r.bitvec.length) {
             throw new BDDException();
         }
 
         BDDFactory bdd = getFactory();
-        BDD p = bdd.one();
+        BDD p = strict ? bdd.zero() : bdd.one();
         for (int n = 0; n < bitvec.length; n++) {
             /*
-             * p = (!l[n] & r[n]) | bdd_apply(l[n], r[n], bddop_biimp) & p;
+             * p = (l[n] != r[n]) ? r[n] : p; For the sign bit, a set bit means smaller, so
+             * p = (l[n] != r[n]) ? l[n] : p;
              */
+            boolean sign = signed && n == bitvec.length - 1;
+            BDD x = bitvec[n].xor(r.bitvec[n]);
+            BDD tmp = x.ite(sign ? bitvec[n] : r.bitvec[n], p);
+            x.free();
+            p.free();
+            p = tmp;
+        }
+        return p;
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is less than or equal to the given vector, as unsigned numbers.
+     *
+     * <p>
+     * Compare to bvec_lte.
+     * </p>
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD lte(BDDBitVector r) {
+        return compare(r, false, false);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is less than the given vector, as unsigned numbers.
+     *
+     * <p>
+     * Compare to bvec_lth.
+     * </p>
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD lth(BDDBitVector r) {
+        return compare(r, true, false);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is greater than or equal to the given vector, as unsigned numbers.
+     *
+     * <p>
+     * Compare to bvec_gte.
+     * </p>
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD gte(BDDBitVector r) {
+        return r.compare(this, false, false);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is greater than the given vector, as unsigned numbers.
+     *
+     * <p>
+     * Compare to bvec_gth.
+     * </p>
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD gth(BDDBitVector r) {
+        return r.compare(this, true, false);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is less than or equal to the given vector, as two's complement
+     * numbers.
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD slte(BDDBitVector r) {
+        return compare(r, false, true);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is less than the given vector, as two's complement numbers.
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD slth(BDDBitVector r) {
+        return compare(r, true, true);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is greater than or equal to the given vector, as two's complement
+     * numbers.
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD sgte(BDDBitVector r) {
+        return r.compare(this, false, true);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is greater than the given vector, as two's complement numbers.
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD sgth(BDDBitVector r) {
+        return r.compare(this, true, true);
+    }
+
+    /**
+     * Returns the BDD that is true if this vector is equal to the given vector.
+     *
+     * <p>
+     * Compare to bvec_equ.
+     * </p>
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD equ(BDDBitVector r) {
+        if (this.bitvec.length != r.bitvec.length) {
+            throw new BDDException();
+        }
 
-            BDD tmp1 = bitvec[n].apply(r.bitvec[n], BDDFactory.less);
-            BDD tmp2 = bitvec[n].apply(r.bitvec[n], BDDFactory.biimp);
-            tmp2.andWith(p);
-            tmp1.orWith(tmp2);
-            p = tmp1;
+        BDD p = getFactory().one();
+        for (int n = 0; n < bitvec.length; n++) {
+            p.andWith(bitvec[n].biimp(r.bitvec[n]));
         }
         return p;
     }
 
+    /**
+     * Returns the BDD that is true if this vector is not equal to the given vector.
+     *
+     * <p>
+     * Compare to bvec_neq.
+     * </p>
+     *
+     * @param r the vector to compare to
+     * @return the comparison
+     */
+    public BDD neq(BDDBitVector r) {
+        BDD p = equ(r);
+        BDD res = p.not();
+        p.free();
+        return res;
+    }
+
+    /**
+     * Returns this vector where the given condition holds, and the given vector elsewhere.
+     *
+     * <p>
+     * Compare to bvec_ite.
+     * </p>
+     *
+     * @param cond the condition
+     * @param elseVec the vector to use where the condition does not hold, of the same size as this vector
+     * @return the resulting vector
+     */
+    public BDDBitVector ite(BDD cond, BDDBitVector elseVec) {
+        if (bitvec.length != elseVec.bitvec.length) {
+            throw new BDDException();
+        }
+
+        BDDBitVector res = getFactory().createBitVector(bitvec.length);
+        for (int n = 0; n < bitvec.length; n++) {
+            res.bitvec[n] = cond.ite(bitvec[n], elseVec.bitvec[n]);
+        }
+        return res;
+    }
+
+    /**
+     * Returns the minimum of this vector and the given vector, as unsigned numbers.
+     *
+     * @param that the other vector
+     * @return the minimum
+     */
+    public BDDBitVector min(BDDBitVector that) {
+        BDD cond = lte(that);
+        BDDBitVector res = ite(cond, that);
+        cond.free();
+        return res;
+    }
+
+    /**
+     * Returns the maximum of this vector and the given vector, as unsigned numbers.
+     *
+     * @param that the other vector
+     * @return the maximum
+     */
+    public BDDBitVector max(BDDBitVector that) {
+        BDD cond = gte(that);
+        BDDBitVector res = ite(cond, that);
+        cond.free();
+        return res;
+    }
+
+    /**
+     * Returns the minimum of this vector and the given vector, as two's complement numbers.
+     *
+     * @param that the other vector
+     * @return the minimum
+     */
+    public BDDBitVector smin(BDDBitVector that) {
+        BDD cond = slte(that);
+        BDDBitVector res = ite(cond, that);
+        cond.free();
+        return res;
+    }
+
+    /**
+     * Returns the maximum of this vector and the given vector, as two's complement numbers.
+     *
+     * @param that the other vector
+     * @return the maximum
+     */
+    public BDDBitVector smax(BDDBitVector that) {
+        BDD cond = sgte(that);
+        BDDBitVector res = ite(cond, that);
+        cond.free();
+        return res;
+    }
+
     static void div_rec(BDDBitVector divisor, BDDBitVector remainder, BDDBitVector result, int step) {
         BDD isSmaller = divisor.lte(remainder);
         BDDBitVector newResult = result.shl(1, isSmaller);
@@ -298,7 +560,7 @@ public abstract class BDDBitVector {
         return res;
     }
 
-    BDDBitVector shr(int pos, BDD c) {
+    public BDDBitVector shr(int pos, BDD c) {
         int maxnum = Math.max(0, bitvec.length - pos);
         if (maxnum < 0) {
             throw new BDDException();
@@ -319,6 +581,57 @@ public abstract class BDDBitVector {
         return res;
     }
 
+    /**
+     * Shifts this vector to the left by the amount given by another vector, filling the vacated bits with the given
+     * BDD. The shift is built as a barrel shifter, with one stage per bit of the shift amount.
+     *
+     * <p>
+     * Compare to bvec_shl.
+     * </p>
+     *
+     * @param r the shift amount, as an unsigned number
+     * @param c the BDD for the vacated bits
+     * @return the shifted vector
+     */
+    public BDDBitVector shl(BDDBitVector r, BDD c) {
+        return shift(r, c, true);
+    }
+
+    /**
+     * Shifts this vector to the right by the amount given by another vector, filling the vacated bits with the given
+     * BDD. The shift is built as a barrel shifter, with one stage per bit of the shift amount.
+     *
+     * <p>
+     * Compare to bvec_shr.
+     * </p>
+     *
+     * @param r the shift amount, as an unsigned number
+     * @param c the BDD for the vacated bits
+     * @return the shifted vector
+     */
+    public BDDBitVector shr(BDDBitVector r, BDD c) {
+        return shift(r, c, false);
+    }
+
+    private BDDBitVector shift(BDDBitVector r, BDD c, boolean left) {
+        BDDBitVector res = copy();
+        for (int i = 0; i < r.bitvec.length; i++) {
+            BDD bit = r.bitvec[i];
+            if (bit.isZero()) {
+                continue;
+            }
+
+            // Shifting by 2^i, which is at least the length of the vector if 'i' is large enough.
+            int pos = (i < 31) ? (int)Math.min(1L << i, bitvec.length) : bitvec.length;
+            BDDBitVector shifted = left ? res.shl(pos, c) : res.shr(pos, c);
+            BDDBitVector tmp = shifted.ite(bit, res);
+            shifted.free();
+            res.free();
+            res = tmp;
+        }
+        return res;
+    }
+
     public BDDBitVector divmod(long c, boolean which) {
         if (c <= 0L) {
             throw new BDDException();
@@ -14,6 +14,9 @@
 package com.github.javabdd;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import com.github.javabdd.BDD.BDDIterator;
 
@@ -282,6 +285,18 @@ public abstract class BDDDomain {
         return v;
     }
 
+    /**
+     * Returns the BDD that defines the given set of values for this finite domain block. This is equivalent to the
+     * disjunction of the {@link #ithVar(long) ithVar} BDDs of the values, but may be built directly.
+     *
+     * @param values the values, in any order, possibly with duplicates
+     * @return BDD
+     * @see BDDFactory#buildTuples(BDDDomain[], long[][])
+     */
+    public BDD buildSet(long[] values) {
+        return getFactory().buildTuples(new BDDDomain[] {this}, new long[][] {values});
+    }
+
     /**
      * Returns the BDD that defines the given range of values, inclusive, for this finite domain block.
      *
@@ -299,25 +314,83 @@ public abstract class BDDDomain {
         }
 
         BDDFactory factory = getFactory();
-        BDD result = factory.zero();
         int[] ivar = this.vars();
-        while (lo.compareTo(hi) <= 0) {
-            BDD v = factory.universe();
-            for (int n = ivar.length - 1;; n--) {
-                if (lo.testBit(n)) {
-                    v.andWith(factory.ithVar(ivar[n]));
-                } else {
-                    v.andWith(factory.nithVar(ivar[n]));
-                }
-                BigInteger mask = BigInteger.ONE.shiftLeft(n).subtract(BigInteger.ONE);
-                if (!lo.testBit(n) && lo.or(mask).compareTo(hi) <= 0) {
-                    lo = lo.or(mask).add(BigInteger.ONE);
-                    break;
-                }
+        BDD result = factory.buildThreshold(ivar, lo, true);
+        result.andWith(factory.buildThreshold(ivar, hi, false));
+        return result;
+    }
+
+    /**
+     * Returns the BDD that defines the union of the given ranges of values, for this finite domain block.
+     *
+     * @param intervals the ranges, as pairs of a low value (inclusive) and a high value (inclusive), in any order
+     * @return BDD
+     * @throws BDDException if the number of elements of {@code intervals} is odd, or if a range is invalid
+     */
+    public BDD varRanges(long[] intervals) {
+        if (intervals.length % 2 != 0) {
+            throw new BDDException("odd number of interval bounds: " + intervals.length);
+        }
+
+        // Sort the ranges by their low values.
+        int num = intervals.length / 2;
+        Integer[] order = new Integer[num];
+        for (int i = 0; i < num; i++) {
+            long lo = intervals[2 * i];
+            long hi = intervals[2 * i + 1];
+            if (lo < 0 || BigInteger.valueOf(hi).compareTo(size()) >= 0 || lo > hi) {
+                throw new BDDException("range <" + lo + ", " + hi + "> is invalid");
             }
-            result.orWith(v);
+            order[i] = i;
         }
-        return result;
+        Arrays.sort(order, (a, b) -> Long.compare(intervals[2 * a], intervals[2 * b]));
+
+        // Merge overlapping and adjacent ranges. The values in the union are then those that are at least an odd
+        // number of the bounds, which are the low values and the successors of the high values of the merged ranges.
+        // A successor that doesn't fit in the variables is omitted, as no value of the variables is at least it.
+        int[] ivar = this.vars();
+        List<BigInteger> bounds = new ArrayList<>(intervals.length);
+        for (int i = 0; i < num;) {
+            long lo = intervals[2 * order[i]];
+            long hi = intervals[2 * order[i] + 1];
+            for (i++; i < num && intervals[2 * order[i]] - 1 <= hi; i++) {
+                hi = Math.max(hi, intervals[2 * order[i] + 1]);
+            }
+            bounds.add(BigInteger.valueOf(lo));
+            BigInteger end = BigInteger.valueOf(hi).add(BigInteger.ONE);
+            if (end.bitLength() <= ivar.length) {
+                bounds.add(end);
+            }
+        }
+        return getFactory().buildThresholds(ivar, bounds.toArray(new BigInteger[bounds.size()]));
+    }
+
+    /**
+     * Returns the BDD that defines all values that are at least the given value, for this finite domain block. This
+     * includes any values that are not smaller than the {@link #size() size} of this domain, but that can be
+     * represented by its variables.
+     *
+     * @param lo low value (inclusive)
+     * @return BDD
+     */
+    public BDD buildGreaterEqual(BigInteger lo) {
+        if (lo.signum() < 0 || lo.bitLength() > varNum()) {
+            throw new BDDException(lo + " is out of range");
+        }
+        return getFactory().buildThreshold(this.vars(), lo, true);
+    }
+
+    /**
+     * Returns the BDD that defines all values that are at most the given value, for this finite domain block.
+     *
+     * @param hi high value (inclusive)
+     * @return BDD
+     */
+    public BDD buildLessEqual(BigInteger hi) {
+        if (hi.signum() < 0 || hi.bitLength() > varNum()) {
+            throw new BDDException(hi + " is out of range");
+        }
+        return getFactory().buildThreshold(this.vars(), hi, false);
     }
 
     /**
@@ -13,26 +13,74 @@
 
 package com.github.javabdd;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.security.AccessControlException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Interface for the creation and manipulation of BDDs.
  *
+ * <p>
+ * A factory is not thread-safe. Nearly every operation, including ones that only seem to read a BDD, modifies shared
+ * state such as the node table, the reference counts and the operator caches. A factory and its BDDs should therefore
+ * be used by one thread at a time. Threads that share a factory should coordinate through its {@link #getLock() lock}:
+ * </p>
+ * <ul>
+ * <li>The write lock must be held for all operations that create, free or modify BDDs, including
+ * {@link BDD#iterator(BDDVarSet)}, and for changes to the factory itself, such as adding variables or reordering.</li>
+ * <li>The read lock suffices for {@link BDD#nodeCount()}, {@link BDD#satCount()}, {@link BDD#logSatCount()},
+ * {@link BDD#pathCount()}, for iterating over satisfying assignments with {@link BDD#forEachCube},
+ * {@link BDD#allsat()} and {@link BDD#tupleIterator}, and for inspecting BDDs without creating new ones, e.g.
+ * {@link BDD#isZero()}, {@link BDD#isOne()}, {@link BDD#var()}, {@link BDD#equals(Object)} and
+ * {@link BDD#hashCode()}. Multiple threads holding the read lock may perform these concurrently. The read lock must
+ * then be held for the whole iteration, and the visitors must not create BDDs either.</li>
+ * <li>Only freeing nodes through {@link BDDFactoryIntImpl#deferredFree(int)} is allowed from any thread, without
+ * holding a lock.</li>
+ * </ul>
+ * <p>
+ * To perform mutating operations in parallel, use independent factories, e.g. by
+ * {@link JFactory#cloneFactory() cloning} a factory, and {@link #transfer(BDD) transfer} the results between them.
+ * </p>
+ *
  * @see com.github.javabdd.BDD
  */
 public abstract class BDDFactory {
@@ -290,6 +338,107 @@ public abstract class BDDFactory {
         return result;
     }
 
+    /**
+     * Builds the BDD for a table of tuples of domain values. The table is given per column, where {@code columns[d][i]}
+     * is the value of domain {@code domains[d]} in the {@code i}-th tuple. The tuples may be given in any order, and
+     * may contain duplicates.
+     *
+     * <p>
+     * This is equivalent to taking the disjunction over all tuples of the conjunction of the
+     * {@link BDDDomain#ithVar(long) ithVar} BDDs for their values, but implementations may build the result directly,
+     * without intermediate BDD operations.
+     * </p>
+     *
+     * @param domains the domains, one per column
+     * @param columns the values of the tuples, per column
+     * @return the BDD that is true for exactly the given tuples
+     * @throws BDDException if the number of columns differs from the number of domains, if the columns have different
+     *     lengths, or if a value is out of range for its domain
+     */
+    public BDD buildTuples(BDDDomain[] domains, long[][] columns) {
+        checkTuples(domains, columns);
+        BDD result = zero();
+        int num = columns.length == 0 ? 0 : columns[0].length;
+        for (int i = 0; i < num; i++) {
+            BDD tuple = universe();
+            for (int d = 0; d < domains.length; d++) {
+                tuple.andWith(domains[d].ithVar(columns[d][i]));
+            }
+            result.orWith(tuple);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the comparison of a vector of variables to a constant, i.e. the BDD that is true for all assignments to
+     * the variables for which the unsigned value they represent is at least or at most the constant.
+     *
+     * @param vars the variables, from least to most significant bit
+     * @param c the constant, which must be non-negative and fit in {@code vars.length} bits
+     * @param greater whether to compare with {@code >=} ({@code true}) or {@code <=} ({@code false})
+     * @return the comparison
+     */
+    protected BDD buildThreshold(int[] vars, BigInteger c, boolean greater) {
+        // Compare the bits from least to most significant, each time deciding on the current bit, or deferring to
+        // the comparison of the less significant bits if it is equal.
+        BDD result = universe();
+        for (int m = 0; m < vars.length; m++) {
+            BDD x = greater ? ithVar(vars[m]) : nithVar(vars[m]);
+            if (c.testBit(m) == greater) {
+                result = x.andWith(result);
+            } else {
+                result = x.orWith(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the BDD that is true for all assignments to a vector of variables for which the unsigned value they
+     * represent is at least an odd number of the given constants. For constants {@code b0 < b1 < ...}, these are the
+     * values in {@code [b0, b1 - 1]}, {@code [b2, b3 - 1]}, and so on, with the last range being unbounded if
+     * the number of constants is odd.
+     *
+     * @param vars the variables, from least to most significant bit
+     * @param bounds the constants, in strictly ascending order, which must be non-negative and fit in
+     *     {@code vars.length} bits
+     * @return the BDD
+     */
+    protected BDD buildThresholds(int[] vars, BigInteger[] bounds) {
+        BDD result = zero();
+        for (BigInteger b: bounds) {
+            result.xorWith(buildThreshold(vars, b, true));
+        }
+        return result;
+    }
+
+    /**
+     * Checks the arguments of {@link #buildTuples}.
+     *
+     * @param domains the domains, one per column
+     * @param columns the values of the tuples, per column
+     * @throws BDDException if the arguments are invalid
+     */
+    protected void checkTuples(BDDDomain[] domains, long[][] columns) {
+        if (domains.length != columns.length) {
+            throw new BDDException(
+                    "Number of domains (" + domains.length + ") != number of columns (" + columns.length + ")");
+        }
+        for (int d = 0; d < domains.length; d++) {
+            if (columns[d].length != columns[0].length) {
+                throw new BDDException("Column " + d + " has " + columns[d].length + " values, but column 0 has "
+                        + columns[0].length + " values");
+            }
+            BigInteger size = domains[d].size();
+            long max = size.bitLength() > 63 ? Long.MAX_VALUE : size.longValue() - 1;
+            for (long value: columns[d]) {
+                if (value < 0 || value > max) {
+                    throw new BDDException(value + " is out of range");
+                }
+            }
+        }
+    }
+
     /**
      * Builds a BDD variable set from an integer array. The integer array {@code varset} holds the variable numbers. The
      * BDD variable set is represented by a conjunction of all the variables in their positive form.
@@ -310,6 +459,168 @@ public abstract class BDDFactory {
         return res;
     }
 
+    /**
+     * Computes the conjunction of a collection of BDDs. Rather than conjoining the BDDs from left to right, the two
+     * smallest operands (by node count) are repeatedly conjoined, which tends to keep the intermediate results small.
+     * The given BDDs are not modified or freed.
+     *
+     * @param bdds the BDDs to conjoin
+     * @return the conjunction of the BDDs, or {@link #universe()} if the collection is empty
+     */
+    public BDD andAll(Collection<BDD> bdds) {
+        return applyAll(bdds, and, null);
+    }
+
+    /**
+     * Computes the disjunction of a collection of BDDs. Rather than disjoining the BDDs from left to right, the two
+     * smallest operands (by node count) are repeatedly disjoined, which tends to keep the intermediate results small.
+     * The given BDDs are not modified or freed.
+     *
+     * @param bdds the BDDs to disjoin
+     * @return the disjunction of the BDDs, or {@link #zero()} if the collection is empty
+     */
+    public BDD orAll(Collection<BDD> bdds) {
+        return applyAll(bdds, or, null);
+    }
+
+    /**
+     * Computes the conjunction of a collection of BDDs, and existentially quantifies the given variables from it. The
+     * BDDs are conjoined smallest first, like {@link #andAll}. Each variable is quantified as soon as it no longer
+     * occurs in any of the remaining operands, using {@link BDD#relprod relprod} to fuse the conjunction and
+     * quantification. The given BDDs are not modified or freed.
+     *
+     * @param bdds the BDDs to conjoin
+     * @param var the variables to existentially quantify
+     * @return the result of the combined conjunction and existential quantification
+     */
+    public BDD andAllExist(Collection<BDD> bdds, BDDVarSet var) {
+        return applyAll(bdds, and, var);
+    }
+
+    /**
+     * Combines a collection of BDDs using a binary operator, smallest operands first, optionally quantifying variables
+     * as soon as they no longer occur in any of the remaining operands.
+     *
+     * @param bdds the BDDs to combine
+     * @param opr the operator, either {@link #and} or {@link #or}
+     * @param var the variables to existentially quantify, or {@code null} to not quantify
+     * @return the result
+     */
+    private BDD applyAll(Collection<BDD> bdds, BDDOp opr, BDDVarSet var) {
+        BDD result;
+        if (opr == and) {
+            result = universe();
+        } else {
+            result = zero();
+        }
+        if (bdds.isEmpty()) {
+            return result;
+        }
+
+        // Count, per variable to quantify, the number of remaining operands in which it occurs.
+        boolean[] quantify = null;
+        int[] occurrences = null;
+        if (var != null) {
+            quantify = new boolean[varNum()];
+            occurrences = new int[varNum()];
+            for (int v: var.toArray()) {
+                quantify[v] = true;
+            }
+        }
+
+        PriorityQueue<SizedBDD> queue = new PriorityQueue<>(bdds.size());
+        for (BDD b: bdds) {
+            if (b.equals(result)) {
+                continue; // Neutral element.
+            }
+            if (var != null) {
+                countOccurrences(b, quantify, occurrences, 1);
+            }
+            queue.add(new SizedBDD(b.id()));
+        }
+
+        while (!queue.isEmpty()) {
+            SizedBDD a = queue.poll();
+            SizedBDD b = queue.poll();
+
+            BDD r;
+            if (var == null) {
+                r = (b == null) ? a.bdd.id() : a.bdd.apply(b.bdd, opr);
+            } else {
+                // Quantify the variables that occur in neither of the remaining operands.
+                countOccurrences(a.bdd, quantify, occurrences, -1);
+                if (b != null) {
+                    countOccurrences(b.bdd, quantify, occurrences, -1);
+                }
+                BDDVarSet q = emptySet();
+                for (int v = 0; v < quantify.length; v++) {
+                    if (quantify[v] && occurrences[v] == 0) {
+                        q.unionWith(v);
+                    }
+                }
+                r = (b == null) ? a.bdd.exist(q) : a.bdd.relprod(b.bdd, q);
+                q.free();
+            }
+            a.bdd.free();
+            if (b != null) {
+                b.bdd.free();
+            }
+
+            if (queue.isEmpty()) {
+                result.free();
+                return r;
+            }
+            if (opr == and ? r.isZero() : r.isUniverse()) {
+                // Dominating element, the remaining operands do not matter.
+                for (SizedBDD s: queue) {
+                    s.bdd.free();
+                }
+                result.free();
+                return r;
+            }
+            if (var != null) {
+                countOccurrences(r, quantify, occurrences, 1);
+            }
+            queue.add(new SizedBDD(r));
+        }
+        return result;
+    }
+
+    /**
+     * Updates per-variable occurrence counts for the support of a BDD.
+     *
+     * @param b the BDD
+     * @param quantify per variable, whether to count its occurrences
+     * @param occurrences per variable, the number of occurrences, which is updated in-place
+     * @param delta the amount by which to update the counts
+     */
+    private static void countOccurrences(BDD b, boolean[] quantify, int[] occurrences, int delta) {
+        BDDVarSet support = b.support();
+        for (int v: support.toArray()) {
+            if (quantify[v]) {
+                occurrences[v] += delta;
+            }
+        }
+        support.free();
+    }
+
+    /** A BDD together with its node count, ordered by node count. */
+    private static class SizedBDD implements Comparable<SizedBDD> {
+        final BDD bdd;
+
+        final int size;
+
+        SizedBDD(BDD bdd) {
+            this.bdd = bdd;
+            this.size = bdd.nodeCount();
+        }
+
+        @Override
+        public int compareTo(SizedBDD other) {
+            return Integer.compare(size, other.size);
+        }
+    }
+
     /**** STARTUP / SHUTDOWN ****/
 
     /**
@@ -437,6 +748,37 @@ public abstract class BDDFactory {
      */
     public abstract int setNodeTableSize(int n);
 
+    /**
+     * Compacts the node table. Live nodes are relocated to the bottom of the table, after which the table is shrunk,
+     * along with the operator caches if a {@link #setCacheRatio(double) cache ratio} is set. This reduces memory usage
+     * and the time taken by garbage collections after a phase of peak node usage. Enough free nodes are kept for the
+     * table to not grow again immediately.
+     *
+     * <p>
+     * The nodes of BDDs and variable sets that are {@link BDDFactoryIntImpl#setAutoFree(boolean) freed automatically}
+     * are renumbered along. Nodes that are referenced from elsewhere, e.g. by other BDD objects, keep their position,
+     * so the table can not shrink below the highest such node.
+     * </p>
+     *
+     * @return old size of table
+     */
+    public abstract int compact();
+
+    /**
+     * Set the percentage of used nodes below which the node table is compacted automatically, after a garbage
+     * collection. The range of x is 0..1. The default is 0, which disables automatic compaction.
+     *
+     * <p>
+     * Automatic compaction interrupts and restarts the operation that needed the garbage collection, just like
+     * automatic reordering. All nodes that are referenced from outside the node table then keep their position.
+     * </p>
+     *
+     * @param x number from 0 to 1
+     * @return old value
+     * @see #compact()
+     */
+    public abstract double setCompactThreshold(double x);
+
     /**
      * Sets cache size.
      *
@@ -445,6 +787,33 @@ public abstract class BDDFactory {
      */
     public abstract int setCacheSize(int n);
 
+    /**
+     * Sets the memory budget of this factory: the maximum number of bytes that its data structures, as accounted by
+     * {@link #memoryUsage()}, may use together. When growing the node table would exceed the budget, the operator
+     * caches are shrunk first. If that does not suffice, the node table grows less, or not at all, possibly leading to
+     * an exception once no more free nodes are available. Resizing the caches, explicitly or to maintain the
+     * {@link #setCacheRatio(double) cache ratio}, also respects the budget.
+     *
+     * @param bytes the memory budget in bytes, or {@code 0} for no budget
+     * @return old memory budget
+     */
+    public abstract long setMemoryBudget(long bytes);
+
+    /**
+     * Returns the memory budget of this factory.
+     *
+     * @return the memory budget in bytes, or {@code 0} if there is no budget
+     * @see #setMemoryBudget(long)
+     */
+    public abstract long getMemoryBudget();
+
+    /**
+     * Returns the memory used by the data structures of this factory, broken down by data structure.
+     *
+     * @return the memory usage
+     */
+    public abstract MemoryUsage memoryUsage();
+
     /**** VARIABLE NUMBERS ****/
 
     /**
@@ -849,6 +1218,612 @@ public abstract class BDDFactory {
         return v;
     }
 
+    /** The magic number at the start of the binary BDD format, the characters 'JBDD'. */
+    public static final int BINARY_MAGIC = 0x4A424444;
+
+    /** The version of the binary BDD format. Version 1 lacks the finite domains. */
+    public static final int BINARY_VERSION = 2;
+
+    /**
+     * Saves a BDD to a file, in the binary format.
+     *
+     * @param filename filename
+     * @param r BDD
+     * @param compress whether to compress the nodes
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    public void saveBinary(String filename, BDD r, boolean compress) throws IOException {
+        try (OutputStream out = new FileOutputStream(filename)) {
+            saveBinary(out, r, compress);
+        }
+    }
+
+    /**
+     * Saves a BDD to an output stream, in a compact binary format. Unlike {@link #save(BufferedWriter, BDD)}, the nodes
+     * are written in topological order, children first, with variable-length integers, and with child references
+     * relative to the node that refers to them. The nodes may additionally be compressed.
+     *
+     * <p>
+     * The format starts with the {@link #BINARY_MAGIC magic number} as an int, the {@link #BINARY_VERSION version} as
+     * a byte, and a byte that is {@code 1} if the rest is compressed using a {@link Deflater}, and {@code 0} otherwise.
+     * The rest consists of variable-length integers: the number of variables and the level of each variable, the
+     * number of finite domains and for each domain its name, size and variables, the number of nodes and for each node
+     * its variable and its low and high child references, and finally the number of roots and a reference to each
+     * root. A reference is {@code 0} or {@code 1} for the terminals, and otherwise two more than the number of nodes
+     * between the referring node and the referred node.
+     * </p>
+     *
+     * @param out output stream, which is not closed
+     * @param r BDD
+     * @param compress whether to compress the nodes
+     * @throws IOException In case of an I/O error.
+     */
+    public void saveBinary(OutputStream out, BDD r, boolean compress) throws IOException {
+        saveBinary(out, new BDD[] {r}, compress);
+    }
+
+    /**
+     * Saves a collection of BDDs to a file, in the binary format.
+     *
+     * @param filename filename
+     * @param roots the BDDs
+     * @param compress whether to compress the nodes
+     * @throws IOException In case of an I/O error.
+     * @see #saveAll(OutputStream, Collection, boolean)
+     */
+    public void saveAll(String filename, Collection<BDD> roots, boolean compress) throws IOException {
+        try (OutputStream out = new FileOutputStream(filename)) {
+            saveAll(out, roots, compress);
+        }
+    }
+
+    /**
+     * Saves a collection of BDDs to an output stream, in the binary format. Nodes that are shared by the BDDs are saved
+     * only once. Together with the variable order and the finite domains, which are saved as well, this allows to
+     * checkpoint all BDDs of an analysis, and to restore them using {@link #loadAll(InputStream)}.
+     *
+     * @param out output stream, which is not closed
+     * @param roots the BDDs
+     * @param compress whether to compress the nodes
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    public void saveAll(OutputStream out, Collection<BDD> roots, boolean compress) throws IOException {
+        saveBinary(out, roots.toArray(new BDD[roots.size()]), compress);
+    }
+
+    /**
+     * Saves BDDs to an output stream, in the binary format.
+     *
+     * @param out output stream, which is not closed
+     * @param roots the BDDs
+     * @param compress whether to compress the nodes
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    protected void saveBinary(OutputStream out, BDD[] roots, boolean compress) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(BINARY_MAGIC);
+        header.writeByte(BINARY_VERSION);
+        header.writeByte(compress ? 1 : 0);
+        header.flush();
+
+        DeflaterOutputStream deflater = null;
+        Deflater def = null;
+        OutputStream body = out;
+        if (compress) {
+            def = new Deflater(Deflater.BEST_SPEED);
+            deflater = new DeflaterOutputStream(out, def, 1 << 16);
+            body = deflater;
+        }
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(body, 1 << 16));
+        saveBinaryVars(dout);
+        saveBinaryNodes(dout, roots);
+        dout.flush();
+        if (compress) {
+            deflater.finish();
+            def.end();
+        }
+        out.flush();
+    }
+
+    /**
+     * Loads a BDD from a file, in the binary format.
+     *
+     * @param filename filename
+     * @return BDD
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    public BDD loadBinary(String filename) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16)) {
+            return loadBinary(in);
+        }
+    }
+
+    /**
+     * Loads a BDD from an input stream, in the binary format. The nodes are created bottom-up, in a single pass. If
+     * the variable order of this factory differs from the one of the saved BDD, nodes that do not fit the current
+     * order are created using {@link BDD#ite if-then-else} instead.
+     *
+     * <p>
+     * If this factory has no variables yet, the saved variable order is restored as well. Saved finite domains that
+     * this factory does not have yet are created, using the saved names and variables. Saved finite domains that this
+     * factory already has must have the same sizes and variables.
+     * </p>
+     *
+     * <p>
+     * The stream is not buffered, so reading stops right after the BDD, unless its nodes are compressed, in which case
+     * the stream may be read beyond its end.
+     * </p>
+     *
+     * @param in input stream, which is not closed
+     * @return BDD
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    public BDD loadBinary(InputStream in) throws IOException {
+        BDD[] roots = loadBinaryRoots(in);
+        if (roots.length != 1) {
+            for (BDD root: roots) {
+                root.free();
+            }
+            throw new BDDException("Expected a single BDD, found " + roots.length);
+        }
+        return roots[0];
+    }
+
+    /**
+     * Loads all BDDs from a file, in the binary format.
+     *
+     * @param filename filename
+     * @return the BDDs, in the order in which they were saved
+     * @throws IOException In case of an I/O error.
+     * @see #loadAll(InputStream)
+     */
+    public List<BDD> loadAll(String filename) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16)) {
+            return loadAll(in);
+        }
+    }
+
+    /**
+     * Loads all BDDs from an input stream, in the binary format, as saved by {@link #saveAll(OutputStream, Collection,
+     * boolean)} or {@link #saveBinary(OutputStream, BDD, boolean)}. The variable order and finite domains are restored
+     * as described for {@link #loadBinary(InputStream)}.
+     *
+     * @param in input stream, which is not closed
+     * @return the BDDs, in the order in which they were saved
+     * @throws IOException In case of an I/O error.
+     */
+    public List<BDD> loadAll(InputStream in) throws IOException {
+        return new ArrayList<>(Arrays.asList(loadBinaryRoots(in)));
+    }
+
+    /**
+     * Loads BDDs from an input stream, in the binary format.
+     *
+     * @param in input stream, which is not closed
+     * @return the BDDs
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    protected BDD[] loadBinaryRoots(InputStream in) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != BINARY_MAGIC) {
+            throw new BDDException("Incorrect file format");
+        }
+        int version = header.readUnsignedByte();
+        if (version < 1 || version > BINARY_VERSION) {
+            throw new BDDException("Unsupported file format version " + version);
+        }
+        boolean compress = header.readUnsignedByte() != 0;
+
+        Inflater inf = null;
+        InputStream body = in;
+        if (compress) {
+            inf = new Inflater();
+            body = new InflaterInputStream(in, inf, 1 << 16);
+        }
+        try {
+            DataInputStream din = new DataInputStream(body);
+            loadBinaryVars(din, version);
+            return loadBinaryNodes(din);
+        } finally {
+            if (compress) {
+                inf.end();
+            }
+        }
+    }
+
+    /**
+     * Writes the variable levels and finite domains of the binary format.
+     *
+     * @param out output
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    protected void saveBinaryVars(DataOutput out) throws IOException {
+        int varnum = varNum();
+        writeVarInt(out, varnum);
+        for (int x = 0; x < varnum; x++) {
+            writeVarInt(out, var2Level(x));
+        }
+        saveBinaryDomains(out);
+    }
+
+    /**
+     * Writes the finite domains of the binary format.
+     *
+     * @param out output
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    protected void saveBinaryDomains(DataOutput out) throws IOException {
+        writeVarInt(out, fdvarnum);
+        for (int n = 0; n < fdvarnum; n++) {
+            BDDDomain d = domain[n];
+            out.writeUTF(d.getName());
+            byte[] size = d.size().toByteArray();
+            writeVarInt(out, size.length);
+            out.write(size);
+            writeVarInt(out, d.ivar.length);
+            for (int v: d.ivar) {
+                writeVarInt(out, v);
+            }
+        }
+    }
+
+    /**
+     * Reads the variable levels and finite domains of the binary format, and restores them.
+     *
+     * @param in input
+     * @param version the version of the binary format
+     * @throws IOException In case of an I/O error.
+     * @see #loadBinary(InputStream)
+     */
+    protected void loadBinaryVars(DataInput in, int version) throws IOException {
+        int vnum = readVarInt(in);
+        int[] order = new int[vnum];
+        Arrays.fill(order, -1);
+        for (int x = 0; x < vnum; x++) {
+            int level = readVarInt(in);
+            if (level >= vnum || order[level] != -1) {
+                throw new BDDException("Incorrect file format");
+            }
+            order[level] = x;
+        }
+        if (varNum() == 0 && vnum > 0) {
+            setVarNum(vnum);
+            setVarOrder(order);
+        } else if (vnum > varNum()) {
+            setVarNum(vnum);
+            if (isZDD()) {
+                // Need to rebuild varsets for existing domains.
+                for (int n = 0; n < fdvarnum; n++) {
+                    domain[n].var.free();
+                    domain[n].var = makeSet(domain[n].ivar);
+                }
+            }
+        }
+
+        if (version >= 2) {
+            loadBinaryDomains(in);
+        }
+    }
+
+    /**
+     * Reads the finite domains of the binary format, and restores them. The variables of the domains must already
+     * exist.
+     *
+     * @param in input
+     * @throws IOException In case of an I/O error.
+     * @see #loadBinary(InputStream)
+     */
+    protected void loadBinaryDomains(DataInput in) throws IOException {
+        int dnum = readVarInt(in);
+        for (int n = 0; n < dnum; n++) {
+            String name = in.readUTF();
+            byte[] size = new byte[readVarInt(in)];
+            in.readFully(size);
+            int[] ivar = new int[readVarInt(in)];
+            for (int i = 0; i < ivar.length; i++) {
+                ivar[i] = readVarInt(in);
+                if (ivar[i] >= varNum()) {
+                    throw new BDDException("Incorrect file format");
+                }
+            }
+            BigInteger realsize = new BigInteger(size);
+            if (realsize.signum() <= 0) {
+                throw new BDDException("Incorrect file format");
+            }
+
+            if (n < fdvarnum) {
+                if (!domain[n].size().equals(realsize) || !Arrays.equals(domain[n].ivar, ivar)) {
+                    throw new BDDException("Finite domain " + n + " does not match the saved finite domain " + name);
+                }
+                continue;
+            }
+
+            if (domain == null) {
+                domain = new BDDDomain[dnum];
+            } else if (fdvarnum == domain.length) {
+                BDDDomain[] d2 = new BDDDomain[domain.length + Math.max(dnum - n, domain.length)];
+                System.arraycopy(domain, 0, d2, 0, domain.length);
+                domain = d2;
+            }
+            BDDDomain d = createDomain(fdvarnum, realsize);
+            d.setName(name);
+            d.ivar = ivar;
+            d.var = makeSet(ivar);
+            domain[fdvarnum++] = d;
+            for (int v: ivar) {
+                firstbddvar = Math.max(firstbddvar, v + 1);
+            }
+        }
+    }
+
+    /**
+     * Writes the nodes and roots of the binary format.
+     *
+     * @param out output
+     * @param roots the BDDs
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    protected void saveBinaryNodes(DataOutput out, BDD[] roots) throws IOException {
+        // Number the nodes in post-order, which puts children before their parents.
+        Map<BDD, Integer> index = new HashMap<>();
+        List<BDD> nodes = new ArrayList<>();
+        LinkedList<BDD> stack = new LinkedList<>();
+        for (BDD root: roots) {
+            stack.push(root.id());
+            while (!stack.isEmpty()) {
+                BDD b = stack.peek();
+                if (b.isZero() || b.isOne() || index.containsKey(b)) {
+                    stack.pop().free();
+                    continue;
+                }
+                BDD low = b.low();
+                BDD high = b.high();
+                boolean lowDone = low.isZero() || low.isOne() || index.containsKey(low);
+                boolean highDone = high.isZero() || high.isOne() || index.containsKey(high);
+                if (lowDone && highDone) {
+                    stack.pop();
+                    index.put(b, nodes.size());
+                    nodes.add(b);
+                    low.free();
+                    high.free();
+                } else {
+                    if (highDone) {
+                        high.free();
+                    } else {
+                        stack.push(high);
+                    }
+                    if (lowDone) {
+                        low.free();
+                    } else {
+                        stack.push(low);
+                    }
+                }
+            }
+        }
+
+        writeVarInt(out, nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            BDD b = nodes.get(i);
+            BDD low = b.low();
+            BDD high = b.high();
+            writeVarInt(out, b.var());
+            writeVarInt(out, binaryRef(index, low, i));
+            writeVarInt(out, binaryRef(index, high, i));
+            low.free();
+            high.free();
+        }
+
+        writeVarInt(out, roots.length);
+        for (BDD root: roots) {
+            writeVarInt(out, binaryRef(index, root, nodes.size()));
+        }
+
+        for (BDD b: nodes) {
+            b.free();
+        }
+    }
+
+    private static int binaryRef(Map<BDD, Integer> index, BDD b, int from) {
+        if (b.isZero()) {
+            return 0;
+        }
+        if (b.isOne()) {
+            return 1;
+        }
+        return 2 + (from - 1 - index.get(b));
+    }
+
+    /**
+     * Reads the nodes and roots of the binary format, and creates the BDDs.
+     *
+     * @param in input
+     * @return the BDDs
+     * @throws IOException In case of an I/O error.
+     * @see #saveBinary(OutputStream, BDD, boolean)
+     */
+    protected BDD[] loadBinaryNodes(DataInput in) throws IOException {
+        int nodenum = readVarInt(in);
+        BDD[] nodes = new BDD[nodenum];
+        try {
+            for (int i = 0; i < nodenum; i++) {
+                int var = readVarInt(in);
+                if (var < 0 || var >= varNum()) {
+                    throw new BDDException("Incorrect file format");
+                }
+                BDD low = binaryNode(nodes, readVarInt(in), i);
+                BDD high = null;
+                BDD b = null;
+                try {
+                    high = binaryNode(nodes, readVarInt(in), i);
+                    b = ithVar(var);
+                    nodes[i] = b.ite(high, low);
+                } finally {
+                    low.free();
+                    if (high != null) {
+                        high.free();
+                    }
+                    if (b != null) {
+                        b.free();
+                    }
+                }
+            }
+
+            int rootnum = readVarInt(in);
+            BDD[] roots = new BDD[rootnum];
+            boolean complete = false;
+            try {
+                for (int i = 0; i < rootnum; i++) {
+                    roots[i] = binaryNode(nodes, readVarInt(in), nodenum);
+                }
+                complete = true;
+                return roots;
+            } finally {
+                // Free the roots read so far, if not all of them could be read.
+                if (!complete) {
+                    for (BDD root: roots) {
+                        if (root != null) {
+                            root.free();
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (BDD b: nodes) {
+                if (b != null) {
+                    b.free();
+                }
+            }
+        }
+    }
+
+    private BDD binaryNode(BDD[] nodes, int ref, int from) {
+        if (ref == 0) {
+            return zero();
+        }
+        if (ref == 1) {
+            return universe();
+        }
+        int i = from - 1 - (ref - 2);
+        if (ref < 0 || i < 0) {
+            throw new BDDException("Incorrect file format");
+        }
+        return nodes[i].id();
+    }
+
+    /**
+     * Copies a BDD of another factory into this factory. The variable order of this factory may differ from the one of
+     * the other factory. The nodes are copied bottom-up, each of them once, directly if they fit the variable order of
+     * this factory, and using {@link BDD#ite if-then-else} otherwise. Variables that this factory lacks are added.
+     *
+     * @param from the BDD, which is not modified or freed
+     * @return the copy of the BDD in this factory
+     */
+    public BDD transfer(BDD from) {
+        return transfer(Collections.singletonList(from)).get(0);
+    }
+
+    /**
+     * Copies BDDs of another factory into this factory, as described for {@link #transfer(BDD)}. Nodes that are shared
+     * by the BDDs are copied only once.
+     *
+     * @param from the BDDs, which must all belong to the same factory, and which are not modified or freed
+     * @return the copies of the BDDs in this factory, in the order of the given BDDs
+     */
+    public List<BDD> transfer(Collection<BDD> from) {
+        BDD[] roots = from.toArray(new BDD[from.size()]);
+        if (roots.length == 0) {
+            return new ArrayList<>();
+        }
+        BDDFactory src = roots[0].getFactory();
+        for (BDD b: roots) {
+            if (b.getFactory() != src) {
+                throw new BDDException("Expected BDDs of a single factory");
+            }
+        }
+
+        BDD[] res;
+        if (src == this) {
+            res = new BDD[roots.length];
+            for (int i = 0; i < roots.length; i++) {
+                res[i] = roots[i].id();
+            }
+        } else {
+            res = transferNodes(src, roots);
+        }
+        return new ArrayList<>(Arrays.asList(res));
+    }
+
+    /**
+     * Copies BDDs of another factory into this factory. By default, this saves them to memory in the binary format,
+     * and loads them from there.
+     *
+     * @param src the other factory
+     * @param roots the BDDs of the other factory
+     * @return the copies of the BDDs in this factory
+     * @see #transfer(Collection)
+     */
+    protected BDD[] transferNodes(BDDFactory src, BDD[] roots) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            src.saveBinaryNodes(out, roots);
+            out.flush();
+            if (src.varNum() > varNum()) {
+                setVarNum(src.varNum());
+            }
+            return loadBinaryNodes(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        } catch (IOException e) {
+            // Memory streams don't fail.
+            throw new BDDException(e.toString());
+        }
+    }
+
+    /**
+     * Writes a non-negative integer in a variable number of bytes, seven bits per byte, least significant bits first.
+     *
+     * @param out output
+     * @param v the integer
+     * @throws IOException In case of an I/O error.
+     */
+    protected static void writeVarInt(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Reads a non-negative integer written by {@link #writeVarInt}.
+     *
+     * @param in input
+     * @return the integer
+     * @throws IOException In case of an I/O error.
+     */
+    protected static int readVarInt(DataInput in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (v < 0) {
+                    break;
+                }
+                return v;
+            }
+        }
+        throw new BDDException("Incorrect file format");
+    }
+
     // TODO: bdd_blockfile_hook
     // TODO: bdd_versionnum, bdd_versionstr
 
@@ -1053,6 +2028,35 @@ public abstract class BDDFactory {
         return result;
     }
 
+    /**
+     * Opens a new scope for the lifetimes of BDDs. All BDDs and variable sets created while the scope is open are
+     * freed when it is closed, unless they are kept.
+     *
+     * @return a new scope, which must be closed
+     */
+    public abstract BDDScope scope();
+
+    /** The lock that coordinates access to this factory by multiple threads. */
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Returns the lock that coordinates access to this factory by multiple threads. The factory does not acquire the
+     * lock itself. See the {@link BDDFactory class documentation} for which operations require which lock.
+     *
+     * @return the read-write lock of this factory
+     */
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Make a new batch of BDD operations. Performing many small operations as a batch avoids most of the overhead of
+     * wrapping each intermediate result in a {@link BDD} object, and of preparing the factory for each operation.
+     *
+     * @return a new, empty batch
+     */
+    public abstract BDDBatch batch();
+
     /**
      * Make a new BDDPairing object.
      *
@@ -1228,6 +2232,71 @@ public abstract class BDDFactory {
      */
     public abstract int nodeCount(Collection<BDD> r);
 
+    /**
+     * Counts the number of times each variable occurs in a collection of BDDs. Like {@link #nodeCount(Collection)}, a
+     * node that is used in more than one BDD only counts once. The result is indexed by variable number.
+     *
+     * @param r collection of BDDs
+     * @return the variable profile of the shared nodes
+     * @see BDD#varProfile()
+     */
+    public int[] varProfile(Collection<BDD> r) {
+        int[] profile = new int[varNum()];
+        Set<BDD> visited = new HashSet<>();
+        LinkedList<BDD> stack = new LinkedList<>();
+        for (BDD b: r) {
+            stack.push(b.id());
+        }
+        while (!stack.isEmpty()) {
+            BDD b = stack.pop();
+            if (b.isZero() || b.isOne() || !visited.add(b)) {
+                b.free();
+                continue;
+            }
+            profile[b.var()]++;
+            stack.push(b.low());
+            stack.push(b.high());
+        }
+        for (BDD b: visited) {
+            b.free();
+        }
+        return profile;
+    }
+
+    /**
+     * Calculates the number of satisfying variable assignments of each BDD in a collection. Implementations may visit
+     * nodes that are shared between the BDDs only once. This default implementation counts each BDD separately.
+     *
+     * @param r collection of BDDs
+     * @return per BDD, in the iteration order of the collection, its number of satisfying variable assignments
+     * @see BDD#satCount()
+     */
+    public BigInteger[] satCount(Collection<BDD> r) {
+        BigInteger[] result = new BigInteger[r.size()];
+        int i = 0;
+        for (BDD b: r) {
+            result[i++] = b.satCount();
+        }
+        return result;
+    }
+
+    /**
+     * Counts the number of paths to the one terminal of each BDD in a collection. Implementations may visit nodes that
+     * are shared between the BDDs only once. This default implementation counts each BDD separately.
+     *
+     * @param r collection of BDDs
+     * @return per BDD, in the iteration order of the collection, its number of paths to the one terminal
+     * @see BDD#pathCount()
+     */
+    public BigInteger[] pathCount(Collection<BDD> r) {
+        BigInteger[] result = new BigInteger[r.size()];
+        int i = 0;
+        for (BDD b: r) {
+            result[i++] = b.pathCount();
+        }
+        return result;
+    }
+
     /**
      * Get the number of allocated nodes. This includes both dead and active nodes.
      *
@@ -1608,6 +2677,71 @@ public abstract class BDDFactory {
         return maxmemorystats;
     }
 
+    /**
+     * The memory used by the data structures of a BDD factory, in bytes, per data structure. Unlike
+     * {@link MaxMemoryStats}, this accounts for the factory only, rather than for the whole JVM. Sizes are estimated
+     * from the lengths of the arrays and the numbers of objects, assuming a JVM with compressed object pointers.
+     */
+    public static class MemoryUsage {
+        protected final Map<String, Long> bytes = new LinkedHashMap<>();
+
+        protected MemoryUsage() {
+        }
+
+        protected void add(String structure, long n) {
+            bytes.merge(structure, n, Long::sum);
+        }
+
+        /**
+         * Returns the number of bytes used per data structure, in a fixed order.
+         *
+         * @return the number of bytes per data structure
+         */
+        public Map<String, Long> getBytes() {
+            return Collections.unmodifiableMap(bytes);
+        }
+
+        /**
+         * Returns the number of bytes used by a data structure.
+         *
+         * @param structure the name of the data structure
+         * @return the number of bytes, or {@code 0} if the data structure is unknown or not allocated
+         */
+        public long getBytes(String structure) {
+            return bytes.getOrDefault(structure, 0L);
+        }
+
+        /**
+         * Returns the total number of bytes used by all data structures.
+         *
+         * @return the number of bytes
+         */
+        public long getTotalBytes() {
+            long total = 0;
+            for (long n: bytes.values()) {
+                total += n;
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            String newLine = getProperty("line.separator", "\n");
+            sb.append("Memory usage: ");
+            sb.append(getTotalBytes());
+            sb.append(" bytes");
+            for (Map.Entry<String, Long> e: bytes.entrySet()) {
+                sb.append(newLine);
+                sb.append(e.getKey());
+                sb.append(": ");
+                sb.append(e.getValue());
+                sb.append(" bytes");
+            }
+            return sb.toString();
+        }
+    }
+
     // TODO: bdd_sizeprobe_hook
     // TODO: bdd_reorder_probe
 
@@ -13,10 +13,26 @@
 
 package com.github.javabdd;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A shared superclass for BDD factories that refer to BDDs as ints.
@@ -54,8 +70,32 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
 
     protected abstract /* bdd */int makenode_impl(int lev, /* bdd */int lo, /* bdd */int hi);
 
+    /**
+     * Builds the BDD for a table of tuples. Not supported for ZDDs.
+     *
+     * @param vars per column, the variables of its domain, from least to most significant bit
+     * @param columns per column, the values of the tuples, which have already been checked to be in range
+     * @return the BDD that is true for exactly the given tuples
+     */
+    protected abstract /* bdd */int buildTuples_impl(int[][] vars, long[][] columns);
+
+    /**
+     * Builds the comparison of a vector of variables to a constant. Not supported for ZDDs.
+     *
+     * @param vars the variables, from least to most significant bit
+     * @param cbits the bits of the constant, from least to most significant bit
+     * @param greater whether to compare with {@code >=} ({@code true}) or {@code <=} ({@code false})
+     * @return the comparison
+     */
+    protected abstract /* bdd */int threshold_impl(int[] vars, boolean[] cbits, boolean greater);
+
+    protected abstract /* bdd */int thresholds_impl(int[] vars, boolean[][] bounds);
+
     protected abstract /* bdd */int ite_impl(/* bdd */int v1, /* bdd */int v2, /* bdd */int v3);
 
+    protected abstract /* bdd */int iteExist_impl(/* bdd */int v1, /* bdd */int v2, /* bdd */int v3,
+            /* bdd */int vars);
+
     protected abstract /* bdd */int apply_impl(/* bdd */int v1, /* bdd */int v2, BDDOp opr);
 
     protected abstract /* bdd */int not_impl(/* bdd */int v1);
@@ -84,6 +124,11 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
 
     protected abstract /* bdd */int fullSatOne_impl(/* bdd */int v);
 
+    protected abstract boolean forEachCube_impl(/* bdd */int v, byte[] buffer, BDD.CubeVisitor visitor);
+
+    protected abstract double evaluate_impl(/* bdd */int v, BDD.DoubleSemiring semiring, double[] lowWeights,
+            double[] highWeights);
+
     protected abstract /* bdd */int replace_impl(/* bdd */int v, BDDPairing p);
 
     protected abstract /* bdd */int veccompose_impl(/* bdd */int v, BDDPairing p);
@@ -104,6 +149,9 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
     protected abstract /* bdd */int relprevIntersection_impl(/* bdd */int relation, /* bdd */int states,
             /* bdd */int restriction, /* bdd */int vars);
 
+    protected abstract /* bdd */int iteRelprev_impl(/* bdd */int v1, /* bdd */int v2, /* bdd */int v3,
+            /* bdd */int states, /* bdd */int vars);
+
     protected abstract /* bdd */int saturationForward_impl(/* bdd */int states, /* bdds */int[] relations,
             /* bdds */int[] vars, int instance);
 
@@ -116,22 +164,64 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
     protected abstract /* bdd */int boundedSaturationBackward_impl(/* bdd */int states, /* bdds */int bound,
             /* bdds */int[] relations, /* bdds */int[] vars, int instance);
 
+    /**
+     * Performs the given operation, giving up once it has produced {@code maxNewNodes} new nodes.
+     *
+     * @param maxNewNodes the maximum number of new nodes that the operation may produce
+     * @param op the operation to perform
+     * @return the result of the operation, or {@link #invalid_bdd_impl()} if the budget was exceeded
+     */
+    protected abstract /* bdd */int budget_impl(int maxNewNodes, IntSupplier op);
+
+    protected abstract /* bdd */int subsetHeavyBranch_impl(/* bdd */int v, int threshold);
+
+    protected abstract /* bdd */int subsetShortPaths_impl(/* bdd */int v, int threshold);
+
     protected abstract int nodeCount_impl(/* bdd */int v);
 
     protected abstract BigInteger pathCount_impl(/* bdd */int v);
 
     protected abstract BigInteger satCount_impl(/* bdd */int v);
 
+    protected abstract double logSatCount_impl(/* bdd */int v);
+
     protected abstract /* bdd */int satOne_impl(/* bdd */int v);
 
     protected abstract /* bdd */int satOne_impl2(/* bdd */int v1, /* bdd */int v2, boolean pol);
 
     protected abstract int nodeCount_impl2(/* bdd */int[] v);
 
+    protected abstract int[] varProfile_impl2(/* bdd */int[] v);
+
+    protected abstract BigInteger[] satCount_impl2(/* bdd */int[] v);
+
+    protected abstract BigInteger[] pathCount_impl2(/* bdd */int[] v);
+
     protected abstract int[] varProfile_impl(/* bdd */int v);
 
     protected abstract void printTable_impl(/* bdd */int v);
 
+    /**
+     * Writes the nodes and roots of the binary format.
+     *
+     * @param out output
+     * @param roots the BDDs
+     * @throws IOException In case of an I/O error.
+     * @see BDDFactory#saveBinary(java.io.OutputStream, BDD, boolean)
+     */
+    protected abstract void saveBinary_impl(DataOutput out, /* bdd */int[] roots) throws IOException;
+
+    /**
+     * Reads the nodes and roots of the binary format, and creates the BDDs. For ZDDs, the nodes must
+     * fit the current variable order.
+     *
+     * @param in input
+     * @return the BDDs, which are referenced
+     * @throws IOException In case of an I/O error.
+     * @see BDDFactory#saveBinary(java.io.OutputStream, BDD, boolean)
+     */
+    protected abstract /* bdd */int[] loadBinary_impl(DataInput in) throws IOException;
+
     protected abstract void setSaturationCallback_impl(SaturationDebugCallback<Integer> callback);
 
     @Override
@@ -163,11 +253,26 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             addref_impl(v);
         }
 
+        /**
+         * Replaces the node of this BDD. The reference counts are not changed.
+         *
+         * @param v the new node, or {@link #invalid_bdd_impl()} if this BDD is freed
+         */
+        protected void setHandle(/* bdd */int v) {
+            this.v = v;
+        }
+
         @Override
         public BDD apply(BDD that, BDDOp opr) {
             return makeBDD(apply_impl(v, unwrap(that), opr));
         }
 
+        @Override
+        public BDD apply(BDD that, BDDOp opr, int maxNewNodes) {
+            /* bdd */int v2 = unwrap(that);
+            return makeBudgetedBDD(budget_impl(maxNewNodes, () -> apply_impl(v, v2, opr)));
+        }
+
         @Override
         public BDD applyAll(BDD that, BDDOp opr, BDDVarSet var) {
             return makeBDD(applyAll_impl(v, unwrap(that), opr, unwrap(var)));
@@ -178,6 +283,13 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             return makeBDD(applyEx_impl(v, unwrap(that), opr, unwrap(var)));
         }
 
+        @Override
+        public BDD applyEx(BDD that, BDDOp opr, BDDVarSet var, int maxNewNodes) {
+            /* bdd */int v2 = unwrap(that);
+            /* bdd */int v3 = unwrap(var);
+            return makeBudgetedBDD(budget_impl(maxNewNodes, () -> applyEx_impl(v, v2, opr, v3)));
+        }
+
         @Override
         public BDD applyUni(BDD that, BDDOp opr, BDDVarSet var) {
             return makeBDD(applyUni_impl(v, unwrap(that), opr, unwrap(var)));
@@ -192,7 +304,7 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != that) {
                 that.free();
             }
-            v = v3;
+            setHandle(v3);
             return this;
         }
 
@@ -216,6 +328,12 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             return makeBDD(exist_impl(v, unwrap(var)));
         }
 
+        @Override
+        public BDD exist(BDDVarSet var, int maxNewNodes) {
+            /* bdd */int v2 = unwrap(var);
+            return makeBudgetedBDD(budget_impl(maxNewNodes, () -> exist_impl(v, v2)));
+        }
+
         @Override
         public BDD forAll(BDDVarSet var) {
             return makeBDD(forAll_impl(v, unwrap(var)));
@@ -224,7 +342,23 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         @Override
         public void free() {
             delref_impl(v);
-            v = invalid_bdd_impl();
+            setHandle(invalid_bdd_impl());
+        }
+
+        @Override
+        public AllSatIterator allsat() {
+            // With only the read lock, the nodes must not be referenced, but the factory also can't change meanwhile.
+            return SHARED() ? new IntAllSatIterator(v) : super.allsat();
+        }
+
+        @Override
+        public boolean forEachCube(byte[] buffer, CubeVisitor visitor) {
+            return forEachCube_impl(v, buffer, visitor);
+        }
+
+        @Override
+        public double evaluate(DoubleSemiring semiring, double[] lowWeights, double[] highWeights) {
+            return evaluate_impl(v, semiring, lowWeights, highWeights);
         }
 
         @Override
@@ -272,6 +406,11 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             return makeBDD(ite_impl(v, unwrap(thenBDD), unwrap(elseBDD)));
         }
 
+        @Override
+        public BDD iteExist(BDD thenBDD, BDD elseBDD, BDDVarSet var) {
+            return makeBDD(iteExist_impl(v, unwrap(thenBDD), unwrap(elseBDD), unwrap(var)));
+        }
+
         @Override
         public BDD low() {
             return makeBDD(low_impl(v));
@@ -307,7 +446,7 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             /* bdd */int v3 = replace_impl(v, pair);
             addref_impl(v3);
             delref_impl(v);
-            v = v3;
+            setHandle(v3);
             return this;
         }
 
@@ -325,7 +464,7 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != that) {
                 that.free();
             }
-            v = v3;
+            setHandle(v3);
             return this;
         }
 
@@ -334,6 +473,11 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             return satCount_impl(v);
         }
 
+        @Override
+        public double logSatCount() {
+            return logSatCount_impl(v);
+        }
+
         @Override
         public BDD satOne() {
             return makeBDD(satOne_impl(v));
@@ -349,6 +493,26 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             return makeBDD(simplify_impl(v, unwrap(d)));
         }
 
+        @Override
+        public BDD subsetHeavyBranch(int threshold) {
+            return makeBDD(subsetHeavyBranch_impl(v, threshold));
+        }
+
+        @Override
+        public BDD subsetShortPaths(int threshold) {
+            return makeBDD(subsetShortPaths_impl(v, threshold));
+        }
+
+        @Override
+        public BDD supersetHeavyBranch(int threshold) {
+            return makeBDD(superset(v, threshold, true));
+        }
+
+        @Override
+        public BDD supersetShortPaths(int threshold) {
+            return makeBDD(superset(v, threshold, false));
+        }
+
         @Override
         public BDDVarSet support() {
             return makeBDDVarSet(support_impl(v));
@@ -384,6 +548,13 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             return makeBDD(relnext_impl(unwrap(states), v, unwrap(vars)));
         }
 
+        @Override
+        public BDD relnext(BDD states, BDDVarSet vars, int maxNewNodes) {
+            /* bdd */int v1 = unwrap(states);
+            /* bdd */int v2 = unwrap(vars);
+            return makeBudgetedBDD(budget_impl(maxNewNodes, () -> relnext_impl(v1, v, v2)));
+        }
+
         @Override
         public BDD relnextUnion(BDD states, BDD union, BDDVarSet vars) {
             return makeBDD(relnextUnion_impl(unwrap(states), v, unwrap(union), unwrap(vars)));
@@ -409,6 +580,11 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             return makeBDD(relprevIntersection_impl(v, unwrap(states), unwrap(restriction), unwrap(vars)));
         }
 
+        @Override
+        public BDD iteRelprev(BDD thenBDD, BDD elseBDD, BDD states, BDDVarSet vars) {
+            return makeBDD(iteRelprev_impl(v, unwrap(thenBDD), unwrap(elseBDD), unwrap(states), unwrap(vars)));
+        }
+
         @Override
         public BDD saturationForward(List<BDD> relations, List<BDDVarSet> vars, int instance) {
             if (relations.size() != vars.size()) {
@@ -488,6 +664,95 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         }
     }
 
+    /**
+     * Iterator over the satisfying assignments of a BDD, like {@link BDD.AllSatIterator}, that walks the nodes by their
+     * numbers. Unlike that iterator, it does not reference the nodes, and therefore does not modify the factory. This
+     * allows threads that hold only the read lock to iterate concurrently. The factory must not be modified during the
+     * iteration, as reordering or compacting it changes the nodes.
+     */
+    protected class IntAllSatIterator extends BDD.AllSatIterator {
+        /** The node of which the low branch is to be taken next, if any. */
+        protected final /* bdd */int[] lostack;
+
+        /** The nodes of which the high branches are still to be taken. */
+        protected final /* bdd */int[] histack;
+
+        protected int lotop, hitop;
+
+        protected IntAllSatIterator(/* bdd */int r) {
+            super(BDDFactoryIntImpl.this, false);
+            lostack = new int[varNum() + 1];
+            histack = new int[varNum() + 1];
+            if (r == zero_impl()) {
+                return;
+            }
+            allsatProfile = new byte[varNum()];
+            if (!isZDD()) {
+                Arrays.fill(allsatProfile, (byte)-1);
+            }
+            if (r != one_impl()) {
+                lostack[lotop++] = r;
+                if (!gotoNextSat()) {
+                    allsatProfile = null;
+                }
+            }
+        }
+
+        private boolean gotoNextSat() {
+            for (;;) {
+                boolean loempty = lotop == 0;
+                /* bdd */int r;
+                if (loempty) {
+                    if (hitop == 0) {
+                        return false;
+                    }
+                    r = histack[--hitop];
+                } else {
+                    r = lostack[--lotop];
+                }
+                int level = level_impl(r);
+                allsatProfile[level2Var(level)] = loempty ? (byte)1 : (byte)0;
+                /* bdd */int rn = loempty ? high_impl(r) : low_impl(r);
+                int v = (rn == zero_impl() || rn == one_impl()) ? varNum() - 1 : level_impl(rn) - 1;
+                for (; v > level; --v) {
+                    allsatProfile[level2Var(v)] = isZDD() ? (byte)0 : (byte)-1;
+                }
+                if (!loempty) {
+                    if (isZDD() && rn == high_impl(r)) {
+                        // Low child equals high child, this is a dont-care bit.
+                        allsatProfile[level2Var(v)] = -1;
+                    } else {
+                        histack[hitop++] = r;
+                    }
+                }
+                if (rn == one_impl()) {
+                    return true;
+                }
+                if (rn != zero_impl()) {
+                    lostack[lotop++] = rn;
+                }
+            }
+        }
+
+        @Override
+        public byte[] nextSat() {
+            if (allsatProfile == null) {
+                throw new NoSuchElementException();
+            }
+            byte[] b = allsatProfile.clone();
+            if (!gotoNextSat()) {
+                allsatProfile = null;
+            }
+            return b;
+        }
+    }
+
+    /**
+     * A BDD that is freed by its finalizer.
+     *
+     * @deprecated Finalizers are slow and delay freeing. Use {@link BDDFactoryIntImpl#setAutoFree(boolean)} instead.
+     */
+    @Deprecated
     public class IntBDDWithFinalizer extends IntBDD {
         protected IntBDDWithFinalizer(/* bdd */int v) {
             super(v);
@@ -506,12 +771,73 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         }
     }
 
+    /**
+     * A BDD that is freed automatically once it is no longer reachable.
+     *
+     * @see BDDFactoryIntImpl#setAutoFree(boolean)
+     */
+    public class IntBDDWithAutoFree extends IntBDD {
+        protected final AutoFreeRef ref;
+
+        protected IntBDDWithAutoFree(/* bdd */int v) {
+            super(v);
+            ref = new AutoFreeRef(this, v);
+        }
+
+        @Override
+        protected void setHandle(/* bdd */int v) {
+            super.setHandle(v);
+            ref.setHandle(v);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
     protected IntBDD makeBDD(/* bdd */int v) {
+        IntBDD b;
         if (USE_FINALIZER) {
-            return new IntBDDWithFinalizer(v);
+            b = new IntBDDWithFinalizer(v);
+        } else if (autoFree) {
+            b = new IntBDDWithAutoFree(v);
         } else {
-            return new IntBDD(v);
+            b = new IntBDD(v);
         }
+        if (scope != null) {
+            scope.objects.add(b);
+        }
+        return b;
+    }
+
+    /**
+     * Computes an over-approximation of a BDD, as the negation of an under-approximation of its negation. Negation
+     * does not change the number of nodes of a BDD.
+     *
+     * @param v the BDD
+     * @param threshold the maximum number of nodes of the result
+     * @param heavy whether to use heavy branch subsetting ({@code true}) or short path subsetting ({@code false})
+     * @return the over-approximation
+     */
+    protected /* bdd */int superset(/* bdd */int v, int threshold, boolean heavy) {
+        /* bdd */int n = not_impl(v);
+        addref_impl(n);
+        /* bdd */int s = heavy ? subsetHeavyBranch_impl(n, threshold) : subsetShortPaths_impl(n, threshold);
+        addref_impl(s);
+        delref_impl(n);
+        /* bdd */int r = not_impl(s);
+        delref_impl(s);
+        return r;
+    }
+
+    /**
+     * Wraps the result of a {@link #budget_impl budgeted} operation.
+     *
+     * @param v the result of the operation
+     * @return the wrapped result, or {@code null} if the operation exceeded its node budget
+     */
+    protected IntBDD makeBudgetedBDD(/* bdd */int v) {
+        if (v == invalid_bdd_impl()) {
+            return null;
+        }
+        return makeBDD(v);
     }
 
     protected static final /* bdd */int unwrap(BDD b) {
@@ -535,6 +861,15 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             addref_impl(v);
         }
 
+        /**
+         * Replaces the node of this variable set. The reference counts are not changed.
+         *
+         * @param v the new node, or {@link #invalid_bdd_impl()} if this variable set is freed
+         */
+        protected void setHandle(/* bdd */int v) {
+            this.v = v;
+        }
+
         @Override
         public boolean equalsBDDVarSet(BDDVarSet that) {
             return v == unwrap(that);
@@ -543,7 +878,7 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         @Override
         public void free() {
             delref_impl(v);
-            v = invalid_bdd_impl();
+            setHandle(invalid_bdd_impl());
         }
 
         @Override
@@ -579,7 +914,7 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != b) {
                 b.free();
             }
-            v = v3;
+            setHandle(v3);
             return this;
         }
 
@@ -652,7 +987,7 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             if (this != b) {
                 b.free();
             }
-            v = v3;
+            setHandle(v3);
             return this;
         }
 
@@ -661,11 +996,17 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             /* bdd */int v3 = do_unionvar(v, var);
             addref_impl(v3);
             delref_impl(v);
-            v = v3;
+            setHandle(v3);
             return this;
         }
     }
 
+    /**
+     * A variable set that is freed by its finalizer.
+     *
+     * @deprecated Finalizers are slow and delay freeing. Use {@link BDDFactoryIntImpl#setAutoFree(boolean)} instead.
+     */
+    @Deprecated
     public class IntBDDVarSetWithFinalizer extends IntBDDVarSet {
         protected IntBDDVarSetWithFinalizer(int v) {
             super(v);
@@ -779,6 +1120,12 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         }
     }
 
+    /**
+     * A ZDD variable set that is freed by its finalizer.
+     *
+     * @deprecated Finalizers are slow and delay freeing. Use {@link BDDFactoryIntImpl#setAutoFree(boolean)} instead.
+     */
+    @Deprecated
     public class IntZDDVarSetWithFinalizer extends IntZDDVarSet {
         protected IntZDDVarSetWithFinalizer(int v) {
             super(v);
@@ -797,20 +1144,70 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         }
     }
 
+    /**
+     * A variable set that is freed automatically once it is no longer reachable.
+     *
+     * @see BDDFactoryIntImpl#setAutoFree(boolean)
+     */
+    public class IntBDDVarSetWithAutoFree extends IntBDDVarSet {
+        protected final AutoFreeRef ref;
+
+        protected IntBDDVarSetWithAutoFree(/* bdd */int v) {
+            super(v);
+            ref = new AutoFreeRef(this, v);
+        }
+
+        @Override
+        protected void setHandle(/* bdd */int v) {
+            super.setHandle(v);
+            ref.setHandle(v);
+        }
+    }
+
+    /**
+     * A ZDD variable set that is freed automatically once it is no longer reachable.
+     *
+     * @see BDDFactoryIntImpl#setAutoFree(boolean)
+     */
+    public class IntZDDVarSetWithAutoFree extends IntZDDVarSet {
+        protected final AutoFreeRef ref;
+
+        protected IntZDDVarSetWithAutoFree(/* bdd */int v) {
+            super(v);
+            ref = new AutoFreeRef(this, v);
+        }
+
+        @Override
+        protected void setHandle(/* bdd */int v) {
+            super.setHandle(v);
+            ref.setHandle(v);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
     protected IntBDDVarSet makeBDDVarSet(/* bdd */int v) {
+        IntBDDVarSet s;
         if (isZDD()) {
             if (USE_FINALIZER) {
-                return new IntZDDVarSetWithFinalizer(v);
+                s = new IntZDDVarSetWithFinalizer(v);
+            } else if (autoFree) {
+                s = new IntZDDVarSetWithAutoFree(v);
             } else {
-                return new IntZDDVarSet(v);
+                s = new IntZDDVarSet(v);
             }
         } else {
             if (USE_FINALIZER) {
-                return new IntBDDVarSetWithFinalizer(v);
+                s = new IntBDDVarSetWithFinalizer(v);
+            } else if (autoFree) {
+                s = new IntBDDVarSetWithAutoFree(v);
             } else {
-                return new IntBDDVarSet(v);
+                s = new IntBDDVarSet(v);
             }
         }
+        if (scope != null) {
+            scope.objects.add(s);
+        }
+        return s;
     }
 
     protected static final /* bdd */int unwrap(BDDVarSet b) {
@@ -828,6 +1225,599 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         }
     }
 
+    @Override
+    protected void saveBinaryNodes(DataOutput out, BDD[] roots) throws IOException {
+        /* bdd */int[] v = new /* bdd */int[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            v[i] = unwrap(roots[i]);
+        }
+        saveBinary_impl(out, v);
+    }
+
+    @Override
+    protected BDD[] loadBinaryNodes(DataInput in) throws IOException {
+        /* bdd */int[] v = loadBinary_impl(in);
+        BDD[] roots = new BDD[v.length];
+        for (int i = 0; i < v.length; i++) {
+            roots[i] = makeBDD(v[i]);
+            delref_impl(v[i]);
+        }
+        return roots;
+    }
+
+    /** The low-level operations on this factory, created on first use. */
+    protected BDDOps ops;
+
+    /**
+     * Returns the low-level operations on this factory, which work on raw node handles rather than {@link BDD}
+     * objects.
+     *
+     * @return the low-level operations
+     */
+    public BDDOps ops() {
+        if (ops == null) {
+            ops = new BDDOps();
+        }
+        return ops;
+    }
+
+    /**
+     * Low-level operations that work on the raw {@code int} node handles of this factory, without allocating a
+     * {@link BDD} object per result. This is intended for hot loops that perform many operations.
+     *
+     * <p>
+     * The results of operations are not referenced. A result that is to be kept while performing other operations
+     * must be {@link #addRef referenced} first, as otherwise its nodes may be reclaimed by a garbage collection. Each
+     * reference must eventually be released using {@link #delRef}. Handles remain valid across variable reordering,
+     * but the operands of an operation must be referenced, or be the constants, for the duration of the operation.
+     * </p>
+     *
+     * <p>
+     * Use {@link #toBDD} and {@link #handle(BDD)} to convert between handles and {@link BDD} objects.
+     * </p>
+     */
+    public class BDDOps {
+        protected BDDOps() {
+        }
+
+        /**
+         * Returns the factory of these operations.
+         *
+         * @return the factory
+         */
+        public BDDFactoryIntImpl getFactory() {
+            return BDDFactoryIntImpl.this;
+        }
+
+        /**
+         * Adds a reference to the given node.
+         *
+         * @param v the node
+         * @return the node
+         */
+        public int addRef(int v) {
+            addref_impl(v);
+            return v;
+        }
+
+        /**
+         * Releases a reference to the given node.
+         *
+         * @param v the node
+         */
+        public void delRef(int v) {
+            delref_impl(v);
+        }
+
+        /**
+         * Returns a new {@link BDD} for the given node. The BDD holds its own reference.
+         *
+         * @param v the node
+         * @return the BDD
+         */
+        public BDD toBDD(int v) {
+            return makeBDD(v);
+        }
+
+        /**
+         * Returns the node of the given BDD. No reference is added.
+         *
+         * @param b the BDD
+         * @return the node
+         */
+        public int handle(BDD b) {
+            return unwrap(b);
+        }
+
+        /**
+         * Returns the node of the given variable set. No reference is added.
+         *
+         * @param b the variable set
+         * @return the node
+         */
+        public int handle(BDDVarSet b) {
+            return unwrap(b);
+        }
+
+        /**
+         * Returns the constant false node.
+         *
+         * @return the node
+         * @see BDDFactory#zero()
+         */
+        public int zero() {
+            return zero_impl();
+        }
+
+        /**
+         * Returns the constant true node.
+         *
+         * @return the node
+         * @see BDDFactory#one()
+         */
+        public int one() {
+            return one_impl();
+        }
+
+        /**
+         * Returns whether the given node is the constant false node.
+         *
+         * @param v the node
+         * @return whether the node is false
+         */
+        public boolean isZero(int v) {
+            return v == zero_impl();
+        }
+
+        /**
+         * Returns whether the given node is the constant true node.
+         *
+         * @param v the node
+         * @return whether the node is true
+         */
+        public boolean isOne(int v) {
+            return v == one_impl();
+        }
+
+        /**
+         * Returns the variable of the given node.
+         *
+         * @param v the node
+         * @return the variable
+         * @see BDD#var()
+         */
+        public int var(int v) {
+            return var_impl(v);
+        }
+
+        /**
+         * Returns the low branch of the given node.
+         *
+         * @param v the node
+         * @return the low branch
+         * @see BDD#low()
+         */
+        public int low(int v) {
+            return low_impl(v);
+        }
+
+        /**
+         * Returns the high branch of the given node.
+         *
+         * @param v the node
+         * @return the high branch
+         * @see BDD#high()
+         */
+        public int high(int v) {
+            return high_impl(v);
+        }
+
+        /**
+         * Returns the node for the given variable.
+         *
+         * @param var the variable
+         * @return the node
+         * @see BDDFactory#ithVar(int)
+         */
+        public int ithVar(int var) {
+            return ithVar_impl(var);
+        }
+
+        /**
+         * Returns the node for the negation of the given variable.
+         *
+         * @param var the variable
+         * @return the node
+         * @see BDDFactory#nithVar(int)
+         */
+        public int nithVar(int var) {
+            return nithVar_impl(var);
+        }
+
+        /**
+         * Returns the negation of the given node.
+         *
+         * @param v the node
+         * @return the result
+         * @see BDD#not()
+         */
+        public int not(int v) {
+            return not_impl(v);
+        }
+
+        /**
+         * Applies a binary operator to two nodes.
+         *
+         * @param v1 the left operand
+         * @param v2 the right operand
+         * @param opr the operator
+         * @return the result
+         * @see BDD#apply(BDD, BDDFactory.BDDOp)
+         */
+        public int apply(int v1, int v2, BDDOp opr) {
+            return apply_impl(v1, v2, opr);
+        }
+
+        /**
+         * Returns the conjunction of two nodes.
+         *
+         * @param v1 the left operand
+         * @param v2 the right operand
+         * @return the result
+         * @see BDD#and(BDD)
+         */
+        public int and(int v1, int v2) {
+            return apply_impl(v1, v2, BDDFactory.and);
+        }
+
+        /**
+         * Returns the disjunction of two nodes.
+         *
+         * @param v1 the left operand
+         * @param v2 the right operand
+         * @return the result
+         * @see BDD#or(BDD)
+         */
+        public int or(int v1, int v2) {
+            return apply_impl(v1, v2, BDDFactory.or);
+        }
+
+        /**
+         * Returns the exclusive disjunction of two nodes.
+         *
+         * @param v1 the left operand
+         * @param v2 the right operand
+         * @return the result
+         * @see BDD#xor(BDD)
+         */
+        public int xor(int v1, int v2) {
+            return apply_impl(v1, v2, BDDFactory.xor);
+        }
+
+        /**
+         * Returns the if-then-else of three nodes.
+         *
+         * @param v1 the condition
+         * @param v2 the 'then' operand
+         * @param v3 the 'else' operand
+         * @return the result
+         * @see BDD#ite(BDD, BDD)
+         */
+        public int ite(int v1, int v2, int v3) {
+            return ite_impl(v1, v2, v3);
+        }
+
+        /**
+         * Existentially quantifies variables from a node.
+         *
+         * @param v the node
+         * @param vars the node of the variable set
+         * @return the result
+         * @see BDD#exist(BDDVarSet)
+         */
+        public int exist(int v, int vars) {
+            return exist_impl(v, vars);
+        }
+
+        /**
+         * Universally quantifies variables from a node.
+         *
+         * @param v the node
+         * @param vars the node of the variable set
+         * @return the result
+         * @see BDD#forAll(BDDVarSet)
+         */
+        public int forAll(int v, int vars) {
+            return forAll_impl(v, vars);
+        }
+
+        /**
+         * Applies a binary operator to two nodes and existentially quantifies variables from the result.
+         *
+         * @param v1 the left operand
+         * @param v2 the right operand
+         * @param opr the operator
+         * @param vars the node of the variable set
+         * @return the result
+         * @see BDD#applyEx(BDD, BDDFactory.BDDOp, BDDVarSet)
+         */
+        public int applyEx(int v1, int v2, BDDOp opr, int vars) {
+            return applyEx_impl(v1, v2, opr, vars);
+        }
+
+        /**
+         * Returns the relational product of two nodes.
+         *
+         * @param v1 the left operand
+         * @param v2 the right operand
+         * @param vars the node of the variable set
+         * @return the result
+         * @see BDD#relprod(BDD, BDDVarSet)
+         */
+        public int relprod(int v1, int v2, int vars) {
+            return applyEx_impl(v1, v2, BDDFactory.and, vars);
+        }
+
+        /**
+         * Computes the successors of states under a relation.
+         *
+         * @param states the states
+         * @param relation the relation
+         * @param vars the node of the variable set
+         * @return the result
+         * @see BDD#relnext(BDD, BDDVarSet)
+         */
+        public int relnext(int states, int relation, int vars) {
+            return relnext_impl(states, relation, vars);
+        }
+
+        /**
+         * Computes the predecessors of states under a relation.
+         *
+         * @param relation the relation
+         * @param states the states
+         * @param vars the node of the variable set
+         * @return the result
+         * @see BDD#relprev(BDD, BDDVarSet)
+         */
+        public int relprev(int relation, int states, int vars) {
+            return relprev_impl(relation, states, vars);
+        }
+
+        /**
+         * Replaces variables in a node.
+         *
+         * @param v the node
+         * @param pair the variable pairs to replace
+         * @return the result
+         * @see BDD#replace(BDDPairing)
+         */
+        public int replace(int v, BDDPairing pair) {
+            return replace_impl(v, pair);
+        }
+
+        /**
+         * Restricts a node to an assignment.
+         *
+         * @param v the node
+         * @param var the node of the assignment
+         * @return the result
+         * @see BDD#restrict(BDD)
+         */
+        public int restrict(int v, int var) {
+            return restrict_impl(v, var);
+        }
+
+        /**
+         * Returns the number of nodes of the given node.
+         *
+         * @param v the node
+         * @return the number of nodes
+         * @see BDD#nodeCount()
+         */
+        public int nodeCount(int v) {
+            return nodeCount_impl(v);
+        }
+
+        /**
+         * Returns the number of satisfying assignments of the given node.
+         *
+         * @param v the node
+         * @return the number of satisfying assignments
+         * @see BDD#satCount()
+         */
+        public BigInteger satCount(int v) {
+            return satCount_impl(v);
+        }
+    }
+
+    /** The kinds of operations of a batch. */
+    protected static final int BATCH_INPUT = 0;
+
+    protected static final int BATCH_APPLY = 1;
+
+    protected static final int BATCH_NOT = 2;
+
+    protected static final int BATCH_ITE = 3;
+
+    protected static final int BATCH_EXIST = 4;
+
+    protected static final int BATCH_FORALL = 5;
+
+    protected static final int BATCH_APPLYEX = 6;
+
+    protected static final int BATCH_REPLACE = 7;
+
+    /**
+     * Performs the pending operations of a batch, storing their referenced results and updating its number of executed
+     * handles after each operation.
+     *
+     * @param batch the batch
+     */
+    protected abstract void batch_impl(IntBDDBatch batch);
+
+    public class IntBDDBatch extends BDDBatch {
+        /** Per handle, the kind of operation. */
+        protected int[] kinds = new int[8];
+
+        /** Per handle, three operands: handles of operands, or (for inputs and variable sets) BDDs. */
+        protected /* bdd */int[] args = new /* bdd */int[24];
+
+        /** Per handle, the operator or pairing of the operation, if any. */
+        protected Object[] params = new Object[8];
+
+        /** Per executed handle, the referenced result. */
+        protected /* bdd */int[] results = new /* bdd */int[8];
+
+        /** The number of handles. */
+        protected int size = 0;
+
+        /** The number of executed handles, i.e. the handle of the first pending operation. */
+        protected int executed = 0;
+
+        protected IntBDDBatch() {
+        }
+
+        @Override
+        public BDDFactory getFactory() {
+            return BDDFactoryIntImpl.this;
+        }
+
+        @Override
+        public int input(BDD b) {
+            /* bdd */int v = unwrap(b);
+            addref_impl(v);
+            return add(BATCH_INPUT, v, 0, 0, null);
+        }
+
+        @Override
+        public int apply(int a, int b, BDDOp opr) {
+            return add(BATCH_APPLY, check(a), check(b), 0, opr);
+        }
+
+        @Override
+        public int not(int a) {
+            return add(BATCH_NOT, check(a), 0, 0, null);
+        }
+
+        @Override
+        public int ite(int f, int g, int h) {
+            return add(BATCH_ITE, check(f), check(g), check(h), null);
+        }
+
+        @Override
+        public int exist(int a, BDDVarSet var) {
+            /* bdd */int v = unwrap(var);
+            addref_impl(v);
+            return add(BATCH_EXIST, check(a), v, 0, null);
+        }
+
+        @Override
+        public int forAll(int a, BDDVarSet var) {
+            /* bdd */int v = unwrap(var);
+            addref_impl(v);
+            return add(BATCH_FORALL, check(a), v, 0, null);
+        }
+
+        @Override
+        public int applyEx(int a, int b, BDDOp opr, BDDVarSet var) {
+            /* bdd */int v = unwrap(var);
+            addref_impl(v);
+            return add(BATCH_APPLYEX, check(a), check(b), v, opr);
+        }
+
+        @Override
+        public int replace(int a, BDDPairing pair) {
+            return add(BATCH_REPLACE, check(a), 0, 0, pair);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int[] execute() {
+            if (results.length < size) {
+                /* bdd */int[] t = new /* bdd */int[kinds.length];
+                System.arraycopy(results, 0, t, 0, executed);
+                results = t;
+            }
+            if (executed < size) {
+                batch_impl(this);
+            }
+            /* bdd */int[] copy = new /* bdd */int[size];
+            System.arraycopy(results, 0, copy, 0, size);
+            return copy;
+        }
+
+        @Override
+        public BDD get(int handle) {
+            check(handle);
+            execute();
+            return makeBDD(results[handle]);
+        }
+
+        @Override
+        public void free() {
+            for (int i = 0; i < size; i++) {
+                switch (kinds[i]) {
+                    case BATCH_INPUT:
+                        if (i >= executed) {
+                            delref_impl(args[3 * i]);
+                        }
+                        break;
+                    case BATCH_EXIST:
+                    case BATCH_FORALL:
+                        delref_impl(args[3 * i + 1]);
+                        break;
+                    case BATCH_APPLYEX:
+                        delref_impl(args[3 * i + 2]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            for (int i = 0; i < executed; i++) {
+                delref_impl(results[i]);
+            }
+            size = 0;
+            executed = 0;
+        }
+
+        protected int check(int handle) {
+            if (handle < 0 || handle >= size) {
+                throw new BDDException("Invalid batch handle: " + handle);
+            }
+            return handle;
+        }
+
+        protected int add(int kind, int a0, int a1, int a2, Object param) {
+            if (size == kinds.length) {
+                int[] k = new int[size * 2];
+                System.arraycopy(kinds, 0, k, 0, size);
+                kinds = k;
+                /* bdd */int[] a = new /* bdd */int[size * 6];
+                System.arraycopy(args, 0, a, 0, size * 3);
+                args = a;
+                Object[] p = new Object[size * 2];
+                System.arraycopy(params, 0, p, 0, size);
+                params = p;
+            }
+            kinds[size] = kind;
+            args[3 * size] = a0;
+            args[3 * size + 1] = a1;
+            args[3 * size + 2] = a2;
+            params[size] = param;
+            return size++;
+        }
+    }
+
+    @Override
+    public BDDBatch batch() {
+        return new IntBDDBatch();
+    }
+
     @Override
     public BDD ithVar(/* bdd */int var) {
         return makeBDD(ithVar_impl(var));
@@ -843,6 +1833,60 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         return nodeCount_impl2(unwrap(r));
     }
 
+    @Override
+    public int[] varProfile(Collection<BDD> r) {
+        return varProfile_impl2(unwrap(r));
+    }
+
+    @Override
+    public BigInteger[] satCount(Collection<BDD> r) {
+        return satCount_impl2(unwrap(r));
+    }
+
+    @Override
+    public BigInteger[] pathCount(Collection<BDD> r) {
+        return pathCount_impl2(unwrap(r));
+    }
+
+    @Override
+    protected BDD buildThreshold(int[] vars, BigInteger c, boolean greater) {
+        if (isZDD()) {
+            return super.buildThreshold(vars, c, greater);
+        }
+        boolean[] cbits = new boolean[vars.length];
+        for (int m = 0; m < vars.length; m++) {
+            cbits[m] = c.testBit(m);
+        }
+        return makeBDD(threshold_impl(vars, cbits, greater));
+    }
+
+    @Override
+    protected BDD buildThresholds(int[] vars, BigInteger[] bounds) {
+        if (isZDD()) {
+            return super.buildThresholds(vars, bounds);
+        }
+        boolean[][] bits = new boolean[bounds.length][vars.length];
+        for (int j = 0; j < bounds.length; j++) {
+            for (int m = 0; m < vars.length; m++) {
+                bits[j][m] = bounds[j].testBit(m);
+            }
+        }
+        return makeBDD(thresholds_impl(vars, bits));
+    }
+
+    @Override
+    public BDD buildTuples(BDDDomain[] domains, long[][] columns) {
+        if (isZDD()) {
+            return super.buildTuples(domains, columns);
+        }
+        checkTuples(domains, columns);
+        int[][] vars = new int[domains.length][];
+        for (int d = 0; d < domains.length; d++) {
+            vars[d] = domains[d].vars();
+        }
+        return makeBDD(buildTuples_impl(vars, columns));
+    }
+
     @Override
     public BDD one() {
         return makeBDD(one_impl());
@@ -874,6 +1918,8 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
             System.gc();
             System.runFinalization();
             handleDeferredFree();
+        } else if (autoFree) {
+            handleDeferredFree();
         }
     }
 
@@ -884,29 +1930,246 @@ public abstract class BDDFactoryIntImpl extends BDDFactory {
         this.done();
     }
 
-    protected /* bdd */int[] to_free = new /* bdd */int[8];
-
-    protected /* bdd */int to_free_length = 0;
+    /** The nodes to free, handed off by other threads without locking. */
+    protected final Queue</* bdd */Integer> to_free = new ConcurrentLinkedQueue<>();
 
+    /**
+     * Frees a node later, the next time {@link #handleDeferredFree()} is called. This method may be called from any
+     * thread.
+     *
+     * @param v the node
+     */
     public void deferredFree(int v) {
         if (v == invalid_bdd_impl()) {
             return;
         }
-        synchronized (to_free) {
-            if (to_free_length == to_free.length) {
-                /* bdd */int[] t = new /* bdd */int[to_free.length * 2];
-                System.arraycopy(to_free, 0, t, 0, to_free.length);
-                to_free = t;
+        to_free.add(v);
+    }
+
+    /**
+     * Frees the nodes of which freeing was deferred, and the nodes of automatically freed BDDs and variable sets that
+     * are no longer reachable. The garbage collector calls this before collecting nodes.
+     */
+    public void handleDeferredFree() {
+        /* bdd */Integer v;
+        while ((v = to_free.poll()) != null) {
+            delref_impl(v);
+        }
+        Reference<?> r;
+        while ((r = autoFreeQueue.poll()) != null) {
+            AutoFreeRef ref = (AutoFreeRef)r;
+            ref.unlink();
+            delref_impl(ref.v);
+        }
+    }
+
+    /**
+     * Returns whether the current thread holds the read lock of this factory, but not its write lock. Other threads
+     * may then be querying the same nodes concurrently, so queries must not mark nodes or use the operator caches.
+     *
+     * @return whether the current thread only has shared access to the factory
+     */
+    protected boolean SHARED() {
+        return lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread();
+    }
+
+    /** Whether new BDDs and variable sets are freed automatically. */
+    protected boolean autoFree;
+
+    /** The queue to which the references of unreachable automatically freed BDDs and variable sets are added. */
+    protected final ReferenceQueue<Object> autoFreeQueue = new ReferenceQueue<>();
+
+    /** The sentinel of the list of references of automatically freed BDDs and variable sets that are not freed yet. */
+    protected final AutoFreeRef autoFreeRefs = new AutoFreeRef();
+
+    /**
+     * Sets whether BDDs and variable sets are freed automatically once they are no longer reachable. This only
+     * affects BDDs and variable sets that are created afterwards. It is off by default.
+     *
+     * <p>
+     * Automatically freed BDDs and variable sets may still be freed explicitly. Otherwise, once the Java garbage
+     * collector finds them unreachable, their nodes are freed the next time the BDD garbage collector runs. Unlike
+     * with finalizers, this involves no locking and no finalizer thread.
+     * </p>
+     *
+     * <p>
+     * They are tracked by {@link WeakReference weak references} rather than phantom references, as the
+     * factory needs to reach them to update their nodes when it relocates nodes, for instance when compacting.
+     * </p>
+     *
+     * @param autoFree whether to free automatically
+     * @return the previous setting
+     */
+    public boolean setAutoFree(boolean autoFree) {
+        boolean old = this.autoFree;
+        this.autoFree = autoFree;
+        return old;
+    }
+
+    /**
+     * Returns whether BDDs and variable sets are freed automatically once they are no longer reachable.
+     *
+     * @return whether to free automatically
+     * @see #setAutoFree(boolean)
+     */
+    public boolean isAutoFree() {
+        return autoFree;
+    }
+
+    /**
+     * Returns the nodes of the automatically freed BDDs and variable sets that are not freed yet.
+     *
+     * @return the nodes, one per BDD or variable set
+     */
+    protected int[] autoFreeHandles() {
+        int n = 0;
+        for (AutoFreeRef ref = autoFreeRefs.next; ref != autoFreeRefs; ref = ref.next) {
+            n++;
+        }
+        int[] handles = new int[n];
+        n = 0;
+        for (AutoFreeRef ref = autoFreeRefs.next; ref != autoFreeRefs; ref = ref.next) {
+            handles[n++] = ref.v;
+        }
+        return handles;
+    }
+
+    /**
+     * Renumbers the nodes of the automatically freed BDDs and variable sets that are not freed yet, after the factory
+     * has relocated nodes. This includes the ones that are no longer reachable, but have not been freed yet.
+     *
+     * @param renumber the new node number per old node number
+     */
+    protected void renumberAutoFree(IntUnaryOperator renumber) {
+        for (AutoFreeRef ref = autoFreeRefs.next; ref != autoFreeRefs; ref = ref.next) {
+            /* bdd */int v = renumber.applyAsInt(ref.v);
+            Object o = ref.get();
+            if (o instanceof IntBDD) {
+                ((IntBDD)o).setHandle(v);
+            } else if (o instanceof IntBDDVarSet) {
+                ((IntBDDVarSet)o).setHandle(v);
+            } else {
+                ref.v = v;
             }
-            to_free[to_free_length++] = v;
         }
     }
 
-    public void handleDeferredFree() {
-        synchronized (to_free) {
-            while (to_free_length > 0) {
-                delref_impl(to_free[--to_free_length]);
+    /**
+     * The reference to an automatically freed BDD or variable set, with its node. The references of the ones that
+     * are not freed yet are kept in a doubly-linked list, to keep the references themselves reachable, and to be able
+     * to renumber their nodes.
+     */
+    protected class AutoFreeRef extends WeakReference<Object> {
+        /* bdd */int v;
+
+        AutoFreeRef prev, next;
+
+        AutoFreeRef() {
+            super(null, null);
+            prev = next = this;
+        }
+
+        AutoFreeRef(Object referent, /* bdd */int v) {
+            super(referent, autoFreeQueue);
+            this.v = v;
+            prev = autoFreeRefs;
+            next = autoFreeRefs.next;
+            next.prev = this;
+            autoFreeRefs.next = this;
+        }
+
+        void setHandle(/* bdd */int v) {
+            this.v = v;
+            if (v == invalid_bdd_impl()) {
+                // Freed explicitly.
+                clear();
+                unlink();
+            }
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = next = this;
+        }
+    }
+
+    /** The innermost open scope, or {@code null}. */
+    protected IntBDDScope scope;
+
+    @Override
+    public BDDScope scope() {
+        return scope = new IntBDDScope(scope);
+    }
+
+    /** A scope for the lifetimes of BDDs of an int-based factory. */
+    public class IntBDDScope extends BDDScope {
+        /** The enclosing scope, or {@code null}. */
+        protected final IntBDDScope parent;
+
+        /** The BDDs and variable sets created in this scope. */
+        protected List<Object> objects = new ArrayList<>();
+
+        /** The BDDs and variable sets that are kept. */
+        protected Set<Object> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        /** Whether this scope is closed. */
+        protected boolean closed;
+
+        protected IntBDDScope(IntBDDScope parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public BDDFactory getFactory() {
+            return BDDFactoryIntImpl.this;
+        }
+
+        @Override
+        public BDD keep(BDD b) {
+            kept.add(b);
+            return b;
+        }
+
+        @Override
+        public BDDVarSet keep(BDDVarSet s) {
+            kept.add(s);
+            return s;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            if (scope != this) {
+                throw new BDDException("Scopes must be closed in the reverse order in which they were opened");
+            }
+            closed = true;
+            scope = parent;
+
+            /* bdd */int invalid = invalid_bdd_impl();
+            for (Object o: objects) {
+                if (kept.contains(o)) {
+                    if (parent != null) {
+                        parent.objects.add(o);
+                    }
+                } else if (o instanceof IntBDD) {
+                    IntBDD b = (IntBDD)o;
+                    if (b.v != invalid) {
+                        delref_impl(b.v);
+                        b.setHandle(invalid);
+                    }
+                } else {
+                    IntBDDVarSet s = (IntBDDVarSet)o;
+                    if (s.v != invalid) {
+                        delref_impl(s.v);
+                        s.setHandle(invalid);
+                    }
+                }
             }
+            objects = null;
+            kept = null;
         }
     }
 }
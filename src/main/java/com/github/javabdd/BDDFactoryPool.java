@@ -0,0 +1,357 @@
+//////////////////////////////////////////////////////////////////////////////
+// Copyright (c) 2003-2026 John Whaley and com.github.javabdd contributors
+//
+// See the CONTRIBUTORS file(s) distributed with this work for additional
+// information regarding copyright ownership.
+//
+// This program and the accompanying materials are made available under the
+// terms of the GNU Library General Public License v2 or later, which is
+// available at https://spdx.org/licenses/LGPL-2.0-or-later.html
+//
+// SPDX-License-Identifier: LGPL-2.0-or-later
+//////////////////////////////////////////////////////////////////////////////
+
+package com.github.javabdd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * A pool of worker factories, for running independent queries in parallel. The workers are forked from a base factory
+ * when the pool is created, using {@link JFactory#cloneFactory(boolean)}, so they share its variables, variable order
+ * and finite domains, and already contain all of its nodes. Queries run on the workers, each worker being used by one
+ * query at a time, and can merge selected results back into the base factory:
+ *
+ * <pre>
+ * try (BDDFactoryPool pool = new BDDFactoryPool(base)) {
+ *     Future&lt;BDD&gt; future = pool.submit(w -&gt; {
+ *         BDD r = w.get(a).andWith(w.get(b));
+ *         BDD result = w.merge(r);
+ *         r.free();
+ *         return result;
+ *     });
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>
+ * While the pool is open, the base factory must only be modified while holding its {@link BDDFactory#getLock() write
+ * lock}, as workers may concurrently merge results into it. Once the base factory has produced new nodes, or has been
+ * reordered or compacted, {@link Worker#get(BDD)} no longer takes constant time, but transfers its BDDs instead.
+ * </p>
+ *
+ * @see BDDFactory#transfer(BDD)
+ */
+public class BDDFactoryPool implements AutoCloseable {
+    /** The base factory. */
+    private final JFactory base;
+
+    /** All workers of this pool. */
+    private final List<Worker> workers;
+
+    /** The workers that are not running a query. */
+    private final BlockingQueue<Worker> idle;
+
+    /** The threads that run the queries. */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a pool with one worker per available processor, forked from the given base factory, with copies of its
+     * operator caches.
+     *
+     * @param base the base factory
+     */
+    public BDDFactoryPool(JFactory base) {
+        this(base, Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Creates a pool with the given number of workers, forked from the given base factory.
+     *
+     * @param base the base factory
+     * @param size the number of workers, and of threads to run queries on
+     * @param copyCaches whether the workers start with copies of the operator caches of the base factory, or with
+     *     empty caches
+     */
+    public BDDFactoryPool(JFactory base, int size, boolean copyCaches) {
+        if (size < 1) {
+            throw new BDDException("Invalid pool size: " + size);
+        }
+        this.base = base;
+        this.workers = new ArrayList<>(size);
+        this.idle = new ArrayBlockingQueue<>(size);
+        Lock lock = base.getLock().readLock();
+        lock.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                Worker w = new Worker(i, base.cloneFactory(copyCaches));
+                workers.add(w);
+                idle.add(w);
+            }
+        } finally {
+            lock.unlock();
+        }
+        this.executor = Executors.newFixedThreadPool(size);
+    }
+
+    /**
+     * Returns the base factory of this pool.
+     *
+     * @return the base factory
+     */
+    public JFactory getBase() {
+        return base;
+    }
+
+    /**
+     * Returns the number of workers of this pool.
+     *
+     * @return the number of workers
+     */
+    public int size() {
+        return workers.size();
+    }
+
+    /**
+     * Returns the workers of this pool. A worker must not be used directly while queries are running on it.
+     *
+     * @return the workers
+     */
+    public List<Worker> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the total memory used by the data structures of the factories of the workers of this pool. For workers
+     * that are running a query, this is the memory they used when they last became idle.
+     *
+     * @return the number of bytes
+     * @see Worker#memoryUsage()
+     */
+    public long memoryUsage() {
+        long total = 0;
+        for (Worker w: workers) {
+            total += w.memory;
+        }
+        return total;
+    }
+
+    /**
+     * Submits a query, to be run on the next idle worker.
+     *
+     * @param <T> the type of the result of the query
+     * @param query the query, which is given the worker to run on
+     * @return the future result of the query
+     */
+    public <T> Future<T> submit(Function<Worker, T> query) {
+        return executor.submit(() -> {
+            Worker w = idle.take();
+            try {
+                return query.apply(w);
+            } finally {
+                w.memory = w.memoryUsage();
+                idle.add(w);
+            }
+        });
+    }
+
+    /**
+     * Runs queries in parallel, and waits for all of them to complete.
+     *
+     * @param <T> the type of the results of the queries
+     * @param queries the queries, which are given the worker to run on
+     * @return the results of the queries, in the order of the given queries
+     * @throws BDDException if a query fails or waiting is interrupted
+     */
+    public <T> List<T> invokeAll(Collection<? extends Function<Worker, T>> queries) {
+        List<Future<T>> futures = new ArrayList<>(queries.size());
+        for (Function<Worker, T> query: queries) {
+            futures.add(submit(query));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> f: futures) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BDDException("Interrupted while waiting for queries");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error)e.getCause();
+            }
+            throw new BDDException("Query failed: " + e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Closes this pool. Waits for running queries to complete, and then frees the worker factories. BDDs of the workers
+     * must not be used after this.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting for the running queries.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Worker w: workers) {
+            w.factory.done();
+        }
+    }
+
+    /** A worker of a pool, with its own factory forked from the base factory. */
+    public class Worker {
+        /** The index of this worker in the pool. */
+        private final int index;
+
+        /** The factory of this worker. */
+        private final JFactory factory;
+
+        /** The number of nodes produced by the base factory when this worker was forked. */
+        private final int forkproduced;
+
+        /** The number of reorderings and compactions of the base factory when this worker was forked. */
+        private final int forkrelocnum;
+
+        /** The memory used by the factory of this worker when it last became idle. */
+        private volatile long memory;
+
+        /**
+         * Creates a worker. The read lock of the base factory must be held.
+         *
+         * @param index the index of the worker in the pool
+         * @param factory the factory of the worker
+         */
+        private Worker(int index, JFactory factory) {
+            this.index = index;
+            this.factory = factory;
+            this.forkproduced = base.bddproduced;
+            this.forkrelocnum = base.bddrelocnum;
+            this.memory = memoryUsage();
+        }
+
+        /**
+         * Returns the index of this worker in the pool.
+         *
+         * @return the index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the factory of this worker.
+         *
+         * @return the factory
+         */
+        public JFactory getFactory() {
+            return factory;
+        }
+
+        /**
+         * Translates a BDD of the base factory into the factory of this worker. As long as the base factory has not
+         * produced new nodes, and neither factory has been reordered or compacted, since the worker was forked, this
+         * takes constant time, as the worker then still contains the nodes of the base factory. Otherwise, the BDD is
+         * transferred, while holding the write lock of the base factory.
+         *
+         * @param b the BDD of the base factory
+         * @return the same BDD in the factory of this worker
+         * @see BDDFactory#transfer(BDD)
+         */
+        public BDD get(BDD b) {
+            if (b.getFactory() != base) {
+                throw new BDDException("BDD is not from the base factory of the pool");
+            }
+            Lock lock = base.getLock().readLock();
+            lock.lock();
+            try {
+                if (isForkState()) {
+                    return factory.copyNode(b);
+                }
+            } finally {
+                lock.unlock();
+            }
+            lock = base.getLock().writeLock();
+            lock.lock();
+            try {
+                return factory.transfer(b);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns whether the base factory has not produced new nodes, and neither factory has been reordered or
+         * compacted, since this worker was forked. The read lock of the base factory must be held.
+         *
+         * @return whether the nodes of the base factory are still in the factory of this worker
+         */
+        private boolean isForkState() {
+            return base.bddproduced == forkproduced && base.bddrelocnum == forkrelocnum
+                    && factory.bddrelocnum == forkrelocnum;
+        }
+
+        /**
+         * Merges a result of this worker into the base factory, while holding the write lock of the base factory.
+         *
+         * @param b the BDD of this worker, which is not freed
+         * @return the same BDD in the base factory
+         * @see BDDFactory#transfer(BDD)
+         */
+        public BDD merge(BDD b) {
+            Lock lock = base.getLock().writeLock();
+            lock.lock();
+            try {
+                return base.transfer(b);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Merges results of this worker into the base factory, while holding the write lock of the base factory. Nodes
+         * shared by the results are transferred only once.
+         *
+         * @param bs the BDDs of this worker, which are not freed
+         * @return the same BDDs in the base factory, in the same order
+         * @see BDDFactory#transfer(Collection)
+         */
+        public List<BDD> merge(Collection<BDD> bs) {
+            Lock lock = base.getLock().writeLock();
+            lock.lock();
+            try {
+                return base.transfer(bs);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the memory used by the data structures of the factory of this worker.
+         *
+         * @return the number of bytes
+         * @see BDDFactory#memoryUsage()
+         */
+        public long memoryUsage() {
+            return factory.memoryUsage().getTotalBytes();
+        }
+    }
+}
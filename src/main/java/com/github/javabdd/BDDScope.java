@@ -0,0 +1,71 @@
+//////////////////////////////////////////////////////////////////////////////
+// Copyright (c) 2003-2026 John Whaley and com.github.javabdd contributors
+//
+// See the CONTRIBUTORS file(s) distributed with this work for additional
+// information regarding copyright ownership.
+//
+// This program and the accompanying materials are made available under the
+// terms of the GNU Library General Public License v2 or later, which is
+// available at https://spdx.org/licenses/LGPL-2.0-or-later.html
+//
+// SPDX-License-Identifier: LGPL-2.0-or-later
+//////////////////////////////////////////////////////////////////////////////
+
+package com.github.javabdd;
+
+/**
+ * A scope for the lifetimes of BDDs. All BDDs and variable sets that the factory creates while the scope is open are
+ * freed when the scope is closed, except for the ones that are {@link #keep kept}. This avoids leaking nodes without
+ * having to {@link BDD#free() free} every intermediate result:
+ *
+ * <pre>
+ * try (BDDScope scope = factory.scope()) {
+ *     BDD a = x.and(y);
+ *     BDD b = a.or(z);
+ *     result = scope.keep(b.exist(vars));
+ * }
+ * </pre>
+ *
+ * <p>
+ * Scopes may be nested, in which case they must be closed in the reverse order in which they were opened. BDDs that
+ * are kept in a nested scope are added to the enclosing scope.
+ * </p>
+ *
+ * <p>
+ * This also applies to variable sets that the factory creates for itself, so finite domains should not be created
+ * while a scope is open.
+ * </p>
+ *
+ * @see BDDFactory#scope()
+ */
+public abstract class BDDScope implements AutoCloseable {
+    /**
+     * Returns the factory that created this scope.
+     *
+     * @return the factory
+     */
+    public abstract BDDFactory getFactory();
+
+    /**
+     * Keeps a BDD that was created in this scope, such that it is not freed when this scope is closed.
+     *
+     * @param b the BDD
+     * @return the given BDD
+     */
+    public abstract BDD keep(BDD b);
+
+    /**
+     * Keeps a variable set that was created in this scope, such that it is not freed when this scope is closed.
+     *
+     * @param s the variable set
+     * @return the given variable set
+     */
+    public abstract BDDVarSet keep(BDDVarSet s);
+
+    /**
+     * Closes this scope, freeing all BDDs and variable sets created in it that were not kept, and that were not freed
+     * already. Closing a scope again has no effect.
+     */
+    @Override
+    public abstract void close();
+}
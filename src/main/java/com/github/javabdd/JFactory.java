@@ -15,9 +15,21 @@ package com.github.javabdd;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,6 +40,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Random;
 import java.util.StringTokenizer;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
 
 /**
  * This is a 100% Java implementation of the BDD factory. It is based on the C source code for BuDDy. As such, the
@@ -42,6 +56,16 @@ public class JFactory extends BDDFactoryIntImpl {
      */
     public static boolean FLUSH_CACHE_ON_GC = false;
 
+    /**
+     * Use iterative implementations of the apply, quantification, relational product, relnext, mark, node count,
+     * satisfying assignment count, evaluation and save operations, and of heavy branch subsetting, if there are at
+     * least this many BDD variables. Unlike the recursive implementations, they do not use the Java stack, and
+     * therefore need no large thread stacks for deep BDDs, but they are somewhat slower. Set to {@code 0} to always
+     * use them, or to {@link Integer#MAX_VALUE} to never use them. The other operations, such as ITE, replace,
+     * restrict, {@link BDD#pathCount} and {@link BDD#logSatCount}, are still recursive.
+     */
+    public static int ITERATIVE_VARNUM = 4096;
+
     static final boolean VERIFY_ASSERTIONS = false;
 
     static final boolean DO_BDD_VALIDATE = false;
@@ -130,12 +154,19 @@ public class JFactory extends BDDFactoryIntImpl {
         bddPair p = new bddPair();
         p.result = new int[bddvarnum];
         int n;
-        for (n = 0; n < bddvarnum; n++) {
-            if (ZDD) {
-                p.result[n] = bdd_addref(zdd_makenode(n, 0, 1));
-            } else {
-                p.result[n] = bdd_ithvar(bddlevel2var[n]);
+        /* Creating the ZDD nodes can't be restarted, so it must not reorder or compact */
+        int oldreorderdisabled = reorderdisabled;
+        bdd_disable_reorder();
+        try {
+            for (n = 0; n < bddvarnum; n++) {
+                if (ZDD) {
+                    p.result[n] = bdd_addref(zdd_makenode(n, 0, 1));
+                } else {
+                    p.result[n] = bdd_ithvar(bddlevel2var[n]);
+                }
             }
+        } finally {
+            reorderdisabled = oldreorderdisabled;
         }
 
         p.id = update_pairsid();
@@ -207,12 +238,34 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_nithvar(var);
     }
 
+    @Override
+    protected int threshold_impl(int[] vars, boolean[] cbits, boolean greater) {
+        return bdd_threshold(vars, cbits, greater);
+    }
+
+    @Override
+    protected int thresholds_impl(int[] vars, boolean[][] bounds) {
+        return bdd_thresholds(vars, bounds);
+    }
+
+    @Override
+    protected int buildTuples_impl(int[][] vars, long[][] columns) {
+        return bdd_buildtuples(vars, columns);
+    }
+
     @Override
     protected int makenode_impl(int lev, int lo, int hi) {
-        if (ZDD) {
-            return zdd_makenode(lev, lo, hi);
-        } else {
-            return bdd_makenode(lev, lo, hi);
+        /* The callers can't restart on a ReorderException, so the node must not trigger a reordering or compaction */
+        int oldreorderdisabled = reorderdisabled;
+        bdd_disable_reorder();
+        try {
+            if (ZDD) {
+                return zdd_makenode(lev, lo, hi);
+            } else {
+                return bdd_makenode(lev, lo, hi);
+            }
+        } finally {
+            reorderdisabled = oldreorderdisabled;
         }
     }
 
@@ -221,6 +274,11 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_ite(v1, v2, v3);
     }
 
+    @Override
+    protected int iteExist_impl(int f, int g, int h, int vars) {
+        return bdd_iteExist(f, g, h, vars);
+    }
+
     @Override
     protected int apply_impl(int v1, int v2, BDDOp opr) {
         return bdd_apply(v1, v2, opr.id);
@@ -286,6 +344,16 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_unique(v1, v2);
     }
 
+    @Override
+    protected boolean forEachCube_impl(int v, byte[] buffer, BDD.CubeVisitor visitor) {
+        return bdd_foreachcube(v, buffer, visitor);
+    }
+
+    @Override
+    protected double evaluate_impl(int v, BDD.DoubleSemiring semiring, double[] lowWeights, double[] highWeights) {
+        return bdd_evaluate(v, semiring, lowWeights, highWeights);
+    }
+
     @Override
     protected int fullSatOne_impl(int v) {
         return bdd_fullsatone(v);
@@ -296,24 +364,49 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_replace(v, (bddPair)p);
     }
 
+    @Override
+    protected void batch_impl(IntBDDBatch batch) {
+        bdd_batch(batch);
+    }
+
     @Override
     protected int veccompose_impl(int v, BDDPairing p) {
         return bdd_veccompose(v, (bddPair)p);
     }
 
+    @Override
+    protected int subsetHeavyBranch_impl(int v, int threshold) {
+        return bdd_subsetheavy(v, threshold);
+    }
+
+    @Override
+    protected int subsetShortPaths_impl(int v, int threshold) {
+        return bdd_subsetshort(v, threshold);
+    }
+
+    @Override
+    protected int budget_impl(int maxNewNodes, IntSupplier op) {
+        return bdd_budget(maxNewNodes, op);
+    }
+
     @Override
     protected int nodeCount_impl(int v) {
-        return bdd_nodecount(v);
+        return SHARED() ? bdd_nodecount_shared(v) : bdd_nodecount(v);
     }
 
     @Override
     protected BigInteger pathCount_impl(int v) {
-        return bdd_pathcount(v);
+        return SHARED() ? bdd_pathcount_shared(v) : bdd_pathcount(v);
     }
 
     @Override
     protected BigInteger satCount_impl(int v) {
-        return bdd_satcount(v);
+        return SHARED() ? bdd_satcount_shared(v) : bdd_satcount(v);
+    }
+
+    @Override
+    protected double logSatCount_impl(int v) {
+        return SHARED() ? bdd_satcountln_shared(v) : bdd_satcountln(v);
     }
 
     @Override
@@ -336,6 +429,21 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_varprofile(v);
     }
 
+    @Override
+    protected int[] varProfile_impl2(int[] v) {
+        return bdd_avarprofile(v);
+    }
+
+    @Override
+    protected BigInteger[] satCount_impl2(int[] v) {
+        return bdd_asatcount(v);
+    }
+
+    @Override
+    protected BigInteger[] pathCount_impl2(int[] v) {
+        return bdd_apathcount(v);
+    }
+
     @Override
     protected void printTable_impl(int v) {
         bdd_fprinttable(System.out, v);
@@ -371,6 +479,11 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_relprevIntersection(relation, states, restriction, vars);
     }
 
+    @Override
+    protected int iteRelprev_impl(int f, int g, int h, int states, int vars) {
+        return bdd_iteRelprev(f, g, h, states, vars);
+    }
+
     @Override
     protected int saturationForward_impl(int states, int[] relations, int[] vars, int instance) {
         return bdd_saturationForward(states, relations, vars, instance);
@@ -428,6 +541,16 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_setallocnum(size);
     }
 
+    @Override
+    public int compact() {
+        return bdd_compact(false);
+    }
+
+    @Override
+    public double setCompactThreshold(double x) {
+        return bdd_setcompactthreshold((int)(x * 100.)) / 100.;
+    }
+
     @Override
     public int setCacheSize(int v) {
         return bdd_setcachesize(v);
@@ -473,6 +596,23 @@ public class JFactory extends BDDFactoryIntImpl {
         return bdd_setincreasefactor(x);
     }
 
+    @Override
+    public long setMemoryBudget(long bytes) {
+        return bdd_setmemorybudget(bytes);
+    }
+
+    @Override
+    public long getMemoryBudget() {
+        return memorybudget;
+    }
+
+    @Override
+    public MemoryUsage memoryUsage() {
+        MemoryUsage usage = new MemoryUsage();
+        bdd_memoryusage(usage);
+        return usage;
+    }
+
     @Override
     public int getNodeNum() {
         return bdd_getnodenum();
@@ -523,6 +663,34 @@ public class JFactory extends BDDFactoryIntImpl {
         bdd_save(out, unwrap(b));
     }
 
+    @Override
+    protected void saveBinary_impl(DataOutput out, int[] roots) throws IOException {
+        bdd_savebinary(out, roots);
+    }
+
+    @Override
+    protected int[] loadBinary_impl(DataInput in) throws IOException {
+        return bdd_loadbinary(in);
+    }
+
+    @Override
+    protected BDD[] transferNodes(BDDFactory src, BDD[] roots) {
+        if (!(src instanceof JFactory)) {
+            return super.transferNodes(src, roots);
+        }
+        int[] v = new int[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            v[i] = unwrap(roots[i]);
+        }
+        v = bdd_transfer((JFactory)src, v);
+        BDD[] res = new BDD[v.length];
+        for (int i = 0; i < v.length; i++) {
+            res[i] = makeBDD(v[i]);
+            bdd_delref(v[i]);
+        }
+        return res;
+    }
+
     @Override
     public void setVarOrder(int[] neworder) {
         bdd_setvarorder(neworder);
@@ -615,25 +783,33 @@ public class JFactory extends BDDFactoryIntImpl {
     }
 
     public JFactory cloneFactory() {
+        return cloneFactory(true);
+    }
+
+    /**
+     * Creates a clone of this factory, with the same nodes, variables, variable order, variable blocks and finite
+     * domains. Use {@link #copyNode(BDD)} to translate BDDs into the clone. The node table and the other primitive
+     * tables are copied in bulk.
+     *
+     * <p>
+     * The operator caches are not copied in bulk: each cache entry is a separate object, so they are copied entry by
+     * entry. This doubles their memory, and takes longer than copying the node table. Without them, the clone starts
+     * with empty caches, allocated on first use.
+     * </p>
+     *
+     * @param copyCaches whether to copy the operator caches
+     * @return the clone
+     */
+    public JFactory cloneFactory(boolean copyCaches) {
         JFactory INSTANCE = new JFactory();
-        if (applycache != null) {
-            INSTANCE.applycache = this.applycache.copy();
-        }
-        if (itecache != null) {
-            INSTANCE.itecache = this.itecache.copy();
-        }
-        if (quantcache != null) {
-            INSTANCE.quantcache = this.quantcache.copy();
-        }
-        INSTANCE.appexcache = this.appexcache.copy();
-        if (replacecache != null) {
-            INSTANCE.replacecache = this.replacecache.copy();
-        }
-        if (misccache != null) {
-            INSTANCE.misccache = this.misccache.copy();
-        }
-        if (countcache != null) {
-            INSTANCE.countcache = this.countcache.copy();
+        if (copyCaches) {
+            INSTANCE.applycache = BddCache_copy(this.applycache);
+            INSTANCE.itecache = BddCache_copy(this.itecache);
+            INSTANCE.quantcache = BddCache_copy(this.quantcache);
+            INSTANCE.appexcache = BddCache_copy(this.appexcache);
+            INSTANCE.replacecache = BddCache_copy(this.replacecache);
+            INSTANCE.misccache = BddCache_copy(this.misccache);
+            INSTANCE.countcache = BddCache_copy(this.countcache);
         }
         // TODO: potential difference here (!)
         INSTANCE.rng = new Random();
@@ -642,6 +818,8 @@ public class JFactory extends BDDFactoryIntImpl {
         INSTANCE.maxusedbddnodesstats.copyFrom(this.maxusedbddnodesstats);
         INSTANCE.maxmemorystats.copyFrom(this.maxmemorystats);
 
+        INSTANCE.ZDD = this.ZDD;
+        INSTANCE.univ = this.univ;
         INSTANCE.bddrunning = this.bddrunning;
         INSTANCE.bdderrorcond = this.bdderrorcond;
         INSTANCE.bddnodesize = this.bddnodesize;
@@ -653,31 +831,84 @@ public class JFactory extends BDDFactoryIntImpl {
         INSTANCE.bddvarnum = this.bddvarnum;
 
         INSTANCE.gbcollectnum = this.gbcollectnum;
+        INSTANCE.bddrelocnum = this.bddrelocnum;
         INSTANCE.cachesize = this.cachesize;
+        INSTANCE.cacheratio = this.cacheratio;
+        INSTANCE.increasefactor = this.increasefactor;
+        INSTANCE.memorybudget = this.memorybudget;
+        INSTANCE.compactthreshold = this.compactthreshold;
         INSTANCE.gbcclock = this.gbcclock;
         INSTANCE.usednodes_nextreorder = this.usednodes_nextreorder;
 
+        INSTANCE.bddreordermethod = this.bddreordermethod;
+        INSTANCE.bddreordertimes = this.bddreordertimes;
+        INSTANCE.reorderdisabled = this.reorderdisabled;
+        INSTANCE.vartree = bddtree_copy(this.vartree, null);
+        INSTANCE.blockid = this.blockid;
+
+        // New pairings of the clone must not reuse the ids of pairings in the copied replace cache.
+        INSTANCE.pairsid = this.pairsid;
+
         INSTANCE.bddrefstacktop = this.bddrefstacktop;
         INSTANCE.bddresized = this.bddresized;
         INSTANCE.minfreenodes = this.minfreenodes;
-        INSTANCE.bddnodes = new int[this.bddnodes.length];
-        System.arraycopy(this.bddnodes, 0, INSTANCE.bddnodes, 0, this.bddnodes.length);
-        INSTANCE.bddrefstack = new int[this.bddrefstack.length];
-        System.arraycopy(this.bddrefstack, 0, INSTANCE.bddrefstack, 0, this.bddrefstack.length);
-        INSTANCE.bddvar2level = new int[this.bddvar2level.length];
-        System.arraycopy(this.bddvar2level, 0, INSTANCE.bddvar2level, 0, this.bddvar2level.length);
-        INSTANCE.bddlevel2var = new int[this.bddlevel2var.length];
-        System.arraycopy(this.bddlevel2var, 0, INSTANCE.bddlevel2var, 0, this.bddlevel2var.length);
-        INSTANCE.bddvarset = new int[this.bddvarset.length];
-        System.arraycopy(this.bddvarset, 0, INSTANCE.bddvarset, 0, this.bddvarset.length);
-
-        INSTANCE.domain = new BDDDomain[this.domain.length];
-        for (int i = 0; i < INSTANCE.domain.length; ++i) {
-            INSTANCE.domain[i] = INSTANCE.createDomain(i, this.domain[i].realsize);
+        INSTANCE.bddnodes = this.bddnodes.clone();
+        if (this.bddvarset != null) {
+            INSTANCE.bddrefstack = this.bddrefstack.clone();
+            INSTANCE.bddvar2level = this.bddvar2level.clone();
+            INSTANCE.bddlevel2var = this.bddlevel2var.clone();
+            INSTANCE.bddvarset = this.bddvarset.clone();
+            INSTANCE.quantvarset = new int[this.bddvarnum];
+        }
+
+        INSTANCE.autoFree = this.autoFree;
+        INSTANCE.fdvarnum = this.fdvarnum;
+        INSTANCE.firstbddvar = this.firstbddvar;
+        if (this.domain != null) {
+            INSTANCE.domain = new BDDDomain[this.domain.length];
+            for (int i = 0; i < this.fdvarnum; ++i) {
+                BDDDomain d = this.domain[i];
+                BDDDomain d2 = INSTANCE.createDomain(i, d.realsize);
+                d2.name = d.name;
+                d2.ivar = d.ivar.clone();
+                // The reference of the variable set is part of the copied node table, so don't count it twice.
+                d2.var = INSTANCE.makeBDDVarSet(unwrap(d.var));
+                INSTANCE.bdd_delref(unwrap(d.var));
+                INSTANCE.domain[i] = d2;
+            }
         }
         return INSTANCE;
     }
 
+    static BddCache BddCache_copy(BddCache cache) {
+        return cache == null ? null : cache.copy();
+    }
+
+    static BddTree bddtree_copy(BddTree t, BddTree prev) {
+        BddTree first = null;
+        for (; t != null; t = t.next) {
+            BddTree t2 = new BddTree();
+            t2.firstVar = t.firstVar;
+            t2.lastVar = t.lastVar;
+            t2.firstLevel = t.firstLevel;
+            t2.lastLevel = t.lastLevel;
+            t2.pos = t.pos;
+            t2.seq = t.seq == null ? null : t.seq.clone();
+            t2.fixed = t.fixed;
+            t2.interleaved = t.interleaved;
+            t2.id = t.id;
+            t2.nextlevel = bddtree_copy(t.nextlevel, null);
+            t2.prev = prev;
+            if (prev != null) {
+                prev.next = t2;
+            } else {
+                first = t2;
+            }
+            prev = t2;
+        }
+        return first;
+    }
+
     /**
      * Use this function to translate BDD's from a JavaFactory into its clone. This will only work immediately after
      * cloneFactory() is called, and before any other BDD operations are performed.
@@ -689,6 +920,66 @@ public class JFactory extends BDDFactoryIntImpl {
         return makeBDD(unwrap(that));
     }
 
+    /** The magic number at the start of a factory snapshot, the characters 'JBDS'. */
+    public static final int SNAPSHOT_MAGIC = 0x4A424453;
+
+    /** The version of the factory snapshot format. */
+    public static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * Saves a snapshot of this factory to a file. The snapshot contains the node table, the variable order, the
+     * variable blocks, the finite domains, and the apply and if-then-else caches, all as raw array dumps. It can be
+     * restored much faster than the BDDs can be rebuilt or loaded, using {@link #loadSnapshot(String, List)}.
+     *
+     * <p>
+     * Only the given BDDs are restored. Nodes that are only used by other BDDs are freed upon restoring.
+     * </p>
+     *
+     * @param filename filename
+     * @param roots the BDDs to restore
+     * @throws IOException In case of an I/O error.
+     */
+    public void saveSnapshot(String filename, Collection<BDD> roots) throws IOException {
+        int[] r = new int[roots.size()];
+        int i = 0;
+        for (BDD b: roots) {
+            r[i++] = unwrap(b);
+        }
+        try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            bdd_savesnapshot(ch, r);
+        }
+    }
+
+    /**
+     * Restores a factory from a snapshot file, as saved by {@link #saveSnapshot(String, Collection)}. The file is
+     * memory-mapped, and the arrays are read in bulk.
+     *
+     * <p>
+     * The reordering settings and statistics of the saved factory are not restored. Neither are the operator caches
+     * other than the apply and if-then-else caches, as their entries refer to variable sets and pairings of the saved
+     * factory.
+     * </p>
+     *
+     * @param filename filename
+     * @param roots the list to which to add the restored BDDs, in the order in which they were saved
+     * @return the restored factory
+     * @throws IOException In case of an I/O error.
+     */
+    public static JFactory loadSnapshot(String filename, List<BDD> roots) throws IOException {
+        JFactory f = new JFactory();
+        int[] r;
+        try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            r = f.bdd_loadsnapshot(ch);
+        }
+        for (int root: r) {
+            roots.add(f.makeBDD(root));
+            f.bdd_delref(root);
+        }
+        return f;
+    }
+
     public void reverseAllDomains() {
         reorder_init();
         for (int i = 0; i < fdvarnum; ++i) {
@@ -1016,6 +1307,14 @@ public class JFactory extends BDDFactoryIntImpl {
         bddnodes[r * __node_size + offset__high] = v;
     }
 
+    private final int LOW_AT(int r, int level) {
+        return (!ISCONST(r) && LEVEL(r) == level) ? LOW(r) : r;
+    }
+
+    private final int HIGH_AT(int r, int level) {
+        return (!ISCONST(r) && LEVEL(r) == level) ? HIGH(r) : r;
+    }
+
     private final int HASH(int r) {
         return bddnodes[r * __node_size + offset__hash];
     }
@@ -1075,6 +1374,10 @@ public class JFactory extends BDDFactoryIntImpl {
     private static class BddCacheDataBI extends BddCacheData {
         BigInteger bires;
 
+        long lres;
+
+        double dres;
+
         @Override
         BddCacheData copy() {
             BddCacheDataBI that = new BddCacheDataBI();
@@ -1082,6 +1385,8 @@ public class JFactory extends BDDFactoryIntImpl {
             that.b = this.b;
             that.c = this.c;
             that.bires = this.bires;
+            that.lres = this.lres;
+            that.dres = this.dres;
             return that;
         }
     }
@@ -1125,6 +1430,13 @@ public class JFactory extends BDDFactoryIntImpl {
         private static final long serialVersionUID = 3256727264505772345L;
     }
 
+    private static class NodeBudgetException extends RuntimeException {
+        /**
+         * Version ID for serialization.
+         */
+        private static final long serialVersionUID = 3906931165390614584L;
+    }
+
     static final int bddtrue = 1;
 
     static final int bddfalse = 0;
@@ -1151,12 +1463,20 @@ public class JFactory extends BDDFactoryIntImpl {
 
     int bddproduced; /* Number of new nodes ever produced */
 
+    int bddnodebudget = -1; /* Max. # of new nodes for the current operation, or -1 */
+
+    int bddnodebudgetstart; /* Value of bddproduced when the node budget was set */
+
     int bddvarnum; /* Number of defined BDD variables */
 
     int[] bddrefstack; /* Internal node reference stack */
 
     int bddrefstacktop; /* Internal node reference stack top */
 
+    int[] iterstack; /* Explicit stack of the iterative operations */
+
+    int iterstacktop; /* Explicit stack top */
+
     int[] bddvar2level; /* Variable -> level table */
 
     int[] bddlevel2var; /* Level -> variable table */
@@ -1173,6 +1493,8 @@ public class JFactory extends BDDFactoryIntImpl {
 
     int gbcollectnum; /* Number of garbage collections */
 
+    int bddrelocnum; /* Number of reorderings and compactions, which change or move nodes */
+
     int cachesize; /* Size of the operator caches */
 
     long gbcclock; /* Clock ticks used in GBC */
@@ -1393,6 +1715,10 @@ public class JFactory extends BDDFactoryIntImpl {
         return TRIPLE(l, r, op);
     }
 
+    static final int SHORTPATHHASH(int r, int len) {
+        return PAIR(r, len);
+    }
+
     static final double M_LN2 = 0.69314718055994530942;
 
     static double log1p(double a) {
@@ -1454,6 +1780,18 @@ public class JFactory extends BDDFactoryIntImpl {
 
     static final int bddop_boundedSaturationBackward = 22;
 
+    static final int bddop_iteExist = 23;
+
+    static final int bddop_iteRelprev = 24;
+
+    /*
+     * Returns the operator of an iteRelprev entry of the ITE cache, which includes the variable set. As node numbers
+     * are at least 2, it is negative, unlike the other operators.
+     */
+    static final int ITERELPREVID(int vars) {
+        return -vars;
+    }
+
     int bdd_not(int r) {
         int res;
         int numReorder = 1;
@@ -1922,92 +2260,11 @@ public class JFactory extends BDDFactoryIntImpl {
         for (;;) {
             try {
                 INITREF();
-                applyop = op;
 
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                if (ZDD) {
-                    switch (op) {
-                        case bddop_and:
-                            res = zand_rec(l, r);
-                            break;
-                        case bddop_or:
-                            res = zor_rec(l, r);
-                            break;
-                        case bddop_diff:
-                            res = zdiff_rec(l, r);
-                            break;
-                        case bddop_imp: {
-                            // TODO: A real ZDD implementation
-                            int a = bdd_addref(zdiff_rec(l, r));
-                            res = zdiff_rec(univ, a);
-                            bdd_delref(a);
-                            break;
-                        }
-                        case bddop_invimp: {
-                            // TODO: A real ZDD implementation
-                            int a = bdd_addref(zdiff_rec(r, l));
-                            res = zdiff_rec(univ, a);
-                            bdd_delref(a);
-                            break;
-                        }
-                        case bddop_less: {
-                            // TODO: A real ZDD implementation
-                            res = zdiff_rec(r, l);
-                            break;
-                        }
-                        case bddop_nand: {
-                            // TODO: A real ZDD implementation
-                            int k = bdd_addref(zand_rec(l, r));
-                            res = zdiff_rec(univ, k);
-                            bdd_delref(k);
-                            break;
-                        }
-                        case bddop_nor: {
-                            // TODO: A real ZDD implementation
-                            int k = bdd_addref(zor_rec(l, r));
-                            res = zdiff_rec(univ, k);
-                            bdd_delref(k);
-                            break;
-                        }
-                        case bddop_xor: {
-                            // TODO: A real ZDD implementation
-                            int a = bdd_addref(zand_rec(l, r));
-                            int b = bdd_addref(zor_rec(l, r));
-                            res = zdiff_rec(b, a);
-                            bdd_delref(a);
-                            bdd_delref(b);
-                            break;
-                        }
-                        case bddop_biimp: {
-                            // TODO: A real ZDD implementation
-                            int a = bdd_addref(zand_rec(l, r));
-                            int b = bdd_addref(zor_rec(l, r));
-                            int c = bdd_addref(zdiff_rec(b, a));
-                            bdd_delref(a);
-                            bdd_delref(b);
-                            res = zdiff_rec(univ, c);
-                            bdd_delref(c);
-                            break;
-                        }
-                        default:
-                            // TODO: other operators
-                            throw new BDDException();
-                    }
-                } else {
-                    switch (op) {
-                        case bddop_and:
-                            res = and_rec(l, r);
-                            break;
-                        case bddop_or:
-                            res = or_rec(l, r);
-                            break;
-                        default:
-                            res = apply_rec(l, r);
-                            break;
-                    }
-                }
+                res = apply_op(l, r, op);
                 if (numReorder == 0) {
                     bdd_enable_reorder();
                 }
@@ -2026,69 +2283,305 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
-    int apply_rec(int l, int r) {
-        BddCacheDataI entry;
+    /* Applies an operator, from within the reorder retry loop of an operation */
+    int apply_op(int l, int r, int op) {
         int res;
 
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
-        }
-
-        if (VERIFY_ASSERTIONS) {
-            _assert(!ZDD);
-        }
-        if (VERIFY_ASSERTIONS) {
-            _assert(applyop != bddop_and && applyop != bddop_or);
-        }
-
-        switch (applyop) {
-            case bddop_xor:
-                if (l == r) {
-                    return 0;
-                }
-                if (ISZERO(l)) {
-                    return r;
-                }
-                if (ISZERO(r)) {
-                    return l;
+        applyop = op;
+        if (ZDD) {
+            switch (op) {
+                case bddop_and:
+                    res = zand_rec(l, r);
+                    break;
+                case bddop_or:
+                    res = zor_rec(l, r);
+                    break;
+                case bddop_diff:
+                    res = zdiff_rec(l, r);
+                    break;
+                case bddop_imp: {
+                    // TODO: A real ZDD implementation
+                    int a = PUSHREF(zdiff_rec(l, r));
+                    res = zdiff_rec(univ, a);
+                    POPREF(1);
+                    break;
                 }
-                break;
-            case bddop_nand:
-                if (ISZERO(l) || ISZERO(r)) {
-                    return 1;
+                case bddop_invimp: {
+                    // TODO: A real ZDD implementation
+                    int a = PUSHREF(zdiff_rec(r, l));
+                    res = zdiff_rec(univ, a);
+                    POPREF(1);
+                    break;
                 }
-                break;
-            case bddop_nor:
-                if (ISONE(l) || ISONE(r)) {
-                    return 0;
+                case bddop_less: {
+                    // TODO: A real ZDD implementation
+                    res = zdiff_rec(r, l);
+                    break;
                 }
-                break;
-            case bddop_imp:
-                if (ISZERO(l)) {
-                    return 1;
+                case bddop_nand: {
+                    // TODO: A real ZDD implementation
+                    int k = PUSHREF(zand_rec(l, r));
+                    res = zdiff_rec(univ, k);
+                    POPREF(1);
+                    break;
                 }
-                if (ISONE(l)) {
-                    return r;
+                case bddop_nor: {
+                    // TODO: A real ZDD implementation
+                    int k = PUSHREF(zor_rec(l, r));
+                    res = zdiff_rec(univ, k);
+                    POPREF(1);
+                    break;
                 }
-                if (ISONE(r)) {
-                    return 1;
+                case bddop_xor: {
+                    // TODO: A real ZDD implementation
+                    int a = PUSHREF(zand_rec(l, r));
+                    int b = PUSHREF(zor_rec(l, r));
+                    res = zdiff_rec(b, a);
+                    POPREF(2);
+                    break;
                 }
-                break;
-        }
-
-        if (ISCONST(l) && ISCONST(r)) {
-            res = oprres[applyop][l << 1 | r];
-        } else {
-            entry = BddCache_lookupI(applycache, APPLYHASH(l, r, applyop));
-
-            if (entry.a == l && entry.b == r && entry.c == applyop) {
-                if (cachestats.enabled) {
-                    cachestats.opHit++;
+                case bddop_biimp: {
+                    // TODO: A real ZDD implementation
+                    int a = PUSHREF(zand_rec(l, r));
+                    int b = PUSHREF(zor_rec(l, r));
+                    int c = PUSHREF(zdiff_rec(b, a));
+                    res = zdiff_rec(univ, c);
+                    POPREF(3);
+                    break;
                 }
-                return entry.res;
+                default:
+                    // TODO: other operators
+                    throw new BDDException();
             }
-            if (cachestats.enabled) {
-                cachestats.opMiss++;
+        } else if (ITERATIVE()) {
+            res = apply_iter(l, r);
+        } else {
+            switch (op) {
+                case bddop_and:
+                    res = and_rec(l, r);
+                    break;
+                case bddop_or:
+                    res = or_rec(l, r);
+                    break;
+                default:
+                    res = apply_rec(l, r);
+                    break;
+            }
+        }
+        return res;
+    }
+
+    /*
+     * Performs the pending operations of a batch, within a single reorder retry loop. Operations that completed before
+     * a reordering keep their referenced results, and the others are restarted.
+     */
+    void bdd_batch(IntBDDBatch batch) {
+        int[] kinds = batch.kinds;
+        int[] args = batch.args;
+        Object[] params = batch.params;
+        int[] results = batch.results;
+        int numReorder = 1;
+        int i;
+
+        for (i = batch.executed; i < batch.size; i++) {
+            switch (kinds[i]) {
+                case BATCH_INPUT:
+                    CHECKa(args[3 * i]);
+                    break;
+                case BATCH_EXIST:
+                case BATCH_FORALL:
+                    CHECKa(args[3 * i + 1]);
+                    break;
+                case BATCH_APPLYEX:
+                    CHECKa(args[3 * i + 2]);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
+        }
+        if (itecache == null) {
+            itecache = BddCacheI_init(cachesize);
+        }
+        if (quantcache == null) {
+            quantcache = BddCacheI_init(cachesize);
+        }
+        if (appexcache == null) {
+            appexcache = BddCacheI_init(cachesize);
+        }
+        if (replacecache == null) {
+            replacecache = BddCacheI_init(cachesize);
+        }
+
+        again:
+        for (;;) {
+            try {
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                for (i = batch.executed; i < batch.size; i++) {
+                    INITREF();
+                    results[i] = batch_op(kinds[i], args[3 * i], args[3 * i + 1], args[3 * i + 2], params[i], results);
+                    batch.executed = i + 1;
+                }
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+                numReorder--;
+                continue again;
+            }
+            break;
+        }
+
+        checkresize();
+    }
+
+    /* Performs an operation of a batch, from within its reorder retry loop, and returns its referenced result */
+    int batch_op(int kind, int a0, int a1, int a2, Object param, int[] results) {
+        int res;
+        switch (kind) {
+            case BATCH_INPUT:
+                res = a0; // Already referenced when it was added.
+                break;
+            case BATCH_APPLY:
+                res = bdd_addref(apply_op(results[a0], results[a1], ((BDDOp)param).id));
+                break;
+            case BATCH_NOT:
+                res = bdd_addref(ZDD ? zdiff_rec(univ, results[a0]) : not_rec(results[a0]));
+                break;
+            case BATCH_ITE:
+                res = bdd_addref(ZDD ? zite_rec(results[a0], results[a1], results[a2])
+                        : ite_rec(results[a0], results[a1], results[a2]));
+                break;
+            case BATCH_EXIST:
+            case BATCH_FORALL:
+                if (a1 < 2) { /* Empty set */
+                    res = bdd_addref(results[a0]);
+                    break;
+                }
+                if (varset2vartable(a1) < 0) {
+                    res = bddfalse;
+                    break;
+                }
+                if (kind == BATCH_EXIST) {
+                    quantid = (a1 << 3) | CACHEID_EXIST; /* FIXME: range */
+                    applyop = bddop_or;
+                } else {
+                    quantid = (a1 << 3) | CACHEID_FORALL;
+                    applyop = bddop_and;
+                }
+                res = bdd_addref(ZDD ? zquant_rec(results[a0], 0)
+                        : ITERATIVE() ? quant_iter(results[a0]) : quant_rec(results[a0]));
+                break;
+            case BATCH_APPLYEX: {
+                int opr = ((BDDOp)param).id;
+                if (a2 < 2) { /* Empty set */
+                    res = bdd_addref(apply_op(results[a0], results[a1], opr));
+                    break;
+                }
+                if (varset2vartable(a2) < 0) {
+                    res = bddfalse;
+                    break;
+                }
+                applyop = bddop_or;
+                appexop = opr;
+                appexid = (a2 << 5) | (appexop << 1); /* FIXME: range! */
+                quantid = (appexid << 3) | CACHEID_APPEX;
+                if (opr == bddop_and) {
+                    res = ZDD ? zrelprod_rec(results[a0], results[a1], 0)
+                            : ITERATIVE() ? relprod_iter(results[a0], results[a1])
+                                    : relprod_rec(results[a0], results[a1]);
+                } else {
+                    res = appquant_rec(results[a0], results[a1]);
+                }
+                res = bdd_addref(res);
+                break;
+            }
+            case BATCH_REPLACE: {
+                bddPair pair = (bddPair)param;
+                replacepair = pair.result;
+                replacelast = pair.last;
+                replaceid = (pair.id << 2) | CACHEID_REPLACE;
+                if (ZDD) {
+                    applyop = bddop_or;
+                }
+                res = bdd_addref(replace_rec(results[a0]));
+                break;
+            }
+            default:
+                throw new BDDException("Unknown batch operation: " + kind);
+        }
+        return res;
+    }
+
+    int apply_rec(int l, int r) {
+        BddCacheDataI entry;
+        int res;
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
+        }
+        if (VERIFY_ASSERTIONS) {
+            _assert(applyop != bddop_and && applyop != bddop_or);
+        }
+
+        switch (applyop) {
+            case bddop_xor:
+                if (l == r) {
+                    return 0;
+                }
+                if (ISZERO(l)) {
+                    return r;
+                }
+                if (ISZERO(r)) {
+                    return l;
+                }
+                break;
+            case bddop_nand:
+                if (ISZERO(l) || ISZERO(r)) {
+                    return 1;
+                }
+                break;
+            case bddop_nor:
+                if (ISONE(l) || ISONE(r)) {
+                    return 0;
+                }
+                break;
+            case bddop_imp:
+                if (ISZERO(l)) {
+                    return 1;
+                }
+                if (ISONE(l)) {
+                    return r;
+                }
+                if (ISONE(r)) {
+                    return 1;
+                }
+                break;
+        }
+
+        if (ISCONST(l) && ISCONST(r)) {
+            res = oprres[applyop][l << 1 | r];
+        } else {
+            entry = BddCache_lookupI(applycache, APPLYHASH(l, r, applyop));
+
+            if (entry.a == l && entry.b == r && entry.c == applyop) {
+                if (cachestats.enabled) {
+                    cachestats.opHit++;
+                }
+                return entry.res;
+            }
+            if (cachestats.enabled) {
+                cachestats.opMiss++;
             }
 
             if (LEVEL(l) == LEVEL(r)) {
@@ -2116,6 +2609,153 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
+    /**
+     * Returns the result of applying {@link #applyop} to the given operands, if it follows from a terminal case, or
+     * {@code -1} otherwise. Used by {@link #apply_iter}, and matches {@link #and_rec}, {@link #or_rec} and
+     * {@link #apply_rec}.
+     */
+    int apply_terminal(int l, int r) {
+        switch (applyop) {
+            case bddop_and:
+                if (l == r) {
+                    return l;
+                }
+                if (ISZERO(l) || ISZERO(r)) {
+                    return 0;
+                }
+                if (ISONE(l)) {
+                    return r;
+                }
+                if (ISONE(r)) {
+                    return l;
+                }
+                return -1;
+            case bddop_or:
+                if (l == r) {
+                    return l;
+                }
+                if (ISONE(l) || ISONE(r)) {
+                    return 1;
+                }
+                if (ISZERO(l)) {
+                    return r;
+                }
+                if (ISZERO(r)) {
+                    return l;
+                }
+                return -1;
+            case bddop_xor:
+                if (l == r) {
+                    return 0;
+                }
+                if (ISZERO(l)) {
+                    return r;
+                }
+                if (ISZERO(r)) {
+                    return l;
+                }
+                break;
+            case bddop_nand:
+                if (ISZERO(l) || ISZERO(r)) {
+                    return 1;
+                }
+                break;
+            case bddop_nor:
+                if (ISONE(l) || ISONE(r)) {
+                    return 0;
+                }
+                break;
+            case bddop_imp:
+                if (ISZERO(l)) {
+                    return 1;
+                }
+                if (ISONE(l)) {
+                    return r;
+                }
+                if (ISONE(r)) {
+                    return 1;
+                }
+                break;
+        }
+
+        if (ISCONST(l) && ISCONST(r)) {
+            return oprres[applyop][l << 1 | r];
+        }
+        return -1;
+    }
+
+    /**
+     * Iterative version of {@link #and_rec}, {@link #or_rec} and {@link #apply_rec}, for {@link #applyop}. Uses
+     * {@link #iterstack} rather than the Java stack. Its frames are (l, r, level), where the level is {@code -1} if the
+     * operands still have to be visited, and is the level of the node to create from the two results on the reference
+     * stack otherwise.
+     */
+    int apply_iter(int l, int r) {
+        BddCacheDataI entry;
+        int res;
+
+        int base = iterstacktop;
+        ITERPUSH(l);
+        ITERPUSH(r);
+        ITERPUSH(-1);
+
+        while (iterstacktop > base) {
+            int level = iterstack[iterstacktop - 1];
+            r = iterstack[iterstacktop - 2];
+            l = iterstack[iterstacktop - 3];
+            iterstacktop -= 3;
+
+            if (level < 0) {
+                if (cachestats.enabled) {
+                    cachestats.opAccess++;
+                }
+
+                res = apply_terminal(l, r);
+                if (res < 0) {
+                    entry = BddCache_lookupI(applycache, APPLYHASH(l, r, applyop));
+                    if (entry.a == l && entry.b == r && entry.c == applyop) {
+                        if (cachestats.enabled) {
+                            cachestats.opHit++;
+                        }
+                        res = entry.res;
+                    } else {
+                        if (cachestats.enabled) {
+                            cachestats.opMiss++;
+                        }
+
+                        // Visit the low operands first, so that their result ends up below the high one.
+                        int LEVEL_l = LEVEL(l);
+                        int LEVEL_r = LEVEL(r);
+                        ITERPUSH(l);
+                        ITERPUSH(r);
+                        ITERPUSH(Math.min(LEVEL_l, LEVEL_r));
+                        ITERPUSH(LEVEL_l <= LEVEL_r ? HIGH(l) : l);
+                        ITERPUSH(LEVEL_r <= LEVEL_l ? HIGH(r) : r);
+                        ITERPUSH(-1);
+                        ITERPUSH(LEVEL_l <= LEVEL_r ? LOW(l) : l);
+                        ITERPUSH(LEVEL_r <= LEVEL_l ? LOW(r) : r);
+                        ITERPUSH(-1);
+                        continue;
+                    }
+                }
+            } else {
+                res = bdd_makenode(level, READREF(2), READREF(1));
+                POPREF(2);
+
+                entry = BddCache_lookupI(applycache, APPLYHASH(l, r, applyop));
+                entry.a = l;
+                entry.b = r;
+                entry.c = applyop;
+                entry.res = res;
+            }
+            PUSHREF(res);
+        }
+
+        res = READREF(1);
+        POPREF(1);
+        return res;
+    }
+
     int and_rec(int l, int r) {
         BddCacheDataI entry;
         int res;
@@ -2501,7 +3141,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                result = relnext_rec(states, relation, vars);
+                result = ITERATIVE() ? relnext_iter(states, relation, vars) : relnext_rec(states, relation, vars);
 
                 if (numReorder == 0) {
                     bdd_enable_reorder();
@@ -2695,18 +3335,267 @@ public class JFactory extends BDDFactoryIntImpl {
         return result;
     }
 
-    int bdd_relnextUnion(int states, int relation, int union, int vars) {
-        // Check validity of BDD nodes.
-        CHECKa(states);
-        CHECKa(relation);
-        CHECKa(union);
-        CHECKa(vars);
+    /** The number of elements of a frame of {@link #relnext_iter} on {@link #iterstack}. */
+    static final int RELNEXT_FRAME = 15;
 
-        // Initialize caches if needed.
-        if (applycache == null) {
-            applycache = BddCacheI_init(cachesize);
-        }
-        if (itecache == null) {
+    /**
+     * Iterative version of {@link #relnext_rec}. Its frames on {@link #iterstack} are (states, relation, vars, phase,
+     * kind, level, child vars, and the states and relation of up to four children). In phase {@code 0}, only the first
+     * three are set, and the operands still have to be visited. The other phases indicate how many of the children
+     * have been visited. The kind indicates how the results of the children are combined: {@code 0} for two children
+     * that form the low and high branch of a node at the level, {@code 1} for two children that are disjoined, and
+     * {@code 2} for four children that are pairwise disjoined to form the low and high branch of a node.
+     */
+    int relnext_iter(int states, int relation, int vars) {
+        BddCacheDataI entry;
+        int res;
+
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
+        }
+
+        int base = iterstacktop;
+        relnext_push(states, relation, vars);
+
+        while (iterstacktop > base) {
+            int f = iterstacktop - RELNEXT_FRAME;
+            states = iterstack[f];
+            relation = iterstack[f + 1];
+            vars = iterstack[f + 2];
+            int phase = iterstack[f + 3];
+            int kind = iterstack[f + 4];
+            int level = iterstack[f + 5];
+
+            if (phase == 0) {
+                res = relnext_visit(f);
+                if (res < 0) {
+                    // The frame has been filled in, visit the first child.
+                    relnext_push(iterstack[f + 7], iterstack[f + 8], iterstack[f + 6]);
+                    continue;
+                }
+            } else if (phase == 1 || phase == 3) {
+                iterstack[f + 3] = phase + 1;
+                relnext_push(iterstack[f + 7 + 2 * phase], iterstack[f + 8 + 2 * phase], iterstack[f + 6]);
+                continue;
+            } else if (phase == 2 && kind == 2) {
+                res = apply_iter(READREF(2), READREF(1));
+                POPREF(2);
+                PUSHREF(res);
+                iterstack[f + 3] = 3;
+                relnext_push(iterstack[f + 11], iterstack[f + 12], iterstack[f + 6]);
+                continue;
+            } else {
+                if (kind == 1) {
+                    res = apply_iter(READREF(2), READREF(1));
+                    POPREF(2);
+                } else {
+                    if (kind == 2) {
+                        res = apply_iter(READREF(2), READREF(1));
+                        POPREF(2);
+                        PUSHREF(res);
+                    }
+                    res = bdd_makenode(level, READREF(2), READREF(1));
+                    POPREF(2);
+                }
+
+                entry = BddCache_lookupI(itecache, QUADRUPLE(states, relation, vars, bddop_relnext));
+                entry.a = states;
+                entry.b = relation;
+                entry.c = vars;
+                entry.d = 0;
+                entry.e = bddop_relnext;
+                entry.res = res;
+            }
+            iterstacktop = f;
+            PUSHREF(res);
+        }
+
+        res = READREF(1);
+        POPREF(1);
+        return res;
+    }
+
+    /** Pushes a frame for {@link #relnext_iter}, for operands that still have to be visited. */
+    void relnext_push(int states, int relation, int vars) {
+        int f = iterstacktop;
+        for (int n = 0; n < RELNEXT_FRAME; n++) {
+            ITERPUSH(0);
+        }
+        iterstack[f] = states;
+        iterstack[f + 1] = relation;
+        iterstack[f + 2] = vars;
+    }
+
+    /**
+     * Visits the operands of a frame of {@link #relnext_iter}. Returns the result if it follows from a terminal case or
+     * the cache. Otherwise, fills in the rest of the frame and returns {@code -1}.
+     */
+    int relnext_visit(int f) {
+        int states = iterstack[f];
+        int relation = iterstack[f + 1];
+        int vars = iterstack[f + 2];
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        // Terminals cases.
+        if (ISZERO(states) || ISZERO(relation)) {
+            return bddfalse;
+        }
+        if (ISONE(states) && ISONE(relation)) {
+            return bddtrue;
+        }
+        if (ISCONST(vars)) {
+            return states;
+        }
+
+        // Determine the top level of 'states' and 'relation'.
+        int level_states = LEVEL(states);
+        int level_relation = LEVEL(relation);
+        int level = level_states < level_relation ? level_states : level_relation;
+
+        // Skip levels in the variable set until we reach (or exceed) 'level'.
+        boolean sameHeight = false;
+
+        for (;;) {
+            int level_vars = LEVEL(vars);
+
+            if (level == level_vars || (level ^ 1) == level_vars) {
+                sameHeight = true;
+                break;
+            }
+
+            if (level < level_vars) {
+                break;
+            }
+
+            vars = HIGH(vars);
+
+            if (ISCONST(vars)) {
+                return states;
+            }
+        }
+
+        // Consult the operation cache.
+        BddCacheDataI entry = BddCache_lookupI(itecache, QUADRUPLE(states, relation, vars, bddop_relnext));
+
+        if (entry.a == states && entry.b == relation && entry.c == vars && entry.d == 0 && entry.e == bddop_relnext) {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
+            }
+            return entry.res;
+        }
+
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
+
+        // Determine the children, like relnext_rec does.
+        iterstack[f + 2] = vars;
+        iterstack[f + 3] = 1;
+        if (sameHeight) {
+            int level_oldvar = level & (~1);
+            int level_newvar = level_oldvar + 1;
+
+            int s0, s1, r0, r1, r00, r01, r10, r11;
+            if (!ISCONST(states) && level_states == level_oldvar) {
+                s0 = LOW(states);
+                s1 = HIGH(states);
+            } else {
+                s0 = states;
+                s1 = states;
+            }
+            if (!ISCONST(relation) && level_relation == level_oldvar) {
+                r0 = LOW(relation);
+                r1 = HIGH(relation);
+            } else {
+                r0 = relation;
+                r1 = relation;
+            }
+            if (!ISCONST(r0) && LEVEL(r0) == level_newvar) {
+                r00 = LOW(r0);
+                r01 = HIGH(r0);
+            } else {
+                r00 = r0;
+                r01 = r0;
+            }
+            if (!ISCONST(r1) && LEVEL(r1) == level_newvar) {
+                r10 = LOW(r1);
+                r11 = HIGH(r1);
+            } else {
+                r10 = r1;
+                r11 = r1;
+            }
+
+            int nextVars = HIGH(vars);
+
+            iterstack[f + 5] = level_oldvar;
+            iterstack[f + 6] = nextVars;
+            if (LEVEL(vars) == level_newvar || LEVEL(nextVars) == level_newvar) {
+                // We are considering the new-state variable, so apply both the conjunction and quantification.
+                relnext_children(f, 2, s0, r00, s1, r10, s0, r01, s1, r11);
+            } else {
+                // We are not considering the new-state variable, so do not quantify.
+                relnext_children(f, 0, s0, r00, s1, r11, 0, 0, 0, 0);
+            }
+        } else {
+            int s0, s1, r0, r1;
+            if (!ISCONST(states) && level_states == level) {
+                s0 = LOW(states);
+                s1 = HIGH(states);
+            } else {
+                s0 = states;
+                s1 = states;
+            }
+            if (!ISCONST(relation) && level_relation == level) {
+                r0 = LOW(relation);
+                r1 = HIGH(relation);
+            } else {
+                r0 = relation;
+                r1 = relation;
+            }
+
+            iterstack[f + 5] = level;
+            iterstack[f + 6] = vars;
+            if (r0 != r1) {
+                if (s0 != s1) {
+                    relnext_children(f, 2, s0, r0, s0, r1, s1, r0, s1, r1);
+                } else {
+                    relnext_children(f, 1, s0, r0, s1, r1, 0, 0, 0, 0);
+                }
+            } else {
+                relnext_children(f, 0, s0, r0, s1, r1, 0, 0, 0, 0);
+            }
+        }
+        return -1;
+    }
+
+    /** Sets the kind and children of a frame of {@link #relnext_iter}. */
+    void relnext_children(int f, int kind, int s0, int r0, int s1, int r1, int s2, int r2, int s3, int r3) {
+        iterstack[f + 4] = kind;
+        iterstack[f + 7] = s0;
+        iterstack[f + 8] = r0;
+        iterstack[f + 9] = s1;
+        iterstack[f + 10] = r1;
+        iterstack[f + 11] = s2;
+        iterstack[f + 12] = r2;
+        iterstack[f + 13] = s3;
+        iterstack[f + 14] = r3;
+    }
+
+    int bdd_relnextUnion(int states, int relation, int union, int vars) {
+        // Check validity of BDD nodes.
+        CHECKa(states);
+        CHECKa(relation);
+        CHECKa(union);
+        CHECKa(vars);
+
+        // Initialize caches if needed.
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
+        }
+        if (itecache == null) {
             itecache = BddCacheI_init(cachesize);
         }
 
@@ -3432,14 +4321,12 @@ public class JFactory extends BDDFactoryIntImpl {
         return result;
     }
 
-    int bdd_relprevUnion(int relation, int states, int union, int vars) {
-        // Check validity of BDD nodes.
-        CHECKa(relation);
-        CHECKa(states);
-        CHECKa(union);
+    int bdd_iteExist(int f, int g, int h, int vars) {
+        CHECKa(f);
+        CHECKa(g);
+        CHECKa(h);
         CHECKa(vars);
 
-        // Initialize caches if needed.
         if (applycache == null) {
             applycache = BddCacheI_init(cachesize);
         }
@@ -3447,9 +4334,6 @@ public class JFactory extends BDDFactoryIntImpl {
             itecache = BddCacheI_init(cachesize);
         }
 
-        // We may also apply the OR operation while computing 'relprevUnion'.
-        applyop = bddop_or;
-
         int result;
         int numReorder = 1;
 
@@ -3461,7 +4345,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                result = relprevUnion_rec(relation, states, union, vars);
+                result = iteExist_rec(f, g, h, vars);
 
                 if (numReorder == 0) {
                     bdd_enable_reorder();
@@ -3478,7 +4362,7 @@ public class JFactory extends BDDFactoryIntImpl {
         return result;
     }
 
-    int relprevUnion_rec(int relation, int states, int union, int vars) {
+    int iteExist_rec(int f, int g, int h, int vars) {
         if (VERIFY_ASSERTIONS) {
             _assert(!ZDD);
         }
@@ -3487,56 +4371,49 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opAccess++;
         }
 
-        // Terminals cases.
-        if (ISZERO(union)) {
-            return relprev_rec(relation, states, vars);
-        }
-        if (ISONE(union)) {
-            return bddtrue;
-        }
-        if (ISZERO(states) || ISZERO(relation)) {
-            return union;
-        }
-        if (ISONE(states) && ISONE(relation)) {
-            return bddtrue;
+        // Terminal cases. If the 'ite' reduces to a single operand 'x', continue with 'ite(x, true, false)'.
+        if (ISCONST(f)) {
+            int x = ISONE(f) ? g : h;
+            if (ISCONST(x)) {
+                return x;
+            }
+            f = x;
+            g = bddtrue;
+            h = bddfalse;
+        } else if (g == h) {
+            if (ISCONST(g)) {
+                return g;
+            }
+            f = g;
+            g = bddtrue;
+            h = bddfalse;
         }
         if (ISCONST(vars)) {
-            return or_rec(states, union);
+            return ite_rec(f, g, h);
         }
 
-        // Determine the top level of 'states' and 'relation'.
-        int level_relation = LEVEL(relation);
-        int level_states = LEVEL(states);
-        int level = level_relation < level_states ? level_relation : level_states;
+        // Determine the top level of 'f', 'g' and 'h'.
+        int level = LEVEL(f);
+        if (LEVEL(g) < level) {
+            level = LEVEL(g);
+        }
+        if (LEVEL(h) < level) {
+            level = LEVEL(h);
+        }
 
         // Skip levels in the variable set until we reach (or exceed) 'level'.
-        boolean sameHeight = false;
-
-        for (;;) {
-            int level_vars = LEVEL(vars);
-
-            if (level == level_vars || (level ^ 1) == level_vars) {
-                sameHeight = true;
-                break;
-            }
-
-            if (level < level_vars) {
-                break;
-            }
-
+        while (LEVEL(vars) < level) {
             vars = HIGH(vars);
 
             if (ISCONST(vars)) {
-                return or_rec(states, union);
+                return ite_rec(f, g, h);
             }
         }
 
         // Consult the operation cache.
-        BddCacheDataI entry = BddCache_lookupI(itecache, QUINTUPLE(relation, states, union, vars, bddop_relprevUnion));
+        BddCacheDataI entry = BddCache_lookupI(itecache, QUINTUPLE(f, g, h, vars, bddop_iteExist));
 
-        if (entry.a == relation && entry.b == states && entry.c == union && entry.d == vars
-                && entry.e == bddop_relprevUnion)
-        {
+        if (entry.a == f && entry.b == g && entry.c == h && entry.d == vars && entry.e == bddop_iteExist) {
             if (cachestats.enabled) {
                 cachestats.opHit++;
             }
@@ -3548,55 +4425,182 @@ public class JFactory extends BDDFactoryIntImpl {
         }
 
         // Could not find a cached result, so perform the recursive operation to compute the result.
-        int result;
-
-        int level_union = LEVEL(union);
+        int f0 = LOW_AT(f, level);
+        int f1 = HIGH_AT(f, level);
+        int g0 = LOW_AT(g, level);
+        int g1 = HIGH_AT(g, level);
+        int h0 = LOW_AT(h, level);
+        int h1 = HIGH_AT(h, level);
 
-        if (level_union < (level & (~1))) {
-            PUSHREF(relprevUnion_rec(relation, states, LOW(union), vars));
-            PUSHREF(relprevUnion_rec(relation, states, HIGH(union), vars));
-            result = bdd_makenode(level_union, READREF(2), READREF(1));
-            POPREF(2);
-        } else if (sameHeight) {
-            int level_oldvar = level & (~1);
-            int level_newvar = level_oldvar + 1;
+        int result;
 
-            int s0, s1, r0, r1, r00, r01, r10, r11, u0, u1;
-            if (!ISCONST(relation) && level_relation == level_oldvar) {
-                r0 = LOW(relation);
-                r1 = HIGH(relation);
-            } else {
-                r0 = relation;
-                r1 = relation;
-            }
-            if (!ISCONST(states) && level_states == level_oldvar) {
-                s0 = LOW(states);
-                s1 = HIGH(states);
+        if (LEVEL(vars) == level) {
+            // Quantify the variable, skipping the second branch if the first one is already 'true'.
+            int nextVars = HIGH(vars);
+            int result0 = iteExist_rec(f0, g0, h0, nextVars);
+            if (ISONE(result0)) {
+                result = result0;
             } else {
-                s0 = states;
-                s1 = states;
+                PUSHREF(result0);
+                PUSHREF(iteExist_rec(f1, g1, h1, nextVars));
+                result = or_rec(READREF(2), READREF(1));
+                POPREF(2);
             }
-            if (!ISCONST(r0) && LEVEL(r0) == level_newvar) {
-                r00 = LOW(r0);
-                r01 = HIGH(r0);
-            } else {
-                r00 = r0;
-                r01 = r0;
+        } else {
+            PUSHREF(iteExist_rec(f0, g0, h0, vars));
+            PUSHREF(iteExist_rec(f1, g1, h1, vars));
+            result = bdd_makenode(level, READREF(2), READREF(1));
+            POPREF(2);
+        }
+
+        // Update the operation cache.
+        entry.a = f;
+        entry.b = g;
+        entry.c = h;
+        entry.d = vars;
+        entry.e = bddop_iteExist;
+        entry.res = result;
+
+        return result;
+    }
+
+    int bdd_iteRelprev(int f, int g, int h, int states, int vars) {
+        // Check validity of BDD nodes.
+        CHECKa(f);
+        CHECKa(g);
+        CHECKa(h);
+        CHECKa(states);
+        CHECKa(vars);
+
+        // Initialize caches if needed.
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
+        }
+        if (itecache == null) {
+            itecache = BddCacheI_init(cachesize);
+        }
+
+        // We may also apply the OR operation while computing 'relprev'.
+        applyop = bddop_or;
+
+        int result;
+        int numReorder = 1;
+
+        again:
+        for (;;) {
+            try {
+                INITREF();
+
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                result = iteRelprev_rec(f, g, h, states, vars);
+
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+                numReorder--;
+                continue again;
             }
-            if (!ISCONST(r1) && LEVEL(r1) == level_newvar) {
-                r10 = LOW(r1);
-                r11 = HIGH(r1);
-            } else {
-                r10 = r1;
-                r11 = r1;
+            break;
+        }
+
+        checkresize();
+        return result;
+    }
+
+    int iteRelprev_rec(int f, int g, int h, int states, int vars) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
+        }
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        // Terminals cases. If the 'ite' reduces to a single operand, continue with a regular 'relprev'.
+        if (ISZERO(states)) {
+            return bddfalse;
+        }
+        if (ISCONST(f)) {
+            return relprev_rec(ISONE(f) ? g : h, states, vars);
+        }
+        if (g == h) {
+            return relprev_rec(g, states, vars);
+        }
+        if (ISONE(g) && ISZERO(h)) {
+            return relprev_rec(f, states, vars);
+        }
+        if (ISCONST(vars)) {
+            return relprev_rec(ite_rec(f, g, h), states, vars);
+        }
+
+        // Determine the top level of the relation 'ite(f, g, h)' and 'states'.
+        int level_relation = LEVEL(f);
+        if (LEVEL(g) < level_relation) {
+            level_relation = LEVEL(g);
+        }
+        if (LEVEL(h) < level_relation) {
+            level_relation = LEVEL(h);
+        }
+        int level_states = LEVEL(states);
+        int level = level_relation < level_states ? level_relation : level_states;
+
+        // Skip levels in the variable set until we reach (or exceed) 'level'.
+        boolean sameHeight = false;
+
+        for (;;) {
+            int level_vars = LEVEL(vars);
+
+            if (level == level_vars || (level ^ 1) == level_vars) {
+                sameHeight = true;
+                break;
             }
-            if (level_union == level_oldvar) {
-                u0 = LOW(union);
-                u1 = HIGH(union);
-            } else {
-                u0 = union;
-                u1 = union;
+
+            if (level < level_vars) {
+                break;
+            }
+
+            vars = HIGH(vars);
+
+            if (ISCONST(vars)) {
+                return relprev_rec(ite_rec(f, g, h), states, vars);
+            }
+        }
+
+        // Consult the operation cache. The entry has no room for both the operator and the variable set, so the
+        // variable set is stored in place of the operator, see ITERELPREVID.
+        int id = ITERELPREVID(vars);
+        BddCacheDataI entry = BddCache_lookupI(itecache, QUINTUPLE(f, g, h, states, id));
+
+        if (entry.a == f && entry.b == g && entry.c == h && entry.d == states && entry.e == id) {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
             }
+            return entry.res;
+        }
+
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
+
+        // Could not find a cached result, so perform the recursive operation to compute the result.
+        int result;
+
+        if (sameHeight) {
+            int level_oldvar = level & (~1);
+            int level_newvar = level_oldvar + 1;
+
+            int s0 = LOW_AT(states, level_oldvar);
+            int s1 = HIGH_AT(states, level_oldvar);
+            int f0 = LOW_AT(f, level_oldvar);
+            int f1 = HIGH_AT(f, level_oldvar);
+            int g0 = LOW_AT(g, level_oldvar);
+            int g1 = HIGH_AT(g, level_oldvar);
+            int h0 = LOW_AT(h, level_oldvar);
+            int h1 = HIGH_AT(h, level_oldvar);
 
             int nextVars = HIGH(vars);
 
@@ -3608,13 +4612,17 @@ public class JFactory extends BDDFactoryIntImpl {
 
             if (quantify) {
                 // We are considering the new-state variable, so apply both the conjunction and quantification.
-                PUSHREF(relprevUnion_rec(r00, s0, u0, nextVars));
-                PUSHREF(relprevUnion_rec(r01, s1, u0, nextVars));
+                PUSHREF(iteRelprev_rec(LOW_AT(f0, level_newvar), LOW_AT(g0, level_newvar), LOW_AT(h0, level_newvar),
+                        s0, nextVars));
+                PUSHREF(iteRelprev_rec(HIGH_AT(f0, level_newvar), HIGH_AT(g0, level_newvar),
+                        HIGH_AT(h0, level_newvar), s1, nextVars));
                 int result0 = or_rec(READREF(2), READREF(1));
                 POPREF(2);
                 PUSHREF(result0);
-                PUSHREF(relprevUnion_rec(r10, s0, u1, nextVars));
-                PUSHREF(relprevUnion_rec(r11, s1, u1, nextVars));
+                PUSHREF(iteRelprev_rec(LOW_AT(f1, level_newvar), LOW_AT(g1, level_newvar), LOW_AT(h1, level_newvar),
+                        s0, nextVars));
+                PUSHREF(iteRelprev_rec(HIGH_AT(f1, level_newvar), HIGH_AT(g1, level_newvar),
+                        HIGH_AT(h1, level_newvar), s1, nextVars));
                 int result1 = or_rec(READREF(2), READREF(1));
                 POPREF(2);
                 PUSHREF(result1);
@@ -3622,79 +4630,67 @@ public class JFactory extends BDDFactoryIntImpl {
                 POPREF(2);
             } else {
                 // We are not considering the new-state variable, so do not quantify.
-                PUSHREF(relprevUnion_rec(r00, s0, u0, nextVars));
-                PUSHREF(relprevUnion_rec(r11, s1, u1, nextVars));
+                PUSHREF(iteRelprev_rec(LOW_AT(f0, level_newvar), LOW_AT(g0, level_newvar), LOW_AT(h0, level_newvar),
+                        s0, nextVars));
+                PUSHREF(iteRelprev_rec(HIGH_AT(f1, level_newvar), HIGH_AT(g1, level_newvar),
+                        HIGH_AT(h1, level_newvar), s1, nextVars));
                 result = bdd_makenode(level_oldvar, READREF(2), READREF(1));
                 POPREF(2);
             }
         } else {
-            int s0, s1, r0, r1, u0, u1;
-            if (!ISCONST(relation) && level_relation == level) {
-                r0 = LOW(relation);
-                r1 = HIGH(relation);
-            } else {
-                r0 = relation;
-                r1 = relation;
-            }
-            if (!ISCONST(states) && level_states == level) {
-                s0 = LOW(states);
-                s1 = HIGH(states);
-            } else {
-                s0 = states;
-                s1 = states;
-            }
-            if (level_union == level) {
-                u0 = LOW(union);
-                u1 = HIGH(union);
-            } else {
-                u0 = union;
-                u1 = union;
-            }
-
-            if (r0 != r1) {
+            int s0 = LOW_AT(states, level);
+            int s1 = HIGH_AT(states, level);
+            int f0 = LOW_AT(f, level);
+            int f1 = HIGH_AT(f, level);
+            int g0 = LOW_AT(g, level);
+            int g1 = HIGH_AT(g, level);
+            int h0 = LOW_AT(h, level);
+            int h1 = HIGH_AT(h, level);
+
+            if (level_relation == level) {
                 if (s0 != s1) {
-                    PUSHREF(relprevUnion_rec(r0, s0, u0, vars));
-                    PUSHREF(relprevUnion_rec(r1, s0, u0, vars));
+                    PUSHREF(iteRelprev_rec(f0, g0, h0, s0, vars));
+                    PUSHREF(iteRelprev_rec(f1, g1, h1, s0, vars));
                     int result0 = or_rec(READREF(2), READREF(1));
                     POPREF(2);
                     PUSHREF(result0);
-                    PUSHREF(relprevUnion_rec(r0, s1, u1, vars));
-                    PUSHREF(relprevUnion_rec(r1, s1, u1, vars));
+                    PUSHREF(iteRelprev_rec(f0, g0, h0, s1, vars));
+                    PUSHREF(iteRelprev_rec(f1, g1, h1, s1, vars));
                     int result1 = or_rec(READREF(2), READREF(1));
                     POPREF(2);
                     PUSHREF(result1);
                     result = bdd_makenode(level, result0, result1);
                     POPREF(2);
                 } else {
-                    PUSHREF(relprevUnion_rec(r0, s0, u0, vars));
-                    PUSHREF(relprevUnion_rec(r1, s1, u1, vars));
+                    PUSHREF(iteRelprev_rec(f0, g0, h0, s0, vars));
+                    PUSHREF(iteRelprev_rec(f1, g1, h1, s1, vars));
                     result = or_rec(READREF(2), READREF(1));
                     POPREF(2);
                 }
             } else {
-                PUSHREF(relprevUnion_rec(r0, s0, u0, vars));
-                PUSHREF(relprevUnion_rec(r1, s1, u1, vars));
+                PUSHREF(iteRelprev_rec(f0, g0, h0, s0, vars));
+                PUSHREF(iteRelprev_rec(f1, g1, h1, s1, vars));
                 result = bdd_makenode(level, READREF(2), READREF(1));
                 POPREF(2);
             }
         }
 
         // Update the operation cache.
-        entry.a = relation;
-        entry.b = states;
-        entry.c = union;
-        entry.d = vars;
-        entry.e = bddop_relprevUnion;
+        entry.a = f;
+        entry.b = g;
+        entry.c = h;
+        entry.d = states;
+        entry.e = id;
         entry.res = result;
 
         return result;
     }
 
-    int bdd_relprevIntersection(int relation, int states, int restriction, int vars) {
+    int bdd_relprevUnion(int relation, int states, int union, int vars) {
         // Check validity of BDD nodes.
         CHECKa(relation);
         CHECKa(states);
-        CHECKa(restriction);
+        CHECKa(union);
         CHECKa(vars);
 
         // Initialize caches if needed.
@@ -3705,8 +4701,7 @@ public class JFactory extends BDDFactoryIntImpl {
             itecache = BddCacheI_init(cachesize);
         }
 
-        // We may also apply the AND and OR operation while computing 'relprevIntersection'.
-        // Let's configure the OR operation as the default.
+        // We may also apply the OR operation while computing 'relprevUnion'.
         applyop = bddop_or;
 
         int result;
@@ -3720,7 +4715,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                result = relprevIntersection_rec(relation, states, restriction, vars);
+                result = relprevUnion_rec(relation, states, union, vars);
 
                 if (numReorder == 0) {
                     bdd_enable_reorder();
@@ -3737,31 +4732,30 @@ public class JFactory extends BDDFactoryIntImpl {
         return result;
     }
 
-    int relprevIntersection_rec(int relation, int states, int restriction, int vars) {
+    int relprevUnion_rec(int relation, int states, int union, int vars) {
         if (VERIFY_ASSERTIONS) {
             _assert(!ZDD);
         }
 
-        if (ISONE(restriction)) {
-            return relprev_rec(relation, states, vars);
-        }
-
         if (cachestats.enabled) {
             cachestats.opAccess++;
         }
 
         // Terminals cases.
-        if (ISZERO(relation) || ISZERO(states) || ISZERO(restriction)) {
-            return bddfalse;
+        if (ISZERO(union)) {
+            return relprev_rec(relation, states, vars);
         }
-        if (ISONE(relation) && ISONE(states)) {
-            return restriction;
+        if (ISONE(union)) {
+            return bddtrue;
+        }
+        if (ISZERO(states) || ISZERO(relation)) {
+            return union;
+        }
+        if (ISONE(states) && ISONE(relation)) {
+            return bddtrue;
         }
         if (ISCONST(vars)) {
-            applyop = bddop_and;
-            int result = and_rec(states, restriction);
-            applyop = bddop_or;
-            return result;
+            return or_rec(states, union);
         }
 
         // Determine the top level of 'states' and 'relation'.
@@ -3787,19 +4781,15 @@ public class JFactory extends BDDFactoryIntImpl {
             vars = HIGH(vars);
 
             if (ISCONST(vars)) {
-                applyop = bddop_and;
-                int result = and_rec(states, restriction);
-                applyop = bddop_or;
-                return result;
+                return or_rec(states, union);
             }
         }
 
         // Consult the operation cache.
-        BddCacheDataI entry = BddCache_lookupI(itecache,
-                QUINTUPLE(relation, states, restriction, vars, bddop_relprevIntersection));
+        BddCacheDataI entry = BddCache_lookupI(itecache, QUINTUPLE(relation, states, union, vars, bddop_relprevUnion));
 
-        if (entry.a == relation && entry.b == states && entry.c == restriction && entry.d == vars
-                && entry.e == bddop_relprevIntersection)
+        if (entry.a == relation && entry.b == states && entry.c == union && entry.d == vars
+                && entry.e == bddop_relprevUnion)
         {
             if (cachestats.enabled) {
                 cachestats.opHit++;
@@ -3814,12 +4804,12 @@ public class JFactory extends BDDFactoryIntImpl {
         // Could not find a cached result, so perform the recursive operation to compute the result.
         int result;
 
-        int level_restriction = LEVEL(restriction);
+        int level_union = LEVEL(union);
 
-        if (level_restriction < (level & (~1))) {
-            PUSHREF(relprevIntersection_rec(relation, states, LOW(restriction), vars));
-            PUSHREF(relprevIntersection_rec(relation, states, HIGH(restriction), vars));
-            result = bdd_makenode(level_restriction, READREF(2), READREF(1));
+        if (level_union < (level & (~1))) {
+            PUSHREF(relprevUnion_rec(relation, states, LOW(union), vars));
+            PUSHREF(relprevUnion_rec(relation, states, HIGH(union), vars));
+            result = bdd_makenode(level_union, READREF(2), READREF(1));
             POPREF(2);
         } else if (sameHeight) {
             int level_oldvar = level & (~1);
@@ -3854,12 +4844,12 @@ public class JFactory extends BDDFactoryIntImpl {
                 r10 = r1;
                 r11 = r1;
             }
-            if (level_restriction == level_oldvar) {
-                u0 = LOW(restriction);
-                u1 = HIGH(restriction);
+            if (level_union == level_oldvar) {
+                u0 = LOW(union);
+                u1 = HIGH(union);
             } else {
-                u0 = restriction;
-                u1 = restriction;
+                u0 = union;
+                u1 = union;
             }
 
             int nextVars = HIGH(vars);
@@ -3872,13 +4862,13 @@ public class JFactory extends BDDFactoryIntImpl {
 
             if (quantify) {
                 // We are considering the new-state variable, so apply both the conjunction and quantification.
-                PUSHREF(relprevIntersection_rec(r00, s0, u0, nextVars));
-                PUSHREF(relprevIntersection_rec(r01, s1, u0, nextVars));
+                PUSHREF(relprevUnion_rec(r00, s0, u0, nextVars));
+                PUSHREF(relprevUnion_rec(r01, s1, u0, nextVars));
                 int result0 = or_rec(READREF(2), READREF(1));
                 POPREF(2);
                 PUSHREF(result0);
-                PUSHREF(relprevIntersection_rec(r10, s0, u1, nextVars));
-                PUSHREF(relprevIntersection_rec(r11, s1, u1, nextVars));
+                PUSHREF(relprevUnion_rec(r10, s0, u1, nextVars));
+                PUSHREF(relprevUnion_rec(r11, s1, u1, nextVars));
                 int result1 = or_rec(READREF(2), READREF(1));
                 POPREF(2);
                 PUSHREF(result1);
@@ -3886,8 +4876,8 @@ public class JFactory extends BDDFactoryIntImpl {
                 POPREF(2);
             } else {
                 // We are not considering the new-state variable, so do not quantify.
-                PUSHREF(relprevIntersection_rec(r00, s0, u0, nextVars));
-                PUSHREF(relprevIntersection_rec(r11, s1, u1, nextVars));
+                PUSHREF(relprevUnion_rec(r00, s0, u0, nextVars));
+                PUSHREF(relprevUnion_rec(r11, s1, u1, nextVars));
                 result = bdd_makenode(level_oldvar, READREF(2), READREF(1));
                 POPREF(2);
             }
@@ -3907,37 +4897,37 @@ public class JFactory extends BDDFactoryIntImpl {
                 s0 = states;
                 s1 = states;
             }
-            if (level_restriction == level) {
-                u0 = LOW(restriction);
-                u1 = HIGH(restriction);
+            if (level_union == level) {
+                u0 = LOW(union);
+                u1 = HIGH(union);
             } else {
-                u0 = restriction;
-                u1 = restriction;
+                u0 = union;
+                u1 = union;
             }
 
             if (r0 != r1) {
                 if (s0 != s1) {
-                    PUSHREF(relprevIntersection_rec(r0, s0, u0, vars));
-                    PUSHREF(relprevIntersection_rec(r1, s0, u0, vars));
+                    PUSHREF(relprevUnion_rec(r0, s0, u0, vars));
+                    PUSHREF(relprevUnion_rec(r1, s0, u0, vars));
                     int result0 = or_rec(READREF(2), READREF(1));
                     POPREF(2);
                     PUSHREF(result0);
-                    PUSHREF(relprevIntersection_rec(r0, s1, u1, vars));
-                    PUSHREF(relprevIntersection_rec(r1, s1, u1, vars));
+                    PUSHREF(relprevUnion_rec(r0, s1, u1, vars));
+                    PUSHREF(relprevUnion_rec(r1, s1, u1, vars));
                     int result1 = or_rec(READREF(2), READREF(1));
                     POPREF(2);
                     PUSHREF(result1);
                     result = bdd_makenode(level, result0, result1);
                     POPREF(2);
                 } else {
-                    PUSHREF(relprevIntersection_rec(r0, s0, u0, vars));
-                    PUSHREF(relprevIntersection_rec(r1, s1, u1, vars));
+                    PUSHREF(relprevUnion_rec(r0, s0, u0, vars));
+                    PUSHREF(relprevUnion_rec(r1, s1, u1, vars));
                     result = or_rec(READREF(2), READREF(1));
                     POPREF(2);
                 }
             } else {
-                PUSHREF(relprevIntersection_rec(r0, s0, u0, vars));
-                PUSHREF(relprevIntersection_rec(r1, s1, u1, vars));
+                PUSHREF(relprevUnion_rec(r0, s0, u0, vars));
+                PUSHREF(relprevUnion_rec(r1, s1, u1, vars));
                 result = bdd_makenode(level, READREF(2), READREF(1));
                 POPREF(2);
             }
@@ -3946,29 +4936,20 @@ public class JFactory extends BDDFactoryIntImpl {
         // Update the operation cache.
         entry.a = relation;
         entry.b = states;
-        entry.c = restriction;
+        entry.c = union;
         entry.d = vars;
-        entry.e = bddop_relprevIntersection;
+        entry.e = bddop_relprevUnion;
         entry.res = result;
 
         return result;
     }
 
-    int bdd_saturationForward(int states, int[] relations, int[] vars, int instance) {
-        _assert(relations.length == vars.length);
-
+    int bdd_relprevIntersection(int relation, int states, int restriction, int vars) {
         // Check validity of BDD nodes.
+        CHECKa(relation);
         CHECKa(states);
-
-        for (int i = 0; i < relations.length; i++) {
-            CHECKa(relations[i]);
-            CHECKa(vars[i]);
-        }
-
-        // Check proper ordering of variables in 'vars'.
-        for (int i = 0; i < vars.length - 1; i++) {
-            _assert(LEVEL(vars[i]) <= LEVEL(vars[i + 1]));
-        }
+        CHECKa(restriction);
+        CHECKa(vars);
 
         // Initialize caches if needed.
         if (applycache == null) {
@@ -3978,7 +4959,8 @@ public class JFactory extends BDDFactoryIntImpl {
             itecache = BddCacheI_init(cachesize);
         }
 
-        // We may also apply OR operations while computing 'saturationForward'.
+        // We may also apply the AND and OR operation while computing 'relprevIntersection'.
+        // Let's configure the OR operation as the default.
         applyop = bddop_or;
 
         int result;
@@ -3992,7 +4974,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                result = saturationForward_rec(states, relations, vars, instance, 0);
+                result = relprevIntersection_rec(relation, states, restriction, vars);
 
                 if (numReorder == 0) {
                     bdd_enable_reorder();
@@ -4009,178 +4991,69 @@ public class JFactory extends BDDFactoryIntImpl {
         return result;
     }
 
-    int saturationForward_rec(int states, int[] relations, int[] vars, int instance, int current) {
+    int relprevIntersection_rec(int relation, int states, int restriction, int vars) {
         if (VERIFY_ASSERTIONS) {
             _assert(!ZDD);
         }
 
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
-        }
-
-        // Terminals cases.
-        if (ISZERO(states) || ISONE(states)) {
-            return states;
-        }
-        if (current == relations.length) {
-            return states;
-        }
-
-        // Consult the operation cache.
-        BddCacheDataI entry = BddCache_lookupI(itecache, QUADRUPLE(states, instance, current, bddop_saturationForward));
-
-        if (entry.a == states && entry.b == instance && entry.c == current && entry.d == 0
-                && entry.e == bddop_saturationForward)
-        {
-            if (cachestats.enabled) {
-                cachestats.opHit++;
-            }
-            return entry.res;
+        if (ISONE(restriction)) {
+            return relprev_rec(relation, states, vars);
         }
 
         if (cachestats.enabled) {
-            cachestats.opMiss++;
-        }
-
-        // Could not find a cached result, so perform the recursive operation to compute the result.
-        int result;
-
-        if (LEVEL(states) + 1 < LEVEL(vars[current])) {
-            PUSHREF(saturationForward_rec(LOW(states), relations, vars, instance, current));
-            PUSHREF(saturationForward_rec(HIGH(states), relations, vars, instance, current));
-            result = bdd_makenode(LEVEL(states), READREF(2), READREF(1));
-            POPREF(2);
-        } else {
-            // Find the next transition relation index from which to saturate further, recursively.
-            int next = current;
-            while (next < vars.length && LEVEL(vars[next]) == LEVEL(vars[current])) {
-                next++;
-            }
-
-            // Saturate the given set of states from the 'current' transition relation onwards.
-            result = states;
-
-            while (true) {
-                PUSHREF(result);
-                result = saturationForward_rec(result, relations, vars, instance, next);
-                POPREF(1);
-
-                int previousResult = result;
-                PUSHREF(previousResult);
-
-                for (int i = current; i < next; i++) {
-                    PUSHREF(result);
-                    int prevResult = result;
-                    result = relnextUnion_rec(result, relations[i], result, vars[i]);
-                    saturationCallback.invoke(i, prevResult, result);
-                    POPREF(1);
-                }
-
-                POPREF(1);
-
-                if (result == previousResult) {
-                    break;
-                }
-            }
-        }
-
-        // Update the operation cache.
-        entry.a = states;
-        entry.b = instance;
-        entry.c = current;
-        entry.d = 0;
-        entry.e = bddop_saturationForward;
-        entry.res = result;
-
-        return result;
-    }
-
-    int bdd_boundedSaturationForward(int states, int bound, int[] relations, int[] vars, int instance) {
-        _assert(relations.length == vars.length);
-
-        // Check validity of BDD nodes.
-        CHECKa(states);
-        CHECKa(bound);
-
-        for (int i = 0; i < relations.length; i++) {
-            CHECKa(relations[i]);
-            CHECKa(vars[i]);
+            cachestats.opAccess++;
         }
 
-        // Check proper ordering of variables in 'vars'.
-        for (int i = 0; i < vars.length - 1; i++) {
-            _assert(LEVEL(vars[i]) <= LEVEL(vars[i + 1]));
+        // Terminals cases.
+        if (ISZERO(relation) || ISZERO(states) || ISZERO(restriction)) {
+            return bddfalse;
         }
-
-        // Initialize caches if needed.
-        if (applycache == null) {
-            applycache = BddCacheI_init(cachesize);
+        if (ISONE(relation) && ISONE(states)) {
+            return restriction;
         }
-        if (itecache == null) {
-            itecache = BddCacheI_init(cachesize);
+        if (ISCONST(vars)) {
+            applyop = bddop_and;
+            int result = and_rec(states, restriction);
+            applyop = bddop_or;
+            return result;
         }
 
-        // We may also apply AND and OR operations while computing 'boundedSaturationForward'.
-        // Let's configure the OR operation as the default.
-        applyop = bddop_or;
+        // Determine the top level of 'states' and 'relation'.
+        int level_relation = LEVEL(relation);
+        int level_states = LEVEL(states);
+        int level = level_relation < level_states ? level_relation : level_states;
 
-        int result;
-        int numReorder = 1;
+        // Skip levels in the variable set until we reach (or exceed) 'level'.
+        boolean sameHeight = false;
 
-        again:
         for (;;) {
-            try {
-                INITREF();
-
-                if (numReorder == 0) {
-                    bdd_disable_reorder();
-                }
-                result = boundedSaturationForward_rec(states, bound, relations, vars, instance, 0);
+            int level_vars = LEVEL(vars);
 
-                if (numReorder == 0) {
-                    bdd_enable_reorder();
-                }
-            } catch (ReorderException x) {
-                bdd_checkreorder();
-                numReorder--;
-                continue again;
+            if (level == level_vars || (level ^ 1) == level_vars) {
+                sameHeight = true;
+                break;
             }
-            break;
-        }
-
-        checkresize();
-        return result;
-    }
 
-    int boundedSaturationForward_rec(int states, int bound, int[] relations, int[] vars, int instance, int current) {
-        if (VERIFY_ASSERTIONS) {
-            _assert(!ZDD);
-        }
+            if (level < level_vars) {
+                break;
+            }
 
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
-        }
+            vars = HIGH(vars);
 
-        // Terminals cases.
-        if (ISZERO(states) || ISZERO(bound)) {
-            return bddfalse;
-        }
-        if (ISONE(states)) {
-            return bddtrue;
-        }
-        if (ISONE(bound)) {
-            return saturationForward_rec(states, relations, vars, instance, current);
-        }
-        if (current == relations.length) {
-            return states;
+            if (ISCONST(vars)) {
+                applyop = bddop_and;
+                int result = and_rec(states, restriction);
+                applyop = bddop_or;
+                return result;
+            }
         }
 
         // Consult the operation cache.
         BddCacheDataI entry = BddCache_lookupI(itecache,
-                QUINTUPLE(states, bound, instance, current, bddop_boundedSaturationForward));
+                QUINTUPLE(relation, states, restriction, vars, bddop_relprevIntersection));
 
-        if (entry.a == states && entry.b == bound && entry.c == instance && entry.d == current
-                && entry.e == bddop_boundedSaturationForward)
+        if (entry.a == relation && entry.b == states && entry.c == restriction && entry.d == vars
+                && entry.e == bddop_relprevIntersection)
         {
             if (cachestats.enabled) {
                 cachestats.opHit++;
@@ -4195,77 +5068,147 @@ public class JFactory extends BDDFactoryIntImpl {
         // Could not find a cached result, so perform the recursive operation to compute the result.
         int result;
 
-        int level_states = LEVEL(states);
-        int level_bound = LEVEL(bound);
-        int level = level_states < level_bound ? level_states : level_bound;
+        int level_restriction = LEVEL(restriction);
 
-        if (level + 1 < LEVEL(vars[current])) {
-            int s0, s1, b0, b1;
-            if (level_states == level) {
-                s0 = LOW(states);
-                s1 = HIGH(states);
-            } else {
-                s0 = states;
-                s1 = states;
-            }
-            if (level_bound == level) {
-                b0 = LOW(bound);
-                b1 = HIGH(bound);
-            } else {
-                b0 = bound;
-                b1 = bound;
-            }
-
-            PUSHREF(boundedSaturationForward_rec(s0, b0, relations, vars, instance, current));
-            PUSHREF(boundedSaturationForward_rec(s1, b1, relations, vars, instance, current));
-            result = bdd_makenode(level, READREF(2), READREF(1));
+        if (level_restriction < (level & (~1))) {
+            PUSHREF(relprevIntersection_rec(relation, states, LOW(restriction), vars));
+            PUSHREF(relprevIntersection_rec(relation, states, HIGH(restriction), vars));
+            result = bdd_makenode(level_restriction, READREF(2), READREF(1));
             POPREF(2);
-        } else {
-            // Find the next transition relation index from which to saturate further, recursively.
-            int next = current;
-            while (next < vars.length && LEVEL(vars[next]) == LEVEL(vars[current])) {
-                next++;
-            }
+        } else if (sameHeight) {
+            int level_oldvar = level & (~1);
+            int level_newvar = level_oldvar + 1;
 
-            // Saturate the given set of states from the 'current' transition relation onwards.
-            result = states;
+            int s0, s1, r0, r1, r00, r01, r10, r11, u0, u1;
+            if (!ISCONST(relation) && level_relation == level_oldvar) {
+                r0 = LOW(relation);
+                r1 = HIGH(relation);
+            } else {
+                r0 = relation;
+                r1 = relation;
+            }
+            if (!ISCONST(states) && level_states == level_oldvar) {
+                s0 = LOW(states);
+                s1 = HIGH(states);
+            } else {
+                s0 = states;
+                s1 = states;
+            }
+            if (!ISCONST(r0) && LEVEL(r0) == level_newvar) {
+                r00 = LOW(r0);
+                r01 = HIGH(r0);
+            } else {
+                r00 = r0;
+                r01 = r0;
+            }
+            if (!ISCONST(r1) && LEVEL(r1) == level_newvar) {
+                r10 = LOW(r1);
+                r11 = HIGH(r1);
+            } else {
+                r10 = r1;
+                r11 = r1;
+            }
+            if (level_restriction == level_oldvar) {
+                u0 = LOW(restriction);
+                u1 = HIGH(restriction);
+            } else {
+                u0 = restriction;
+                u1 = restriction;
+            }
 
-            while (true) {
-                PUSHREF(result);
-                result = boundedSaturationForward_rec(result, bound, relations, vars, instance, next);
-                POPREF(1);
+            int nextVars = HIGH(vars);
 
-                int previousResult = result;
-                PUSHREF(previousResult);
+            boolean quantify = LEVEL(vars) == level_newvar || LEVEL(nextVars) == level_newvar;
 
-                for (int i = current; i < next; i++) {
-                    PUSHREF(result);
-                    int prevResult = result;
-                    result = or_rec(PUSHREF(relnextIntersection_rec(result, relations[i], bound, vars[i])), result);
-                    saturationCallback.invoke(i, prevResult, result);
-                    POPREF(2);
-                }
+            if (LEVEL(nextVars) == level_newvar) {
+                nextVars = HIGH(nextVars);
+            }
 
-                POPREF(1);
+            if (quantify) {
+                // We are considering the new-state variable, so apply both the conjunction and quantification.
+                PUSHREF(relprevIntersection_rec(r00, s0, u0, nextVars));
+                PUSHREF(relprevIntersection_rec(r01, s1, u0, nextVars));
+                int result0 = or_rec(READREF(2), READREF(1));
+                POPREF(2);
+                PUSHREF(result0);
+                PUSHREF(relprevIntersection_rec(r10, s0, u1, nextVars));
+                PUSHREF(relprevIntersection_rec(r11, s1, u1, nextVars));
+                int result1 = or_rec(READREF(2), READREF(1));
+                POPREF(2);
+                PUSHREF(result1);
+                result = bdd_makenode(level_oldvar, result0, result1);
+                POPREF(2);
+            } else {
+                // We are not considering the new-state variable, so do not quantify.
+                PUSHREF(relprevIntersection_rec(r00, s0, u0, nextVars));
+                PUSHREF(relprevIntersection_rec(r11, s1, u1, nextVars));
+                result = bdd_makenode(level_oldvar, READREF(2), READREF(1));
+                POPREF(2);
+            }
+        } else {
+            int s0, s1, r0, r1, u0, u1;
+            if (!ISCONST(relation) && level_relation == level) {
+                r0 = LOW(relation);
+                r1 = HIGH(relation);
+            } else {
+                r0 = relation;
+                r1 = relation;
+            }
+            if (!ISCONST(states) && level_states == level) {
+                s0 = LOW(states);
+                s1 = HIGH(states);
+            } else {
+                s0 = states;
+                s1 = states;
+            }
+            if (level_restriction == level) {
+                u0 = LOW(restriction);
+                u1 = HIGH(restriction);
+            } else {
+                u0 = restriction;
+                u1 = restriction;
+            }
 
-                if (result == previousResult) {
-                    break;
+            if (r0 != r1) {
+                if (s0 != s1) {
+                    PUSHREF(relprevIntersection_rec(r0, s0, u0, vars));
+                    PUSHREF(relprevIntersection_rec(r1, s0, u0, vars));
+                    int result0 = or_rec(READREF(2), READREF(1));
+                    POPREF(2);
+                    PUSHREF(result0);
+                    PUSHREF(relprevIntersection_rec(r0, s1, u1, vars));
+                    PUSHREF(relprevIntersection_rec(r1, s1, u1, vars));
+                    int result1 = or_rec(READREF(2), READREF(1));
+                    POPREF(2);
+                    PUSHREF(result1);
+                    result = bdd_makenode(level, result0, result1);
+                    POPREF(2);
+                } else {
+                    PUSHREF(relprevIntersection_rec(r0, s0, u0, vars));
+                    PUSHREF(relprevIntersection_rec(r1, s1, u1, vars));
+                    result = or_rec(READREF(2), READREF(1));
+                    POPREF(2);
                 }
+            } else {
+                PUSHREF(relprevIntersection_rec(r0, s0, u0, vars));
+                PUSHREF(relprevIntersection_rec(r1, s1, u1, vars));
+                result = bdd_makenode(level, READREF(2), READREF(1));
+                POPREF(2);
             }
         }
 
         // Update the operation cache.
-        entry.a = states;
-        entry.b = bound;
-        entry.c = instance;
-        entry.d = current;
-        entry.e = bddop_boundedSaturationForward;
+        entry.a = relation;
+        entry.b = states;
+        entry.c = restriction;
+        entry.d = vars;
+        entry.e = bddop_relprevIntersection;
         entry.res = result;
 
         return result;
     }
 
-    int bdd_saturationBackward(int states, int[] relations, int[] vars, int instance) {
+    int bdd_saturationForward(int states, int[] relations, int[] vars, int instance) {
         _assert(relations.length == vars.length);
 
         // Check validity of BDD nodes.
@@ -4289,7 +5232,7 @@ public class JFactory extends BDDFactoryIntImpl {
             itecache = BddCacheI_init(cachesize);
         }
 
-        // We may also apply OR operations while computing 'saturationBackward'.
+        // We may also apply OR operations while computing 'saturationForward'.
         applyop = bddop_or;
 
         int result;
@@ -4303,7 +5246,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                result = saturationBackward_rec(states, relations, vars, instance, 0);
+                result = saturationForward_rec(states, relations, vars, instance, 0);
 
                 if (numReorder == 0) {
                     bdd_enable_reorder();
@@ -4320,7 +5263,7 @@ public class JFactory extends BDDFactoryIntImpl {
         return result;
     }
 
-    int saturationBackward_rec(int states, int[] relations, int[] vars, int instance, int current) {
+    int saturationForward_rec(int states, int[] relations, int[] vars, int instance, int current) {
         if (VERIFY_ASSERTIONS) {
             _assert(!ZDD);
         }
@@ -4338,11 +5281,10 @@ public class JFactory extends BDDFactoryIntImpl {
         }
 
         // Consult the operation cache.
-        BddCacheDataI entry = BddCache_lookupI(itecache,
-                QUADRUPLE(states, instance, current, bddop_saturationBackward));
+        BddCacheDataI entry = BddCache_lookupI(itecache, QUADRUPLE(states, instance, current, bddop_saturationForward));
 
         if (entry.a == states && entry.b == instance && entry.c == current && entry.d == 0
-                && entry.e == bddop_saturationBackward)
+                && entry.e == bddop_saturationForward)
         {
             if (cachestats.enabled) {
                 cachestats.opHit++;
@@ -4358,8 +5300,8 @@ public class JFactory extends BDDFactoryIntImpl {
         int result;
 
         if (LEVEL(states) + 1 < LEVEL(vars[current])) {
-            PUSHREF(saturationBackward_rec(LOW(states), relations, vars, instance, current));
-            PUSHREF(saturationBackward_rec(HIGH(states), relations, vars, instance, current));
+            PUSHREF(saturationForward_rec(LOW(states), relations, vars, instance, current));
+            PUSHREF(saturationForward_rec(HIGH(states), relations, vars, instance, current));
             result = bdd_makenode(LEVEL(states), READREF(2), READREF(1));
             POPREF(2);
         } else {
@@ -4374,7 +5316,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
             while (true) {
                 PUSHREF(result);
-                result = saturationBackward_rec(result, relations, vars, instance, next);
+                result = saturationForward_rec(result, relations, vars, instance, next);
                 POPREF(1);
 
                 int previousResult = result;
@@ -4383,7 +5325,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 for (int i = current; i < next; i++) {
                     PUSHREF(result);
                     int prevResult = result;
-                    result = relprevUnion_rec(relations[i], result, result, vars[i]);
+                    result = relnextUnion_rec(result, relations[i], result, vars[i]);
                     saturationCallback.invoke(i, prevResult, result);
                     POPREF(1);
                 }
@@ -4401,13 +5343,13 @@ public class JFactory extends BDDFactoryIntImpl {
         entry.b = instance;
         entry.c = current;
         entry.d = 0;
-        entry.e = bddop_saturationBackward;
+        entry.e = bddop_saturationForward;
         entry.res = result;
 
         return result;
     }
 
-    int bdd_boundedSaturationBackward(int states, int bound, int[] relations, int[] vars, int instance) {
+    int bdd_boundedSaturationForward(int states, int bound, int[] relations, int[] vars, int instance) {
         _assert(relations.length == vars.length);
 
         // Check validity of BDD nodes.
@@ -4432,7 +5374,7 @@ public class JFactory extends BDDFactoryIntImpl {
             itecache = BddCacheI_init(cachesize);
         }
 
-        // We may also apply AND and OR operations while computing 'boundedSaturationBackward'.
+        // We may also apply AND and OR operations while computing 'boundedSaturationForward'.
         // Let's configure the OR operation as the default.
         applyop = bddop_or;
 
@@ -4447,7 +5389,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                result = boundedSaturationBackward_rec(states, bound, relations, vars, instance, 0);
+                result = boundedSaturationForward_rec(states, bound, relations, vars, instance, 0);
 
                 if (numReorder == 0) {
                     bdd_enable_reorder();
@@ -4464,7 +5406,7 @@ public class JFactory extends BDDFactoryIntImpl {
         return result;
     }
 
-    int boundedSaturationBackward_rec(int states, int bound, int[] relations, int[] vars, int instance, int current) {
+    int boundedSaturationForward_rec(int states, int bound, int[] relations, int[] vars, int instance, int current) {
         if (VERIFY_ASSERTIONS) {
             _assert(!ZDD);
         }
@@ -4481,7 +5423,7 @@ public class JFactory extends BDDFactoryIntImpl {
             return bddtrue;
         }
         if (ISONE(bound)) {
-            return saturationBackward_rec(states, relations, vars, instance, current);
+            return saturationForward_rec(states, relations, vars, instance, current);
         }
         if (current == relations.length) {
             return states;
@@ -4489,10 +5431,10 @@ public class JFactory extends BDDFactoryIntImpl {
 
         // Consult the operation cache.
         BddCacheDataI entry = BddCache_lookupI(itecache,
-                QUINTUPLE(states, bound, instance, current, bddop_boundedSaturationBackward));
+                QUINTUPLE(states, bound, instance, current, bddop_boundedSaturationForward));
 
         if (entry.a == states && entry.b == bound && entry.c == instance && entry.d == current
-                && entry.e == bddop_boundedSaturationBackward)
+                && entry.e == bddop_boundedSaturationForward)
         {
             if (cachestats.enabled) {
                 cachestats.opHit++;
@@ -4528,8 +5470,8 @@ public class JFactory extends BDDFactoryIntImpl {
                 b1 = bound;
             }
 
-            PUSHREF(boundedSaturationBackward_rec(s0, b0, relations, vars, instance, current));
-            PUSHREF(boundedSaturationBackward_rec(s1, b1, relations, vars, instance, current));
+            PUSHREF(boundedSaturationForward_rec(s0, b0, relations, vars, instance, current));
+            PUSHREF(boundedSaturationForward_rec(s1, b1, relations, vars, instance, current));
             result = bdd_makenode(level, READREF(2), READREF(1));
             POPREF(2);
         } else {
@@ -4544,7 +5486,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
             while (true) {
                 PUSHREF(result);
-                result = boundedSaturationBackward_rec(result, bound, relations, vars, instance, next);
+                result = boundedSaturationForward_rec(result, bound, relations, vars, instance, next);
                 POPREF(1);
 
                 int previousResult = result;
@@ -4553,7 +5495,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 for (int i = current; i < next; i++) {
                     PUSHREF(result);
                     int prevResult = result;
-                    result = or_rec(PUSHREF(relprevIntersection_rec(relations[i], result, bound, vars[i])), result);
+                    result = or_rec(PUSHREF(relnextIntersection_rec(result, relations[i], bound, vars[i])), result);
                     saturationCallback.invoke(i, prevResult, result);
                     POPREF(2);
                 }
@@ -4571,156 +5513,201 @@ public class JFactory extends BDDFactoryIntImpl {
         entry.b = bound;
         entry.c = instance;
         entry.d = current;
-        entry.e = bddop_boundedSaturationBackward;
+        entry.e = bddop_boundedSaturationForward;
         entry.res = result;
 
         return result;
     }
 
-    @Override
-    protected void setSaturationCallback_impl(SaturationDebugCallback<Integer> callback) {
-        saturationCallback = callback == null ? DEFAULT_SATURATION_CALLBACK : callback;
-    }
+    int bdd_saturationBackward(int states, int[] relations, int[] vars, int instance) {
+        _assert(relations.length == vars.length);
 
-    int relprod_rec(int l, int r) {
-        BddCacheDataI entry;
-        int res;
+        // Check validity of BDD nodes.
+        CHECKa(states);
 
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
+        for (int i = 0; i < relations.length; i++) {
+            CHECKa(relations[i]);
+            CHECKa(vars[i]);
         }
 
-        if (VERIFY_ASSERTIONS) {
-            _assert(!ZDD);
+        // Check proper ordering of variables in 'vars'.
+        for (int i = 0; i < vars.length - 1; i++) {
+            _assert(LEVEL(vars[i]) <= LEVEL(vars[i + 1]));
         }
 
-        if (l == 0 || r == 0) {
-            return 0;
-        }
-        if (l == r) {
-            return quant_rec(l);
-        }
-        if (l == 1) {
-            return quant_rec(r);
+        // Initialize caches if needed.
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
         }
-        if (r == 1) {
-            return quant_rec(l);
+        if (itecache == null) {
+            itecache = BddCacheI_init(cachesize);
         }
 
-        int LEVEL_l = LEVEL(l);
-        int LEVEL_r = LEVEL(r);
-        if (LEVEL_l > quantlast && LEVEL_r > quantlast) {
-            applyop = bddop_and;
-            res = and_rec(l, r);
-            applyop = bddop_or;
-        } else {
-            entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, bddop_and));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
-                if (cachestats.enabled) {
-                    cachestats.opHit++;
-                }
-                return entry.res;
-            }
-            if (cachestats.enabled) {
-                cachestats.opMiss++;
-            }
+        // We may also apply OR operations while computing 'saturationBackward'.
+        applyop = bddop_or;
 
-            if (LEVEL_l == LEVEL_r) {
-                PUSHREF(relprod_rec(LOW(l), LOW(r)));
-                PUSHREF(relprod_rec(HIGH(l), HIGH(r)));
-                if (INVARSET(LEVEL_l)) {
-                    res = or_rec(READREF(2), READREF(1));
-                } else {
-                    res = bdd_makenode(LEVEL_l, READREF(2), READREF(1));
-                }
-            } else if (LEVEL_l < LEVEL_r) {
-                PUSHREF(relprod_rec(LOW(l), r));
-                PUSHREF(relprod_rec(HIGH(l), r));
-                if (INVARSET(LEVEL_l)) {
-                    res = or_rec(READREF(2), READREF(1));
-                } else {
-                    res = bdd_makenode(LEVEL_l, READREF(2), READREF(1));
+        int result;
+        int numReorder = 1;
+
+        again:
+        for (;;) {
+            try {
+                INITREF();
+
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
                 }
-            } else {
-                PUSHREF(relprod_rec(l, LOW(r)));
-                PUSHREF(relprod_rec(l, HIGH(r)));
-                if (INVARSET(LEVEL_r)) {
-                    res = or_rec(READREF(2), READREF(1));
-                } else {
-                    res = bdd_makenode(LEVEL_r, READREF(2), READREF(1));
+                result = saturationBackward_rec(states, relations, vars, instance, 0);
+
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
                 }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+                numReorder--;
+                continue again;
+            }
+            break;
+        }
+
+        checkresize();
+        return result;
+    }
+
+    int saturationBackward_rec(int states, int[] relations, int[] vars, int instance, int current) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
+        }
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        // Terminals cases.
+        if (ISZERO(states) || ISONE(states)) {
+            return states;
+        }
+        if (current == relations.length) {
+            return states;
+        }
+
+        // Consult the operation cache.
+        BddCacheDataI entry = BddCache_lookupI(itecache,
+                QUADRUPLE(states, instance, current, bddop_saturationBackward));
+
+        if (entry.a == states && entry.b == instance && entry.c == current && entry.d == 0
+                && entry.e == bddop_saturationBackward)
+        {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
             }
+            return entry.res;
+        }
+
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
+
+        // Could not find a cached result, so perform the recursive operation to compute the result.
+        int result;
 
+        if (LEVEL(states) + 1 < LEVEL(vars[current])) {
+            PUSHREF(saturationBackward_rec(LOW(states), relations, vars, instance, current));
+            PUSHREF(saturationBackward_rec(HIGH(states), relations, vars, instance, current));
+            result = bdd_makenode(LEVEL(states), READREF(2), READREF(1));
             POPREF(2);
+        } else {
+            // Find the next transition relation index from which to saturate further, recursively.
+            int next = current;
+            while (next < vars.length && LEVEL(vars[next]) == LEVEL(vars[current])) {
+                next++;
+            }
 
-            entry.a = l;
-            entry.b = r;
-            entry.c = appexid;
-            entry.res = res;
+            // Saturate the given set of states from the 'current' transition relation onwards.
+            result = states;
+
+            while (true) {
+                PUSHREF(result);
+                result = saturationBackward_rec(result, relations, vars, instance, next);
+                POPREF(1);
+
+                int previousResult = result;
+                PUSHREF(previousResult);
+
+                for (int i = current; i < next; i++) {
+                    PUSHREF(result);
+                    int prevResult = result;
+                    result = relprevUnion_rec(relations[i], result, result, vars[i]);
+                    saturationCallback.invoke(i, prevResult, result);
+                    POPREF(1);
+                }
+
+                POPREF(1);
+
+                if (result == previousResult) {
+                    break;
+                }
+            }
         }
 
-        return res;
-    }
+        // Update the operation cache.
+        entry.a = states;
+        entry.b = instance;
+        entry.c = current;
+        entry.d = 0;
+        entry.e = bddop_saturationBackward;
+        entry.res = result;
 
-    int bdd_relprod(int a, int b, int var) {
-        return bdd_appex(a, b, bddop_and, var);
+        return result;
     }
 
-    int bdd_appex(int l, int r, int opr, int var) {
-        int res;
-        int numReorder = 1;
+    int bdd_boundedSaturationBackward(int states, int bound, int[] relations, int[] vars, int instance) {
+        _assert(relations.length == vars.length);
 
-        CHECKa(l);
-        CHECKa(r);
-        CHECKa(var);
+        // Check validity of BDD nodes.
+        CHECKa(states);
+        CHECKa(bound);
 
-        if (opr < 0 || opr > bddop_invimp) {
-            bdd_error(BDD_OP);
-            return bddfalse;
+        for (int i = 0; i < relations.length; i++) {
+            CHECKa(relations[i]);
+            CHECKa(vars[i]);
         }
 
-        if (var < 2) { /* Empty set */
-            return bdd_apply(l, r, opr);
+        // Check proper ordering of variables in 'vars'.
+        for (int i = 0; i < vars.length - 1; i++) {
+            _assert(LEVEL(vars[i]) <= LEVEL(vars[i + 1]));
         }
 
+        // Initialize caches if needed.
         if (applycache == null) {
             applycache = BddCacheI_init(cachesize);
         }
-        if (appexcache == null) {
-            appexcache = BddCacheI_init(cachesize);
-        }
-        if (quantcache == null) {
-            quantcache = BddCacheI_init(cachesize);
+        if (itecache == null) {
+            itecache = BddCacheI_init(cachesize);
         }
 
+        // We may also apply AND and OR operations while computing 'boundedSaturationBackward'.
+        // Let's configure the OR operation as the default.
+        applyop = bddop_or;
+
+        int result;
+        int numReorder = 1;
+
         again:
         for (;;) {
-            if (varset2vartable(var) < 0) {
-                return bddfalse;
-            }
             try {
                 INITREF();
 
-                applyop = bddop_or;
-                appexop = opr;
-                appexid = (var << 5) | (appexop << 1); /* FIXME: range! */
-                quantid = (appexid << 3) | CACHEID_APPEX;
-
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                if (opr == bddop_and) {
-                    res = ZDD ? zrelprod_rec(l, r, 0) : relprod_rec(l, r);
-                } else {
-                    res = appquant_rec(l, r);
-                }
+                result = boundedSaturationBackward_rec(states, bound, relations, vars, instance, 0);
 
                 if (numReorder == 0) {
                     bdd_enable_reorder();
                 }
             } catch (ReorderException x) {
                 bdd_checkreorder();
-
                 numReorder--;
                 continue again;
             }
@@ -4728,74 +5715,128 @@ public class JFactory extends BDDFactoryIntImpl {
         }
 
         checkresize();
-        return res;
+        return result;
     }
 
-    int varset2vartable(int r) {
-        int n;
-
-        if (r < 2) {
-            return bdd_error(BDD_VARSET);
+    int boundedSaturationBackward_rec(int states, int bound, int[] relations, int[] vars, int instance, int current) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
         }
 
-        quantvarsetID++;
-
-        if (quantvarsetID == INT_MAX) {
-            for (int i = 0; i < bddvarnum; ++i) {
-                quantvarset[i] = 0;
-            }
-            quantvarsetID = 1;
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
         }
 
-        quantlast = -1;
-        for (n = r; n > 1; n = HIGH(n)) {
-            quantvarset[LEVEL(n)] = quantvarsetID;
-            if (VERIFY_ASSERTIONS) {
-                _assert(quantlast < LEVEL(n));
-            }
-            quantlast = LEVEL(n);
+        // Terminals cases.
+        if (ISZERO(states) || ISZERO(bound)) {
+            return bddfalse;
         }
-
-        return 0;
-    }
-
-    static final int INT_MAX = Integer.MAX_VALUE;
-
-    int varset2svartable(int r) {
-        int n;
-
-        if (r < 2) {
-            return bdd_error(BDD_VARSET);
+        if (ISONE(states)) {
+            return bddtrue;
+        }
+        if (ISONE(bound)) {
+            return saturationBackward_rec(states, relations, vars, instance, current);
+        }
+        if (current == relations.length) {
+            return states;
         }
 
-        quantvarsetID++;
+        // Consult the operation cache.
+        BddCacheDataI entry = BddCache_lookupI(itecache,
+                QUINTUPLE(states, bound, instance, current, bddop_boundedSaturationBackward));
 
-        if (quantvarsetID == INT_MAX / 2) {
-            for (int i = 0; i < bddvarnum; ++i) {
-                quantvarset[i] = 0;
+        if (entry.a == states && entry.b == bound && entry.c == instance && entry.d == current
+                && entry.e == bddop_boundedSaturationBackward)
+        {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
             }
-            quantvarsetID = 1;
+            return entry.res;
         }
 
-        quantlast = 0;
-        for (n = r; !ISCONST(n);) {
-            if (ISZERO(LOW(n))) {
-                quantvarset[LEVEL(n)] = quantvarsetID;
-                n = HIGH(n);
-            } else {
-                quantvarset[LEVEL(n)] = -quantvarsetID;
-                n = LOW(n);
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
+
+        // Could not find a cached result, so perform the recursive operation to compute the result.
+        int result;
+
+        int level_states = LEVEL(states);
+        int level_bound = LEVEL(bound);
+        int level = level_states < level_bound ? level_states : level_bound;
+
+        if (level + 1 < LEVEL(vars[current])) {
+            int s0, s1, b0, b1;
+            if (level_states == level) {
+                s0 = LOW(states);
+                s1 = HIGH(states);
+            } else {
+                s0 = states;
+                s1 = states;
             }
-            if (VERIFY_ASSERTIONS) {
-                _assert(quantlast < LEVEL(n));
+            if (level_bound == level) {
+                b0 = LOW(bound);
+                b1 = HIGH(bound);
+            } else {
+                b0 = bound;
+                b1 = bound;
+            }
+
+            PUSHREF(boundedSaturationBackward_rec(s0, b0, relations, vars, instance, current));
+            PUSHREF(boundedSaturationBackward_rec(s1, b1, relations, vars, instance, current));
+            result = bdd_makenode(level, READREF(2), READREF(1));
+            POPREF(2);
+        } else {
+            // Find the next transition relation index from which to saturate further, recursively.
+            int next = current;
+            while (next < vars.length && LEVEL(vars[next]) == LEVEL(vars[current])) {
+                next++;
+            }
+
+            // Saturate the given set of states from the 'current' transition relation onwards.
+            result = states;
+
+            while (true) {
+                PUSHREF(result);
+                result = boundedSaturationBackward_rec(result, bound, relations, vars, instance, next);
+                POPREF(1);
+
+                int previousResult = result;
+                PUSHREF(previousResult);
+
+                for (int i = current; i < next; i++) {
+                    PUSHREF(result);
+                    int prevResult = result;
+                    result = or_rec(PUSHREF(relprevIntersection_rec(relations[i], result, bound, vars[i])), result);
+                    saturationCallback.invoke(i, prevResult, result);
+                    POPREF(2);
+                }
+
+                POPREF(1);
+
+                if (result == previousResult) {
+                    break;
+                }
             }
-            quantlast = LEVEL(n);
         }
 
-        return 0;
+        // Update the operation cache.
+        entry.a = states;
+        entry.b = bound;
+        entry.c = instance;
+        entry.d = current;
+        entry.e = bddop_boundedSaturationBackward;
+        entry.res = result;
+
+        return result;
     }
 
-    int appquant_rec(int l, int r) {
+    @Override
+    protected void setSaturationCallback_impl(SaturationDebugCallback<Integer> callback) {
+        saturationCallback = callback == null ? DEFAULT_SATURATION_CALLBACK : callback;
+    }
+
+    int relprod_rec(int l, int r) {
         BddCacheDataI entry;
         int res;
 
@@ -4804,66 +5845,30 @@ public class JFactory extends BDDFactoryIntImpl {
         }
 
         if (VERIFY_ASSERTIONS) {
-            _assert(appexop != bddop_and);
+            _assert(!ZDD);
         }
 
-        switch (appexop) {
-            case bddop_or:
-                if (l == 1 || r == 1) {
-                    return 1;
-                }
-                if (l == r) {
-                    return quant_rec(l);
-                }
-                if (l == 0) {
-                    return quant_rec(r);
-                }
-                if (r == 0) {
-                    return quant_rec(l);
-                }
-                break;
-            case bddop_xor:
-                if (l == r) {
-                    return 0;
-                }
-                if (l == 0) {
-                    return quant_rec(r);
-                }
-                if (r == 0) {
-                    return quant_rec(l);
-                }
-                break;
-            case bddop_nand:
-                if (l == 0 || r == 0) {
-                    return 1;
-                }
-                break;
-            case bddop_nor:
-                if (l == 1 || r == 1) {
-                    return 0;
-                }
-                break;
+        if (l == 0 || r == 0) {
+            return 0;
+        }
+        if (l == r) {
+            return quant_rec(l);
+        }
+        if (l == 1) {
+            return quant_rec(r);
+        }
+        if (r == 1) {
+            return quant_rec(l);
         }
 
-        if (ISCONST(l) && ISCONST(r)) {
-            res = oprres[appexop][(l << 1) | r];
-        } else if (LEVEL(l) > quantlast && LEVEL(r) > quantlast) {
-            int oldop = applyop;
-            applyop = appexop;
-            switch (applyop) {
-                case bddop_and:
-                    res = and_rec(l, r);
-                    break;
-                case bddop_or:
-                    res = or_rec(l, r);
-                    break;
-                default:
-                    res = apply_rec(l, r);
-                    break;
-            }
-            applyop = oldop;
+        int LEVEL_l = LEVEL(l);
+        int LEVEL_r = LEVEL(r);
+        if (LEVEL_l > quantlast && LEVEL_r > quantlast) {
+            applyop = bddop_and;
+            res = and_rec(l, r);
+            applyop = bddop_or;
         } else {
-            entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
+            entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, bddop_and));
             if (entry.a == l && entry.b == r && entry.c == appexid) {
                 if (cachestats.enabled) {
                     cachestats.opHit++;
@@ -4874,35 +5879,30 @@ public class JFactory extends BDDFactoryIntImpl {
                 cachestats.opMiss++;
             }
 
-            int lev;
-            if (LEVEL(l) == LEVEL(r)) {
-                PUSHREF(appquant_rec(LOW(l), LOW(r)));
-                PUSHREF(appquant_rec(HIGH(l), HIGH(r)));
-                lev = LEVEL(l);
-            } else if (LEVEL(l) < LEVEL(r)) {
-                PUSHREF(appquant_rec(LOW(l), r));
-                PUSHREF(appquant_rec(HIGH(l), r));
-                lev = LEVEL(l);
-            } else {
-                PUSHREF(appquant_rec(l, LOW(r)));
-                PUSHREF(appquant_rec(l, HIGH(r)));
-                lev = LEVEL(r);
-            }
-            if (INVARSET(lev)) {
-                int r2 = READREF(2), r1 = READREF(1);
-                switch (applyop) {
-                    case bddop_and:
-                        res = and_rec(r2, r1);
-                        break;
-                    case bddop_or:
-                        res = or_rec(r2, r1);
-                        break;
-                    default:
-                        res = apply_rec(r2, r1);
-                        break;
+            if (LEVEL_l == LEVEL_r) {
+                PUSHREF(relprod_rec(LOW(l), LOW(r)));
+                PUSHREF(relprod_rec(HIGH(l), HIGH(r)));
+                if (INVARSET(LEVEL_l)) {
+                    res = or_rec(READREF(2), READREF(1));
+                } else {
+                    res = bdd_makenode(LEVEL_l, READREF(2), READREF(1));
+                }
+            } else if (LEVEL_l < LEVEL_r) {
+                PUSHREF(relprod_rec(LOW(l), r));
+                PUSHREF(relprod_rec(HIGH(l), r));
+                if (INVARSET(LEVEL_l)) {
+                    res = or_rec(READREF(2), READREF(1));
+                } else {
+                    res = bdd_makenode(LEVEL_l, READREF(2), READREF(1));
                 }
             } else {
-                res = bdd_makenode(lev, READREF(2), READREF(1));
+                PUSHREF(relprod_rec(l, LOW(r)));
+                PUSHREF(relprod_rec(l, HIGH(r)));
+                if (INVARSET(LEVEL_r)) {
+                    res = or_rec(READREF(2), READREF(1));
+                } else {
+                    res = bdd_makenode(LEVEL_r, READREF(2), READREF(1));
+                }
             }
 
             POPREF(2);
@@ -4916,61 +5916,401 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
-    int appuni_rec(int l, int r, int var) {
+    /**
+     * Iterative version of {@link #relprod_rec}. Its frames on {@link #iterstack} are (l, r, level), like those of
+     * {@link #apply_iter}.
+     */
+    int relprod_iter(int l, int r) {
         BddCacheDataI entry;
         int res;
 
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
         }
 
-        int LEVEL_l, LEVEL_r, LEVEL_var;
-        LEVEL_l = LEVEL(l);
-        LEVEL_r = LEVEL(r);
-        LEVEL_var = LEVEL(var);
+        int base = iterstacktop;
+        ITERPUSH(l);
+        ITERPUSH(r);
+        ITERPUSH(-1);
 
-        if (LEVEL_l > LEVEL_var && LEVEL_r > LEVEL_var) {
-            // Skipped a quantified node, answer is zero.
-            return BDDZERO;
-        }
+        while (iterstacktop > base) {
+            int level = iterstack[iterstacktop - 1];
+            r = iterstack[iterstacktop - 2];
+            l = iterstack[iterstacktop - 3];
+            iterstacktop -= 3;
 
-        if (ISCONST(l) && ISCONST(r)) {
-            res = oprres[appexop][(l << 1) | r];
-        } else if (ISCONST(var)) {
-            int oldop = applyop;
-            applyop = appexop;
-            switch (applyop) {
-                case bddop_and:
-                    res = and_rec(l, r);
-                    break;
-                case bddop_or:
-                    res = or_rec(l, r);
-                    break;
-                default:
-                    res = apply_rec(l, r);
-                    break;
-            }
-            applyop = oldop;
-        } else {
-            entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
-            if (entry.a == l && entry.b == r && entry.c == appexid) {
+            if (level < 0) {
                 if (cachestats.enabled) {
-                    cachestats.opHit++;
+                    cachestats.opAccess++;
                 }
-                return entry.res;
-            }
-            if (cachestats.enabled) {
-                cachestats.opMiss++;
-            }
 
-            int lev;
-            if (LEVEL_l == LEVEL_r) {
-                if (LEVEL_l == LEVEL_var) {
-                    lev = -1;
-                    var = HIGH(var);
+                int LEVEL_l = LEVEL(l);
+                int LEVEL_r = LEVEL(r);
+                if (l == 0 || r == 0) {
+                    res = 0;
+                } else if (l == r || r == 1) {
+                    res = quant_iter(l);
+                } else if (l == 1) {
+                    res = quant_iter(r);
+                } else if (LEVEL_l > quantlast && LEVEL_r > quantlast) {
+                    applyop = bddop_and;
+                    res = apply_iter(l, r);
+                    applyop = bddop_or;
                 } else {
-                    lev = LEVEL_l;
-                }
+                    entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, bddop_and));
+                    if (entry.a == l && entry.b == r && entry.c == appexid) {
+                        if (cachestats.enabled) {
+                            cachestats.opHit++;
+                        }
+                        res = entry.res;
+                    } else {
+                        if (cachestats.enabled) {
+                            cachestats.opMiss++;
+                        }
+
+                        ITERPUSH(l);
+                        ITERPUSH(r);
+                        ITERPUSH(Math.min(LEVEL_l, LEVEL_r));
+                        ITERPUSH(LEVEL_l <= LEVEL_r ? HIGH(l) : l);
+                        ITERPUSH(LEVEL_r <= LEVEL_l ? HIGH(r) : r);
+                        ITERPUSH(-1);
+                        ITERPUSH(LEVEL_l <= LEVEL_r ? LOW(l) : l);
+                        ITERPUSH(LEVEL_r <= LEVEL_l ? LOW(r) : r);
+                        ITERPUSH(-1);
+                        continue;
+                    }
+                }
+            } else {
+                if (INVARSET(level)) {
+                    res = apply_iter(READREF(2), READREF(1));
+                } else {
+                    res = bdd_makenode(level, READREF(2), READREF(1));
+                }
+                POPREF(2);
+
+                entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, bddop_and));
+                entry.a = l;
+                entry.b = r;
+                entry.c = appexid;
+                entry.res = res;
+            }
+            PUSHREF(res);
+        }
+
+        res = READREF(1);
+        POPREF(1);
+        return res;
+    }
+
+    int bdd_relprod(int a, int b, int var) {
+        return bdd_appex(a, b, bddop_and, var);
+    }
+
+    int bdd_appex(int l, int r, int opr, int var) {
+        int res;
+        int numReorder = 1;
+
+        CHECKa(l);
+        CHECKa(r);
+        CHECKa(var);
+
+        if (opr < 0 || opr > bddop_invimp) {
+            bdd_error(BDD_OP);
+            return bddfalse;
+        }
+
+        if (var < 2) { /* Empty set */
+            return bdd_apply(l, r, opr);
+        }
+
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
+        }
+        if (appexcache == null) {
+            appexcache = BddCacheI_init(cachesize);
+        }
+        if (quantcache == null) {
+            quantcache = BddCacheI_init(cachesize);
+        }
+
+        again:
+        for (;;) {
+            if (varset2vartable(var) < 0) {
+                return bddfalse;
+            }
+            try {
+                INITREF();
+
+                applyop = bddop_or;
+                appexop = opr;
+                appexid = (var << 5) | (appexop << 1); /* FIXME: range! */
+                quantid = (appexid << 3) | CACHEID_APPEX;
+
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                if (opr == bddop_and) {
+                    res = ZDD ? zrelprod_rec(l, r, 0) : ITERATIVE() ? relprod_iter(l, r) : relprod_rec(l, r);
+                } else {
+                    res = appquant_rec(l, r);
+                }
+
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                numReorder--;
+                continue again;
+            }
+            break;
+        }
+
+        checkresize();
+        return res;
+    }
+
+    int varset2vartable(int r) {
+        int n;
+
+        if (r < 2) {
+            return bdd_error(BDD_VARSET);
+        }
+
+        quantvarsetID++;
+
+        if (quantvarsetID == INT_MAX) {
+            for (int i = 0; i < bddvarnum; ++i) {
+                quantvarset[i] = 0;
+            }
+            quantvarsetID = 1;
+        }
+
+        quantlast = -1;
+        for (n = r; n > 1; n = HIGH(n)) {
+            quantvarset[LEVEL(n)] = quantvarsetID;
+            if (VERIFY_ASSERTIONS) {
+                _assert(quantlast < LEVEL(n));
+            }
+            quantlast = LEVEL(n);
+        }
+
+        return 0;
+    }
+
+    static final int INT_MAX = Integer.MAX_VALUE;
+
+    int varset2svartable(int r) {
+        int n;
+
+        if (r < 2) {
+            return bdd_error(BDD_VARSET);
+        }
+
+        quantvarsetID++;
+
+        if (quantvarsetID == INT_MAX / 2) {
+            for (int i = 0; i < bddvarnum; ++i) {
+                quantvarset[i] = 0;
+            }
+            quantvarsetID = 1;
+        }
+
+        quantlast = 0;
+        for (n = r; !ISCONST(n);) {
+            if (ISZERO(LOW(n))) {
+                quantvarset[LEVEL(n)] = quantvarsetID;
+                n = HIGH(n);
+            } else {
+                quantvarset[LEVEL(n)] = -quantvarsetID;
+                n = LOW(n);
+            }
+            if (VERIFY_ASSERTIONS) {
+                _assert(quantlast < LEVEL(n));
+            }
+            quantlast = LEVEL(n);
+        }
+
+        return 0;
+    }
+
+    int appquant_rec(int l, int r) {
+        BddCacheDataI entry;
+        int res;
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        if (VERIFY_ASSERTIONS) {
+            _assert(appexop != bddop_and);
+        }
+
+        switch (appexop) {
+            case bddop_or:
+                if (l == 1 || r == 1) {
+                    return 1;
+                }
+                if (l == r) {
+                    return quant_rec(l);
+                }
+                if (l == 0) {
+                    return quant_rec(r);
+                }
+                if (r == 0) {
+                    return quant_rec(l);
+                }
+                break;
+            case bddop_xor:
+                if (l == r) {
+                    return 0;
+                }
+                if (l == 0) {
+                    return quant_rec(r);
+                }
+                if (r == 0) {
+                    return quant_rec(l);
+                }
+                break;
+            case bddop_nand:
+                if (l == 0 || r == 0) {
+                    return 1;
+                }
+                break;
+            case bddop_nor:
+                if (l == 1 || r == 1) {
+                    return 0;
+                }
+                break;
+        }
+
+        if (ISCONST(l) && ISCONST(r)) {
+            res = oprres[appexop][(l << 1) | r];
+        } else if (LEVEL(l) > quantlast && LEVEL(r) > quantlast) {
+            int oldop = applyop;
+            applyop = appexop;
+            switch (applyop) {
+                case bddop_and:
+                    res = and_rec(l, r);
+                    break;
+                case bddop_or:
+                    res = or_rec(l, r);
+                    break;
+                default:
+                    res = apply_rec(l, r);
+                    break;
+            }
+            applyop = oldop;
+        } else {
+            entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
+            if (entry.a == l && entry.b == r && entry.c == appexid) {
+                if (cachestats.enabled) {
+                    cachestats.opHit++;
+                }
+                return entry.res;
+            }
+            if (cachestats.enabled) {
+                cachestats.opMiss++;
+            }
+
+            int lev;
+            if (LEVEL(l) == LEVEL(r)) {
+                PUSHREF(appquant_rec(LOW(l), LOW(r)));
+                PUSHREF(appquant_rec(HIGH(l), HIGH(r)));
+                lev = LEVEL(l);
+            } else if (LEVEL(l) < LEVEL(r)) {
+                PUSHREF(appquant_rec(LOW(l), r));
+                PUSHREF(appquant_rec(HIGH(l), r));
+                lev = LEVEL(l);
+            } else {
+                PUSHREF(appquant_rec(l, LOW(r)));
+                PUSHREF(appquant_rec(l, HIGH(r)));
+                lev = LEVEL(r);
+            }
+            if (INVARSET(lev)) {
+                int r2 = READREF(2), r1 = READREF(1);
+                switch (applyop) {
+                    case bddop_and:
+                        res = and_rec(r2, r1);
+                        break;
+                    case bddop_or:
+                        res = or_rec(r2, r1);
+                        break;
+                    default:
+                        res = apply_rec(r2, r1);
+                        break;
+                }
+            } else {
+                res = bdd_makenode(lev, READREF(2), READREF(1));
+            }
+
+            POPREF(2);
+
+            entry.a = l;
+            entry.b = r;
+            entry.c = appexid;
+            entry.res = res;
+        }
+
+        return res;
+    }
+
+    int appuni_rec(int l, int r, int var) {
+        BddCacheDataI entry;
+        int res;
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        int LEVEL_l, LEVEL_r, LEVEL_var;
+        LEVEL_l = LEVEL(l);
+        LEVEL_r = LEVEL(r);
+        LEVEL_var = LEVEL(var);
+
+        if (LEVEL_l > LEVEL_var && LEVEL_r > LEVEL_var) {
+            // Skipped a quantified node, answer is zero.
+            return BDDZERO;
+        }
+
+        if (ISCONST(l) && ISCONST(r)) {
+            res = oprres[appexop][(l << 1) | r];
+        } else if (ISCONST(var)) {
+            int oldop = applyop;
+            applyop = appexop;
+            switch (applyop) {
+                case bddop_and:
+                    res = and_rec(l, r);
+                    break;
+                case bddop_or:
+                    res = or_rec(l, r);
+                    break;
+                default:
+                    res = apply_rec(l, r);
+                    break;
+            }
+            applyop = oldop;
+        } else {
+            entry = BddCache_lookupI(appexcache, APPEXHASH(l, r, appexop));
+            if (entry.a == l && entry.b == r && entry.c == appexid) {
+                if (cachestats.enabled) {
+                    cachestats.opHit++;
+                }
+                return entry.res;
+            }
+            if (cachestats.enabled) {
+                cachestats.opMiss++;
+            }
+
+            int lev;
+            if (LEVEL_l == LEVEL_r) {
+                if (LEVEL_l == LEVEL_var) {
+                    lev = -1;
+                    var = HIGH(var);
+                } else {
+                    lev = LEVEL_l;
+                }
                 PUSHREF(appuni_rec(LOW(l), LOW(r), var));
                 PUSHREF(appuni_rec(HIGH(l), HIGH(r), var));
                 lev = LEVEL_l;
@@ -5012,37 +6352,426 @@ public class JFactory extends BDDFactoryIntImpl {
 
             POPREF(2);
 
-            entry.a = l;
-            entry.b = r;
-            entry.c = appexid;
-            entry.res = res;
+            entry.a = l;
+            entry.b = r;
+            entry.c = appexid;
+            entry.res = res;
+        }
+
+        return res;
+    }
+
+    int unique_rec(int r, int q) {
+        BddCacheDataI entry;
+        int res;
+        int LEVEL_r, LEVEL_q;
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        LEVEL_r = LEVEL(r);
+        LEVEL_q = LEVEL(q);
+        if (LEVEL_r > LEVEL_q) {
+            // Skipped a quantified node, answer is zero.
+            return BDDZERO;
+        }
+
+        if (r < 2 || q < 2) {
+            return r;
+        }
+
+        entry = BddCache_lookupI(quantcache, QUANTHASH(r));
+        if (entry.a == r && entry.c == quantid) {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
+            }
+            return entry.res;
+        }
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
+
+        if (LEVEL_r == LEVEL_q) {
+            PUSHREF(unique_rec(LOW(r), HIGH(q)));
+            PUSHREF(unique_rec(HIGH(r), HIGH(q)));
+            res = apply_rec(READREF(2), READREF(1));
+        } else {
+            PUSHREF(unique_rec(LOW(r), q));
+            PUSHREF(unique_rec(HIGH(r), q));
+            res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
+        }
+
+        POPREF(2);
+
+        entry.a = r;
+        entry.c = quantid;
+        entry.res = res;
+
+        return res;
+    }
+
+    int quant_rec(int r) {
+        BddCacheDataI entry;
+        int res;
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        if (r < 2 || LEVEL(r) > quantlast) {
+            return r;
+        }
+
+        entry = BddCache_lookupI(quantcache, QUANTHASH(r));
+        if (entry.a == r && entry.c == quantid) {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
+            }
+            return entry.res;
+        }
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
+
+        PUSHREF(quant_rec(LOW(r)));
+        PUSHREF(quant_rec(HIGH(r)));
+
+        if (INVARSET(LEVEL(r))) {
+            int r2 = READREF(2), r1 = READREF(1);
+            switch (applyop) {
+                case bddop_and:
+                    res = and_rec(r2, r1);
+                    break;
+                case bddop_or:
+                    res = or_rec(r2, r1);
+                    break;
+                default:
+                    res = apply_rec(r2, r1);
+                    break;
+            }
+        } else {
+            res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
+        }
+
+        POPREF(2);
+
+        entry.a = r;
+        entry.c = quantid;
+        entry.res = res;
+
+        return res;
+    }
+
+    /**
+     * Iterative version of {@link #quant_rec}. Its frames on {@link #iterstack} are (r, phase), where the phase is
+     * {@code 0} if the node still has to be visited, and {@code 1} if its results are on the reference stack.
+     */
+    int quant_iter(int r) {
+        BddCacheDataI entry;
+        int res;
+
+        int base = iterstacktop;
+        ITERPUSH(r);
+        ITERPUSH(0);
+
+        while (iterstacktop > base) {
+            int phase = iterstack[iterstacktop - 1];
+            r = iterstack[iterstacktop - 2];
+            iterstacktop -= 2;
+
+            if (phase == 0) {
+                if (cachestats.enabled) {
+                    cachestats.opAccess++;
+                }
+
+                if (r < 2 || LEVEL(r) > quantlast) {
+                    res = r;
+                } else {
+                    entry = BddCache_lookupI(quantcache, QUANTHASH(r));
+                    if (entry.a == r && entry.c == quantid) {
+                        if (cachestats.enabled) {
+                            cachestats.opHit++;
+                        }
+                        res = entry.res;
+                    } else {
+                        if (cachestats.enabled) {
+                            cachestats.opMiss++;
+                        }
+
+                        ITERPUSH(r);
+                        ITERPUSH(1);
+                        ITERPUSH(HIGH(r));
+                        ITERPUSH(0);
+                        ITERPUSH(LOW(r));
+                        ITERPUSH(0);
+                        continue;
+                    }
+                }
+            } else {
+                if (INVARSET(LEVEL(r))) {
+                    res = apply_iter(READREF(2), READREF(1));
+                } else {
+                    res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
+                }
+                POPREF(2);
+
+                entry = BddCache_lookupI(quantcache, QUANTHASH(r));
+                entry.a = r;
+                entry.c = quantid;
+                entry.res = res;
+            }
+            PUSHREF(res);
+        }
+
+        res = READREF(1);
+        POPREF(1);
+        return res;
+    }
+
+    int zquant_rec(int r, int lev) {
+        BddCacheDataI entry;
+        int res;
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        for (;;) {
+            if (lev > quantlast) {
+                return r;
+            }
+            if (lev == LEVEL(r)) {
+                break;
+            }
+            if (INVARSET(lev)) {
+                switch (applyop) {
+                    case bddop_and:
+                        return 0;
+                    case bddop_or:
+                        PUSHREF(zquant_rec(r, lev + 1));
+                        res = zdd_makenode(lev, READREF(1), READREF(1));
+                        POPREF(1);
+                        return res;
+                    default:
+                        throw new BDDException();
+                }
+            }
+            lev++;
+        }
+
+        if (r < 2) {
+            return r;
+        }
+
+        entry = BddCache_lookupI(quantcache, QUANTHASH(r));
+        if (entry.a == r && entry.c == quantid) {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
+            }
+            return entry.res;
+        }
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
+
+        int nlev = LEVEL(r) + 1;
+        PUSHREF(zquant_rec(LOW(r), nlev));
+        PUSHREF(zquant_rec(HIGH(r), nlev));
+
+        if (INVARSET(LEVEL(r))) {
+            int r2 = READREF(2), r1 = READREF(1);
+            switch (applyop) {
+                case bddop_and:
+                    res = zand_rec(r2, r1);
+                    break;
+                case bddop_or:
+                    res = zor_rec(r2, r1);
+                    break;
+                default:
+                    throw new BDDException();
+            }
+            POPREF(2);
+            PUSHREF(res);
+            res = zdd_makenode(LEVEL(r), READREF(1), READREF(1));
+            POPREF(1);
+        } else {
+            res = zdd_makenode(LEVEL(r), READREF(2), READREF(1));
+            POPREF(2);
+        }
+
+        entry.a = r;
+        entry.c = quantid;
+        entry.res = res;
+
+        return res;
+    }
+
+    int bdd_constrain(int f, int c) {
+        int res;
+        int numReorder = 1;
+
+        CHECKa(f);
+        CHECKa(c);
+
+        if (misccache == null) {
+            misccache = BddCacheI_init(cachesize);
+        }
+
+        again:
+        for (;;) {
+            try {
+                INITREF();
+                miscid = CACHEID_CONSTRAIN;
+
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                res = constrain_rec(f, c);
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                numReorder--;
+                continue again;
+            }
+            break;
         }
 
+        checkresize();
         return res;
     }
 
-    int unique_rec(int r, int q) {
+    int constrain_rec(int f, int c) {
         BddCacheDataI entry;
         int res;
-        int LEVEL_r, LEVEL_q;
 
         if (cachestats.enabled) {
             cachestats.opAccess++;
         }
 
-        LEVEL_r = LEVEL(r);
-        LEVEL_q = LEVEL(q);
-        if (LEVEL_r > LEVEL_q) {
-            // Skipped a quantified node, answer is zero.
+        if (ISONE(c)) {
+            return f;
+        }
+        if (ISCONST(f)) {
+            return f;
+        }
+        if (c == f) {
+            return BDDONE;
+        }
+        if (ISZERO(c)) {
             return BDDZERO;
         }
 
-        if (r < 2 || q < 2) {
-            return r;
+        entry = BddCache_lookupI(misccache, CONSTRAINHASH(f, c));
+        if (entry.a == f && entry.b == c && entry.c == miscid) {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
+            }
+            return entry.res;
+        }
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
         }
 
-        entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
+        if (LEVEL(f) == LEVEL(c)) {
+            if (ISZERO(LOW(c))) {
+                res = constrain_rec(HIGH(f), HIGH(c));
+            } else if (ISZERO(HIGH(c))) {
+                res = constrain_rec(LOW(f), LOW(c));
+            } else {
+                PUSHREF(constrain_rec(LOW(f), LOW(c)));
+                PUSHREF(constrain_rec(HIGH(f), HIGH(c)));
+                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+                POPREF(2);
+            }
+        } else if (LEVEL(f) < LEVEL(c)) {
+            PUSHREF(constrain_rec(LOW(f), c));
+            PUSHREF(constrain_rec(HIGH(f), c));
+            res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+            POPREF(2);
+        } else {
+            if (ISZERO(LOW(c))) {
+                res = constrain_rec(f, HIGH(c));
+            } else if (ISZERO(HIGH(c))) {
+                res = constrain_rec(f, LOW(c));
+            } else {
+                PUSHREF(constrain_rec(f, LOW(c)));
+                PUSHREF(constrain_rec(f, HIGH(c)));
+                res = bdd_makenode(LEVEL(c), READREF(2), READREF(1));
+                POPREF(2);
+            }
+        }
+
+        entry.a = f;
+        entry.b = c;
+        entry.c = miscid;
+        entry.res = res;
+
+        return res;
+    }
+
+    int bdd_compose(int f, int g, int var) {
+        int res;
+        int numReorder = 1;
+
+        CHECKa(f);
+        CHECKa(g);
+        if (var < 0 || var >= bddvarnum) {
+            bdd_error(BDD_VAR);
+            return bddfalse;
+        }
+
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
+        }
+        if (itecache == null) {
+            itecache = BddCacheI_init(cachesize);
+        }
+
+        again:
+        for (;;) {
+            try {
+                INITREF();
+                composelevel = bddvar2level[var];
+                replaceid = (composelevel << 2) | CACHEID_COMPOSE;
+
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                res = compose_rec(f, g);
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                numReorder--;
+                continue again;
+            }
+            break;
+        }
+
+        checkresize();
+        return res;
+    }
+
+    int compose_rec(int f, int g) {
+        BddCacheDataI entry;
+        int res;
+
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
+        }
+
+        if (LEVEL(f) > composelevel) {
+            return f;
+        }
+
+        entry = BddCache_lookupI(replacecache, COMPOSEHASH(f, g));
+        if (entry.a == f && entry.b == g && entry.c == replaceid) {
             if (cachestats.enabled) {
                 cachestats.opHit++;
             }
@@ -5052,26 +6781,79 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opMiss++;
         }
 
-        if (LEVEL_r == LEVEL_q) {
-            PUSHREF(unique_rec(LOW(r), HIGH(q)));
-            PUSHREF(unique_rec(HIGH(r), HIGH(q)));
-            res = apply_rec(READREF(2), READREF(1));
+        if (LEVEL(f) < composelevel) {
+            if (LEVEL(f) == LEVEL(g)) {
+                PUSHREF(compose_rec(LOW(f), LOW(g)));
+                PUSHREF(compose_rec(HIGH(f), HIGH(g)));
+                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+            } else if (LEVEL(f) < LEVEL(g)) {
+                PUSHREF(compose_rec(LOW(f), g));
+                PUSHREF(compose_rec(HIGH(f), g));
+                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+            } else {
+                PUSHREF(compose_rec(f, LOW(g)));
+                PUSHREF(compose_rec(f, HIGH(g)));
+                res = bdd_makenode(LEVEL(g), READREF(2), READREF(1));
+            }
+            POPREF(2);
         } else {
-            PUSHREF(unique_rec(LOW(r), q));
-            PUSHREF(unique_rec(HIGH(r), q));
-            res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
+            /* if (LEVEL(f) == composelevel) changed 2-nov-98 */
+            res = ite_rec(g, HIGH(f), LOW(f));
+        }
+
+        entry.a = f;
+        entry.b = g;
+        entry.c = replaceid;
+        entry.res = res;
+
+        return res;
+    }
+
+    int bdd_veccompose(int f, bddPair pair) {
+        int res;
+        int numReorder = 1;
+
+        CHECKa(f);
+
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
         }
+        if (itecache == null) {
+            itecache = BddCacheI_init(cachesize);
+        }
+        if (replacecache == null) {
+            replacecache = BddCacheI_init(cachesize);
+        }
+
+        again:
+        for (;;) {
+            try {
+                INITREF();
+                replacepair = pair.result;
+                replaceid = (pair.id << 2) | CACHEID_VECCOMPOSE;
+                replacelast = pair.last;
 
-        POPREF(2);
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                res = veccompose_rec(f);
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
 
-        entry.a = r;
-        entry.c = quantid;
-        entry.res = res;
+                numReorder--;
+                continue again;
+            }
+            break;
+        }
 
+        checkresize();
         return res;
     }
 
-    int quant_rec(int r) {
+    int veccompose_rec(int f) {
         BddCacheDataI entry;
         int res;
 
@@ -5079,12 +6861,12 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opAccess++;
         }
 
-        if (r < 2 || LEVEL(r) > quantlast) {
-            return r;
+        if (LEVEL(f) > replacelast) {
+            return f;
         }
 
-        entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
+        entry = BddCache_lookupI(replacecache, VECCOMPOSEHASH(f));
+        if (entry.a == f && entry.c == replaceid) {
             if (cachestats.enabled) {
                 cachestats.opHit++;
             }
@@ -5094,134 +6876,102 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opMiss++;
         }
 
-        PUSHREF(quant_rec(LOW(r)));
-        PUSHREF(quant_rec(HIGH(r)));
-
-        if (INVARSET(LEVEL(r))) {
-            int r2 = READREF(2), r1 = READREF(1);
-            switch (applyop) {
-                case bddop_and:
-                    res = and_rec(r2, r1);
-                    break;
-                case bddop_or:
-                    res = or_rec(r2, r1);
-                    break;
-                default:
-                    res = apply_rec(r2, r1);
-                    break;
-            }
-        } else {
-            res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
-        }
-
+        PUSHREF(veccompose_rec(LOW(f)));
+        PUSHREF(veccompose_rec(HIGH(f)));
+        res = ite_rec(replacepair[LEVEL(f)], READREF(1), READREF(2));
         POPREF(2);
 
-        entry.a = r;
-        entry.c = quantid;
+        entry.a = f;
+        entry.c = replaceid;
         entry.res = res;
 
         return res;
     }
 
-    int zquant_rec(int r, int lev) {
-        BddCacheDataI entry;
+    int bdd_exist(int r, int var) {
         int res;
+        int numReorder = 1;
 
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
-        }
-
-        for (;;) {
-            if (lev > quantlast) {
-                return r;
-            }
-            if (lev == LEVEL(r)) {
-                break;
-            }
-            if (INVARSET(lev)) {
-                switch (applyop) {
-                    case bddop_and:
-                        return 0;
-                    case bddop_or:
-                        PUSHREF(zquant_rec(r, lev + 1));
-                        res = zdd_makenode(lev, READREF(1), READREF(1));
-                        POPREF(1);
-                        return res;
-                    default:
-                        throw new BDDException();
-                }
-            }
-            lev++;
-        }
+        CHECKa(r);
+        CHECKa(var);
 
-        if (r < 2) {
+        if (var < 2) { /* Empty set */
             return r;
         }
 
-        entry = BddCache_lookupI(quantcache, QUANTHASH(r));
-        if (entry.a == r && entry.c == quantid) {
-            if (cachestats.enabled) {
-                cachestats.opHit++;
-            }
-            return entry.res;
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
         }
-        if (cachestats.enabled) {
-            cachestats.opMiss++;
+        if (quantcache == null) {
+            quantcache = BddCacheI_init(cachesize);
         }
 
-        int nlev = LEVEL(r) + 1;
-        PUSHREF(zquant_rec(LOW(r), nlev));
-        PUSHREF(zquant_rec(HIGH(r), nlev));
+        again:
+        for (;;) {
+            if (varset2vartable(var) < 0) {
+                return bddfalse;
+            }
+            try {
+                INITREF();
 
-        if (INVARSET(LEVEL(r))) {
-            int r2 = READREF(2), r1 = READREF(1);
-            switch (applyop) {
-                case bddop_and:
-                    res = zand_rec(r2, r1);
-                    break;
-                case bddop_or:
-                    res = zor_rec(r2, r1);
-                    break;
-                default:
-                    throw new BDDException();
+                quantid = (var << 3) | CACHEID_EXIST; /* FIXME: range */
+                applyop = bddop_or;
+
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                res = ZDD ? zquant_rec(r, 0) : ITERATIVE() ? quant_iter(r) : quant_rec(r);
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                numReorder--;
+                continue again;
             }
-            POPREF(2);
-            PUSHREF(res);
-            res = zdd_makenode(LEVEL(r), READREF(1), READREF(1));
-            POPREF(1);
-        } else {
-            res = zdd_makenode(LEVEL(r), READREF(2), READREF(1));
-            POPREF(2);
+            break;
         }
 
-        entry.a = r;
-        entry.c = quantid;
-        entry.res = res;
-
+        checkresize();
+        if (DO_BDD_VALIDATE) {
+            bdd_validate(res);
+        }
         return res;
     }
 
-    int bdd_constrain(int f, int c) {
+    int bdd_forall(int r, int var) {
         int res;
         int numReorder = 1;
 
-        CHECKa(f);
-        CHECKa(c);
+        CHECKa(r);
+        CHECKa(var);
 
-        if (misccache == null) {
-            misccache = BddCacheI_init(cachesize);
+        if (var < 2) { /* Empty set */
+            return r;
+        }
+
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
+        }
+        if (quantcache == null) {
+            quantcache = BddCacheI_init(cachesize);
         }
 
         again:
         for (;;) {
+            if (varset2vartable(var) < 0) {
+                return bddfalse;
+            }
             try {
                 INITREF();
-                miscid = CACHEID_CONSTRAIN;
+                quantid = (var << 3) | CACHEID_FORALL;
+                applyop = bddop_and;
 
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                res = constrain_rec(f, c);
+                res = ZDD ? zquant_rec(r, 0) : ITERATIVE() ? quant_iter(r) : quant_rec(r);
                 if (numReorder == 0) {
                     bdd_enable_reorder();
                 }
@@ -5238,104 +6988,79 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
-    int constrain_rec(int f, int c) {
-        BddCacheDataI entry;
+    int bdd_unique(int r, int var) {
         int res;
+        int numReorder = 1;
 
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
-        }
+        CHECKa(r);
+        CHECKa(var);
 
-        if (ISONE(c)) {
-            return f;
-        }
-        if (ISCONST(f)) {
-            return f;
-        }
-        if (c == f) {
-            return BDDONE;
-        }
-        if (ISZERO(c)) {
-            return BDDZERO;
+        if (var < 2) { /* Empty set */
+            return r;
         }
 
-        entry = BddCache_lookupI(misccache, CONSTRAINHASH(f, c));
-        if (entry.a == f && entry.b == c && entry.c == miscid) {
-            if (cachestats.enabled) {
-                cachestats.opHit++;
-            }
-            return entry.res;
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
         }
-        if (cachestats.enabled) {
-            cachestats.opMiss++;
+        if (quantcache == null) {
+            quantcache = BddCacheI_init(cachesize);
         }
 
-        if (LEVEL(f) == LEVEL(c)) {
-            if (ISZERO(LOW(c))) {
-                res = constrain_rec(HIGH(f), HIGH(c));
-            } else if (ISZERO(HIGH(c))) {
-                res = constrain_rec(LOW(f), LOW(c));
-            } else {
-                PUSHREF(constrain_rec(LOW(f), LOW(c)));
-                PUSHREF(constrain_rec(HIGH(f), HIGH(c)));
-                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
-                POPREF(2);
-            }
-        } else if (LEVEL(f) < LEVEL(c)) {
-            PUSHREF(constrain_rec(LOW(f), c));
-            PUSHREF(constrain_rec(HIGH(f), c));
-            res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
-            POPREF(2);
-        } else {
-            if (ISZERO(LOW(c))) {
-                res = constrain_rec(f, HIGH(c));
-            } else if (ISZERO(HIGH(c))) {
-                res = constrain_rec(f, LOW(c));
-            } else {
-                PUSHREF(constrain_rec(f, LOW(c)));
-                PUSHREF(constrain_rec(f, HIGH(c)));
-                res = bdd_makenode(LEVEL(c), READREF(2), READREF(1));
-                POPREF(2);
+        again:
+        for (;;) {
+            try {
+                INITREF();
+                quantid = (var << 3) | CACHEID_UNIQUE;
+                applyop = bddop_xor;
+
+                if (numReorder == 0) {
+                    bdd_disable_reorder();
+                }
+                res = unique_rec(r, var);
+                if (numReorder == 0) {
+                    bdd_enable_reorder();
+                }
+            } catch (ReorderException x) {
+                bdd_checkreorder();
+
+                numReorder--;
+                continue again;
             }
+            break;
         }
 
-        entry.a = f;
-        entry.b = c;
-        entry.c = miscid;
-        entry.res = res;
-
+        checkresize();
         return res;
     }
 
-    int bdd_compose(int f, int g, int var) {
+    int bdd_restrict(int r, int var) {
         int res;
         int numReorder = 1;
 
-        CHECKa(f);
-        CHECKa(g);
-        if (var < 0 || var >= bddvarnum) {
-            bdd_error(BDD_VAR);
-            return bddfalse;
-        }
+        CHECKa(r);
+        CHECKa(var);
 
-        if (applycache == null) {
-            applycache = BddCacheI_init(cachesize);
+        if (var < 2) { /* Empty set */
+            return r;
         }
-        if (itecache == null) {
-            itecache = BddCacheI_init(cachesize);
+
+        if (misccache == null) {
+            misccache = BddCacheI_init(cachesize);
         }
 
         again:
         for (;;) {
+            if (varset2svartable(var) < 0) {
+                return bddfalse;
+            }
             try {
                 INITREF();
-                composelevel = bddvar2level[var];
-                replaceid = (composelevel << 2) | CACHEID_COMPOSE;
+                miscid = (var << 3) | CACHEID_RESTRICT;
 
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                res = compose_rec(f, g);
+                res = restrict_rec(r);
                 if (numReorder == 0) {
                     bdd_enable_reorder();
                 }
@@ -5352,7 +7077,7 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
-    int compose_rec(int f, int g) {
+    int restrict_rec(int r) {
         BddCacheDataI entry;
         int res;
 
@@ -5360,12 +7085,12 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opAccess++;
         }
 
-        if (LEVEL(f) > composelevel) {
-            return f;
+        if (ISCONST(r) || LEVEL(r) > quantlast) {
+            return r;
         }
 
-        entry = BddCache_lookupI(replacecache, COMPOSEHASH(f, g));
-        if (entry.a == f && entry.b == g && entry.c == replaceid) {
+        entry = BddCache_lookupI(misccache, RESTRHASH(r, miscid));
+        if (entry.a == r && entry.c == miscid) {
             if (cachestats.enabled) {
                 cachestats.opHit++;
             }
@@ -5375,62 +7100,47 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opMiss++;
         }
 
-        if (LEVEL(f) < composelevel) {
-            if (LEVEL(f) == LEVEL(g)) {
-                PUSHREF(compose_rec(LOW(f), LOW(g)));
-                PUSHREF(compose_rec(HIGH(f), HIGH(g)));
-                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
-            } else if (LEVEL(f) < LEVEL(g)) {
-                PUSHREF(compose_rec(LOW(f), g));
-                PUSHREF(compose_rec(HIGH(f), g));
-                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+        if (INSVARSET(LEVEL(r))) {
+            if (quantvarset[LEVEL(r)] > 0) {
+                res = restrict_rec(HIGH(r));
             } else {
-                PUSHREF(compose_rec(f, LOW(g)));
-                PUSHREF(compose_rec(f, HIGH(g)));
-                res = bdd_makenode(LEVEL(g), READREF(2), READREF(1));
+                res = restrict_rec(LOW(r));
             }
-            POPREF(2);
         } else {
-            /* if (LEVEL(f) == composelevel) changed 2-nov-98 */
-            res = ite_rec(g, HIGH(f), LOW(f));
+            PUSHREF(restrict_rec(LOW(r)));
+            PUSHREF(restrict_rec(HIGH(r)));
+            res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
+            POPREF(2);
         }
 
-        entry.a = f;
-        entry.b = g;
-        entry.c = replaceid;
+        entry.a = r;
+        entry.c = miscid;
         entry.res = res;
 
         return res;
     }
 
-    int bdd_veccompose(int f, bddPair pair) {
+    int bdd_simplify(int f, int d) {
         int res;
         int numReorder = 1;
 
         CHECKa(f);
+        CHECKa(d);
 
         if (applycache == null) {
             applycache = BddCacheI_init(cachesize);
         }
-        if (itecache == null) {
-            itecache = BddCacheI_init(cachesize);
-        }
-        if (replacecache == null) {
-            replacecache = BddCacheI_init(cachesize);
-        }
 
         again:
         for (;;) {
             try {
                 INITREF();
-                replacepair = pair.result;
-                replaceid = (pair.id << 2) | CACHEID_VECCOMPOSE;
-                replacelast = pair.last;
+                applyop = bddop_or;
 
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                res = veccompose_rec(f);
+                res = simplify_rec(f, d);
                 if (numReorder == 0) {
                     bdd_enable_reorder();
                 }
@@ -5447,7 +7157,7 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
-    int veccompose_rec(int f) {
+    int simplify_rec(int f, int d) {
         BddCacheDataI entry;
         int res;
 
@@ -5455,12 +7165,19 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opAccess++;
         }
 
-        if (LEVEL(f) > replacelast) {
+        if (ISONE(d) || ISCONST(f)) {
             return f;
         }
+        if (d == f) {
+            return BDDONE;
+        }
+        if (ISZERO(d)) {
+            return BDDZERO;
+        }
 
-        entry = BddCache_lookupI(replacecache, VECCOMPOSEHASH(f));
-        if (entry.a == f && entry.c == replaceid) {
+        entry = BddCache_lookupI(applycache, APPLYHASH(f, d, bddop_simplify));
+
+        if (entry.a == f && entry.b == d && entry.c == bddop_simplify) {
             if (cachestats.enabled) {
                 cachestats.opHit++;
             }
@@ -5470,84 +7187,184 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.opMiss++;
         }
 
-        PUSHREF(veccompose_rec(LOW(f)));
-        PUSHREF(veccompose_rec(HIGH(f)));
-        res = ite_rec(replacepair[LEVEL(f)], READREF(1), READREF(2));
-        POPREF(2);
+        if (LEVEL(f) == LEVEL(d)) {
+            if (ISZERO(LOW(d))) {
+                res = simplify_rec(HIGH(f), HIGH(d));
+            } else if (ISZERO(HIGH(d))) {
+                res = simplify_rec(LOW(f), LOW(d));
+            } else {
+                PUSHREF(simplify_rec(LOW(f), LOW(d)));
+                PUSHREF(simplify_rec(HIGH(f), HIGH(d)));
+                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+                POPREF(2);
+            }
+        } else if (LEVEL(f) < LEVEL(d)) {
+            PUSHREF(simplify_rec(LOW(f), d));
+            PUSHREF(simplify_rec(HIGH(f), d));
+            res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
+            POPREF(2);
+        } else /* LEVEL(d) < LEVEL(f) */ {
+            PUSHREF(or_rec(LOW(d), HIGH(d))); /* Exist quant */
+            res = simplify_rec(f, READREF(1));
+            POPREF(1);
+        }
 
         entry.a = f;
-        entry.c = replaceid;
+        entry.b = d;
+        entry.c = bddop_simplify;
         entry.res = res;
 
         return res;
     }
 
-    int bdd_exist(int r, int var) {
-        int res;
-        int numReorder = 1;
+    int supportSize = 0;
+
+    int bdd_support(int r) {
+        int n;
+        int res = 1;
 
         CHECKa(r);
-        CHECKa(var);
 
-        if (var < 2) { /* Empty set */
-            return r;
+        if (r < 2) {
+            return bddtrue;
         }
 
-        if (applycache == null) {
-            applycache = BddCacheI_init(cachesize);
+        /* On-demand allocation of support set */
+        if (supportSize < bddvarnum) {
+            supportSet = new int[bddvarnum];
+            // memset(supportSet, 0, bddvarnum*sizeof(int));
+            supportSize = bddvarnum;
+            supportID = 0;
         }
-        if (quantcache == null) {
-            quantcache = BddCacheI_init(cachesize);
+
+        /*
+         * Update global variables used to speed up bdd_support() - instead of always memsetting support to zero, we use
+         * a change counter. - and instead of reading the whole array afterwards, we just look from 'min' to 'max' used
+         * BDD variables.
+         */
+        if (supportID == 0x0FFFFFFF) {
+            /* We probably don't get here -- but let's just be sure */
+            for (int i = 0; i < bddvarnum; ++i) {
+                supportSet[i] = 0;
+            }
+            supportID = 0;
         }
+        ++supportID;
+        supportMin = LEVEL(r);
+        supportMax = supportMin;
 
-        again:
-        for (;;) {
-            if (varset2vartable(var) < 0) {
-                return bddfalse;
+        if (ZDD) {
+            zsupport_rec(r, 0, supportSet);
+        } else {
+            support_rec(r, supportSet);
+        }
+        bdd_unmark(r);
+
+        bdd_disable_reorder();
+
+        for (n = supportMax; n >= supportMin; --n) {
+            if (supportSet[n] == supportID) {
+                int tmp;
+                bdd_addref(res);
+                tmp = makenode_impl(n, 0, res);
+                bdd_delref(res);
+                res = tmp;
             }
-            try {
-                INITREF();
+        }
 
-                quantid = (var << 3) | CACHEID_EXIST; /* FIXME: range */
-                applyop = bddop_or;
+        bdd_enable_reorder();
 
-                if (numReorder == 0) {
-                    bdd_disable_reorder();
-                }
-                res = ZDD ? zquant_rec(r, 0) : quant_rec(r);
-                if (numReorder == 0) {
-                    bdd_enable_reorder();
-                }
-            } catch (ReorderException x) {
-                bdd_checkreorder();
+        return res;
+    }
 
-                numReorder--;
-                continue again;
+    void support_rec(int r, int[] support) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
+        }
+
+        if (r < 2) {
+            return;
+        }
+
+        if (MARKED(r) || LOW(r) == INVALID_BDD) {
+            return;
+        }
+
+        support[LEVEL(r)] = supportID;
+
+        if (LEVEL(r) > supportMax) {
+            supportMax = LEVEL(r);
+        }
+
+        SETMARK(r);
+
+        support_rec(LOW(r), support);
+        support_rec(HIGH(r), support);
+    }
+
+    void zsupport_rec(int r, int lev, int[] support) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(ZDD);
+        }
+
+        if (!ISZERO(r)) {
+            while (lev != LEVEL(r)) {
+                if (lev > supportMax) {
+                    supportMax = lev;
+                }
+                support[lev++] = supportID;
             }
-            break;
         }
 
-        checkresize();
-        if (DO_BDD_VALIDATE) {
-            bdd_validate(res);
+        if (r < 2) {
+            return;
+        }
+
+        if (MARKED(r) || LOW(r) == INVALID_BDD) {
+            return;
+        }
+
+        if (LOW(r) == HIGH(r)) {
+            SETMARK(r);
+            zsupport_rec(LOW(r), LEVEL(r) + 1, support);
+            return;
         }
-        return res;
+
+        support[LEVEL(r)] = supportID;
+
+        if (LEVEL(r) > supportMax) {
+            supportMax = LEVEL(r);
+        }
+
+        SETMARK(r);
+
+        zsupport_rec(LOW(r), LEVEL(r) + 1, support);
+        zsupport_rec(HIGH(r), LEVEL(r) + 1, support);
     }
 
-    int bdd_forall(int r, int var) {
+    int bdd_appall(int l, int r, int opr, int var) {
         int res;
         int numReorder = 1;
 
+        CHECKa(l);
         CHECKa(r);
         CHECKa(var);
 
+        if (opr < 0 || opr > bddop_invimp) {
+            bdd_error(BDD_OP);
+            return bddfalse;
+        }
+
         if (var < 2) { /* Empty set */
-            return r;
+            return bdd_apply(l, r, opr);
         }
 
         if (applycache == null) {
             applycache = BddCacheI_init(cachesize);
         }
+        if (appexcache == null) {
+            appexcache = BddCacheI_init(cachesize);
+        }
         if (quantcache == null) {
             quantcache = BddCacheI_init(cachesize);
         }
@@ -5559,13 +7376,15 @@ public class JFactory extends BDDFactoryIntImpl {
             }
             try {
                 INITREF();
-                quantid = (var << 3) | CACHEID_FORALL;
                 applyop = bddop_and;
+                appexop = opr;
+                appexid = (var << 5) | (appexop << 1) | 1; /* FIXME: range! */
+                quantid = (appexid << 3) | CACHEID_APPAL;
 
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                res = ZDD ? zquant_rec(r, 0) : quant_rec(r);
+                res = appquant_rec(l, r);
                 if (numReorder == 0) {
                     bdd_enable_reorder();
                 }
@@ -5582,20 +7401,29 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
-    int bdd_unique(int r, int var) {
+    int bdd_appuni(int l, int r, int opr, int var) {
         int res;
         int numReorder = 1;
 
+        CHECKa(l);
         CHECKa(r);
         CHECKa(var);
 
+        if (opr < 0 || opr > bddop_invimp) {
+            bdd_error(BDD_OP);
+            return bddfalse;
+        }
+
         if (var < 2) { /* Empty set */
-            return r;
+            return bdd_apply(l, r, opr);
         }
 
         if (applycache == null) {
             applycache = BddCacheI_init(cachesize);
         }
+        if (appexcache == null) {
+            appexcache = BddCacheI_init(cachesize);
+        }
         if (quantcache == null) {
             quantcache = BddCacheI_init(cachesize);
         }
@@ -5604,19 +7432,20 @@ public class JFactory extends BDDFactoryIntImpl {
         for (;;) {
             try {
                 INITREF();
-                quantid = (var << 3) | CACHEID_UNIQUE;
                 applyop = bddop_xor;
+                appexop = opr;
+                appexid = (var << 5) | (appexop << 1) | 1; /* FIXME: range! */
+                quantid = (appexid << 3) | CACHEID_APPUN;
 
                 if (numReorder == 0) {
                     bdd_disable_reorder();
                 }
-                res = unique_rec(r, var);
+                res = appuni_rec(l, r, var);
                 if (numReorder == 0) {
                     bdd_enable_reorder();
                 }
             } catch (ReorderException x) {
                 bdd_checkreorder();
-
                 numReorder--;
                 continue again;
             }
@@ -5627,583 +7456,694 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
-    int bdd_restrict(int r, int var) {
+    int bdd_satone(int r) {
         int res;
-        int numReorder = 1;
 
         CHECKa(r);
-        CHECKa(var);
-
-        if (var < 2) { /* Empty set */
+        if (r < 2) {
             return r;
         }
 
-        if (misccache == null) {
-            misccache = BddCacheI_init(cachesize);
-        }
-
-        again:
-        for (;;) {
-            if (varset2svartable(var) < 0) {
-                return bddfalse;
-            }
-            try {
-                INITREF();
-                miscid = (var << 3) | CACHEID_RESTRICT;
+        bdd_disable_reorder();
 
-                if (numReorder == 0) {
-                    bdd_disable_reorder();
-                }
-                res = restrict_rec(r);
-                if (numReorder == 0) {
-                    bdd_enable_reorder();
-                }
-            } catch (ReorderException x) {
-                bdd_checkreorder();
+        INITREF();
+        res = satone_rec(r);
 
-                numReorder--;
-                continue again;
-            }
-            break;
-        }
+        bdd_enable_reorder();
 
         checkresize();
         return res;
     }
 
-    int restrict_rec(int r) {
-        BddCacheDataI entry;
-        int res;
-
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
-        }
-
-        if (ISCONST(r) || LEVEL(r) > quantlast) {
+    int satone_rec(int r) {
+        if (ISCONST(r)) {
             return r;
         }
 
-        entry = BddCache_lookupI(misccache, RESTRHASH(r, miscid));
-        if (entry.a == r && entry.c == miscid) {
-            if (cachestats.enabled) {
-                cachestats.opHit++;
-            }
-            return entry.res;
-        }
-        if (cachestats.enabled) {
-            cachestats.opMiss++;
-        }
-
-        if (INSVARSET(LEVEL(r))) {
-            if (quantvarset[LEVEL(r)] > 0) {
-                res = restrict_rec(HIGH(r));
-            } else {
-                res = restrict_rec(LOW(r));
-            }
+        if (ISZERO(LOW(r))) {
+            int res = satone_rec(HIGH(r));
+            int m = makenode_impl(LEVEL(r), BDDZERO, res);
+            PUSHREF(m);
+            return m;
         } else {
-            PUSHREF(restrict_rec(LOW(r)));
-            PUSHREF(restrict_rec(HIGH(r)));
-            res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
-            POPREF(2);
+            int res = satone_rec(LOW(r));
+            int m = makenode_impl(LEVEL(r), res, (ZDD && LOW(r) == HIGH(r)) ? res : BDDZERO);
+            PUSHREF(m);
+            return m;
         }
-
-        entry.a = r;
-        entry.c = miscid;
-        entry.res = res;
-
-        return res;
     }
 
-    int bdd_simplify(int f, int d) {
+    int bdd_satoneset(int r, int var, boolean pol) {
         int res;
-        int numReorder = 1;
-
-        CHECKa(f);
-        CHECKa(d);
 
-        if (applycache == null) {
-            applycache = BddCacheI_init(cachesize);
+        CHECKa(r);
+        if (ISZERO(r)) {
+            return r;
         }
 
-        again:
-        for (;;) {
-            try {
-                INITREF();
-                applyop = bddop_or;
+        bdd_disable_reorder();
 
-                if (numReorder == 0) {
-                    bdd_disable_reorder();
-                }
-                res = simplify_rec(f, d);
-                if (numReorder == 0) {
-                    bdd_enable_reorder();
-                }
-            } catch (ReorderException x) {
-                bdd_checkreorder();
+        INITREF();
+        satPolarity = pol;
+        res = satoneset_rec(r, var);
 
-                numReorder--;
-                continue again;
-            }
-            break;
-        }
+        bdd_enable_reorder();
 
         checkresize();
         return res;
     }
 
-    int simplify_rec(int f, int d) {
-        BddCacheDataI entry;
-        int res;
-
-        if (cachestats.enabled) {
-            cachestats.opAccess++;
-        }
-
-        if (ISONE(d) || ISCONST(f)) {
-            return f;
-        }
-        if (d == f) {
-            return BDDONE;
-        }
-        if (ISZERO(d)) {
-            return BDDZERO;
+    int satoneset_rec(int r, int var) {
+        if (ISCONST(r) && ISCONST(var)) {
+            return r;
         }
 
-        entry = BddCache_lookupI(applycache, APPLYHASH(f, d, bddop_simplify));
-
-        if (entry.a == f && entry.b == d && entry.c == bddop_simplify) {
-            if (cachestats.enabled) {
-                cachestats.opHit++;
+        if (LEVEL(r) < LEVEL(var)) {
+            // r is not in the set
+            if (ISZERO(LOW(r))) {
+                int res = satoneset_rec(HIGH(r), var);
+                int m = makenode_impl(LEVEL(r), BDDZERO, res);
+                PUSHREF(m);
+                return m;
+            } else {
+                int res = satoneset_rec(LOW(r), var);
+                int m = makenode_impl(LEVEL(r), res, (ZDD && LOW(r) == HIGH(r)) ? res : BDDZERO);
+                PUSHREF(m);
+                return m;
             }
-            return entry.res;
-        }
-        if (cachestats.enabled) {
-            cachestats.opMiss++;
-        }
-
-        if (LEVEL(f) == LEVEL(d)) {
-            if (ISZERO(LOW(d))) {
-                res = simplify_rec(HIGH(f), HIGH(d));
-            } else if (ISZERO(HIGH(d))) {
-                res = simplify_rec(LOW(f), LOW(d));
+        } else if (LEVEL(var) < LEVEL(r)) {
+            int res = satoneset_rec(r, HIGH(var));
+            if (!ZDD && satPolarity) {
+                int m = makenode_impl(LEVEL(var), BDDZERO, res);
+                PUSHREF(m);
+                return m;
             } else {
-                PUSHREF(simplify_rec(LOW(f), LOW(d)));
-                PUSHREF(simplify_rec(HIGH(f), HIGH(d)));
-                res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
-                POPREF(2);
+                int m = makenode_impl(LEVEL(var), res, BDDZERO);
+                PUSHREF(m);
+                return m;
+            }
+        } else /* LEVEL(r) == LEVEL(var) */ {
+            if (ISZERO(LOW(r))) {
+                int res = satoneset_rec(HIGH(r), HIGH(var));
+                int m = makenode_impl(LEVEL(r), BDDZERO, res);
+                PUSHREF(m);
+                return m;
+            } else {
+                int res = satoneset_rec(LOW(r), HIGH(var));
+                int m;
+                if (ZDD && satPolarity && LOW(r) == HIGH(r)) {
+                    m = zdd_makenode(LEVEL(r), BDDZERO, res);
+                } else {
+                    m = makenode_impl(LEVEL(r), res, BDDZERO);
+                }
+                PUSHREF(m);
+                return m;
             }
-        } else if (LEVEL(f) < LEVEL(d)) {
-            PUSHREF(simplify_rec(LOW(f), d));
-            PUSHREF(simplify_rec(HIGH(f), d));
-            res = bdd_makenode(LEVEL(f), READREF(2), READREF(1));
-            POPREF(2);
-        } else /* LEVEL(d) < LEVEL(f) */ {
-            PUSHREF(or_rec(LOW(d), HIGH(d))); /* Exist quant */
-            res = simplify_rec(f, READREF(1));
-            POPREF(1);
         }
-
-        entry.a = f;
-        entry.b = d;
-        entry.c = bddop_simplify;
-        entry.res = res;
-
-        return res;
     }
 
-    int supportSize = 0;
-
-    int bdd_support(int r) {
-        int n;
-        int res = 1;
+    int bdd_fullsatone(int r) {
+        int res;
+        int v;
 
         CHECKa(r);
-
-        if (r < 2) {
-            return bddtrue;
-        }
-
-        /* On-demand allocation of support set */
-        if (supportSize < bddvarnum) {
-            supportSet = new int[bddvarnum];
-            // memset(supportSet, 0, bddvarnum*sizeof(int));
-            supportSize = bddvarnum;
-            supportID = 0;
-        }
-
-        /*
-         * Update global variables used to speed up bdd_support() - instead of always memsetting support to zero, we use
-         * a change counter. - and instead of reading the whole array afterwards, we just look from 'min' to 'max' used
-         * BDD variables.
-         */
-        if (supportID == 0x0FFFFFFF) {
-            /* We probably don't get here -- but let's just be sure */
-            for (int i = 0; i < bddvarnum; ++i) {
-                supportSet[i] = 0;
-            }
-            supportID = 0;
-        }
-        ++supportID;
-        supportMin = LEVEL(r);
-        supportMax = supportMin;
-
-        if (ZDD) {
-            zsupport_rec(r, 0, supportSet);
-        } else {
-            support_rec(r, supportSet);
+        if (r == 0) {
+            return 0;
         }
-        bdd_unmark(r);
 
         bdd_disable_reorder();
 
-        for (n = supportMax; n >= supportMin; --n) {
-            if (supportSet[n] == supportID) {
-                int tmp;
-                bdd_addref(res);
-                tmp = makenode_impl(n, 0, res);
-                bdd_delref(res);
-                res = tmp;
-            }
+        INITREF();
+        res = fullsatone_rec(r);
+
+        for (v = LEVEL(r) - 1; v >= 0; v--) {
+            res = PUSHREF(makenode_impl(v, res, 0));
         }
 
         bdd_enable_reorder();
 
+        checkresize();
         return res;
     }
 
-    void support_rec(int r, int[] support) {
-        if (VERIFY_ASSERTIONS) {
-            _assert(!ZDD);
-        }
-
+    int fullsatone_rec(int r) {
         if (r < 2) {
-            return;
+            return r;
         }
 
-        if (MARKED(r) || LOW(r) == INVALID_BDD) {
-            return;
-        }
+        if (LOW(r) != 0) {
+            int res = fullsatone_rec(LOW(r));
+            int v;
 
-        support[LEVEL(r)] = supportID;
+            for (v = LEVEL(LOW(r)) - 1; v > LEVEL(r); v--) {
+                res = PUSHREF(makenode_impl(v, res, 0));
+            }
 
-        if (LEVEL(r) > supportMax) {
-            supportMax = LEVEL(r);
-        }
+            return PUSHREF(makenode_impl(LEVEL(r), res, 0));
+        } else {
+            int res = fullsatone_rec(HIGH(r));
+            int v;
 
-        SETMARK(r);
+            for (v = LEVEL(HIGH(r)) - 1; v > LEVEL(r); v--) {
+                res = PUSHREF(makenode_impl(v, res, 0));
+            }
 
-        support_rec(LOW(r), support);
-        support_rec(HIGH(r), support);
+            return PUSHREF(makenode_impl(LEVEL(r), 0, res));
+        }
     }
 
-    void zsupport_rec(int r, int lev, int[] support) {
-        if (VERIFY_ASSERTIONS) {
-            _assert(ZDD);
+    int bdd_subsetheavy(int r, int threshold) {
+        CHECKa(r);
+        if (threshold < 0) {
+            return bdd_error(BDD_SIZE);
+        }
+        if (ZDD) {
+            throw new BDDException("Heavy branch subsetting is not supported for ZDDs.");
+        }
+        if (ISCONST(r) || bdd_nodecount_limit(r, threshold) <= threshold) {
+            return r;
         }
 
-        if (!ISZERO(r)) {
-            while (lev != LEVEL(r)) {
-                if (lev > supportMax) {
-                    supportMax = lev;
+        // Find the heaviest path from the root to a terminal, counting the satisfying assignments of all nodes once.
+        int[] path = new int[bddvarnum];
+        boolean[] heavyHigh = new boolean[bddvarnum];
+        int length = 0;
+        int n = r;
+        acountindex = new NodeIndex();
+        acountvalues = new long[acountindex.capacity()];
+        acountsat = true;
+        try {
+            if (ITERATIVE()) {
+                acount_iter(r);
+            } else {
+                acount_rec(r);
+            }
+            while (!ISCONST(n)) {
+                path[length] = n;
+                heavyHigh[length] = acount_child(HIGH(n), n).compareTo(acount_child(LOW(n), n)) > 0;
+                n = heavyHigh[length] ? HIGH(n) : LOW(n);
+                length++;
+            }
+        } finally {
+            bdd_unmark(r);
+            acountindex = null;
+            acountvalues = null;
+            acountbigvalues = null;
+        }
+
+        // Follow the heavy path from the root, until we reach a node that fits in the remaining budget, together
+        // with the path leading to it. The light branches along the path are cut off, for now.
+        int depth = 0;
+        int size = 0;
+        for (; depth < length; depth++) {
+            if (depth < threshold) {
+                size = bdd_nodecount_limit(path[depth], threshold - depth);
+                if (depth + size <= threshold) {
+                    break;
                 }
-                support[lev++] = supportID;
             }
         }
-
-        if (r < 2) {
-            return;
+        if (depth < length) {
+            n = path[depth];
+        } else {
+            size = 0;
+        }
+        if (depth > threshold) {
+            // Even the heaviest path by itself does not fit.
+            return bddfalse;
         }
 
-        if (MARKED(r) || LOW(r) == INVALID_BDD) {
-            return;
+        // Put back the light branches along the path, from the top down, as long as they fit. Sharing between the
+        // branches is not taken into account, so the result may be smaller than the estimated size.
+        int spare = threshold - depth - size;
+        boolean[] keepLight = new boolean[depth];
+        for (int i = 0; i < depth; i++) {
+            int light = heavyHigh[i] ? LOW(path[i]) : HIGH(path[i]);
+            if (ISCONST(light)) {
+                keepLight[i] = true;
+            } else if (spare > 0) {
+                int lightSize = bdd_nodecount_limit(light, spare);
+                if (lightSize <= spare) {
+                    keepLight[i] = true;
+                    spare -= lightSize;
+                }
+            }
         }
 
-        if (LOW(r) == HIGH(r)) {
-            SETMARK(r);
-            zsupport_rec(LOW(r), LEVEL(r) + 1, support);
-            return;
+        // Rebuild the path, bottom-up.
+        bdd_disable_reorder();
+        INITREF();
+        int res = PUSHREF(n);
+        for (int i = depth - 1; i >= 0; i--) {
+            int p = path[i];
+            int light = keepLight[i] ? (heavyHigh[i] ? LOW(p) : HIGH(p)) : bddfalse;
+            res = heavyHigh[i] ? bdd_makenode(LEVEL(p), light, res) : bdd_makenode(LEVEL(p), res, light);
+            POPREF(1);
+            PUSHREF(res);
         }
+        bdd_enable_reorder();
 
-        support[LEVEL(r)] = supportID;
+        checkresize();
+        return res;
+    }
 
-        if (LEVEL(r) > supportMax) {
-            supportMax = LEVEL(r);
+    int bdd_subsetshort(int r, int threshold) {
+        CHECKa(r);
+        if (threshold < 0) {
+            return bdd_error(BDD_SIZE);
+        }
+        if (ZDD) {
+            throw new BDDException("Short path subsetting is not supported for ZDDs.");
+        }
+        if (ISCONST(r) || bdd_nodecount_limit(r, threshold) <= threshold) {
+            return r;
         }
 
-        SETMARK(r);
+        if (misccache == null) {
+            misccache = BddCacheI_init(cachesize);
+        }
 
-        zsupport_rec(LOW(r), LEVEL(r) + 1, support);
-        zsupport_rec(HIGH(r), LEVEL(r) + 1, support);
+        // Binary search for the largest path length that gives a small enough result. Paths from 'r' to the
+        // one-terminal visit at most 'bddvarnum - LEVEL(r)' nodes, and length 0 leaves no paths at all.
+        int best = bddfalse;
+        int lo = 1;
+        int hi = bddvarnum - LEVEL(r) - 1;
+        while (lo <= hi) {
+            int len = (lo + hi) >>> 1;
+
+            bdd_disable_reorder();
+            INITREF();
+            int res = shortpath_rec(r, len);
+            bdd_enable_reorder();
+            checkresize();
+
+            if (bdd_nodecount_limit(res, threshold) <= threshold) {
+                bdd_delref(best);
+                best = bdd_addref(res);
+                lo = len + 1;
+            } else {
+                hi = len - 1;
+            }
+        }
+
+        bdd_delref(best);
+        return best;
     }
 
-    int bdd_appall(int l, int r, int opr, int var) {
+    int shortpath_rec(int r, int len) {
+        BddCacheDataI entry;
         int res;
-        int numReorder = 1;
-
-        CHECKa(l);
-        CHECKa(r);
-        CHECKa(var);
-
-        if (opr < 0 || opr > bddop_invimp) {
-            bdd_error(BDD_OP);
-            return bddfalse;
-        }
 
-        if (var < 2) { /* Empty set */
-            return bdd_apply(l, r, opr);
+        if (cachestats.enabled) {
+            cachestats.opAccess++;
         }
 
-        if (applycache == null) {
-            applycache = BddCacheI_init(cachesize);
+        if (ISCONST(r)) {
+            return r;
         }
-        if (appexcache == null) {
-            appexcache = BddCacheI_init(cachesize);
+        if (len == 0) {
+            return bddfalse;
         }
-        if (quantcache == null) {
-            quantcache = BddCacheI_init(cachesize);
+        if (bddvarnum - LEVEL(r) <= len) {
+            // All paths from 'r' are short enough.
+            return r;
         }
 
-        again:
-        for (;;) {
-            if (varset2vartable(var) < 0) {
-                return bddfalse;
+        int id = (len << 3) | CACHEID_SHORTPATH;
+        entry = BddCache_lookupI(misccache, SHORTPATHHASH(r, len));
+        if (entry.a == r && entry.b == 0 && entry.c == id) {
+            if (cachestats.enabled) {
+                cachestats.opHit++;
             }
-            try {
-                INITREF();
-                applyop = bddop_and;
-                appexop = opr;
-                appexid = (var << 5) | (appexop << 1) | 1; /* FIXME: range! */
-                quantid = (appexid << 3) | CACHEID_APPAL;
+            return entry.res;
+        }
+        if (cachestats.enabled) {
+            cachestats.opMiss++;
+        }
 
-                if (numReorder == 0) {
-                    bdd_disable_reorder();
-                }
-                res = appquant_rec(l, r);
-                if (numReorder == 0) {
-                    bdd_enable_reorder();
-                }
-            } catch (ReorderException x) {
-                bdd_checkreorder();
+        PUSHREF(shortpath_rec(LOW(r), len - 1));
+        PUSHREF(shortpath_rec(HIGH(r), len - 1));
+        res = bdd_makenode(LEVEL(r), READREF(2), READREF(1));
+        POPREF(2);
 
-                numReorder--;
-                continue again;
-            }
-            break;
-        }
+        entry.a = r;
+        entry.b = 0;
+        entry.c = id;
+        entry.res = res;
 
-        checkresize();
         return res;
     }
 
-    int bdd_appuni(int l, int r, int opr, int var) {
-        int res;
-        int numReorder = 1;
-
-        CHECKa(l);
+    boolean bdd_foreachcube(int r, byte[] profile, BDD.CubeVisitor visitor) {
         CHECKa(r);
-        CHECKa(var);
+        if (profile.length < bddvarnum) {
+            throw new BDDException("Buffer has " + profile.length + " elements, but there are " + bddvarnum
+                    + " variables.");
+        }
 
-        if (opr < 0 || opr > bddop_invimp) {
-            bdd_error(BDD_OP);
-            return bddfalse;
+        if (ISZERO(r)) {
+            return true;
+        }
+        Arrays.fill(profile, 0, bddvarnum, ZDD ? (byte)0 : (byte)-1);
+        if (ISONE(r)) {
+            return visitor.visit(profile);
+        }
+
+        // Depth-first traversal, first taking the low branches, and then the high branches of the nodes on 'histack'.
+        int[] lostack = new int[bddvarnum + 1];
+        int[] histack = new int[bddvarnum + 1];
+        int lotop = 0;
+        int hitop = 0;
+        lostack[lotop++] = r;
+
+        // With only the read lock, the factory can't be reordered, and other readers must not see it being modified.
+        boolean shared = SHARED();
+        int oldreorderdisabled = reorderdisabled;
+        if (!shared) {
+            bdd_disable_reorder();
+        }
+        try {
+            for (;;) {
+                int n;
+                boolean loempty = lotop == 0;
+                if (loempty) {
+                    if (hitop == 0) {
+                        return true;
+                    }
+                    n = histack[--hitop];
+                } else {
+                    n = lostack[--lotop];
+                }
+
+                int level = LEVEL(n);
+                profile[bddlevel2var[level]] = loempty ? (byte)1 : (byte)0;
+                int next = loempty ? HIGH(n) : LOW(n);
+                int v = ISCONST(next) ? bddvarnum - 1 : LEVEL(next) - 1;
+                for (; v > level; --v) {
+                    profile[bddlevel2var[v]] = ZDD ? (byte)0 : (byte)-1;
+                }
+                if (!loempty) {
+                    if (ZDD && next == HIGH(n)) {
+                        // Low child equals high child, this is a dont-care bit.
+                        profile[bddlevel2var[v]] = -1;
+                    } else {
+                        histack[hitop++] = n;
+                    }
+                }
+
+                if (ISONE(next)) {
+                    if (!visitor.visit(profile)) {
+                        return false;
+                    }
+                } else if (!ISZERO(next)) {
+                    lostack[lotop++] = next;
+                }
+            }
+        } finally {
+            if (!shared) {
+                reorderdisabled = oldreorderdisabled;
+            }
         }
+    }
 
-        if (var < 2) { /* Empty set */
-            return bdd_apply(l, r, opr);
+    int bdd_threshold(int[] vars, boolean[] cbits, boolean greater) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
         }
 
-        if (applycache == null) {
-            applycache = BddCacheI_init(cachesize);
+        // Order the bits by level, from top to bottom, and determine per position the most significant bit at or
+        // below it.
+        int n = vars.length;
+        Integer[] order = new Integer[n];
+        for (int m = 0; m < n; m++) {
+            order[m] = m;
         }
-        if (appexcache == null) {
-            appexcache = BddCacheI_init(cachesize);
-        }
-        if (quantcache == null) {
-            quantcache = BddCacheI_init(cachesize);
+        Arrays.sort(order, (a, b) -> Integer.compare(bddvar2level[vars[a]], bddvar2level[vars[b]]));
+        thresholdlevels = new int[n];
+        thresholdsigs = new int[n];
+        thresholdmaxsigs = new int[n + 1];
+        thresholdmaxsigs[n] = -1;
+        for (int k = n - 1; k >= 0; k--) {
+            thresholdlevels[k] = bddvar2level[vars[order[k]]];
+            thresholdsigs[k] = order[k];
+            thresholdmaxsigs[k] = Math.max(order[k], thresholdmaxsigs[k + 1]);
         }
+        thresholdbits = cbits;
+        thresholdgreater = greater;
+        thresholdmemo = new int[n][];
 
-        again:
-        for (;;) {
-            try {
-                INITREF();
-                applyop = bddop_xor;
-                appexop = opr;
-                appexid = (var << 5) | (appexop << 1) | 1; /* FIXME: range! */
-                quantid = (appexid << 3) | CACHEID_APPUN;
-
-                if (numReorder == 0) {
-                    bdd_disable_reorder();
-                }
-                res = appuni_rec(l, r, var);
-                if (numReorder == 0) {
-                    bdd_enable_reorder();
+        int res;
+        int oldreorderdisabled = reorderdisabled;
+        bdd_disable_reorder();
+        try {
+            res = threshold_rec(0, -1, false);
+        } finally {
+            reorderdisabled = oldreorderdisabled;
+
+            // Release the memoized nodes.
+            for (int[] memo: thresholdmemo) {
+                if (memo != null) {
+                    for (int r: memo) {
+                        if (r >= 0) {
+                            bdd_delref(r);
+                        }
+                    }
                 }
-            } catch (ReorderException x) {
-                bdd_checkreorder();
-                numReorder--;
-                continue again;
             }
-            break;
+            thresholdlevels = null;
+            thresholdsigs = null;
+            thresholdmaxsigs = null;
+            thresholdbits = null;
+            thresholdmemo = null;
         }
 
         checkresize();
         return res;
     }
 
-    int bdd_satone(int r) {
-        int res;
-
-        CHECKa(r);
-        if (r < 2) {
-            return r;
+    /**
+     * Builds the comparison of a variable vector to a constant, for the bits from position {@code k} (in level order)
+     * downward.
+     *
+     * @param k the position of the next bit, in level order
+     * @param diff the significance of the most significant bit assigned so far for which the variable vector differs
+     *     from the constant, or -1 if there is no such bit
+     * @param above whether the variable vector is larger than the constant at bit {@code diff}
+     * @return the comparison
+     */
+    int threshold_rec(int k, int diff, boolean above) {
+        // Terminal cases: equal, or decided by a bit that the remaining bits can't override.
+        if (diff == -1 && k == thresholdlevels.length) {
+            return bddtrue;
+        }
+        if (diff > thresholdmaxsigs[k]) {
+            return (above == thresholdgreater) ? bddtrue : bddfalse;
         }
 
-        bdd_disable_reorder();
-
-        INITREF();
-        res = satone_rec(r);
+        int[] memo = thresholdmemo[k];
+        if (memo == null) {
+            memo = new int[2 * (thresholdlevels.length + 1)];
+            Arrays.fill(memo, -1);
+            thresholdmemo[k] = memo;
+        }
+        int index = 2 * (diff + 1) + (above ? 1 : 0);
+        if (memo[index] >= 0) {
+            return memo[index];
+        }
 
-        bdd_enable_reorder();
+        int sig = thresholdsigs[k];
+        boolean cbit = thresholdbits[sig];
+        boolean more = sig > diff;
+        int low = threshold_rec(k + 1, (more && cbit) ? sig : diff, (more && cbit) ? false : above);
+        bdd_addref(low);
+        int high = threshold_rec(k + 1, (more && !cbit) ? sig : diff, (more && !cbit) ? true : above);
+        bdd_addref(high);
+        int res = bdd_makenode(thresholdlevels[k], low, high);
+        bdd_delref(high);
+        bdd_delref(low);
 
-        checkresize();
+        memo[index] = bdd_addref(res);
         return res;
     }
 
-    int satone_rec(int r) {
-        if (ISCONST(r)) {
-            return r;
+    int bdd_thresholds(int[] vars, boolean[][] bounds) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
         }
 
-        if (ISZERO(LOW(r))) {
-            int res = satone_rec(HIGH(r));
-            int m = makenode_impl(LEVEL(r), BDDZERO, res);
-            PUSHREF(m);
-            return m;
-        } else {
-            int res = satone_rec(LOW(r));
-            int m = makenode_impl(LEVEL(r), res, (ZDD && LOW(r) == HIGH(r)) ? res : BDDZERO);
-            PUSHREF(m);
-            return m;
+        if (applycache == null) {
+            applycache = BddCacheI_init(cachesize);
         }
-    }
-
-    int bdd_satoneset(int r, int var, boolean pol) {
-        int res;
-
-        CHECKa(r);
-        if (ISZERO(r)) {
-            return r;
+        if (itecache == null) {
+            itecache = BddCacheI_init(cachesize);
         }
+        thresholdvars = vars;
+        thresholdbounds = bounds;
 
+        int res;
+        int oldreorderdisabled = reorderdisabled;
         bdd_disable_reorder();
-
-        INITREF();
-        satPolarity = pol;
-        res = satoneset_rec(r, var);
-
-        bdd_enable_reorder();
+        try {
+            INITREF();
+            res = thresholds_rec(vars.length, 0, bounds.length, 0);
+        } finally {
+            reorderdisabled = oldreorderdisabled;
+            thresholdvars = null;
+            thresholdbounds = null;
+        }
 
         checkresize();
         return res;
     }
 
-    int satoneset_rec(int r, int var) {
-        if (ISCONST(r) && ISCONST(var)) {
-            return r;
-        }
-
-        if (LEVEL(r) < LEVEL(var)) {
-            // r is not in the set
-            if (ISZERO(LOW(r))) {
-                int res = satoneset_rec(HIGH(r), var);
-                int m = makenode_impl(LEVEL(r), BDDZERO, res);
-                PUSHREF(m);
-                return m;
-            } else {
-                int res = satoneset_rec(LOW(r), var);
-                int m = makenode_impl(LEVEL(r), res, (ZDD && LOW(r) == HIGH(r)) ? res : BDDZERO);
-                PUSHREF(m);
-                return m;
-            }
-        } else if (LEVEL(var) < LEVEL(r)) {
-            int res = satoneset_rec(r, HIGH(var));
-            if (!ZDD && satPolarity) {
-                int m = makenode_impl(LEVEL(var), BDDZERO, res);
-                PUSHREF(m);
-                return m;
-            } else {
-                int m = makenode_impl(LEVEL(var), res, BDDZERO);
-                PUSHREF(m);
-                return m;
-            }
-        } else /* LEVEL(r) == LEVEL(var) */ {
-            if (ISZERO(LOW(r))) {
-                int res = satoneset_rec(HIGH(r), HIGH(var));
-                int m = makenode_impl(LEVEL(r), BDDZERO, res);
-                PUSHREF(m);
-                return m;
-            } else {
-                int res = satoneset_rec(LOW(r), HIGH(var));
-                int m;
-                if (ZDD && satPolarity && LOW(r) == HIGH(r)) {
-                    m = zdd_makenode(LEVEL(r), BDDZERO, res);
-                } else {
-                    m = makenode_impl(LEVEL(r), res, BDDZERO);
-                }
-                PUSHREF(m);
-                return m;
-            }
+    /**
+     * Builds the BDD that is true if the variable vector is at least an odd number of the bounds, within a block of
+     * values that agree on the bits of significance {@code m} and higher. The block is split on its most significant
+     * free bit, so that each bound is visited once per bit, regardless of the variable order.
+     *
+     * @param m the number of free bits, which are the least significant ones
+     * @param from the index of the first bound in the block, as the bounds are in ascending order
+     * @param to the index after the last bound in the block
+     * @param parity the parity of the number of bounds below the block
+     * @return the comparison
+     */
+    int thresholds_rec(int m, int from, int to, int parity) {
+        // Terminal cases: no bounds in the block, or a single value.
+        if (from == to) {
+            return (parity != 0) ? bddtrue : bddfalse;
+        }
+        if (m == 0) {
+            return (((to - from + parity) & 1) != 0) ? bddtrue : bddfalse;
+        }
+
+        // Split the bounds on the free bit, and combine the halves.
+        int split = from;
+        while (split < to && !thresholdbounds[split][m - 1]) {
+            split++;
+        }
+        int low = thresholds_rec(m - 1, from, split, parity);
+        bdd_addref(low);
+        int high = thresholds_rec(m - 1, split, to, parity ^ ((split - from) & 1));
+        bdd_addref(high);
+        int var = thresholdvars[m - 1];
+        int level = bddvar2level[var];
+        int res;
+        if (level < LEVEL(low) && level < LEVEL(high)) {
+            res = bdd_makenode(level, low, high);
+        } else {
+            res = ite_rec(bddvarset[var * 2], high, low);
         }
+        bdd_delref(high);
+        bdd_delref(low);
+        return res;
     }
 
-    int bdd_fullsatone(int r) {
-        int res;
-        int v;
+    int bdd_buildtuples(int[][] vars, long[][] columns) {
+        if (VERIFY_ASSERTIONS) {
+            _assert(!ZDD);
+        }
 
-        CHECKa(r);
-        if (r == 0) {
-            return 0;
+        int num = columns.length == 0 ? 0 : columns[0].length;
+        tuplerows = new int[num];
+        for (int i = 0; i < num; i++) {
+            tuplerows[i] = i;
         }
+        tuplevalues = columns;
 
-        bdd_disable_reorder();
+        int res;
+        int numReorder = 1;
 
-        INITREF();
-        res = fullsatone_rec(r);
+        try {
+            again:
+            for (;;) {
+                try {
+                    INITREF();
 
-        for (v = LEVEL(r) - 1; v >= 0; v--) {
-            res = PUSHREF(makenode_impl(v, res, 0));
+                    if (numReorder == 0) {
+                        bdd_disable_reorder();
+                    }
+                    // A reordering changes the levels of the variables, so determine them again on every attempt.
+                    buildtuples_levels(vars);
+                    res = buildtuples_rec(0, num, 0);
+                    if (numReorder == 0) {
+                        bdd_enable_reorder();
+                    }
+                } catch (ReorderException x) {
+                    bdd_checkreorder();
+                    numReorder--;
+                    continue again;
+                }
+                break;
+            }
+        } finally {
+            tuplelevels = null;
+            tuplecolumns = null;
+            tuplemasks = null;
+            tuplerows = null;
+            tuplevalues = null;
         }
 
-        bdd_enable_reorder();
-
         checkresize();
         return res;
     }
 
-    int fullsatone_rec(int r) {
-        if (r < 2) {
-            return r;
+    void buildtuples_levels(int[][] vars) {
+        // Determine, per level, the column and bit of the tuple values that it represents.
+        int[] levelcolumn = new int[bddvarnum];
+        int[] levelbit = new int[bddvarnum];
+        Arrays.fill(levelcolumn, -1);
+        int bitnum = 0;
+        for (int d = 0; d < vars.length; d++) {
+            for (int m = 0; m < vars[d].length; m++) {
+                int level = bddvar2level[vars[d][m]];
+                if (levelcolumn[level] != -1) {
+                    throw new BDDException("Variable " + vars[d][m] + " is used by more than one domain.");
+                }
+                levelcolumn[level] = d;
+                levelbit[level] = m;
+                bitnum++;
+            }
+        }
+        tuplelevels = new int[bitnum];
+        tuplecolumns = new int[bitnum];
+        tuplemasks = new long[bitnum];
+        for (int level = 0, k = 0; level < bddvarnum; level++) {
+            if (levelcolumn[level] != -1) {
+                tuplelevels[k] = level;
+                tuplecolumns[k] = levelcolumn[level];
+                tuplemasks[k] = 1L << levelbit[level];
+                k++;
+            }
         }
+    }
 
-        if (LOW(r) != 0) {
-            int res = fullsatone_rec(LOW(r));
-            int v;
+    int buildtuples_rec(int lo, int hi, int k) {
+        if (lo == hi) {
+            return bddfalse;
+        }
+        if (k == tuplelevels.length) {
+            return bddtrue;
+        }
 
-            for (v = LEVEL(LOW(r)) - 1; v > LEVEL(r); v--) {
-                res = PUSHREF(makenode_impl(v, res, 0));
+        // Partition the rows on the bit for this level, as in a most significant digit first radix sort.
+        long[] values = tuplevalues[tuplecolumns[k]];
+        long mask = tuplemasks[k];
+        int mid = lo;
+        for (int i = lo; i < hi; i++) {
+            int row = tuplerows[i];
+            if ((values[row] & mask) == 0) {
+                tuplerows[i] = tuplerows[mid];
+                tuplerows[mid] = row;
+                mid++;
             }
+        }
 
-            return PUSHREF(makenode_impl(LEVEL(r), res, 0));
-        } else {
-            int res = fullsatone_rec(HIGH(r));
-            int v;
-
-            for (v = LEVEL(HIGH(r)) - 1; v > LEVEL(r); v--) {
-                res = PUSHREF(makenode_impl(v, res, 0));
-            }
+        PUSHREF(buildtuples_rec(lo, mid, k + 1));
+        PUSHREF(buildtuples_rec(mid, hi, k + 1));
+        int res = bdd_makenode(tuplelevels[k], READREF(2), READREF(1));
+        POPREF(2);
 
-            return PUSHREF(makenode_impl(LEVEL(r), 0, res));
-        }
+        return res;
     }
 
     void bdd_gbc_rehash() {
@@ -6233,6 +8173,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
     void INITREF() {
         bddrefstacktop = 0;
+        iterstacktop = 0;
     }
 
     int PUSHREF(int a) {
@@ -6248,15 +8189,162 @@ public class JFactory extends BDDFactoryIntImpl {
         bddrefstacktop -= a;
     }
 
+    /** Returns whether to use the iterative implementations of the operations. */
+    final boolean ITERATIVE() {
+        return bddvarnum >= ITERATIVE_VARNUM;
+    }
+
+    void ITERPUSH(int a) {
+        if (iterstack == null) {
+            iterstack = new int[1024];
+        } else if (iterstacktop == iterstack.length) {
+            iterstack = Arrays.copyOf(iterstack, iterstack.length * 2);
+        }
+        iterstack[iterstacktop++] = a;
+    }
+
+    double bdd_evaluate(int r, BDD.DoubleSemiring semiring, double[] lowWeights, double[] highWeights) {
+        CHECK(r);
+
+        if (lowWeights.length < bddvarnum || highWeights.length < bddvarnum) {
+            throw new BDDException("Need a weight for each of the " + bddvarnum + " variables");
+        }
+
+        evalsemiring = semiring;
+        evallow = new double[bddvarnum];
+        evalhigh = new double[bddvarnum];
+        evalskip = new double[bddvarnum];
+        double one = semiring.one();
+        boolean allone = true;
+        for (int n = 0; n < bddvarnum; n++) {
+            int var = bddlevel2var[n];
+            evallow[n] = lowWeights[var];
+            evalhigh[n] = highWeights[var];
+            // A skipped level is a dont-care for BDDs, but has value zero for ZDDs.
+            evalskip[n] = ZDD ? lowWeights[var] : semiring.plus(lowWeights[var], highWeights[var]);
+            allone &= evalskip[n] == one;
+        }
+        if (allone) {
+            evalskip = null;
+        }
+        evalindex = new NodeIndex();
+        evalvalues = new double[evalindex.capacity()];
+
+        try {
+            return evaluate_skip(ITERATIVE() ? evaluate_iter(r) : evaluate_rec(r), 0, LEVEL(r));
+        } finally {
+            bdd_unmark(r);
+            evalsemiring = null;
+            evallow = null;
+            evalhigh = null;
+            evalskip = null;
+            evalindex = null;
+            evalvalues = null;
+        }
+    }
+
+    /** Returns the value of the given node, for the assignments to the variables at and below its level. */
+    double evaluate_rec(int r) {
+        if (r < 2) {
+            return (r == 0) ? evalsemiring.zero() : evalsemiring.one();
+        }
+        if (MARKED(r)) {
+            return evalvalues[evalindex.get(r)];
+        }
+        SETMARK(r);
+
+        return evaluate_node(r, evaluate_rec(LOW(r)), evaluate_rec(HIGH(r)));
+    }
+
+    /** Iterative version of {@link #evaluate_rec}, using {@link #iterstack} rather than the Java stack. */
+    double evaluate_iter(int root) {
+        int base = iterstacktop;
+        ITERPUSH(root);
+        ITERPUSH(0);
+        while (iterstacktop > base) {
+            int phase = iterstack[iterstacktop - 1];
+            int r = iterstack[iterstacktop - 2];
+            iterstacktop -= 2;
+
+            if (phase == 0) {
+                if (r < 2 || MARKED(r)) {
+                    continue;
+                }
+                SETMARK(r);
+
+                ITERPUSH(r);
+                ITERPUSH(1);
+                ITERPUSH(HIGH(r));
+                ITERPUSH(0);
+                ITERPUSH(LOW(r));
+                ITERPUSH(0);
+            } else {
+                evaluate_node(r, evaluate_value(LOW(r)), evaluate_value(HIGH(r)));
+            }
+        }
+        return evaluate_value(root);
+    }
+
+    /** Returns the value of the given node, which must be a terminal or have been evaluated. */
+    double evaluate_value(int r) {
+        if (r < 2) {
+            return (r == 0) ? evalsemiring.zero() : evalsemiring.one();
+        }
+        return evalvalues[evalindex.get(r)];
+    }
+
+    /** Computes and stores the value of the given node, from the values of its children. */
+    double evaluate_node(int r, double lowValue, double highValue) {
+        int level = LEVEL(r);
+        double low = evaluate_skip(lowValue, level + 1, LEVEL(LOW(r)));
+        double high = evaluate_skip(highValue, level + 1, LEVEL(HIGH(r)));
+        double res = evalsemiring.plus(evalsemiring.times(evallow[level], low),
+                evalsemiring.times(evalhigh[level], high));
+
+        int i = evalindex.index(r);
+        if (i == evalvalues.length) {
+            evalvalues = Arrays.copyOf(evalvalues, evalindex.capacity());
+        }
+        evalvalues[i] = res;
+        return res;
+    }
+
+    /** Returns the given value, extended with the weights of skipping the levels from 'from' up to 'to'. */
+    double evaluate_skip(double value, int from, int to) {
+        if (evalskip != null) {
+            for (int n = from; n < to; n++) {
+                value = evalsemiring.times(evalskip[n], value);
+            }
+        }
+        return value;
+    }
+
     int bdd_nodecount(int r) {
         int[] num = new int[1];
 
         CHECK(r);
 
-        bdd_markcount(r, num);
+        bdd_markcount(r, num);
+        bdd_unmark(r);
+
+        return num[0];
+    }
+
+    /**
+     * Counts the number of distinct nodes used for a BDD, but stops counting once more than {@code limit} nodes have
+     * been found.
+     *
+     * @param r the BDD
+     * @param limit the maximum number of nodes to count
+     * @return the number of nodes, or some number larger than {@code limit} if the BDD has more nodes than that
+     */
+    int bdd_nodecount_limit(int r, int limit) {
+        int[] cou = new int[1];
+
+        bdd_markcount_limit(r, cou, limit);
         bdd_unmark(r);
 
-        return num[0];
+        return cou[0];
     }
 
     int bdd_anodecount(int[] r) {
@@ -6300,6 +8388,241 @@ public class JFactory extends BDDFactoryIntImpl {
         varprofile_rec(HIGH(r), varprofile);
     }
 
+    int[] bdd_avarprofile(int[] r) {
+        int n;
+        int[] varprofile = new int[bddvarnum];
+
+        for (n = 0; n < r.length; n++) {
+            CHECK(r[n]);
+        }
+
+        for (n = 0; n < r.length; n++) {
+            varprofile_rec(r[n], varprofile);
+        }
+
+        for (n = 0; n < r.length; n++) {
+            bdd_unmark(r[n]);
+        }
+
+        return varprofile;
+    }
+
+    BigInteger[] bdd_asatcount(int[] r) {
+        if (ZDD) {
+            return bdd_apathcount(r);
+        }
+        return bdd_acount(r, true);
+    }
+
+    BigInteger[] bdd_apathcount(int[] r) {
+        return bdd_acount(r, false);
+    }
+
+    /**
+     * Counts the satisfying assignments or paths of multiple BDDs, visiting each node only once. The counts are kept
+     * in longs, per node. Only for the nodes for which that overflows, the counts are redone using BigIntegers.
+     *
+     * @param r the BDDs
+     * @param sat whether to count satisfying assignments ({@code true}) or paths ({@code false})
+     * @return per BDD, its count
+     */
+    BigInteger[] bdd_acount(int[] r, boolean sat) {
+        int n;
+
+        for (n = 0; n < r.length; n++) {
+            CHECK(r[n]);
+        }
+
+        BigInteger[] result = new BigInteger[r.length];
+        acountindex = new NodeIndex();
+        acountvalues = new long[acountindex.capacity()];
+        acountsat = sat;
+        try {
+            for (n = 0; n < r.length; n++) {
+                long count = ITERATIVE() ? acount_iter(r[n]) : acount_rec(r[n]);
+                if (sat && count >= 0) {
+                    count = SHIFTLONG(count, LEVEL(r[n]));
+                }
+                if (count >= 0) {
+                    result[n] = BigInteger.valueOf(count);
+                }
+            }
+
+            for (n = 0; n < r.length; n++) {
+                if (result[n] == null) {
+                    if (acountbigvalues == null) {
+                        acountbigvalues = new BigInteger[acountindex.size()];
+                    }
+                    result[n] = ITERATIVE() ? acountbig_iter(r[n]) : acountbig_rec(r[n]);
+                    if (sat) {
+                        result[n] = result[n].shiftLeft(LEVEL(r[n]));
+                    }
+                }
+            }
+        } finally {
+            for (n = 0; n < r.length; n++) {
+                bdd_unmark(r[n]);
+            }
+            acountindex = null;
+            acountvalues = null;
+            acountbigvalues = null;
+        }
+
+        return result;
+    }
+
+    /** Returns the count for the given node, or {@code -1} if it does not fit in a long. */
+    long acount_rec(int r) {
+        if (r < 2) {
+            return r;
+        }
+        if (MARKED(r)) {
+            return acountvalues[acountindex.get(r)];
+        }
+        SETMARK(r);
+
+        return acount_node(r, acount_rec(LOW(r)), acount_rec(HIGH(r)));
+    }
+
+    /** Iterative version of {@link #acount_rec}, using {@link #iterstack} rather than the Java stack. */
+    long acount_iter(int root) {
+        int base = iterstacktop;
+        ITERPUSH(root);
+        ITERPUSH(0);
+        while (iterstacktop > base) {
+            int phase = iterstack[iterstacktop - 1];
+            int r = iterstack[iterstacktop - 2];
+            iterstacktop -= 2;
+
+            if (phase == 0) {
+                if (r < 2 || MARKED(r)) {
+                    continue;
+                }
+                SETMARK(r);
+
+                ITERPUSH(r);
+                ITERPUSH(1);
+                ITERPUSH(HIGH(r));
+                ITERPUSH(0);
+                ITERPUSH(LOW(r));
+                ITERPUSH(0);
+            } else {
+                acount_node(r, acount_value(LOW(r)), acount_value(HIGH(r)));
+            }
+        }
+        return acount_value(root);
+    }
+
+    /**
+     * Returns the count of satisfying assignments for the given child of the given node, for the variables below the
+     * level of the node. The child must be a terminal or have been counted by {@link #acount_rec}.
+     */
+    BigInteger acount_child(int child, int parent) {
+        int shift = LEVEL(child) - LEVEL(parent) - 1;
+        long count = acount_value(child);
+        if (count >= 0) {
+            return BigInteger.valueOf(count).shiftLeft(shift);
+        }
+        if (acountbigvalues == null) {
+            acountbigvalues = new BigInteger[acountindex.size()];
+        }
+        return (ITERATIVE() ? acountbig_iter(child) : acountbig_rec(child)).shiftLeft(shift);
+    }
+
+    /** Returns the count for the given node, which must be a terminal or have been counted, or {@code -1}. */
+    long acount_value(int r) {
+        return (r < 2) ? r : acountvalues[acountindex.get(r)];
+    }
+
+    /** Computes and stores the count for the given node, from the counts for its children. */
+    long acount_node(int r, long low, long high) {
+        if (acountsat) {
+            if (low >= 0) {
+                low = SHIFTLONG(low, LEVEL(LOW(r)) - LEVEL(r) - 1);
+            }
+            if (high >= 0) {
+                high = SHIFTLONG(high, LEVEL(HIGH(r)) - LEVEL(r) - 1);
+            }
+        }
+        long res = (low < 0 || high < 0 || low > Long.MAX_VALUE - high) ? -1 : low + high;
+
+        int i = acountindex.index(r);
+        if (i == acountvalues.length) {
+            acountvalues = Arrays.copyOf(acountvalues, acountindex.capacity());
+        }
+        acountvalues[i] = res;
+        return res;
+    }
+
+    /** Returns the count for the given node, which must have been visited by {@link #acount_rec}. */
+    BigInteger acountbig_rec(int r) {
+        if (r < 2) {
+            return BigInteger.valueOf(r);
+        }
+        int i = acountindex.get(r);
+        if (acountvalues[i] >= 0) {
+            return BigInteger.valueOf(acountvalues[i]);
+        }
+        if (acountbigvalues[i] != null) {
+            return acountbigvalues[i];
+        }
+
+        return acountbig_node(r, acountbig_rec(LOW(r)), acountbig_rec(HIGH(r)));
+    }
+
+    /** Iterative version of {@link #acountbig_rec}, using {@link #iterstack} rather than the Java stack. */
+    BigInteger acountbig_iter(int root) {
+        int base = iterstacktop;
+        ITERPUSH(root);
+        ITERPUSH(0);
+        while (iterstacktop > base) {
+            int phase = iterstack[iterstacktop - 1];
+            int r = iterstack[iterstacktop - 2];
+            iterstacktop -= 2;
+
+            if (phase == 0) {
+                if (r < 2) {
+                    continue;
+                }
+                int i = acountindex.get(r);
+                if (acountvalues[i] >= 0 || acountbigvalues[i] != null) {
+                    continue;
+                }
+
+                ITERPUSH(r);
+                ITERPUSH(1);
+                ITERPUSH(HIGH(r));
+                ITERPUSH(0);
+                ITERPUSH(LOW(r));
+                ITERPUSH(0);
+            } else {
+                acountbig_node(r, acountbig_value(LOW(r)), acountbig_value(HIGH(r)));
+            }
+        }
+        return acountbig_value(root);
+    }
+
+    /** Returns the count for the given node, which must be a terminal or have been counted using BigIntegers. */
+    BigInteger acountbig_value(int r) {
+        if (r < 2) {
+            return BigInteger.valueOf(r);
+        }
+        int i = acountindex.get(r);
+        return (acountvalues[i] >= 0) ? BigInteger.valueOf(acountvalues[i]) : acountbigvalues[i];
+    }
+
+    /** Computes and stores the count for the given node, from the counts for its children. */
+    BigInteger acountbig_node(int r, BigInteger low, BigInteger high) {
+        if (acountsat) {
+            low = low.shiftLeft(LEVEL(LOW(r)) - LEVEL(r) - 1);
+            high = high.shiftLeft(LEVEL(HIGH(r)) - LEVEL(r) - 1);
+        }
+        BigInteger res = low.add(high);
+
+        acountbigvalues[acountindex.get(r)] = res;
+        return res;
+    }
+
     BigInteger bdd_pathcount(int r) {
         CHECK(r);
 
@@ -6343,10 +8666,24 @@ public class JFactory extends BDDFactoryIntImpl {
 
         CHECK(r);
 
+        if (ITERATIVE()) {
+            return bdd_acount(new int[] {r}, true)[0];
+        }
+
         if (countcache == null) {
             countcache = BddCacheBI_init(cachesize);
         }
 
+        /* Count using longs first, and only use BigIntegers if that overflows. */
+        miscid = CACHEID_SATCOULONG;
+        long lsize = satcountlong_rec(r);
+        if (lsize >= 0) {
+            lsize = SHIFTLONG(lsize, LEVEL(r));
+            if (lsize >= 0) {
+                return BigInteger.valueOf(lsize);
+            }
+        }
+
         miscid = CACHEID_SATCOU;
         BigInteger size;
         if (ZDD) {
@@ -6355,39 +8692,286 @@ public class JFactory extends BDDFactoryIntImpl {
             size = BigInteger.TWO.pow(LEVEL(r));
         }
 
-        return size.multiply(satcount_rec(r));
+        return size.multiply(satcount_rec(r));
+    }
+
+    /**
+     * Returns the given value shifted left by the given number of bits, or {@code -1} if the result does not fit in a
+     * long.
+     */
+    static final long SHIFTLONG(long v, int n) {
+        if (v == 0) {
+            return 0;
+        }
+        if (n >= 63 || v > (Long.MAX_VALUE >> n)) {
+            return -1;
+        }
+        return v << n;
+    }
+
+    /**
+     * Returns the number of satisfying assignments to the variables at and below the level of the given node, or
+     * {@code -1} if it does not fit in a long.
+     */
+    long satcountlong_rec(int root) {
+        BddCacheDataBI entry;
+
+        if (root < 2) {
+            return root;
+        }
+
+        entry = BddCache_lookupBI(countcache, SATCOUHASH(root));
+        if (entry.a == root && entry.c == miscid) {
+            return entry.lres;
+        }
+
+        long size = satcountlong_rec(LOW(root));
+        if (size >= 0) {
+            size = SHIFTLONG(size, LEVEL(LOW(root)) - LEVEL(root) - 1);
+        }
+        if (size >= 0) {
+            long high = satcountlong_rec(HIGH(root));
+            if (high >= 0) {
+                high = SHIFTLONG(high, LEVEL(HIGH(root)) - LEVEL(root) - 1);
+            }
+            if (high < 0 || size > Long.MAX_VALUE - high) {
+                size = -1;
+            } else {
+                size += high;
+            }
+        }
+
+        entry.a = root;
+        entry.c = miscid;
+        entry.lres = size;
+
+        return size;
+    }
+
+    double bdd_satcountln(int r) {
+        CHECK(r);
+
+        if (r == BDDZERO) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (ZDD) {
+            return Math.log(bdd_pathcount(r).doubleValue());
+        }
+
+        if (countcache == null) {
+            countcache = BddCacheBI_init(cachesize);
+        }
+
+        /*
+         * Compute the fraction of all assignments that satisfies the BDD, which is a double in (0,1]. Only if it is too
+         * small to be represented accurately, use BigIntegers instead.
+         */
+        miscid = CACHEID_SATCOULN;
+        double fraction = satcountln_rec(r);
+        if (fraction >= Double.MIN_NORMAL) {
+            return Math.log(fraction) + bddvarnum * Math.log(2);
+        }
+        return Math.log(bdd_satcount(r).doubleValue());
+    }
+
+    /**
+     * Returns the fraction of the assignments to the variables at and below the level of the given node that satisfy
+     * it.
+     */
+    double satcountln_rec(int root) {
+        BddCacheDataBI entry;
+
+        if (root < 2) {
+            return root;
+        }
+
+        entry = BddCache_lookupBI(countcache, SATCOUHASH(root));
+        if (entry.a == root && entry.c == miscid) {
+            return entry.dres;
+        }
+
+        double size = (satcountln_rec(LOW(root)) + satcountln_rec(HIGH(root))) / 2;
+
+        entry.a = root;
+        entry.c = miscid;
+        entry.dres = size;
+
+        return size;
+    }
+
+    BigInteger satcount_rec(int root) {
+        BddCacheDataBI entry;
+
+        if (root < 2) {
+            return BigInteger.valueOf(root);
+        }
+
+        entry = BddCache_lookupBI(countcache, SATCOUHASH(root));
+        if (entry.a == root && entry.c == miscid) {
+            return entry.bires;
+        }
+
+        BigInteger size = BigInteger.ZERO;
+        BigInteger s = BigInteger.ONE;
+        if (!ZDD) {
+            s = s.multiply(BigInteger.TWO.pow(LEVEL(LOW(root)) - LEVEL(root) - 1));
+        }
+        size = size.add(s.multiply(satcount_rec(LOW(root))));
+
+        s = BigInteger.ONE;
+        if (!ZDD) {
+            s = s.multiply(BigInteger.TWO.pow(LEVEL(HIGH(root)) - LEVEL(root) - 1));
+        }
+        size = size.add(s.multiply(satcount_rec(HIGH(root))));
+
+        entry.a = root;
+        entry.c = miscid;
+        entry.bires = size;
+
+        return size;
+    }
+
+    /**
+     * Indexes the nodes of a BDD, with the children of each node before the node itself, without marking nodes or
+     * using {@link #iterstack}. May be used concurrently by threads that hold the read lock.
+     *
+     * @param r the BDD
+     * @return the index of its nodes
+     */
+    NodeIndex shared_postorder(int r) {
+        NodeIndex index = new NodeIndex();
+        if (r < 2) {
+            return index;
+        }
+
+        // Nodes of which the children are still to be indexed are on the stack as themselves, and nodes of which the
+        // children have been indexed as their complement.
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = r;
+        while (top > 0) {
+            int n = stack[--top];
+            if (n < 0) {
+                index.index(~n);
+                continue;
+            }
+            if (n < 2 || index.get(n) >= 0) {
+                continue;
+            }
+            if (top + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = ~n;
+            stack[top++] = HIGH(n);
+            stack[top++] = LOW(n);
+        }
+        return index;
+    }
+
+    /**
+     * Counts the number of distinct nodes used for a BDD, without marking nodes. May be used concurrently by threads
+     * that hold the read lock.
+     *
+     * @param r the BDD
+     * @return the number of nodes
+     */
+    int bdd_nodecount_shared(int r) {
+        CHECK(r);
+
+        return shared_postorder(r).size();
+    }
+
+    /**
+     * Counts the number of paths to the true terminal of a BDD, without using the count cache. May be used
+     * concurrently by threads that hold the read lock.
+     *
+     * @param r the BDD
+     * @return the number of paths
+     */
+    BigInteger bdd_pathcount_shared(int r) {
+        CHECK(r);
+
+        if (r < 2) {
+            return BigInteger.valueOf(r);
+        }
+        NodeIndex index = shared_postorder(r);
+        BigInteger[] counts = new BigInteger[index.size()];
+        for (int i = 0; i < counts.length; i++) {
+            int n = index.node(i);
+            counts[i] = shared_count(index, counts, LOW(n), 0).add(shared_count(index, counts, HIGH(n), 0));
+        }
+        return counts[counts.length - 1];
+    }
+
+    /**
+     * Counts the number of satisfying assignments of a BDD, without using the count cache. May be used concurrently
+     * by threads that hold the read lock.
+     *
+     * @param r the BDD
+     * @return the number of satisfying assignments
+     */
+    BigInteger bdd_satcount_shared(int r) {
+        if (ZDD) {
+            return bdd_pathcount_shared(r);
+        }
+
+        CHECK(r);
+
+        if (r < 2) {
+            return BigInteger.valueOf(r).shiftLeft(LEVEL(r));
+        }
+        NodeIndex index = shared_postorder(r);
+        BigInteger[] counts = new BigInteger[index.size()];
+        for (int i = 0; i < counts.length; i++) {
+            int n = index.node(i);
+            int level = LEVEL(n);
+            counts[i] = shared_count(index, counts, LOW(n), LEVEL(LOW(n)) - level - 1)
+                    .add(shared_count(index, counts, HIGH(n), LEVEL(HIGH(n)) - level - 1));
+        }
+        return counts[counts.length - 1].shiftLeft(LEVEL(r));
+    }
+
+    /** Returns the count of the given node, from the counts per index of the nodes, shifted left by some bits. */
+    static BigInteger shared_count(NodeIndex index, BigInteger[] counts, int r, int shift) {
+        BigInteger count = (r < 2) ? BigInteger.valueOf(r) : counts[index.get(r)];
+        return count.shiftLeft(shift);
     }
 
-    BigInteger satcount_rec(int root) {
-        BddCacheDataBI entry;
+    /**
+     * Returns the logarithm of the number of satisfying assignments of a BDD, without using the count cache. May be
+     * used concurrently by threads that hold the read lock.
+     *
+     * @param r the BDD
+     * @return the logarithm of the number of satisfying assignments
+     */
+    double bdd_satcountln_shared(int r) {
+        CHECK(r);
 
-        if (root < 2) {
-            return BigInteger.valueOf(root);
+        if (r == BDDZERO) {
+            return Double.NEGATIVE_INFINITY;
         }
-
-        entry = BddCache_lookupBI(countcache, SATCOUHASH(root));
-        if (entry.a == root && entry.c == miscid) {
-            return entry.bires;
+        if (ZDD) {
+            return Math.log(bdd_pathcount_shared(r).doubleValue());
         }
 
-        BigInteger size = BigInteger.ZERO;
-        BigInteger s = BigInteger.ONE;
-        if (!ZDD) {
-            s = s.multiply(BigInteger.TWO.pow(LEVEL(LOW(root)) - LEVEL(root) - 1));
+        // The fraction of the assignments to the variables at and below the level of each node that satisfy it.
+        double fraction = 1;
+        if (r >= 2) {
+            NodeIndex index = shared_postorder(r);
+            double[] fractions = new double[index.size()];
+            for (int i = 0; i < fractions.length; i++) {
+                int n = index.node(i);
+                int low = LOW(n);
+                int high = HIGH(n);
+                fractions[i] = (((low < 2) ? low : fractions[index.get(low)])
+                        + ((high < 2) ? high : fractions[index.get(high)])) / 2;
+            }
+            fraction = fractions[fractions.length - 1];
         }
-        size = size.add(s.multiply(satcount_rec(LOW(root))));
-
-        s = BigInteger.ONE;
-        if (!ZDD) {
-            s = s.multiply(BigInteger.TWO.pow(LEVEL(HIGH(root)) - LEVEL(root) - 1));
+        if (fraction >= Double.MIN_NORMAL) {
+            return Math.log(fraction) + bddvarnum * Math.log(2);
         }
-        size = size.add(s.multiply(satcount_rec(HIGH(root))));
-
-        entry.a = root;
-        entry.c = miscid;
-        entry.bires = size;
-
-        return size;
+        return Math.log(bdd_satcount_shared(r).doubleValue());
     }
 
     void bdd_gbc() {
@@ -6544,6 +9128,10 @@ public class JFactory extends BDDFactoryIntImpl {
         if (i < 2) {
             return;
         }
+        if (ITERATIVE()) {
+            bdd_mark_iter(i);
+            return;
+        }
 
         if (MARKED(i) || LOW(i) == INVALID_BDD) {
             return;
@@ -6559,6 +9147,10 @@ public class JFactory extends BDDFactoryIntImpl {
         if (i < 2) {
             return;
         }
+        if (ITERATIVE()) {
+            bdd_markcount_iter(i, cou);
+            return;
+        }
 
         if (MARKED(i) || LOW(i) == INVALID_BDD) {
             return;
@@ -6571,10 +9163,34 @@ public class JFactory extends BDDFactoryIntImpl {
         bdd_markcount(HIGH(i), cou);
     }
 
+    void bdd_markcount_limit(int i, int[] cou, int limit) {
+        if (i < 2 || cou[0] > limit) {
+            return;
+        }
+        if (ITERATIVE()) {
+            bdd_markcount_limit_iter(i, cou, limit);
+            return;
+        }
+
+        if (MARKED(i) || LOW(i) == INVALID_BDD) {
+            return;
+        }
+
+        SETMARK(i);
+        cou[0] += 1;
+
+        bdd_markcount_limit(LOW(i), cou, limit);
+        bdd_markcount_limit(HIGH(i), cou, limit);
+    }
+
     void bdd_unmark(int i) {
         if (i < 2) {
             return;
         }
+        if (ITERATIVE()) {
+            bdd_unmark_iter(i);
+            return;
+        }
 
         if (!MARKED(i) || LOW(i) == INVALID_BDD) {
             return;
@@ -6585,6 +9201,72 @@ public class JFactory extends BDDFactoryIntImpl {
         bdd_unmark(HIGH(i));
     }
 
+    /** Iterative version of {@link #bdd_mark}, using {@link #iterstack} rather than the Java stack. */
+    void bdd_mark_iter(int i) {
+        int base = iterstacktop;
+        ITERPUSH(i);
+        while (iterstacktop > base) {
+            i = iterstack[--iterstacktop];
+            if (i < 2 || MARKED(i) || LOW(i) == INVALID_BDD) {
+                continue;
+            }
+            SETMARK(i);
+            ITERPUSH(HIGH(i));
+            ITERPUSH(LOW(i));
+        }
+    }
+
+    /** Iterative version of {@link #bdd_markcount}, using {@link #iterstack} rather than the Java stack. */
+    void bdd_markcount_iter(int i, int[] cou) {
+        int base = iterstacktop;
+        ITERPUSH(i);
+        while (iterstacktop > base) {
+            i = iterstack[--iterstacktop];
+            if (i < 2 || MARKED(i) || LOW(i) == INVALID_BDD) {
+                continue;
+            }
+            SETMARK(i);
+            cou[0] += 1;
+            ITERPUSH(HIGH(i));
+            ITERPUSH(LOW(i));
+        }
+    }
+
+    /** Iterative version of {@link #bdd_markcount_limit}, using {@link #iterstack} rather than the Java stack. */
+    void bdd_markcount_limit_iter(int i, int[] cou, int limit) {
+        int base = iterstacktop;
+        ITERPUSH(i);
+        while (iterstacktop > base) {
+            i = iterstack[--iterstacktop];
+            if (i < 2 || MARKED(i) || LOW(i) == INVALID_BDD) {
+                continue;
+            }
+            SETMARK(i);
+            cou[0] += 1;
+            if (cou[0] > limit) {
+                iterstacktop = base;
+                return;
+            }
+            ITERPUSH(HIGH(i));
+            ITERPUSH(LOW(i));
+        }
+    }
+
+    /** Iterative version of {@link #bdd_unmark}, using {@link #iterstack} rather than the Java stack. */
+    void bdd_unmark_iter(int i) {
+        int base = iterstacktop;
+        ITERPUSH(i);
+        while (iterstacktop > base) {
+            i = iterstack[--iterstacktop];
+            if (i < 2 || !MARKED(i) || LOW(i) == INVALID_BDD) {
+                continue;
+            }
+            UNMARK(i);
+            ITERPUSH(HIGH(i));
+            ITERPUSH(LOW(i));
+        }
+    }
+
     int bdd_makenode(int level, int low, int high) {
         if (VERIFY_ASSERTIONS) {
             _assert(!ZDD);
@@ -6647,6 +9329,11 @@ public class JFactory extends BDDFactoryIntImpl {
             cachestats.uniqueMiss++;
         }
 
+        /* Give up if the node budget of the current operation is exhausted */
+        if (bddnodebudget >= 0 && bddproduced - bddnodebudgetstart >= bddnodebudget) {
+            throw new NodeBudgetException();
+        }
+
         /* Any free nodes to use ? */
         if (bddfreepos == 0) {
             if (bdderrorcond != 0) {
@@ -6660,6 +9347,11 @@ public class JFactory extends BDDFactoryIntImpl {
                 throw new ReorderException();
             }
 
+            if (bdd_compact_ready()) {
+                compactpending = true;
+                throw new ReorderException();
+            }
+
             if ((bddfreenum * 100L) / bddnodesize <= minfreenodes) {
                 bdd_noderesize(true);
                 hash2 = NODEHASH(level, low, high);
@@ -6690,6 +9382,38 @@ public class JFactory extends BDDFactoryIntImpl {
         return res;
     }
 
+    /**
+     * Performs the given operation, giving up once it has produced {@code maxnodes} new nodes. Automatic variable
+     * reordering is disabled for the duration of the operation, as reordering would consume the budget as well.
+     *
+     * @param maxnodes the maximum number of new nodes that the operation may produce
+     * @param op the operation to perform, e.g. {@code () -> bdd_apply(l, r, bddop_and)}
+     * @return the result of the operation, or {@link #INVALID_BDD} if the budget was exceeded
+     */
+    int bdd_budget(int maxnodes, IntSupplier op) {
+        if (maxnodes < 0) {
+            return bdd_error(BDD_SIZE);
+        }
+
+        int savedreorderdisabled = reorderdisabled;
+        int savedrefstacktop = bddrefstacktop;
+        bddnodebudget = maxnodes;
+        bddnodebudgetstart = bddproduced;
+        reorderdisabled = 1;
+        try {
+            return op.getAsInt();
+        } catch (NodeBudgetException x) {
+            // Intermediate results are only held by the reference stack, and will be reclaimed by the next garbage
+            // collection once it is unwound.
+            bddrefstacktop = savedrefstacktop;
+            checkresize();
+            return INVALID_BDD;
+        } finally {
+            bddnodebudget = -1;
+            reorderdisabled = savedreorderdisabled;
+        }
+    }
+
     int bdd_noderesize(boolean doRehash) {
         int oldsize = bddnodesize;
         int newsize = bddnodesize;
@@ -6718,6 +9442,18 @@ public class JFactory extends BDDFactoryIntImpl {
             }
         }
 
+        if (memorybudget > 0) {
+            newsize = bdd_budgetnodesize(oldsize, newsize);
+        }
+
+        /* The size is rounded down to a prime, which may leave no room to grow, e.g. near the memory budget */
+        if (newsize > 0) {
+            newsize = bdd_prime_lte(newsize);
+            if (newsize <= oldsize) {
+                return -1;
+            }
+        }
+
         return doResize(doRehash, oldsize, newsize);
     }
 
@@ -6745,7 +9481,7 @@ public class JFactory extends BDDFactoryIntImpl {
             }
         }
 
-        if (oldsize > newsize) {
+        if (oldsize >= newsize) {
             return 0;
         }
 
@@ -6775,13 +9511,366 @@ public class JFactory extends BDDFactoryIntImpl {
         bddfreepos = oldsize;
         bddfreenum += bddnodesize - oldsize;
 
-        if (doRehash) {
-            bdd_gbc_rehash();
+        if (doRehash) {
+            bdd_gbc_rehash();
+        }
+
+        bddresized = true;
+
+        return 0;
+    }
+
+    long memorybudget; /* Max. # of bytes used by the factory, or 0 */
+
+    /* Minimal size of the operator caches when shrinking them to meet the memory budget */
+    static final int MINBUDGETCACHESIZE = 1000;
+
+    /* Estimated size of an object reference, assuming compressed object pointers */
+    static final int MEM_REF = 4;
+
+    /** Returns the estimated size in bytes of an object with fields of the given total size. */
+    static final long MEM_OBJECT(int fieldsize) {
+        return (12 + fieldsize + 7) & ~7L;
+    }
+
+    /** Returns the estimated size in bytes of an array with the given length and element size. */
+    static final long MEM_ARRAY(long length, int elemsize) {
+        return (16 + length * elemsize + 7) & ~7L;
+    }
+
+    static final long MEM_ARRAY(int[] a) {
+        return (a == null) ? 0 : MEM_ARRAY(a.length, Integer.BYTES);
+    }
+
+    static final long MEM_BIGINTEGER(BigInteger b) {
+        return MEM_OBJECT(6 * Integer.BYTES) + MEM_ARRAY((b.bitLength() + 31) / 32, Integer.BYTES);
+    }
+
+    /** Returns the estimated size in bytes of an operator cache with the given number of entries. */
+    static final long BddCache_memory(int size, boolean is_bi) {
+        long entry = is_bi ? MEM_OBJECT(3 * Integer.BYTES + MEM_REF + Long.BYTES + Double.BYTES)
+                : MEM_OBJECT(6 * Integer.BYTES);
+        return MEM_ARRAY(size, MEM_REF) + size * entry;
+    }
+
+    static long BddCache_memory(BddCache cache) {
+        if (cache == null) {
+            return 0;
+        }
+
+        boolean is_bi = cache.table instanceof BddCacheDataBI[];
+        long n = BddCache_memory(cache.tablesize, is_bi);
+        if (is_bi) {
+            for (BddCacheData entry: cache.table) {
+                BigInteger bires = ((BddCacheDataBI)entry).bires;
+                if (bires != null) {
+                    n += MEM_BIGINTEGER(bires);
+                }
+            }
+        }
+        return n;
+    }
+
+    BddCache[] bdd_caches() {
+        return new BddCache[] {applycache, itecache, quantcache, appexcache, replacecache, misccache, countcache};
+    }
+
+    void bdd_memoryusage(MemoryUsage usage) {
+        usage.add("nodes", MEM_ARRAY(bddnodes));
+        usage.add("refstack", MEM_ARRAY(bddrefstack));
+        usage.add("iterstack", MEM_ARRAY(iterstack));
+        usage.add("variables", MEM_ARRAY(bddvar2level) + MEM_ARRAY(bddlevel2var) + MEM_ARRAY(bddvarset)
+                + MEM_ARRAY(quantvarset) + MEM_ARRAY(supportSet));
+
+        usage.add("applycache", BddCache_memory(applycache));
+        usage.add("itecache", BddCache_memory(itecache));
+        usage.add("quantcache", BddCache_memory(quantcache));
+        usage.add("appexcache", BddCache_memory(appexcache));
+        usage.add("replacecache", BddCache_memory(replacecache));
+        usage.add("misccache", BddCache_memory(misccache));
+        usage.add("countcache", BddCache_memory(countcache));
+
+        long n = 0;
+        for (bddPair p = pairs; p != null; p = p.next) {
+            n += MEM_OBJECT(3 * Integer.BYTES + 2 * MEM_REF) + MEM_ARRAY(p.result);
+        }
+        usage.add("pairs", n);
+
+        n = MEM_ARRAY(extroots);
+        if (levels != null) {
+            n += MEM_ARRAY(levels.length, MEM_REF) + levels.length * MEM_OBJECT(4 * Integer.BYTES);
+        }
+        if (iactmtx != null && iactmtx.rows != null) {
+            n += MEM_OBJECT(Integer.BYTES + MEM_REF) + MEM_ARRAY(iactmtx.rows.length, MEM_REF);
+            for (byte[] row: iactmtx.rows) {
+                n += MEM_ARRAY(row.length, 1);
+            }
+        }
+        usage.add("reorder", n);
+    }
+
+    long bdd_memoryused() {
+        MemoryUsage usage = new MemoryUsage();
+        bdd_memoryusage(usage);
+        return usage.getTotalBytes();
+    }
+
+    /** Returns the number of bytes used by the allocated operator caches. */
+    long bdd_cachememory() {
+        long n = 0;
+        for (BddCache cache: bdd_caches()) {
+            n += BddCache_memory(cache);
+        }
+        return n;
+    }
+
+    /** Returns the number of bytes the allocated operator caches would use, if resized to the given size. */
+    long bdd_cachememory(int size) {
+        long n = 0;
+        size = bdd_prime_gte(size);
+        for (BddCache cache: bdd_caches()) {
+            if (cache != null) {
+                n += BddCache_memory(size, cache.table instanceof BddCacheDataBI[]);
+            }
+        }
+        return n;
+    }
+
+    long bdd_setmemorybudget(long bytes) {
+        long old = memorybudget;
+
+        if (bytes < 0) {
+            return bdd_error(BDD_RANGE);
+        }
+
+        memorybudget = bytes;
+        if (memorybudget > 0) {
+            while (bdd_memoryused() > memorybudget && bdd_shrinkcaches()) {
+                // Keep shrinking the caches.
+            }
+        }
+        return old;
+    }
+
+    /**
+     * Returns whether growing the node table from the old to the new size stays within the memory budget. With a
+     * cache ratio, the operator caches grow along with the node table.
+     */
+    boolean bdd_fitsbudget(int oldsize, int newsize) {
+        long caches = bdd_cachememory();
+        long others = bdd_memoryused() - MEM_ARRAY((long)oldsize * __node_size, Integer.BYTES) - caches;
+
+        if (cacheratio > 0) {
+            caches = bdd_cachememory((int)(newsize * cacheratio));
+        }
+        return others + MEM_ARRAY((long)newsize * __node_size, Integer.BYTES) + caches <= memorybudget;
+    }
+
+    /**
+     * Returns the largest node table size, between the old and new size, that stays within the memory budget. The
+     * operator caches are shrunk before limiting the growth of the node table.
+     */
+    int bdd_budgetnodesize(int oldsize, int newsize) {
+        while (newsize > oldsize && !bdd_fitsbudget(oldsize, newsize)) {
+            if (!bdd_shrinkcaches()) {
+                newsize = oldsize + (newsize - oldsize) / 2;
+            }
+        }
+        return newsize;
+    }
+
+    /**
+     * Returns the largest cache size, at most the given size, for which the allocated operator caches stay within the
+     * memory budget, or the minimal cache size if none does.
+     */
+    int bdd_budgetcachesize(int size) {
+        if (memorybudget <= 0) {
+            return size;
+        }
+
+        long others = bdd_memoryused() - bdd_cachememory();
+        while (size / 2 >= MINBUDGETCACHESIZE && others + bdd_cachememory(size) > memorybudget) {
+            size /= 2;
+        }
+        return size;
+    }
+
+    /**
+     * Halves the size of the allocated operator caches, as well as the cache size and cache ratio for future caches.
+     *
+     * @return whether the caches were shrunk, which is not the case if they are already at their minimal size
+     */
+    boolean bdd_shrinkcaches() {
+        int size = 0;
+        for (BddCache cache: bdd_caches()) {
+            if (cache != null) {
+                size = Math.max(size, cache.tablesize);
+            }
+        }
+        if (size / 2 < MINBUDGETCACHESIZE) {
+            return false;
+        }
+
+        size /= 2;
+        if (cacheratio > 0) {
+            cacheratio /= 2;
+        }
+        cachesize = Math.min(cachesize, size);
+        for (BddCache cache: bdd_caches()) {
+            BddCache_resize(cache, size);
+        }
+        return true;
+    }
+
+    int compactthreshold; /* Compact when less than this % of nodes is used after gbc, or 0 */
+
+    int compactfailsize; /* Node table size at which compaction last failed to halve the table */
+
+    boolean compactpending; /* Flag indicating a compaction instead of a reordering */
+
+    int bdd_setcompactthreshold(int ct) {
+        int old = compactthreshold;
+
+        if (ct < 0 || ct > 100) {
+            return bdd_error(BDD_RANGE);
+        }
+
+        compactthreshold = ct;
+        return old;
+    }
+
+    /**
+     * Returns whether the node table should be compacted automatically, after a garbage collection. Compaction
+     * relocates nodes, so just like reordering it is only possible when the current operation can be restarted.
+     */
+    boolean bdd_compact_ready() {
+        if (compactthreshold == 0 || reorderdisabled != 0 || bddnodesize == compactfailsize) {
+            return false;
+        }
+        return (bddnodesize - bddfreenum) * 100L < (long)bddnodesize * compactthreshold;
+    }
+
+    /** Counts a reference to a node that is held by a known holder, in the hash field of the node. */
+    void compact_hold(int r) {
+        if (r >= 2) {
+            SETHASH(r, HASH(r) + 1);
+        }
+    }
+
+    /**
+     * Returns whether a node must stay in place during compaction. This is the case if it has references from unknown
+     * holders, such as BDD objects that are not freed automatically, of which the node numbers can not be updated.
+     */
+    boolean compact_pinned(int r) {
+        return GETREF(r) != HASH(r) || GETREF(r) == (REF_MASK >>> 22);
+    }
+
+    /**
+     * Compacts the node table. Live nodes above the new size are moved to free positions below it, and all references
+     * to them are renumbered: those of other nodes, and those of the automatically freed BDDs and variable sets, the
+     * replacement pairs and the operator caches. Nodes that are referenced by other holders stay in place. The node
+     * table is then shrunk to twice the number of used nodes, or more to keep the minimal percentage of free nodes,
+     * but at least to beyond the highest node that stays in place. The operator caches are reset, and with a cache
+     * ratio they are shrunk along with the node table.
+     *
+     * <p>
+     * When compacting automatically, the interrupted operation is restarted with the node numbers of its operands,
+     * so then all nodes that have references stay in place, just like for reordering.
+     * </p>
+     *
+     * @param pinall whether all nodes with references stay in place
+     * @return the old size of the node table
+     */
+    int bdd_compact(boolean pinall) {
+        int oldsize = bddnodesize;
+        int n, free;
+
+        bdd_gbc();
+
+        for (n = 0; n < bddnodesize; n++) {
+            SETHASH(n, 0);
+        }
+        if (!pinall) {
+            for (int v: autoFreeHandles()) {
+                compact_hold(v);
+            }
+            for (bddPair p = pairs; p != null; p = p.next) {
+                for (int v: p.result) {
+                    compact_hold(v);
+                }
+            }
+        }
+
+        long size = 0;
+        if (minfreenodes < 100) {
+            int used = bddnodesize - bddfreenum;
+            size = Math.max(2L * used, used * 100L / (100 - minfreenodes) + 1);
+            for (n = bddnodesize - 1; n >= size; n--) {
+                if (LOW(n) != INVALID_BDD && compact_pinned(n)) {
+                    size = n + 1;
+                    break;
+                }
+            }
+        }
+        int newsize = (size == 0 || size >= oldsize) ? oldsize : Math.min(bdd_prime_gte((int)size), oldsize);
+        compactfailsize = (newsize > oldsize / 2) ? newsize : 0;
+        if (newsize == oldsize) {
+            for (n = 0; n < bddnodesize; n++) {
+                SETHASH(n, 0);
+            }
+            bdd_gbc_rehash();
+            return oldsize;
+        }
+
+        invokeResizeStatsCallbacks(oldsize, newsize);
+        bddrelocnum++;
+
+        /* Move the live nodes above the new size */
+        int[] moved = new int[oldsize - newsize];
+        free = 2;
+        for (n = newsize; n < oldsize; n++) {
+            if (LOW(n) != INVALID_BDD) {
+                while (LOW(free) != INVALID_BDD) {
+                    free++;
+                }
+                bddnodes[free * __node_size + offset__refcou_and_level] = bddnodes[n * __node_size
+                        + offset__refcou_and_level];
+                SETLOW(free, LOW(n));
+                SETHIGH(free, HIGH(n));
+                moved[n - newsize] = free;
+            }
+        }
+
+        /* Renumber the references to the moved nodes */
+        IntUnaryOperator renumber = r -> (r >= newsize) ? moved[r - newsize] : r;
+        for (n = 2; n < newsize; n++) {
+            if (LOW(n) != INVALID_BDD) {
+                SETLOW(n, renumber.applyAsInt(LOW(n)));
+                SETHIGH(n, renumber.applyAsInt(HIGH(n)));
+            }
+        }
+        for (n = 0; n < bddrefstacktop; n++) {
+            bddrefstack[n] = renumber.applyAsInt(bddrefstack[n]);
+        }
+        renumberAutoFree(renumber);
+        for (bddPair p = pairs; p != null; p = p.next) {
+            for (n = 0; n < p.result.length; n++) {
+                p.result[n] = renumber.applyAsInt(p.result[n]);
+            }
+        }
+
+        bddnodes = Arrays.copyOf(bddnodes, newsize * __node_size);
+        bddnodesize = newsize;
+
+        for (n = 0; n < bddnodesize; n++) {
+            SETHASH(n, 0);
         }
+        bdd_gbc_rehash();
 
-        bddresized = true;
+        bdd_operator_reset();
+        bdd_operator_noderesize();
 
-        return 0;
+        return oldsize;
     }
 
     void bdd_init(int initnodesize, int cs) {
@@ -6851,6 +9940,10 @@ public class JFactory extends BDDFactoryIntImpl {
 
     static final int CACHEID_PATHCOU = 0x4;
 
+    static final int CACHEID_SHORTPATH = 0x5;
+
+    static final int CACHEID_SATCOULONG = 0x6;
+
     /* Hash value modifiers for replace/compose */
     static final int CACHEID_REPLACE = 0x0;
 
@@ -6921,10 +10014,57 @@ public class JFactory extends BDDFactoryIntImpl {
 
     int[] supportSet; /* The found support set */
 
+    int[] tuplelevels; /* Levels of the tuple bits, from top to bottom, for buildtuples */
+
+    int[] tuplecolumns; /* Per tuple bit, the column of its value */
+
+    long[] tuplemasks; /* Per tuple bit, the mask of the bit in its value */
+
+    int[] tuplerows; /* Current order of the tuple rows */
+
+    long[][] tuplevalues; /* The tuple values, per column */
+
+    int[] thresholdlevels; /* Levels of the compared bits, from top to bottom, for threshold */
+
+    int[] thresholdsigs; /* Per compared bit, its significance */
+
+    int[] thresholdmaxsigs; /* Per compared bit, the max. significance of it and the bits below it */
+
+    boolean[] thresholdbits; /* The bits of the constant, by significance */
+
+    boolean thresholdgreater; /* Whether to compare with >= (true) or <= (false) */
+
+    int[][] thresholdmemo; /* Per compared bit, the referenced results, by comparison state */
+
+    int[] thresholdvars; /* The variables of the bounded vector, by significance */
+
+    boolean[][] thresholdbounds; /* The bits of the ascending bounds, by significance */
+
+    BDD.DoubleSemiring evalsemiring; /* The semiring to evaluate in */
+
+    double[] evallow; /* Per level, the weight of the low edges */
+
+    double[] evalhigh; /* Per level, the weight of the high edges */
+
+    double[] evalskip; /* Per level, the weight of skipping it, or null if all of them are one */
+
+    NodeIndex evalindex; /* Index of the marked nodes in evalvalues */
+
+    double[] evalvalues; /* Per marked node, its value */
+
+    NodeIndex acountindex; /* Index of the marked nodes in acountvalues and acountbigvalues */
+
+    long[] acountvalues; /* Per marked node, its count, or -1 on overflow */
+
+    boolean acountsat; /* Whether to count satisfying assignments (true) or paths (false) */
+
+    BigInteger[] acountbigvalues; /* Per node whose count overflowed a long, its count */
+
     BddCache applycache; /* Cache for apply results */
 
     BddCache itecache; /* Cache for ITE results */
 
+
     BddCache quantcache; /* Cache for exist/forall results */
 
     BddCache appexcache; /* Cache for appex/appall results */
@@ -7014,6 +10154,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
     int bdd_setcachesize(int newcachesize) {
         int old = cachesize;
+        newcachesize = bdd_budgetcachesize(newcachesize);
         BddCache_resize(applycache, newcachesize);
         BddCache_resize(itecache, newcachesize);
         BddCache_resize(quantcache, newcachesize);
@@ -7026,7 +10167,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
     void bdd_operator_noderesize() {
         if (cacheratio > 0) {
-            int newcachesize = (int)(bddnodesize * cacheratio);
+            int newcachesize = bdd_budgetcachesize((int)(bddnodesize * cacheratio));
 
             BddCache_resize(applycache, newcachesize);
             BddCache_resize(itecache, newcachesize);
@@ -7041,6 +10182,12 @@ public class JFactory extends BDDFactoryIntImpl {
     BddCache BddCacheI_init(int size) {
         int n;
 
+        if (memorybudget > 0) {
+            long avail = memorybudget - bdd_memoryused();
+            while (size / 2 >= MINBUDGETCACHESIZE && BddCache_memory(bdd_prime_gte(size), false) > avail) {
+                size /= 2;
+            }
+        }
         size = bdd_prime_gte(size);
 
         BddCache cache = new BddCache();
@@ -7058,6 +10205,12 @@ public class JFactory extends BDDFactoryIntImpl {
     BddCache BddCacheBI_init(int size) {
         int n;
 
+        if (memorybudget > 0) {
+            long avail = memorybudget - bdd_memoryused();
+            while (size / 2 >= MINBUDGETCACHESIZE && BddCache_memory(bdd_prime_gte(size), true) > avail) {
+                size /= 2;
+            }
+        }
         size = bdd_prime_gte(size);
 
         BddCache cache = new BddCache();
@@ -7195,6 +10348,17 @@ public class JFactory extends BDDFactoryIntImpl {
 
             boolean isInvalid = false;
 
+            if (entry.e < 0) {
+                // An iteRelprev entry, see ITERELPREVID.
+                isInvalid = LOW(entry.a) == INVALID_BDD || LOW(entry.b) == INVALID_BDD
+                        || LOW(entry.c) == INVALID_BDD || LOW(entry.d) == INVALID_BDD
+                        || LOW(-entry.e) == INVALID_BDD || LOW(entry.res) == INVALID_BDD;
+                if (isInvalid) {
+                    entry.a = -1;
+                }
+                continue;
+            }
+
             // Cache cleanup doesn't consider the 'instance' fields of saturation cache entries. This means that cache
             // cleanup assumes that the transition relation BDDs used for saturation are not garbage collected.
             switch (entry.e) {
@@ -7209,6 +10373,7 @@ public class JFactory extends BDDFactoryIntImpl {
                 case bddop_relnextIntersection:
                 case bddop_relprevUnion:
                 case bddop_relprevIntersection:
+                case bddop_iteExist:
                     isInvalid = LOW(entry.a) == INVALID_BDD || LOW(entry.b) == INVALID_BDD
                             || LOW(entry.c) == INVALID_BDD || LOW(entry.d) == INVALID_BDD
                             || LOW(entry.res) == INVALID_BDD;
@@ -7312,14 +10477,21 @@ public class JFactory extends BDDFactoryIntImpl {
 
     void bdd_resetpair(bddPair p) {
         int n;
+        int oldreorderdisabled = reorderdisabled;
 
-        for (n = 0; n < bddvarnum; n++) {
-            if (ZDD) {
-                bdd_delref(p.result[n]);
-                p.result[n] = bdd_addref(zdd_makenode(n, 0, 1));
-            } else {
-                p.result[n] = bdd_ithvar(bddlevel2var[n]);
+        /* Creating the ZDD nodes can't be restarted, so it must not reorder or compact */
+        bdd_disable_reorder();
+        try {
+            for (n = 0; n < bddvarnum; n++) {
+                if (ZDD) {
+                    bdd_delref(p.result[n]);
+                    p.result[n] = bdd_addref(zdd_makenode(n, 0, 1));
+                } else {
+                    p.result[n] = bdd_ithvar(bddlevel2var[n]);
+                }
             }
+        } finally {
+            reorderdisabled = oldreorderdisabled;
         }
         p.last = 0;
     }
@@ -7417,6 +10589,12 @@ public class JFactory extends BDDFactoryIntImpl {
     }
 
     void bdd_checkreorder() {
+        if (compactpending) {
+            compactpending = false;
+            bdd_compact(true);
+            return;
+        }
+
         bdd_reorder_auto();
 
         /* Do not reorder before twice as many nodes have been used */
@@ -9093,6 +12271,7 @@ public class JFactory extends BDDFactoryIntImpl {
 
         int n;
 
+        bddrelocnum++;
         reorderstats.usednum_before = getNodeNum();
         reorderstats.time = System.currentTimeMillis();
         invokeReorderStatsCallbacks(true);
@@ -9525,6 +12704,595 @@ public class JFactory extends BDDFactoryIntImpl {
         return lh_table[hash].data;
     }
 
+    int[] bdd_loadbinary(DataInput in) throws IOException {
+        // Create the nodes bottom-up, directly if they fit the current variable order.
+        int nodenum = readVarInt(in);
+        int[] nodes = new int[nodenum];
+        int loaded = 0;
+        int oldreorderdisabled = reorderdisabled;
+        bdd_disable_reorder();
+        try {
+            for (; loaded < nodenum; loaded++) {
+                int var = readVarInt(in);
+                if (var < 0 || var >= bddvarnum) {
+                    throw new BDDException("Incorrect file format");
+                }
+                int low = loadbinary_ref(nodes, readVarInt(in), loaded);
+                int high = loadbinary_ref(nodes, readVarInt(in), loaded);
+
+                nodes[loaded] = bdd_addref(loadbinary_node(var, low, high));
+            }
+
+            int rootnum = readVarInt(in);
+            int[] roots = new int[rootnum];
+            int read = 0;
+            try {
+                for (; read < rootnum; read++) {
+                    roots[read] = bdd_addref(loadbinary_ref(nodes, readVarInt(in), nodenum));
+                }
+            } finally {
+                // Release the roots read so far, if not all of them could be read.
+                if (read < rootnum) {
+                    for (int i = 0; i < read; i++) {
+                        bdd_delref(roots[i]);
+                    }
+                }
+            }
+            return roots;
+        } finally {
+            for (int i = 0; i < loaded; i++) {
+                bdd_delref(nodes[i]);
+            }
+            reorderdisabled = oldreorderdisabled;
+            checkresize();
+        }
+    }
+
+    /* Creates a node, directly if it fits the current variable order. Reordering must be disabled. */
+    int loadbinary_node(int var, int low, int high) {
+        int level = bddvar2level[var];
+        if ((ISCONST(low) || LEVEL(low) > level) && (ISCONST(high) || LEVEL(high) > level)) {
+            INITREF();
+            return ZDD ? zdd_makenode(level, low, high) : bdd_makenode(level, low, high);
+        } else if (ZDD) {
+            // A ZDD node also depends on the variables it skips, so it can't be rebuilt under another order.
+            throw new BDDException("ZDD nodes do not fit the current variable order");
+        } else {
+            return bdd_ite(bdd_ithvar(var), high, low);
+        }
+    }
+
+    int loadbinary_ref(int[] nodes, int ref, int from) {
+        if (ref < 2) {
+            return ref;
+        }
+        int i = from - 1 - (ref - 2);
+        if (i < 0) {
+            throw new BDDException("Incorrect file format");
+        }
+        return nodes[i];
+    }
+
+    void bdd_savebinary(DataOutput out, int[] roots) throws IOException {
+        for (int r: roots) {
+            CHECK(r);
+        }
+
+        NodeIndex index = bdd_postorder(roots);
+        int nodenum = index.size();
+
+        writeVarInt(out, nodenum);
+        for (int i = 0; i < nodenum; i++) {
+            int n = index.node(i);
+            writeVarInt(out, bddlevel2var[LEVEL(n)]);
+            writeVarInt(out, ISCONST(LOW(n)) ? LOW(n) : 2 + (i - 1 - index.get(LOW(n))));
+            writeVarInt(out, ISCONST(HIGH(n)) ? HIGH(n) : 2 + (i - 1 - index.get(HIGH(n))));
+        }
+
+        writeVarInt(out, roots.length);
+        for (int r: roots) {
+            writeVarInt(out, ISCONST(r) ? r : 2 + (nodenum - 1 - index.get(r)));
+        }
+    }
+
+    /*
+     * Numbers the nodes of the given roots in post-order, which puts children before their parents. Returns the
+     * index of the nodes, which also gives the nodes in that order.
+     */
+    NodeIndex bdd_postorder(int[] roots) {
+        NodeIndex index = new NodeIndex();
+        try {
+            for (int r: roots) {
+                int base = iterstacktop;
+                ITERPUSH(r);
+                ITERPUSH(0);
+                while (iterstacktop > base) {
+                    int phase = iterstack[iterstacktop - 1];
+                    int n = iterstack[iterstacktop - 2];
+                    iterstacktop -= 2;
+
+                    if (phase == 0) {
+                        if (n < 2 || MARKED(n)) {
+                            continue;
+                        }
+                        SETMARK(n);
+
+                        ITERPUSH(n);
+                        ITERPUSH(1);
+                        ITERPUSH(HIGH(n));
+                        ITERPUSH(0);
+                        ITERPUSH(LOW(n));
+                        ITERPUSH(0);
+                    } else {
+                        index.index(n);
+                    }
+                }
+            }
+        } finally {
+            for (int r: roots) {
+                bdd_unmark(r);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Maps the nodes reached from some roots to consecutive indices, in the order in which they are added. This allows
+     * keeping data per node in arrays that are sized to the number of reached nodes, rather than to the node table.
+     */
+    static class NodeIndex {
+        /** The nodes, per index. */
+        int[] nodes;
+
+        /**
+         * Open addressing hash table of the nodes, with linear probing. Each entry is a node and its index, or zero if
+         * the entry is empty.
+         */
+        int[] table;
+
+        /** The number of indexed nodes. */
+        int size;
+
+        NodeIndex() {
+            nodes = new int[64];
+            table = new int[256];
+        }
+
+        /** Returns the number of indexed nodes. */
+        int size() {
+            return size;
+        }
+
+        /** Returns the number of nodes that can be indexed before growing, which is at least the number of indices. */
+        int capacity() {
+            return nodes.length;
+        }
+
+        /** Returns the node with the given index. */
+        int node(int i) {
+            return nodes[i];
+        }
+
+        /** Returns the index of the given node, or -1 if it has none. */
+        int get(int n) {
+            int mask = table.length - 2;
+            for (int h = hash(n) & mask;; h = (h + 2) & mask) {
+                if (table[h] == n) {
+                    return table[h + 1];
+                }
+                if (table[h] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        /** Returns the index of the given node, giving it the next index if it has none yet. */
+        int index(int n) {
+            int mask = table.length - 2;
+            for (int h = hash(n) & mask;; h = (h + 2) & mask) {
+                if (table[h] == n) {
+                    return table[h + 1];
+                }
+                if (table[h] == 0) {
+                    if (size == nodes.length) {
+                        grow();
+                        return index(n);
+                    }
+                    nodes[size] = n;
+                    table[h] = n;
+                    table[h + 1] = size;
+                    return size++;
+                }
+            }
+        }
+
+        /** Doubles the capacity, keeping the hash table at most half full. */
+        void grow() {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            table = new int[table.length * 2];
+            int mask = table.length - 2;
+            for (int i = 0; i < size; i++) {
+                int h = hash(nodes[i]) & mask;
+                while (table[h] != 0) {
+                    h = (h + 2) & mask;
+                }
+                table[h] = nodes[i];
+                table[h + 1] = i;
+            }
+        }
+
+        static int hash(int n) {
+            int h = n * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /*
+     * Copies the given roots of another factory into this one, creating the nodes bottom-up. Returns the referenced
+     * copies.
+     */
+    int[] bdd_transfer(JFactory src, int[] roots) {
+        for (int r: roots) {
+            src.CHECK(r);
+        }
+        if (src.ZDD != ZDD) {
+            throw new BDDException("Cannot transfer between BDD and ZDD factories");
+        }
+        if (src.bddvarnum > bddvarnum) {
+            bdd_setvarnum(src.bddvarnum);
+        }
+
+        NodeIndex index = src.bdd_postorder(roots);
+        int[] nodes = new int[index.size()];
+        int done = 0;
+        int oldreorderdisabled = reorderdisabled;
+        bdd_disable_reorder();
+        try {
+            for (; done < nodes.length; done++) {
+                int n = index.node(done);
+                int low = src.LOW(n);
+                int high = src.HIGH(n);
+                low = ISCONST(low) ? low : nodes[index.get(low)];
+                high = ISCONST(high) ? high : nodes[index.get(high)];
+                nodes[done] = bdd_addref(loadbinary_node(src.bddlevel2var[src.LEVEL(n)], low, high));
+            }
+
+            int[] res = new int[roots.length];
+            for (int i = 0; i < roots.length; i++) {
+                res[i] = bdd_addref(ISCONST(roots[i]) ? roots[i] : nodes[index.get(roots[i])]);
+            }
+            return res;
+        } finally {
+            for (int i = 0; i < done; i++) {
+                bdd_delref(nodes[i]);
+            }
+            reorderdisabled = oldreorderdisabled;
+            checkresize();
+        }
+    }
+
+    void bdd_savesnapshot(FileChannel ch, int[] roots) throws IOException {
+        for (int r: roots) {
+            CHECK(r);
+        }
+
+        SnapshotOutput out = new SnapshotOutput(ch);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(ZDD ? 1 : 0);
+        out.writeInt(bddnodesize);
+        out.writeInt(bddvarnum);
+        out.writeInt(bddmaxnodesize);
+        out.writeInt(bddmaxnodeincrease);
+        out.writeInt(minfreenodes);
+        out.writeInt(cachesize);
+        out.writeInt(univ);
+
+        out.writeInts(bddnodes, bddnodesize * __node_size);
+        if (bddvarnum > 0) {
+            out.writeInts(bddvar2level, bddvarnum + 1);
+            out.writeInts(bddlevel2var, bddvarnum + 1);
+            out.writeInts(bddvarset, bddvarnum * 2);
+        }
+        out.writeInt(roots.length);
+        out.writeInts(roots, roots.length);
+
+        // Variable blocks, parents before their children.
+        List<BddTree> blocks = new LinkedList<>();
+        snapshot_blocks(vartree, blocks);
+        out.writeInt(blocks.size());
+        for (BddTree t: blocks) {
+            out.writeInt(t.firstVar);
+            out.writeInt(t.lastVar);
+            out.writeInt(t.fixed ? 1 : 0);
+        }
+
+        snapshot_savecache(out, applycache);
+        snapshot_savecache(out, itecache);
+
+        // The finite domains, in the binary BDD format.
+        ByteArrayOutputStream domains = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(domains);
+        saveBinaryDomains(dout);
+        dout.flush();
+        out.writeBytes(domains.toByteArray());
+
+        out.flush();
+    }
+
+    void snapshot_blocks(BddTree t, List<BddTree> blocks) {
+        for (; t != null; t = t.next) {
+            blocks.add(t);
+            snapshot_blocks(t.nextlevel, blocks);
+        }
+    }
+
+    void snapshot_savecache(SnapshotOutput out, BddCache cache) throws IOException {
+        if (cache == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(cache.tablesize);
+        int[] entries = new int[cache.tablesize * 6];
+        for (int n = 0; n < cache.tablesize; n++) {
+            BddCacheDataI entry = (BddCacheDataI)cache.table[n];
+            entries[n * 6] = entry.a;
+            entries[n * 6 + 1] = entry.b;
+            entries[n * 6 + 2] = entry.c;
+            entries[n * 6 + 3] = entry.d;
+            entries[n * 6 + 4] = entry.e;
+            entries[n * 6 + 5] = entry.res;
+        }
+        out.writeInts(entries, entries.length);
+    }
+
+    int[] bdd_loadsnapshot(FileChannel ch) throws IOException {
+        SnapshotInput in = new SnapshotInput(ch);
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new BDDException("Incorrect file format");
+        }
+        int version = in.readInt();
+        if (version != SNAPSHOT_VERSION) {
+            throw new BDDException("Unsupported file format version " + version);
+        }
+        ZDD = in.readInt() != 0;
+        int nodesize = in.readInt();
+        int varnum = in.readInt();
+        int maxnodesize = in.readInt();
+        int maxnodeincrease = in.readInt();
+        int freenodes = in.readInt();
+        int cs = in.readInt();
+        int u = in.readInt();
+
+        // Initialize a small factory with the same variables, and then replace its tables.
+        if (nodesize < 2 || nodesize > MAX_SAFE_NODE_SIZE || varnum < 0) {
+            throw new BDDException("Incorrect file format");
+        }
+        bdd_init(2 * varnum + 2, cs);
+        if (varnum > 0) {
+            bdd_setvarnum(varnum);
+        }
+        bddnodes = new int[nodesize * __node_size];
+        bddnodesize = nodesize;
+        usednodes_nextreorder = nodesize;
+        bddmaxnodesize = maxnodesize;
+        bddmaxnodeincrease = maxnodeincrease;
+        minfreenodes = freenodes;
+        univ = u;
+
+        in.readInts(bddnodes, nodesize * __node_size);
+        if (varnum > 0) {
+            in.readInts(bddvar2level, varnum + 1);
+            in.readInts(bddlevel2var, varnum + 1);
+            in.readInts(bddvarset, varnum * 2);
+        }
+        int[] roots = new int[in.readInt()];
+        in.readInts(roots, roots.length);
+
+        int blocknum = in.readInt();
+        for (int i = 0; i < blocknum; i++) {
+            int first = in.readInt();
+            int last = in.readInt();
+            bdd_intaddvarblock(first, last, in.readInt() != 0);
+        }
+
+        applycache = snapshot_loadcache(in, applycache);
+        itecache = snapshot_loadcache(in, itecache);
+        snapshot_cleanitecache(itecache);
+
+        // Only the restored roots and the variables are referenced. Collect the rest.
+        for (int n = 2; n < bddnodesize; n++) {
+            if (LOW(n) != INVALID_BDD
+                    && (bddnodes[n * __node_size + offset__refcou_and_level] & REF_MASK) != REF_MASK)
+            {
+                CLEARREF(n);
+            }
+        }
+        for (int r: roots) {
+            if (r < 0 || r >= bddnodesize || r >= 2 && LOW(r) == INVALID_BDD) {
+                throw new BDDException("Incorrect file format");
+            }
+            bdd_addref(r);
+        }
+        bdd_gbc();
+
+        loadBinaryDomains(new DataInputStream(new ByteArrayInputStream(in.readBytes())));
+        return roots;
+    }
+
+    /*
+     * Invalidates the entries of a restored ITE cache that are not keyed by nodes alone. The entries of the saturation
+     * operations depend on the instance numbers chosen by the callers in the saving process.
+     */
+    void snapshot_cleanitecache(BddCache cache) {
+        if (cache == null) {
+            return;
+        }
+        for (int n = 0; n < cache.tablesize; n++) {
+            BddCacheDataI entry = (BddCacheDataI)cache.table[n];
+            if (entry.a >= 0 && !snapshot_nodekeyed(entry.e)) {
+                entry.a = -1;
+            }
+        }
+    }
+
+    static boolean snapshot_nodekeyed(int op) {
+        if (op < 0) {
+            return true; // iteRelprev, see ITERELPREVID
+        }
+        switch (op) {
+            case bddop_ite:
+            case bddop_relnext:
+            case bddop_relprev:
+            case bddop_relnextIntersection:
+            case bddop_relprevIntersection:
+            case bddop_relnextUnion:
+            case bddop_relprevUnion:
+            case bddop_iteExist:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    BddCache snapshot_loadcache(SnapshotInput in, BddCache cache) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return cache;
+        }
+        int[] entries = new int[size * 6];
+        in.readInts(entries, entries.length);
+        if (cache == null || cache.tablesize != size) {
+            cache = BddCacheI_init(size);
+            if (cache.tablesize != size) {
+                return cache; // Not a prime, so keep it empty.
+            }
+        }
+        for (int n = 0; n < size; n++) {
+            BddCacheDataI entry = (BddCacheDataI)cache.table[n];
+            entry.a = entries[n * 6];
+            entry.b = entries[n * 6 + 1];
+            entry.c = entries[n * 6 + 2];
+            entry.d = entries[n * 6 + 3];
+            entry.e = entries[n * 6 + 4];
+            entry.res = entries[n * 6 + 5];
+        }
+        return cache;
+    }
+
+    /** Writes the ints of a snapshot to a file channel, in bulk through a direct buffer. */
+    private static class SnapshotOutput {
+        final FileChannel ch;
+
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+
+        SnapshotOutput(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void writeInt(int v) throws IOException {
+            if (buf.remaining() < 4) {
+                flush();
+            }
+            buf.putInt(v);
+        }
+
+        void writeInts(int[] a, int len) throws IOException {
+            for (int off = 0; off < len;) {
+                if (buf.remaining() < 4) {
+                    flush();
+                }
+                int n = Math.min(len - off, buf.remaining() / 4);
+                buf.asIntBuffer().put(a, off, n);
+                buf.position(buf.position() + n * 4);
+                off += n;
+            }
+        }
+
+        void writeBytes(byte[] a) throws IOException {
+            writeInt(a.length);
+            for (int off = 0; off < a.length;) {
+                if (buf.remaining() < 4) {
+                    flush();
+                }
+                int n = Math.min(a.length - off, buf.remaining() & ~3);
+                buf.put(a, off, n);
+                off += n;
+            }
+            while ((buf.position() & 3) != 0) {
+                buf.put((byte)0);
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            buf.clear();
+        }
+    }
+
+    /** Reads the ints of a snapshot from a file channel, in bulk through memory-mapped windows of the file. */
+    private static class SnapshotInput {
+        static final int WINDOW = 1 << 26;
+
+        final FileChannel ch;
+
+        final long size;
+
+        long pos;
+
+        MappedByteBuffer buf;
+
+        SnapshotInput(FileChannel ch) throws IOException {
+            this.ch = ch;
+            this.size = ch.size();
+        }
+
+        void map() throws IOException {
+            if (buf != null && buf.remaining() >= 4) {
+                return;
+            }
+            if (buf != null) {
+                pos += buf.position();
+            }
+            if (size - pos < 4) {
+                throw new EOFException();
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size - pos, WINDOW) & ~3L);
+        }
+
+        int readInt() throws IOException {
+            map();
+            return buf.getInt();
+        }
+
+        void readInts(int[] a, int len) throws IOException {
+            for (int off = 0; off < len;) {
+                map();
+                int n = Math.min(len - off, buf.remaining() / 4);
+                buf.asIntBuffer().get(a, off, n);
+                buf.position(buf.position() + n * 4);
+                off += n;
+            }
+        }
+
+        byte[] readBytes() throws IOException {
+            byte[] a = new byte[readInt()];
+            for (int off = 0; off < a.length;) {
+                map();
+                int n = Math.min(a.length - off, buf.remaining());
+                buf.get(a, off, n);
+                off += n;
+            }
+            while (a.length > 0 && (buf.position() & 3) != 0) {
+                buf.get();
+            }
+            return a;
+        }
+    }
+
     void bdd_save(BufferedWriter out, int r) throws IOException {
         int[] n = new int[1];
 
@@ -9542,13 +13310,52 @@ public class JFactory extends BDDFactoryIntImpl {
         }
         out.write("\n");
 
-        bdd_save_rec(out, r);
+        if (ITERATIVE()) {
+            bdd_save_iter(out, r);
+        } else {
+            bdd_save_rec(out, r);
+        }
         bdd_unmark(r);
 
         out.flush();
         return;
     }
 
+    /**
+     * Iterative version of {@link #bdd_save_rec}, writing the nodes in the same order. Its frames on
+     * {@link #iterstack} are (root, phase), where the phase is {@code 0} if the node still has to be visited, and
+     * {@code 1} if its children have been written and it can be written itself.
+     */
+    void bdd_save_iter(BufferedWriter out, int root) throws IOException {
+        int base = iterstacktop;
+        ITERPUSH(root);
+        ITERPUSH(0);
+        while (iterstacktop > base) {
+            int phase = iterstack[iterstacktop - 1];
+            root = iterstack[iterstacktop - 2];
+            iterstacktop -= 2;
+
+            if (phase == 0) {
+                if (root < 2 || MARKED(root)) {
+                    continue;
+                }
+                SETMARK(root);
+
+                ITERPUSH(root);
+                ITERPUSH(1);
+                ITERPUSH(HIGH(root));
+                ITERPUSH(0);
+                ITERPUSH(LOW(root));
+                ITERPUSH(0);
+            } else {
+                out.write(root + " ");
+                out.write(bddlevel2var[LEVEL(root)] + " ");
+                out.write(LOW(root) + " ");
+                out.write(HIGH(root) + "\n");
+            }
+        }
+    }
+
     // TODO: revisit for ZDD
     void bdd_save_rec(BufferedWriter out, int root) throws IOException {
         if (root < 2) {